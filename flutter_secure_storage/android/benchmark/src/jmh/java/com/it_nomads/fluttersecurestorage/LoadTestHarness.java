@@ -0,0 +1,236 @@
+package com.it_nomads.fluttersecurestorage;
+
+import com.it_nomads.fluttersecurestorage.benchmark.CallTrace;
+import com.it_nomads.fluttersecurestorage.benchmark.FakeBinaryMessenger;
+import com.it_nomads.fluttersecurestorage.benchmark.FakeContext;
+import com.it_nomads.fluttersecurestorage.benchmark.FakeLooper;
+import com.it_nomads.fluttersecurestorage.benchmark.InMemorySharedPreferences;
+import com.it_nomads.fluttersecurestorage.benchmark.LongSamples;
+import com.it_nomads.fluttersecurestorage.crypto.BenchmarkEncryptedSharedPreferences;
+
+import java.io.FileReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import io.flutter.embedding.engine.plugins.FlutterPlugin;
+import io.flutter.plugin.common.FlutterException;
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.StandardMethodCodec;
+
+/**
+ * Replays a call trace against {@link FlutterSecureStoragePlugin} through a fake
+ * {@link io.flutter.plugin.common.BinaryMessenger}, with the platform thread and the worker
+ * thread replaced by {@link FakeLooper}s, and reports throughput, latency percentiles and the
+ * depth of the worker queue as JSON.
+ * <p>
+ * Latency is measured from the time a call was scheduled to be sent, so a driver that falls
+ * behind shows up in the numbers instead of hiding queueing delay.
+ * <p>
+ * Options:
+ * <pre>
+ *   --trace &lt;file&gt;        replay a recorded trace instead of a synthetic startup burst
+ *   --reads &lt;n&gt;           reads in the synthetic burst (500)
+ *   --writes &lt;n&gt;          writes in the synthetic burst (50)
+ *   --keys &lt;n&gt;            distinct keys, written before the run starts (100)
+ *   --value-length &lt;n&gt;    length of written values (64)
+ *   --seed &lt;n&gt;            seed of the synthetic burst (1)
+ *   --output &lt;file&gt;       write the JSON report to a file instead of stdout
+ * </pre>
+ */
+public final class LoadTestHarness {
+
+    private static final String CHANNEL = "plugins.it_nomads.com/flutter_secure_storage";
+    private static final long TIMEOUT_SECONDS = 300;
+
+    private final FakeLooper platformLooper = new FakeLooper("platform");
+    private final FakeLooper workerLooper = new FakeLooper("fluttersecurestorage.worker");
+    private final FakeBinaryMessenger messenger = new FakeBinaryMessenger();
+    private final FlutterSecureStoragePlugin plugin;
+
+    private LoadTestHarness() {
+        plugin = new FlutterSecureStoragePlugin(workerLooper, platformLooper,
+                (context, options) -> new FlutterSecureStorage(
+                        BenchmarkEncryptedSharedPreferences.create(new InMemorySharedPreferences())));
+        plugin.onAttachedToEngine(new FlutterPlugin.FlutterPluginBinding(
+                new FakeContext(), null, messenger, null, null, null, null));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseArguments(args);
+        int keys = Integer.parseInt(options.getOrDefault("keys", "100"));
+        int valueLength = Integer.parseInt(options.getOrDefault("value-length", "64"));
+
+        CallTrace trace;
+        if (options.containsKey("trace")) {
+            try (Reader reader = new FileReader(options.get("trace"), StandardCharsets.UTF_8)) {
+                trace = CallTrace.parse(reader);
+            }
+        } else {
+            trace = CallTrace.startupBurst(
+                    Integer.parseInt(options.getOrDefault("reads", "500")),
+                    Integer.parseInt(options.getOrDefault("writes", "50")),
+                    keys,
+                    valueLength,
+                    Long.parseLong(options.getOrDefault("seed", "1")));
+        }
+
+        LoadTestHarness harness = new LoadTestHarness();
+        try {
+            harness.prefill(keys, valueLength);
+            String report = harness.replay(trace, valueLength);
+            if (options.containsKey("output")) {
+                Files.writeString(Paths.get(options.get("output")), report, StandardCharsets.UTF_8);
+            } else {
+                PrintStream out = System.out;
+                out.println(report);
+            }
+        } finally {
+            harness.shutdown();
+        }
+    }
+
+    private static Map<String, String> parseArguments(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                throw new IllegalArgumentException("Expected --<option> <value>, got " + args[i]);
+            }
+            options.put(args[i].substring(2), args[++i]);
+        }
+        return options;
+    }
+
+    /**
+     * Initializes the storage and writes every key once. Not part of the measurement.
+     */
+    private void prefill(int keys, int valueLength) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(keys);
+        for (int i = 0; i < keys; i++) {
+            ByteBuffer message = encode(new CallTrace.Call(0, "write", "key_" + i, valueLength));
+            platformLooper.execute(() -> messenger.send(CHANNEL, message, reply -> done.countDown()));
+        }
+        await(done);
+    }
+
+    private String replay(CallTrace trace, int defaultValueLength) throws InterruptedException {
+        List<CallTrace.Call> calls = trace.getCalls();
+        List<ByteBuffer> messages = new ArrayList<>(calls.size());
+        for (CallTrace.Call call : calls) {
+            messages.add(encode(call.valueLength > 0 || !"write".equals(call.method)
+                    ? call
+                    : new CallTrace.Call(call.offsetMicros, call.method, call.key, defaultValueLength)));
+        }
+
+        workerLooper.clearDepthSamples();
+        LongSamples latencies = new LongSamples();
+        AtomicInteger errors = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(calls.size());
+        long[] lastReplyNanos = new long[1];
+
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < calls.size(); i++) {
+            long scheduledNanos = startNanos + TimeUnit.MICROSECONDS.toNanos(calls.get(i).offsetMicros);
+            long waitNanos = scheduledNanos - System.nanoTime();
+            if (waitNanos > 0) {
+                LockSupport.parkNanos(waitNanos);
+            }
+            ByteBuffer message = messages.get(i);
+            platformLooper.execute(() -> messenger.send(CHANNEL, message, reply -> {
+                long now = System.nanoTime();
+                synchronized (latencies) {
+                    latencies.add(now - scheduledNanos);
+                    lastReplyNanos[0] = Math.max(lastReplyNanos[0], now);
+                }
+                if (isError(reply)) {
+                    errors.incrementAndGet();
+                }
+                done.countDown();
+            }));
+        }
+        await(done);
+
+        long elapsedNanos;
+        synchronized (latencies) {
+            elapsedNanos = lastReplyNanos[0] - startNanos;
+        }
+        LongSamples depths = workerLooper.getDepthSamples();
+        return toJson(calls.size(), errors.get(), elapsedNanos, latencies, depths);
+    }
+
+    private void shutdown() throws InterruptedException {
+        plugin.onDetachedFromEngine(null);
+        workerLooper.quitSafely();
+        platformLooper.quitSafely();
+    }
+
+    private static ByteBuffer encode(CallTrace.Call call) {
+        Map<String, Object> arguments = new HashMap<>();
+        arguments.put("options", new HashMap<String, Object>());
+        if (call.key != null) {
+            arguments.put("key", call.key);
+        }
+        if ("write".equals(call.method)) {
+            arguments.put("value", "v".repeat(Math.max(1, call.valueLength)));
+        }
+        ByteBuffer message = StandardMethodCodec.INSTANCE.encodeMethodCall(new MethodCall(call.method, arguments));
+        message.rewind();
+        return message;
+    }
+
+    private static boolean isError(ByteBuffer reply) {
+        if (reply == null) {
+            return true;
+        }
+        try {
+            reply.rewind();
+            StandardMethodCodec.INSTANCE.decodeEnvelope(reply);
+            return false;
+        } catch (FlutterException e) {
+            return true;
+        }
+    }
+
+    private static void await(CountDownLatch latch) throws InterruptedException {
+        if (!latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            throw new IllegalStateException(latch.getCount() + " calls did not complete");
+        }
+    }
+
+    private static String toJson(int calls, int errors, long elapsedNanos, LongSamples latencies, LongSamples depths) {
+        double seconds = elapsedNanos / 1e9;
+        return String.format(Locale.ROOT, "{%n"
+                        + "  \"calls\": %d,%n"
+                        + "  \"errors\": %d,%n"
+                        + "  \"elapsedMillis\": %.3f,%n"
+                        + "  \"throughputPerSecond\": %.1f,%n"
+                        + "  \"latencyMicros\": {\"mean\": %.1f, \"p50\": %d, \"p99\": %d, \"p999\": %d, \"max\": %d},%n"
+                        + "  \"workerQueueDepth\": {\"mean\": %.1f, \"p50\": %d, \"p99\": %d, \"max\": %d}%n"
+                        + "}",
+                calls,
+                errors,
+                elapsedNanos / 1e6,
+                seconds > 0 ? calls / seconds : 0,
+                latencies.mean() / 1000,
+                latencies.percentile(50) / 1000,
+                latencies.percentile(99) / 1000,
+                latencies.percentile(99.9) / 1000,
+                latencies.max() / 1000,
+                depths.mean(),
+                depths.percentile(50),
+                depths.percentile(99),
+                depths.max());
+    }
+}
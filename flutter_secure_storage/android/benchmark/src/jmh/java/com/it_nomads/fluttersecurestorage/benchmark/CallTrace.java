@@ -0,0 +1,88 @@
+package com.it_nomads.fluttersecurestorage.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Sequence of method calls to replay against the plugin.
+ * <p>
+ * The text format has one call per line: {@code <offsetMicros> <method> [<key> [<valueLength>]]}.
+ * Empty lines and lines starting with {@code #} are ignored.
+ */
+public class CallTrace {
+
+    public static class Call {
+        public final long offsetMicros;
+        public final String method;
+        public final String key;
+        public final int valueLength;
+
+        public Call(long offsetMicros, String method, String key, int valueLength) {
+            this.offsetMicros = offsetMicros;
+            this.method = method;
+            this.key = key;
+            this.valueLength = valueLength;
+        }
+    }
+
+    private final List<Call> calls;
+
+    private CallTrace(List<Call> calls) {
+        this.calls = calls;
+    }
+
+    public List<Call> getCalls() {
+        return Collections.unmodifiableList(calls);
+    }
+
+    public static CallTrace parse(Reader reader) throws IOException {
+        List<Call> calls = new ArrayList<>();
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        int lineNumber = 0;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.split("\\s+");
+            if (parts.length < 2) {
+                throw new IOException("Invalid trace line " + lineNumber + ": " + line);
+            }
+            try {
+                calls.add(new Call(
+                        Long.parseLong(parts[0]),
+                        parts[1],
+                        parts.length > 2 ? parts[2] : null,
+                        parts.length > 3 ? Integer.parseInt(parts[3]) : 0));
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid trace line " + lineNumber + ": " + line, e);
+            }
+        }
+        calls.sort((a, b) -> Long.compare(a.offsetMicros, b.offsetMicros));
+        return new CallTrace(calls);
+    }
+
+    /**
+     * A startup burst: every call is issued at once, reads and writes shuffled together over a
+     * fixed set of keys.
+     */
+    public static CallTrace startupBurst(int reads, int writes, int keys, int valueLength, long seed) {
+        List<Call> calls = new ArrayList<>(reads + writes);
+        Random random = new Random(seed);
+        for (int i = 0; i < reads; i++) {
+            calls.add(new Call(0, "read", "key_" + random.nextInt(keys), 0));
+        }
+        for (int i = 0; i < writes; i++) {
+            calls.add(new Call(0, "write", "key_" + random.nextInt(keys), valueLength));
+        }
+        Collections.shuffle(calls, random);
+        return new CallTrace(calls);
+    }
+}
@@ -0,0 +1,49 @@
+package com.it_nomads.fluttersecurestorage.benchmark;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.flutter.plugin.common.BinaryMessenger;
+
+/**
+ * {@link BinaryMessenger} that delivers messages to the registered handlers directly, on the
+ * thread of the caller, the same way the engine delivers them on the platform thread.
+ */
+public class FakeBinaryMessenger implements BinaryMessenger {
+
+    private final Map<String, BinaryMessageHandler> handlers = new ConcurrentHashMap<>();
+
+    @Override
+    public void send(@NonNull String channel, @Nullable ByteBuffer message) {
+        send(channel, message, null);
+    }
+
+    @Override
+    public void send(@NonNull String channel, @Nullable ByteBuffer message, @Nullable BinaryReply callback) {
+        BinaryMessageHandler handler = handlers.get(channel);
+        if (handler == null) {
+            if (callback != null) {
+                callback.reply(null);
+            }
+            return;
+        }
+        handler.onMessage(message, reply -> {
+            if (callback != null) {
+                callback.reply(reply);
+            }
+        });
+    }
+
+    @Override
+    public void setMessageHandler(@NonNull String channel, @Nullable BinaryMessageHandler handler) {
+        if (handler == null) {
+            handlers.remove(channel);
+        } else {
+            handlers.put(channel, handler);
+        }
+    }
+}
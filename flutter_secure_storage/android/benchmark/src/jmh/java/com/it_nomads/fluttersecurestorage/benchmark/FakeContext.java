@@ -0,0 +1,40 @@
+package com.it_nomads.fluttersecurestorage.benchmark;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.SharedPreferences;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link Context} that hands out {@link InMemorySharedPreferences} per file name.
+ */
+public class FakeContext extends ContextWrapper {
+
+    private final Map<String, InMemorySharedPreferences> preferences = new HashMap<>();
+
+    public FakeContext() {
+        super(null);
+    }
+
+    @Override
+    public Context getApplicationContext() {
+        return this;
+    }
+
+    @Override
+    public String getPackageName() {
+        return "com.it_nomads.fluttersecurestorage.benchmark";
+    }
+
+    @Override
+    public synchronized SharedPreferences getSharedPreferences(String name, int mode) {
+        return preferences.computeIfAbsent(name, n -> new InMemorySharedPreferences());
+    }
+
+    @Override
+    public synchronized boolean deleteSharedPreferences(String name) {
+        return preferences.remove(name) != null;
+    }
+}
@@ -0,0 +1,24 @@
+package com.it_nomads.fluttersecurestorage.benchmark;
+
+import com.it_nomads.fluttersecurestorage.ciphers.KeyCipher;
+
+import java.security.Key;
+
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * {@link KeyCipher} that stores the raw key bytes. The RSA key ciphers need the Android
+ * Keystore; the storage ciphers only use them once, when they are created.
+ */
+public class FakeKeyCipher implements KeyCipher {
+
+    @Override
+    public byte[] wrap(Key key) {
+        return key.getEncoded();
+    }
+
+    @Override
+    public Key unwrap(byte[] wrappedKey, String algorithm) {
+        return new SecretKeySpec(wrappedKey, algorithm);
+    }
+}
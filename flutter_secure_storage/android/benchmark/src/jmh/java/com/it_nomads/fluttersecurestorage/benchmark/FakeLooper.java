@@ -0,0 +1,70 @@
+package com.it_nomads.fluttersecurestorage.benchmark;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single thread draining a FIFO queue, standing in for a {@link android.os.Looper} and its
+ * {@link android.os.Handler}. The queue depth seen by every posted task is recorded.
+ */
+public class FakeLooper implements Executor {
+
+    private final BlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
+    private final Thread thread;
+    private final LongSamples depthSamples = new LongSamples();
+    private volatile boolean quitting;
+
+    public FakeLooper(String name) {
+        thread = new Thread(this::loop, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void execute(@NonNull Runnable runnable) {
+        synchronized (depthSamples) {
+            depthSamples.add(queue.size());
+        }
+        queue.add(runnable);
+    }
+
+    /**
+     * Queue depth observed by each posted task, including tasks still waiting.
+     */
+    public LongSamples getDepthSamples() {
+        synchronized (depthSamples) {
+            return depthSamples.copy();
+        }
+    }
+
+    public void clearDepthSamples() {
+        synchronized (depthSamples) {
+            depthSamples.clear();
+        }
+    }
+
+    /**
+     * Stops the looper once every task posted so far has run.
+     */
+    public void quitSafely() throws InterruptedException {
+        quitting = true;
+        thread.join();
+    }
+
+    private void loop() {
+        try {
+            while (!quitting || !queue.isEmpty()) {
+                Runnable runnable = queue.poll(10, TimeUnit.MILLISECONDS);
+                if (runnable != null) {
+                    runnable.run();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
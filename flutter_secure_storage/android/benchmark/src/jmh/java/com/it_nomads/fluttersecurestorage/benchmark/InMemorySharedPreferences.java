@@ -0,0 +1,191 @@
+package com.it_nomads.fluttersecurestorage.benchmark;
+
+import android.content.SharedPreferences;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * {@link SharedPreferences} backed by a {@link HashMap}, without the XML file behind the
+ * framework implementation. Like the framework, {@link #getAll()} returns a copy.
+ */
+public class InMemorySharedPreferences implements SharedPreferences {
+
+    private final Map<String, Object> values = new HashMap<>();
+    private final List<OnSharedPreferenceChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private int commits;
+
+    /**
+     * The number of edits committed or applied so far, each of which would be one disk write.
+     */
+    public synchronized int getCommitCount() {
+        return commits;
+    }
+
+    @NonNull
+    @Override
+    public synchronized Map<String, ?> getAll() {
+        return new HashMap<>(values);
+    }
+
+    @Nullable
+    @Override
+    public synchronized String getString(String key, @Nullable String defValue) {
+        Object value = values.get(key);
+        return value instanceof String ? (String) value : defValue;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Nullable
+    @Override
+    public synchronized Set<String> getStringSet(String key, @Nullable Set<String> defValues) {
+        Object value = values.get(key);
+        return value instanceof Set ? new HashSet<>((Set<String>) value) : defValues;
+    }
+
+    @Override
+    public synchronized int getInt(String key, int defValue) {
+        Object value = values.get(key);
+        return value instanceof Integer ? (Integer) value : defValue;
+    }
+
+    @Override
+    public synchronized long getLong(String key, long defValue) {
+        Object value = values.get(key);
+        return value instanceof Long ? (Long) value : defValue;
+    }
+
+    @Override
+    public synchronized float getFloat(String key, float defValue) {
+        Object value = values.get(key);
+        return value instanceof Float ? (Float) value : defValue;
+    }
+
+    @Override
+    public synchronized boolean getBoolean(String key, boolean defValue) {
+        Object value = values.get(key);
+        return value instanceof Boolean ? (Boolean) value : defValue;
+    }
+
+    @Override
+    public synchronized boolean contains(String key) {
+        return values.containsKey(key);
+    }
+
+    @NonNull
+    @Override
+    public SharedPreferences.Editor edit() {
+        return new Editor();
+    }
+
+    @Override
+    public void registerOnSharedPreferenceChangeListener(@NonNull OnSharedPreferenceChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void unregisterOnSharedPreferenceChangeListener(@NonNull OnSharedPreferenceChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    private class Editor implements SharedPreferences.Editor {
+        // A null value marks a removal.
+        private final Map<String, Object> pending = new HashMap<>();
+        private boolean clear;
+
+        @NonNull
+        @Override
+        public SharedPreferences.Editor putString(String key, @Nullable String value) {
+            pending.put(key, value);
+            return this;
+        }
+
+        @NonNull
+        @Override
+        public SharedPreferences.Editor putStringSet(String key, @Nullable Set<String> values) {
+            pending.put(key, values == null ? null : new HashSet<>(values));
+            return this;
+        }
+
+        @NonNull
+        @Override
+        public SharedPreferences.Editor putInt(String key, int value) {
+            pending.put(key, value);
+            return this;
+        }
+
+        @NonNull
+        @Override
+        public SharedPreferences.Editor putLong(String key, long value) {
+            pending.put(key, value);
+            return this;
+        }
+
+        @NonNull
+        @Override
+        public SharedPreferences.Editor putFloat(String key, float value) {
+            pending.put(key, value);
+            return this;
+        }
+
+        @NonNull
+        @Override
+        public SharedPreferences.Editor putBoolean(String key, boolean value) {
+            pending.put(key, value);
+            return this;
+        }
+
+        @NonNull
+        @Override
+        public SharedPreferences.Editor remove(String key) {
+            pending.put(key, null);
+            return this;
+        }
+
+        @NonNull
+        @Override
+        public SharedPreferences.Editor clear() {
+            clear = true;
+            return this;
+        }
+
+        @Override
+        public boolean commit() {
+            List<String> changed = new ArrayList<>(pending.keySet());
+            synchronized (InMemorySharedPreferences.this) {
+                if (clear) {
+                    values.clear();
+                    clear = false;
+                }
+                for (Map.Entry<String, Object> entry : pending.entrySet()) {
+                    if (entry.getValue() == null) {
+                        values.remove(entry.getKey());
+                    } else {
+                        values.put(entry.getKey(), entry.getValue());
+                    }
+                }
+                pending.clear();
+                commits++;
+            }
+            for (OnSharedPreferenceChangeListener listener : listeners) {
+                for (String key : changed) {
+                    listener.onSharedPreferenceChanged(InMemorySharedPreferences.this, key);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void apply() {
+            commit();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.it_nomads.fluttersecurestorage.benchmark;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of long samples with percentile lookups.
+ */
+public class LongSamples {
+
+    private long[] values = new long[1024];
+    private int size;
+    private boolean sorted;
+
+    public void add(long value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+        sorted = false;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Nearest-rank percentile.
+     *
+     * @param percentile between 0 and 100.
+     */
+    public long percentile(double percentile) {
+        if (size == 0) {
+            return 0;
+        }
+        sort();
+        int rank = (int) Math.ceil(percentile / 100.0 * size);
+        return values[Math.max(0, Math.min(size - 1, rank - 1))];
+    }
+
+    public long max() {
+        if (size == 0) {
+            return 0;
+        }
+        sort();
+        return values[size - 1];
+    }
+
+    public double mean() {
+        if (size == 0) {
+            return 0;
+        }
+        long sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += values[i];
+        }
+        return (double) sum / size;
+    }
+
+    LongSamples copy() {
+        LongSamples copy = new LongSamples();
+        copy.values = Arrays.copyOf(values, Math.max(size, 1));
+        copy.size = size;
+        return copy;
+    }
+
+    private void sort() {
+        if (!sorted) {
+            Arrays.sort(values, 0, size);
+            sorted = true;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.it_nomads.fluttersecurestorage.ciphers;
+
+import com.it_nomads.fluttersecurestorage.benchmark.FakeContext;
+import com.it_nomads.fluttersecurestorage.benchmark.FakeKeyCipher;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.security.SecureRandom;
+import java.security.Security;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One storage cipher shared by several threads, as during a parallel migration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(4)
+public class SharedStorageCipherBenchmark {
+
+    @Param({"AES_CBC_PKCS7Padding", "AES_GCM_NoPadding"})
+    public String algorithm;
+
+    private StorageCipher cipher;
+    private byte[] plainText;
+
+    @Setup
+    public void setUp() throws Exception {
+        Security.addProvider(new BouncyCastleProvider());
+        cipher = StorageCipherAlgorithm.valueOf(algorithm).storageCipher
+                .apply(new FakeContext(), new FakeKeyCipher());
+        plainText = new byte[256];
+        new SecureRandom().nextBytes(plainText);
+    }
+
+    @Benchmark
+    public byte[] roundTrip() throws Exception {
+        byte[] decrypted = cipher.decrypt(cipher.encrypt(plainText));
+        if (!Arrays.equals(decrypted, plainText)) {
+            throw new IllegalStateException("Round trip through a shared cipher failed");
+        }
+        return decrypted;
+    }
+}
@@ -0,0 +1,78 @@
+package com.it_nomads.fluttersecurestorage.ciphers;
+
+import com.it_nomads.fluttersecurestorage.benchmark.FakeContext;
+import com.it_nomads.fluttersecurestorage.benchmark.FakeKeyCipher;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The legacy storage ciphers, which are still used to migrate old entries.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StorageCipherBenchmark {
+
+    @Param({"AES_CBC_PKCS7Padding", "AES_GCM_NoPadding"})
+    public String algorithm;
+
+    @Param({"32", "1024", "16384"})
+    public int payloadLength;
+
+    private StorageCipher cipher;
+    private byte[] plainText;
+    private byte[] cipherText;
+    private ByteBuffer plainTextBuffer;
+    private ByteBuffer cipherTextBuffer;
+    private ByteBuffer outputBuffer;
+
+    @Setup
+    public void setUp() throws Exception {
+        Security.addProvider(new BouncyCastleProvider());
+        cipher = StorageCipherAlgorithm.valueOf(algorithm).storageCipher
+                .apply(new FakeContext(), new FakeKeyCipher());
+        plainText = new byte[payloadLength];
+        new SecureRandom().nextBytes(plainText);
+        cipherText = cipher.encrypt(plainText);
+        plainTextBuffer = ByteBuffer.wrap(plainText);
+        cipherTextBuffer = ByteBuffer.wrap(cipherText);
+        outputBuffer = ByteBuffer.allocate(cipher.getEncryptOutputSize(payloadLength));
+    }
+
+    @Benchmark
+    public byte[] encrypt() throws Exception {
+        return cipher.encrypt(plainText);
+    }
+
+    @Benchmark
+    public byte[] decrypt() throws Exception {
+        return cipher.decrypt(cipherText);
+    }
+
+    @Benchmark
+    public int encryptBuffer() throws Exception {
+        plainTextBuffer.rewind();
+        outputBuffer.clear();
+        return cipher.encrypt(plainTextBuffer, outputBuffer);
+    }
+
+    @Benchmark
+    public int decryptBuffer() throws Exception {
+        cipherTextBuffer.rewind();
+        outputBuffer.clear();
+        return cipher.decrypt(cipherTextBuffer, outputBuffer);
+    }
+}
@@ -0,0 +1,68 @@
+package com.it_nomads.fluttersecurestorage.crypto;
+
+import android.content.SharedPreferences;
+
+import androidx.annotation.NonNull;
+
+import com.google.crypto.tink.Aead;
+import com.google.crypto.tink.DeterministicAead;
+import com.google.crypto.tink.KeysetHandle;
+import com.google.crypto.tink.Mac;
+import com.google.crypto.tink.RegistryConfiguration;
+import com.google.crypto.tink.aead.AeadConfig;
+import com.google.crypto.tink.daead.DeterministicAeadConfig;
+import com.google.crypto.tink.mac.MacConfig;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+
+/**
+ * Creates {@link EncryptedSharedPreferences} on top of any {@link SharedPreferences}, with
+ * freshly generated keysets held in memory instead of keysets wrapped by the Android Keystore.
+ * The key prefix is set to the one the plugin uses by default.
+ */
+public final class BenchmarkEncryptedSharedPreferences {
+
+    public static final String FILE_NAME = "FlutterSecureStorage";
+    public static final String MASTER_KEY_ALIAS = MasterKey.DEFAULT_MASTER_KEY_ALIAS;
+    public static final String KEY_PREFIX =
+            "VGhpcyBpcyB0aGUgcHJlZml4IGZvciBhIHNlY3VyZSBzdG9yYWdlCg_";
+
+    private BenchmarkEncryptedSharedPreferences() {
+    }
+
+    @NonNull
+    public static EncryptedSharedPreferences create(@NonNull SharedPreferences backing)
+            throws GeneralSecurityException, IOException {
+        return create(backing, EncryptedSharedPreferences.PrefKeyEncryptionScheme.AES256_SIV);
+    }
+
+    @NonNull
+    public static EncryptedSharedPreferences create(
+            @NonNull SharedPreferences backing,
+            @NonNull EncryptedSharedPreferences.PrefKeyEncryptionScheme keyScheme)
+            throws GeneralSecurityException, IOException {
+        DeterministicAeadConfig.register();
+        AeadConfig.register();
+        MacConfig.register();
+        Aead aead = KeysetHandle
+                .generateNew(EncryptedSharedPreferences.PrefValueEncryptionScheme.AES256_GCM.getKeyTemplate())
+                .getPrimitive(RegistryConfiguration.get(), Aead.class);
+        KeysetHandle keyKeysetHandle = KeysetHandle.generateNew(keyScheme.getKeyTemplate());
+        if (keyScheme == EncryptedSharedPreferences.PrefKeyEncryptionScheme.AES256_SIV) {
+            DeterministicAead daead = keyKeysetHandle
+                    .getPrimitive(RegistryConfiguration.get(), DeterministicAead.class);
+            return withKeyPrefix(
+                    new EncryptedSharedPreferences(FILE_NAME, MASTER_KEY_ALIAS, backing, aead, daead));
+        }
+        Mac mac = keyKeysetHandle.getPrimitive(RegistryConfiguration.get(), Mac.class);
+        return withKeyPrefix(
+                new EncryptedSharedPreferences(FILE_NAME, MASTER_KEY_ALIAS, backing, aead, mac));
+    }
+
+    private static EncryptedSharedPreferences withKeyPrefix(EncryptedSharedPreferences preferences)
+            throws GeneralSecurityException, IOException {
+        preferences.setKeyPrefix(KEY_PREFIX);
+        return preferences;
+    }
+}
@@ -0,0 +1,57 @@
+package com.it_nomads.fluttersecurestorage.crypto;
+
+import android.content.SharedPreferences;
+
+import com.it_nomads.fluttersecurestorage.benchmark.InMemorySharedPreferences;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A batch of puts committed at once, encrypted on the calling thread or in bulk mode.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BulkEditorBenchmark {
+
+    @Param({"16", "256", "4096"})
+    public int entries;
+
+    @Param({"false", "true"})
+    public boolean bulk;
+
+    @Param({"64", "1024"})
+    public int valueLength;
+
+    private EncryptedSharedPreferences preferences;
+    private String[] keys;
+    private String value;
+
+    @Setup
+    public void setUp() throws Exception {
+        preferences = BenchmarkEncryptedSharedPreferences.create(new InMemorySharedPreferences());
+        keys = new String[entries];
+        for (int i = 0; i < entries; i++) {
+            keys[i] = BenchmarkEncryptedSharedPreferences.KEY_PREFIX + "key" + i;
+        }
+        value = "x".repeat(valueLength);
+    }
+
+    @Benchmark
+    public boolean commit() {
+        SharedPreferences.Editor editor = bulk ? preferences.editInBulk() : preferences.edit();
+        for (String key : keys) {
+            editor.putString(key, value);
+        }
+        return editor.commit();
+    }
+}
@@ -0,0 +1,93 @@
+package com.it_nomads.fluttersecurestorage.crypto;
+
+import android.content.SharedPreferences;
+
+import com.it_nomads.fluttersecurestorage.benchmark.InMemorySharedPreferences;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Put and get for every value type, and the key encryption on its own.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EncryptedSharedPreferencesBenchmark {
+
+    private static final String KEY = "VGhpcyBpcyB0aGUgcHJlZml4IGZvciBhIHNlY3VyZSBzdG9yYWdlCg_access_token";
+
+    @Param({"STRING", "STRING_SET", "INT", "LONG", "FLOAT", "BOOLEAN"})
+    public String type;
+
+    @Param({"32", "1024"})
+    public int valueLength;
+
+    private EncryptedSharedPreferences preferences;
+    private String stringValue;
+    private Set<String> stringSetValue;
+    private String encryptedKey;
+
+    @Setup
+    public void setUp() throws Exception {
+        preferences = BenchmarkEncryptedSharedPreferences.create(new InMemorySharedPreferences());
+        stringValue = "x".repeat(valueLength);
+        stringSetValue = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            stringSetValue.add(i + stringValue.substring(1));
+        }
+        put(preferences.edit()).commit();
+        encryptedKey = preferences.encryptKey(KEY);
+    }
+
+    @Benchmark
+    public boolean put() {
+        return put(preferences.edit()).commit();
+    }
+
+    @Benchmark
+    public Object get() {
+        return switch (type) {
+            case "STRING" -> preferences.getString(KEY, null);
+            case "STRING_SET" -> preferences.getStringSet(KEY, null);
+            case "INT" -> preferences.getInt(KEY, 0);
+            case "LONG" -> preferences.getLong(KEY, 0L);
+            case "FLOAT" -> preferences.getFloat(KEY, 0f);
+            case "BOOLEAN" -> preferences.getBoolean(KEY, false);
+            default -> throw new IllegalArgumentException(type);
+        };
+    }
+
+    @Benchmark
+    public void encryptKey(Blackhole blackhole) {
+        blackhole.consume(preferences.encryptKey(KEY));
+    }
+
+    @Benchmark
+    public void decryptKey(Blackhole blackhole) {
+        blackhole.consume(preferences.decryptKey(encryptedKey));
+    }
+
+    private SharedPreferences.Editor put(SharedPreferences.Editor editor) {
+        return switch (type) {
+            case "STRING" -> editor.putString(KEY, stringValue);
+            case "STRING_SET" -> editor.putStringSet(KEY, stringSetValue);
+            case "INT" -> editor.putInt(KEY, 42);
+            case "LONG" -> editor.putLong(KEY, 42L);
+            case "FLOAT" -> editor.putFloat(KEY, 4.2f);
+            case "BOOLEAN" -> editor.putBoolean(KEY, true);
+            default -> throw new IllegalArgumentException(type);
+        };
+    }
+}
@@ -0,0 +1,79 @@
+package com.it_nomads.fluttersecurestorage.crypto;
+
+import android.content.SharedPreferences;
+
+import com.it_nomads.fluttersecurestorage.benchmark.InMemorySharedPreferences;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole-store operations, which decrypt or touch every entry. From 32 entries on they run in
+ * parallel, so the results depend on the number of cores.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class EncryptedSharedPreferencesGetAllBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int entries;
+
+    private EncryptedSharedPreferences preferences;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        preferences = BenchmarkEncryptedSharedPreferences.create(new InMemorySharedPreferences());
+        fill();
+    }
+
+    @Setup(Level.Invocation)
+    public void refill() {
+        // Editor.clear() empties the store, so the entries are written back before each call.
+        if (preferences.mSharedPreferences.getAll().size() < entries) {
+            fill();
+        }
+    }
+
+    @Benchmark
+    public Map<String, ?> getAll() {
+        return preferences.getAll();
+    }
+
+    @Benchmark
+    public Set<String> getKeys() {
+        return preferences.getKeys();
+    }
+
+    /**
+     * The first page of 50 entries, to compare with {@link #getAll()} at the same store size.
+     */
+    @Benchmark
+    public EncryptedSharedPreferences.Page getFirstPage() {
+        return preferences.getPage(null, 50);
+    }
+
+    @Benchmark
+    public boolean clear() {
+        return preferences.edit().clear().commit();
+    }
+
+    private void fill() {
+        SharedPreferences.Editor editor = preferences.edit();
+        for (int i = 0; i < entries; i++) {
+            editor.putString("key_" + i, "value_" + i);
+        }
+        editor.commit();
+    }
+}
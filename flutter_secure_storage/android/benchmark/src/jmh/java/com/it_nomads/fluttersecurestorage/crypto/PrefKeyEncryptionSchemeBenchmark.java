@@ -0,0 +1,70 @@
+package com.it_nomads.fluttersecurestorage.crypto;
+
+import android.content.SharedPreferences;
+
+import com.it_nomads.fluttersecurestorage.benchmark.InMemorySharedPreferences;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of a lookup with each key scheme: the key encryption on its own, a miss, a hit, and
+ * listing every entry.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PrefKeyEncryptionSchemeBenchmark {
+
+    private static final String KEY_PREFIX = "VGhpcyBpcyB0aGUgcHJlZml4IGZvciBhIHNlY3VyZSBzdG9yYWdlCg_";
+
+    @Param({"AES256_SIV", "HMAC_SHA256"})
+    public String scheme;
+
+    @Param({"100"})
+    public int entries;
+
+    private EncryptedSharedPreferences preferences;
+    private String key;
+
+    @Setup
+    public void setUp() throws Exception {
+        preferences = BenchmarkEncryptedSharedPreferences.create(new InMemorySharedPreferences(),
+                EncryptedSharedPreferences.PrefKeyEncryptionScheme.valueOf(scheme));
+        SharedPreferences.Editor editor = preferences.edit();
+        for (int i = 0; i < entries; i++) {
+            editor.putString(KEY_PREFIX + "key" + i, "value" + i);
+        }
+        editor.commit();
+        key = KEY_PREFIX + "key" + (entries / 2);
+    }
+
+    @Benchmark
+    public String encryptKey() {
+        return preferences.encryptKey(key);
+    }
+
+    @Benchmark
+    public boolean containsMissing() {
+        return preferences.contains(KEY_PREFIX + "missing");
+    }
+
+    @Benchmark
+    public String getString() {
+        return preferences.getString(key, null);
+    }
+
+    @Benchmark
+    public Map<String, ?> getAll() {
+        return preferences.getAll();
+    }
+}
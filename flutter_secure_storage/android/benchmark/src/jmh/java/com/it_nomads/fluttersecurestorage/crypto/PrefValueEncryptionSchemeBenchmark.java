@@ -0,0 +1,60 @@
+package com.it_nomads.fluttersecurestorage.crypto;
+
+import com.google.crypto.tink.Aead;
+import com.google.crypto.tink.KeysetHandle;
+import com.google.crypto.tink.RegistryConfiguration;
+import com.google.crypto.tink.aead.AeadConfig;
+import com.google.crypto.tink.subtle.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encryption and decryption of a value with each value scheme, the measurement that
+ * {@link PrefValueSchemeSelector} makes on the device.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PrefValueEncryptionSchemeBenchmark {
+
+    private static final byte[] ASSOCIATED_DATA = new byte[32];
+
+    @Param({"AES256_GCM", "AES128_GCM", "AES256_GCM_SIV", "CHACHA20_POLY1305", "XCHACHA20_POLY1305"})
+    public String scheme;
+
+    @Param({"32", "1024"})
+    public int valueLength;
+
+    private Aead aead;
+    private byte[] value;
+    private byte[] cipherText;
+
+    @Setup
+    public void setUp() throws Exception {
+        AeadConfig.register();
+        aead = KeysetHandle
+                .generateNew(EncryptedSharedPreferences.PrefValueEncryptionScheme.valueOf(scheme).getKeyTemplate())
+                .getPrimitive(RegistryConfiguration.get(), Aead.class);
+        value = Random.randBytes(valueLength);
+        cipherText = aead.encrypt(value, ASSOCIATED_DATA);
+    }
+
+    @Benchmark
+    public byte[] encrypt() throws Exception {
+        return aead.encrypt(value, ASSOCIATED_DATA);
+    }
+
+    @Benchmark
+    public byte[] decrypt() throws Exception {
+        return aead.decrypt(cipherText, ASSOCIATED_DATA);
+    }
+}
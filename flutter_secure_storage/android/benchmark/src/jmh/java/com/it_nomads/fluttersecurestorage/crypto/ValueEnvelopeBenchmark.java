@@ -0,0 +1,74 @@
+package com.it_nomads.fluttersecurestorage.crypto;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of the plain text values, without the encryption around them.
+ *
+ * <p>Run with {@code -PjmhProfilers=gc}: encoding should allocate little more than the returned
+ * plain text, and decoding little more than the decoded value.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ValueEnvelopeBenchmark {
+
+    private static final String KEY = BenchmarkEncryptedSharedPreferences.KEY_PREFIX + "access_token";
+
+    @Param({"STRING", "STRING_SET", "LONG"})
+    public String type;
+
+    @Param({"32", "1024"})
+    public int valueLength;
+
+    @Param({"false", "true"})
+    public boolean embeddedKey;
+
+    @Param({"false", "true"})
+    public boolean compress;
+
+    private Object value;
+    private byte[] plainText;
+
+    @Setup
+    public void setUp() {
+        String stringValue = "x".repeat(valueLength);
+        value = switch (type) {
+            case "STRING" -> stringValue;
+            case "STRING_SET" -> {
+                Set<String> values = new HashSet<>();
+                for (int i = 0; i < 4; i++) {
+                    values.add(i + stringValue.substring(1));
+                }
+                yield values;
+            }
+            case "LONG" -> 42L;
+            default -> throw new IllegalArgumentException(type);
+        };
+        plainText = encode();
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return embeddedKey
+                ? ValueEnvelope.encode(KEY, BenchmarkEncryptedSharedPreferences.KEY_PREFIX.length(),
+                        value, ValueEnvelope.NO_EXPIRY, compress)
+                : ValueEnvelope.encode(null, 0, value, ValueEnvelope.NO_EXPIRY, compress);
+    }
+
+    @Benchmark
+    public Object decode() {
+        return ValueEnvelope.decode(plainText, embeddedKey).getValue();
+    }
+}
@@ -0,0 +1,80 @@
+package com.it_nomads.fluttersecurestorage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.it_nomads.fluttersecurestorage.benchmark.InMemorySharedPreferences;
+import com.it_nomads.fluttersecurestorage.crypto.BenchmarkEncryptedSharedPreferences;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Catching up with {@link FlutterSecureStorage#readAllSince} from a previous version.
+ */
+public class ReadAllSinceTest {
+
+    // More than the change log keeps.
+    private static final int MANY_KEYS = 300;
+
+    private FlutterSecureStorage storage;
+
+    @Before
+    public void setUp() throws Exception {
+        storage = new FlutterSecureStorage(BenchmarkEncryptedSharedPreferences.create(new InMemorySharedPreferences()));
+        storage.write("a", "1");
+        storage.write("b", "2");
+    }
+
+    @Test
+    public void firstReadReturnsEverything() {
+        Map<String, Object> result = storage.readAllSince(0);
+
+        assertEquals(true, result.get("full"));
+        assertEquals(storage.readAll(), result.get("entries"));
+    }
+
+    @Test
+    public void laterReadsReturnOnlyTheChanges() {
+        long version = (Long) storage.readAllSince(0).get("version");
+        storage.write("a", "3");
+        storage.delete("b");
+
+        Map<String, Object> result = storage.readAllSince(version);
+
+        assertEquals(false, result.get("full"));
+        assertEquals(version + 2, result.get("version"));
+        assertEquals(Collections.singletonMap("a", "3"), result.get("entries"));
+        assertEquals(Collections.singletonList("b"), result.get("deleted"));
+
+        Map<String, Object> unchanged = storage.readAllSince(version + 2);
+        assertEquals(false, unchanged.get("full"));
+        assertTrue(((Map<?, ?>) unchanged.get("entries")).isEmpty());
+    }
+
+    @Test
+    public void versionFromBeforeTheLogFallsBackToEverything() {
+        long version = (Long) storage.readAllSince(0).get("version");
+        for (int i = 0; i < MANY_KEYS; i++) {
+            storage.write("key_" + i, "v");
+        }
+
+        Map<String, Object> result = storage.readAllSince(version);
+
+        assertEquals(true, result.get("full"));
+        assertEquals(MANY_KEYS + 2, ((Map<?, ?>) result.get("entries")).size());
+        assertTrue(((List<?>) result.get("deleted")).isEmpty());
+        long current = (Long) result.get("version");
+        assertEquals(version + MANY_KEYS, current);
+
+        storage.write("a", "4");
+        Map<String, Object> next = storage.readAllSince(current);
+        assertFalse((Boolean) next.get("full"));
+        assertEquals(Collections.singletonMap("a", "4"), next.get("entries"));
+    }
+}
@@ -0,0 +1,116 @@
+package com.it_nomads.fluttersecurestorage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.it_nomads.fluttersecurestorage.benchmark.FakeBinaryMessenger;
+import com.it_nomads.fluttersecurestorage.benchmark.FakeContext;
+import com.it_nomads.fluttersecurestorage.benchmark.InMemorySharedPreferences;
+import com.it_nomads.fluttersecurestorage.crypto.BenchmarkEncryptedSharedPreferences;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.flutter.embedding.engine.plugins.FlutterPlugin;
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.MethodChannel;
+
+/**
+ * The transaction call, run through the plugin on the calling thread.
+ */
+public class TransactionTest {
+
+    private InMemorySharedPreferences backing;
+    private FlutterSecureStorage storage;
+    private FlutterSecureStoragePlugin plugin;
+
+    @Before
+    public void setUp() throws Exception {
+        backing = new InMemorySharedPreferences();
+        storage = new FlutterSecureStorage(BenchmarkEncryptedSharedPreferences.create(backing));
+        plugin = new FlutterSecureStoragePlugin(Runnable::run, Runnable::run, (context, options) -> storage);
+        plugin.onAttachedToEngine(new FlutterPlugin.FlutterPluginBinding(
+                new FakeContext(), null, new FakeBinaryMessenger(), null, null, null, null));
+        storage.write("kept", "1");
+        storage.write("deleted", "2");
+    }
+
+    @Test
+    public void putsAndDeletesAreCommittedTogether() {
+        int commits = backing.getCommitCount();
+
+        CapturingResult result = call(operation("added", "3"), operation("deleted", null),
+                operation("kept", "4"));
+
+        assertEquals("success", result.outcome);
+        assertEquals(commits + 1, backing.getCommitCount());
+        assertEquals("4", storage.read("kept"));
+        assertEquals("3", storage.read("added"));
+        assertNull(storage.read("deleted"));
+    }
+
+    @Test
+    public void lastOperationOnAKeyWins() {
+        call(operation("kept", null), operation("kept", "5"), operation("deleted", "6"),
+                operation("deleted", null));
+
+        assertEquals("5", storage.read("kept"));
+        assertNull(storage.read("deleted"));
+    }
+
+    @Test
+    public void operationWithoutKeyChangesNothing() {
+        CapturingResult result = call(operation("kept", "7"), operation(null, "8"));
+
+        assertEquals("InvalidArgument", result.outcome);
+        assertEquals("1", storage.read("kept"));
+    }
+
+    private static Map<String, Object> operation(@Nullable String key, @Nullable String value) {
+        Map<String, Object> operation = new HashMap<>();
+        operation.put("key", key);
+        operation.put("value", value);
+        return operation;
+    }
+
+    @SafeVarargs
+    private final CapturingResult call(Map<String, Object>... operations) {
+        List<Object> list = new ArrayList<>();
+        for (Map<String, Object> operation : operations) {
+            list.add(operation);
+        }
+        Map<String, Object> arguments = new HashMap<>();
+        arguments.put("options", new HashMap<String, Object>());
+        arguments.put("operations", list);
+        CapturingResult result = new CapturingResult();
+        plugin.onMethodCall(new MethodCall("transaction", arguments), result);
+        return result;
+    }
+
+    private static class CapturingResult implements MethodChannel.Result {
+        String outcome;
+
+        @Override
+        public void success(@Nullable Object result) {
+            outcome = "success";
+        }
+
+        @Override
+        public void error(@NonNull String errorCode, @Nullable String errorMessage, @Nullable Object errorDetails) {
+            outcome = errorCode;
+        }
+
+        @Override
+        public void notImplemented() {
+            outcome = "notImplemented";
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.it_nomads.fluttersecurestorage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.it_nomads.fluttersecurestorage.benchmark.FakeContext;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The memory-only storage selected with the volatile storage type.
+ */
+public class VolatileStorageTest {
+
+    private FakeContext context;
+    private Map<String, Object> options;
+
+    @Before
+    public void setUp() {
+        context = new FakeContext();
+        options = new HashMap<>();
+        options.put("storageType", "volatile");
+        // The volatile storage lives as long as the process, so every test takes its own.
+        options.put("sharedPreferencesName", "volatile_" + System.nanoTime());
+    }
+
+    @Test
+    public void valuesRoundTrip() throws Exception {
+        FlutterSecureStorage storage = new FlutterSecureStorage(context, options);
+
+        storage.write("a", "1");
+        storage.write("b", "2");
+        storage.write("a", "3");
+        storage.delete("b");
+
+        assertEquals("3", storage.read("a"));
+        assertNull(storage.read("b"));
+        assertTrue(storage.containsKey("a"));
+        assertFalse(storage.containsKey("b"));
+        assertEquals(Collections.singletonMap("a", "3"), storage.readAll());
+    }
+
+    @Test
+    public void valuesNeverReachSharedPreferences() throws Exception {
+        FlutterSecureStorage storage = new FlutterSecureStorage(context, options);
+
+        storage.write("a", "1");
+
+        String name = (String) options.get("sharedPreferencesName");
+        assertTrue(context.getSharedPreferences(name, 0).getAll().isEmpty());
+    }
+
+    @Test
+    public void valuesAreSharedWithinTheProcess() throws Exception {
+        new FlutterSecureStorage(context, options).write("a", "1");
+
+        FlutterSecureStorage reopened = new FlutterSecureStorage(new FakeContext(), options);
+        assertEquals("1", reopened.read("a"));
+
+        options.put("sharedPreferencesName", options.get("sharedPreferencesName") + "_other");
+        assertNull(new FlutterSecureStorage(context, options).read("a"));
+    }
+}
@@ -0,0 +1,142 @@
+package com.it_nomads.fluttersecurestorage.crypto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.it_nomads.fluttersecurestorage.benchmark.InMemorySharedPreferences;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The versions and keys the change log of {@link EncryptedSharedPreferences} answers with.
+ */
+public class ChangeLogTest {
+
+    private static final String CHANGE_LOG_ALIAS = "__flutter_secure_storage_change_log__";
+    private static final String KEY_A = BenchmarkEncryptedSharedPreferences.KEY_PREFIX + "a";
+
+    @Test
+    public void everyCommitRaisesTheVersionByOne() {
+        ChangeLog log = ChangeLog.create();
+        long start = log.getVersion();
+
+        log.record(Arrays.asList("a", "b"));
+        log.record(Collections.singletonList("a"));
+
+        assertEquals(start + 2, log.getVersion());
+        assertEquals(Arrays.asList("b", "a"), log.keysChangedSince(start));
+        assertEquals(Collections.singletonList("a"), log.keysChangedSince(start + 1));
+        assertEquals(Collections.emptyList(), log.keysChangedSince(start + 2));
+        // A version the log has not reached yet is from another log.
+        assertNull(log.keysChangedSince(start + 3));
+    }
+
+    @Test
+    public void droppedKeysEndTheLogAtTheirVersion() {
+        ChangeLog log = ChangeLog.create();
+        long start = log.getVersion();
+
+        for (int i = 0; i <= ChangeLog.MAX_KEYS; i++) {
+            log.record(Collections.singletonList("key_" + i));
+        }
+
+        // key_0, changed at start + 1, was dropped.
+        assertNull(log.keysChangedSince(start));
+        List<String> keys = log.keysChangedSince(start + 1);
+        assertEquals(ChangeLog.MAX_KEYS, keys.size());
+        assertEquals("key_1", keys.get(0));
+        assertEquals("key_" + ChangeLog.MAX_KEYS, keys.get(keys.size() - 1));
+    }
+
+    @Test
+    public void encodedLogKeepsItsVersions() throws Exception {
+        ChangeLog log = ChangeLog.create();
+        long start = log.getVersion();
+        log.record(Arrays.asList(BenchmarkEncryptedSharedPreferences.KEY_PREFIX + "a", "other"));
+
+        ChangeLog decoded = ChangeLog.decode(log.encode(BenchmarkEncryptedSharedPreferences.KEY_PREFIX));
+
+        assertEquals(start + 1, decoded.getVersion());
+        assertEquals(Arrays.asList(BenchmarkEncryptedSharedPreferences.KEY_PREFIX + "a", "other"),
+                decoded.keysChangedSince(start));
+    }
+
+    @Test
+    public void logStartedOverAnswersOldVersionsWithNull() throws Exception {
+        InMemorySharedPreferences backing = new InMemorySharedPreferences();
+        EncryptedSharedPreferences preferences = BenchmarkEncryptedSharedPreferences.create(backing);
+        for (int i = 0; i < 3; i++) {
+            preferences.edit().putString(BenchmarkEncryptedSharedPreferences.KEY_PREFIX + i, "v").commit();
+        }
+        long oldVersion = preferences.getVersion();
+        // Versions start at the time in microseconds, so they keep rising from one millisecond on.
+        Thread.sleep(2);
+
+        // New value keys, as after a reset, can not read the stored log.
+        EncryptedSharedPreferences reset = BenchmarkEncryptedSharedPreferences.create(backing);
+
+        assertTrue(reset.getVersion() > oldVersion);
+        assertNull(reset.getKeysChangedSince(oldVersion));
+        long newVersion = reset.getVersion();
+        reset.edit().putString(BenchmarkEncryptedSharedPreferences.KEY_PREFIX + "a", "v").commit();
+        assertEquals(newVersion + 1, reset.getVersion());
+        assertEquals(Collections.singletonList(BenchmarkEncryptedSharedPreferences.KEY_PREFIX + "a"),
+                reset.getKeysChangedSince(newVersion));
+    }
+
+    @Test
+    public void writesAreNotLoggedBeforeAReaderAsks() throws Exception {
+        InMemorySharedPreferences backing = new InMemorySharedPreferences();
+        EncryptedSharedPreferences preferences = BenchmarkEncryptedSharedPreferences.create(backing);
+
+        preferences.edit().putString(KEY_A, "1").commit();
+        assertFalse(backing.contains(CHANGE_LOG_ALIAS));
+
+        long version = preferences.getVersion();
+        assertTrue(backing.contains(CHANGE_LOG_ALIAS));
+        preferences.edit().putString(KEY_A, "2").commit();
+        assertEquals(Collections.singletonList(KEY_A), preferences.getKeysChangedSince(version));
+    }
+
+    @Test
+    public void removedExpiredEntriesAreLogged() throws Exception {
+        EncryptedSharedPreferences preferences =
+                BenchmarkEncryptedSharedPreferences.create(new InMemorySharedPreferences());
+        preferences.editWithExpiry(System.currentTimeMillis() + 1).putString(KEY_A, "1").commit();
+        long version = preferences.getVersion();
+        Thread.sleep(2);
+
+        assertNull(preferences.getString(KEY_A, null));
+
+        assertEquals(Collections.singletonList(KEY_A), preferences.getKeysChangedSince(version));
+    }
+
+    @Test
+    public void quarantinedEntriesMakeEarlierReadersReadEverything() throws Exception {
+        InMemorySharedPreferences backing = new InMemorySharedPreferences();
+        EncryptedSharedPreferences preferences = BenchmarkEncryptedSharedPreferences.create(backing);
+        preferences.setQuarantineListener((encryptedKey, cause) -> { });
+        long version = preferences.getVersion();
+        Set<String> storedKeys = new HashSet<>(backing.getAll().keySet());
+        preferences.edit().putString(KEY_A, "1").commit();
+        for (String storedKey : backing.getAll().keySet()) {
+            if (!storedKeys.contains(storedKey) && !preferences.isReservedKey(storedKey)) {
+                backing.edit().putString(storedKey, "AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA").commit();
+            }
+        }
+
+        assertNull(preferences.getString(KEY_A, null));
+
+        assertNull(preferences.getKeysChangedSince(version));
+        assertEquals(Collections.emptyList(),
+                preferences.getKeysChangedSince(preferences.getVersion()));
+    }
+}
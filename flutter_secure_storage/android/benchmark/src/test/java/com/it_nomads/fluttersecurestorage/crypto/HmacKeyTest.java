@@ -0,0 +1,158 @@
+package com.it_nomads.fluttersecurestorage.crypto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.crypto.tink.Aead;
+import com.google.crypto.tink.KeysetHandle;
+import com.google.crypto.tink.RegistryConfiguration;
+import com.google.crypto.tink.aead.AeadConfig;
+import com.it_nomads.fluttersecurestorage.benchmark.InMemorySharedPreferences;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Pref keys hashed with {@link EncryptedSharedPreferences.PrefKeyEncryptionScheme#HMAC_SHA256}.
+ */
+public class HmacKeyTest {
+
+    private static final String KEY_A = BenchmarkEncryptedSharedPreferences.KEY_PREFIX + "a";
+    private static final String KEY_B = BenchmarkEncryptedSharedPreferences.KEY_PREFIX + "b";
+    // Where the files opened with a data key keep their AES256_SIV keyset and their key prefix.
+    private static final String SIV_KEYSET_ALIAS = "__flutter_secure_storage_envelope_key_keyset__";
+    private static final String KEY_PREFIX_ALIAS = "__flutter_secure_storage_key_prefix__";
+
+    private InMemorySharedPreferences backing;
+    private EncryptedSharedPreferences preferences;
+    private Set<String> reservedKeys;
+
+    @Before
+    public void setUp() throws Exception {
+        backing = new InMemorySharedPreferences();
+        preferences = BenchmarkEncryptedSharedPreferences.create(backing,
+                EncryptedSharedPreferences.PrefKeyEncryptionScheme.HMAC_SHA256);
+        reservedKeys = new HashSet<>(backing.getAll().keySet());
+    }
+
+    @Test
+    public void valuesRoundTrip() {
+        preferences.edit().putString(KEY_A, "1").putString(KEY_B, "2").commit();
+        preferences.edit().putString(KEY_A, "3").remove(KEY_B).commit();
+
+        assertEquals("3", preferences.getString(KEY_A, null));
+        assertNull(preferences.getString(KEY_B, null));
+        assertTrue(preferences.contains(KEY_A));
+        assertFalse(preferences.contains(KEY_B));
+    }
+
+    @Test
+    public void keysAreHashedTheSameWayEveryTime() {
+        preferences.edit().putString(KEY_A, "1").commit();
+        Set<String> first = storedKeys();
+        preferences.edit().putString(KEY_A, "2").commit();
+
+        assertEquals(1, first.size());
+        assertEquals(first, storedKeys());
+        assertFalse(first.contains(KEY_A));
+    }
+
+    @Test
+    public void getAllRecoversThePlainKeys() {
+        preferences.edit().putString(KEY_A, "1").putString(KEY_B, "2").commit();
+
+        Map<String, Object> expected = new HashMap<>();
+        expected.put(KEY_A, "1");
+        expected.put(KEY_B, "2");
+        assertEquals(expected, preferences.getAll());
+    }
+
+    @Test
+    public void sivFileMigratesToHashedKeys() throws Exception {
+        InMemorySharedPreferences file = new InMemorySharedPreferences();
+        Aead dataKey = newDataKey();
+        open(file, dataKey, EncryptedSharedPreferences.PrefKeyEncryptionScheme.AES256_SIV)
+                .edit().putString(KEY_A, "1").putString("b", "2").commit();
+
+        EncryptedSharedPreferences migrated = open(file, dataKey,
+                EncryptedSharedPreferences.PrefKeyEncryptionScheme.HMAC_SHA256);
+
+        assertFalse(file.contains(SIV_KEYSET_ALIAS));
+        Map<String, Object> expected = new HashMap<>();
+        expected.put(KEY_A, "1");
+        expected.put("b", "2");
+        assertEquals(expected, migrated.getAll());
+        assertEquals("1", migrated.getString(KEY_A, null));
+    }
+
+    @Test
+    public void sivFileWithAKeyPrefixMigratesToHashedKeys() throws Exception {
+        InMemorySharedPreferences file = new InMemorySharedPreferences();
+        Aead dataKey = newDataKey();
+        EncryptedSharedPreferences siv = open(file, dataKey,
+                EncryptedSharedPreferences.PrefKeyEncryptionScheme.AES256_SIV);
+        siv.setKeyPrefix(BenchmarkEncryptedSharedPreferences.KEY_PREFIX);
+        siv.edit().putString(KEY_A, "1").putString("b", "2").commit();
+
+        EncryptedSharedPreferences migrated = open(file, dataKey,
+                EncryptedSharedPreferences.PrefKeyEncryptionScheme.HMAC_SHA256);
+
+        assertFalse(file.contains(SIV_KEYSET_ALIAS));
+        // The entries were hashed under the stored prefix already.
+        assertEquals(0, migrated.setKeyPrefix(BenchmarkEncryptedSharedPreferences.KEY_PREFIX));
+        assertEquals("1", migrated.getString(KEY_A, null));
+        assertEquals("2", migrated.getString("b", null));
+    }
+
+    @Test
+    public void sivKeysetIsKeptWhileAKeyCanNotBeDecrypted() throws Exception {
+        InMemorySharedPreferences file = new InMemorySharedPreferences();
+        Aead dataKey = newDataKey();
+        EncryptedSharedPreferences siv = open(file, dataKey,
+                EncryptedSharedPreferences.PrefKeyEncryptionScheme.AES256_SIV);
+        siv.setKeyPrefix(BenchmarkEncryptedSharedPreferences.KEY_PREFIX);
+        siv.edit().putString(KEY_A, "1").commit();
+        // Without the prefix, the key of the entry does not decrypt.
+        file.edit().remove(KEY_PREFIX_ALIAS).commit();
+
+        open(file, dataKey, EncryptedSharedPreferences.PrefKeyEncryptionScheme.HMAC_SHA256);
+        assertTrue(file.contains(SIV_KEYSET_ALIAS));
+
+        file.edit().putString(KEY_PREFIX_ALIAS, BenchmarkEncryptedSharedPreferences.KEY_PREFIX)
+                .commit();
+        EncryptedSharedPreferences migrated = open(file, dataKey,
+                EncryptedSharedPreferences.PrefKeyEncryptionScheme.HMAC_SHA256);
+        assertFalse(file.contains(SIV_KEYSET_ALIAS));
+        assertEquals("1", migrated.getString(KEY_A, null));
+    }
+
+    private static Aead newDataKey() throws Exception {
+        AeadConfig.register();
+        return KeysetHandle
+                .generateNew(EncryptedSharedPreferences.PrefValueEncryptionScheme.AES256_GCM.getKeyTemplate())
+                .getPrimitive(RegistryConfiguration.get(), Aead.class);
+    }
+
+    private static EncryptedSharedPreferences open(
+            InMemorySharedPreferences file, Aead dataKey,
+            EncryptedSharedPreferences.PrefKeyEncryptionScheme keyScheme) throws Exception {
+        return EncryptedSharedPreferences.openWithDataKey(
+                BenchmarkEncryptedSharedPreferences.FILE_NAME, file, dataKey, keyScheme,
+                EncryptedSharedPreferences.PrefValueEncryptionScheme.AES256_GCM);
+    }
+
+    private Set<String> storedKeys() {
+        Set<String> keys = new HashSet<>(backing.getAll().keySet());
+        keys.removeAll(reservedKeys);
+        // The change log, once a reader asked for it, is rewritten with every commit.
+        keys.removeIf(preferences::isReservedKey);
+        return keys;
+    }
+}
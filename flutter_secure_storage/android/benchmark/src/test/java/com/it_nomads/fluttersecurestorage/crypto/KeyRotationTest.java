@@ -0,0 +1,89 @@
+package com.it_nomads.fluttersecurestorage.crypto;
+
+import static org.junit.Assert.assertEquals;
+
+import androidx.annotation.NonNull;
+
+import com.it_nomads.fluttersecurestorage.benchmark.InMemorySharedPreferences;
+import com.it_nomads.fluttersecurestorage.ciphers.StorageCipherFactory;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Counting the entries a key rotation can not move, with the legacy storage sharing the file.
+ */
+public class KeyRotationTest {
+
+    private static final String ALGORITHM_KEY = "FlutterSecureSAlgorithmKey";
+    private static final String ALGORITHM_STORAGE = "FlutterSecureSAlgorithmStorage";
+
+    private InMemorySharedPreferences backing;
+    private EncryptedSharedPreferences preferences;
+
+    @Before
+    public void setUp() throws Exception {
+        backing = new InMemorySharedPreferences();
+        preferences = BenchmarkEncryptedSharedPreferences.create(backing);
+        // The filter FlutterSecureStorage sets, for the default key prefix.
+        preferences.setEntryFilter(new IntegrityScan.EntryFilter() {
+            @Override
+            public boolean isLegacy(@NonNull String storedKey) {
+                return storedKey.startsWith(BenchmarkEncryptedSharedPreferences.KEY_PREFIX)
+                        || StorageCipherFactory.isAlgorithmKey(storedKey);
+            }
+
+            @Override
+            public boolean isOwned(String key) {
+                return true;
+            }
+        });
+        preferences.edit()
+                .putString(BenchmarkEncryptedSharedPreferences.KEY_PREFIX + "a", "1")
+                .putString(BenchmarkEncryptedSharedPreferences.KEY_PREFIX + "b", "2")
+                .commit();
+    }
+
+    @Test
+    public void legacyEntriesAreNotCountedAsFailures() {
+        backing.edit()
+                .putString(ALGORITHM_KEY, "RSA_ECB_PKCS1Padding")
+                .putString(ALGORITHM_STORAGE, "AES_GCM_NoPadding")
+                // Left behind by a migration that failed, retried on the next start.
+                .putString(BenchmarkEncryptedSharedPreferences.KEY_PREFIX + "unmigrated", "bm90IG1pZ3JhdGVk")
+                .commit();
+
+        assertEquals(0, rotateAll());
+        assertEquals("RSA_ECB_PKCS1Padding", backing.getString(ALGORITHM_KEY, null));
+        assertEquals("AES_GCM_NoPadding", backing.getString(ALGORITHM_STORAGE, null));
+        assertEquals("bm90IG1pZ3JhdGVk",
+                backing.getString(BenchmarkEncryptedSharedPreferences.KEY_PREFIX + "unmigrated", null));
+        assertEquals("1", preferences.getString(BenchmarkEncryptedSharedPreferences.KEY_PREFIX + "a", null));
+    }
+
+    @Test
+    public void corruptEntriesAreCountedAsFailures() {
+        Set<String> storedKeys = new HashSet<>(backing.getAll().keySet());
+        preferences.edit().putString(BenchmarkEncryptedSharedPreferences.KEY_PREFIX + "c", "3").commit();
+        for (String storedKey : backing.getAll().keySet()) {
+            if (!storedKeys.contains(storedKey)) {
+                backing.edit().putString(storedKey, "AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA").commit();
+            }
+        }
+        backing.edit().putString(ALGORITHM_KEY, "RSA_ECB_PKCS1Padding").commit();
+
+        assertEquals(1, rotateAll());
+    }
+
+    private int rotateAll() {
+        preferences.mWriteLock.lock();
+        try {
+            return preferences.rotateEntriesLocked(preferences.getEncryptedKeys(), null);
+        } finally {
+            preferences.mWriteLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.it_nomads.fluttersecurestorage.crypto;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The measurement behind the automatic value scheme, which runs when a store is created.
+ */
+public class PrefValueSchemeSelectorTest {
+
+    @Test
+    public void measurementEndsWithinItsBudget() throws Exception {
+        // Loads the classes of every scheme, which is not part of the budget.
+        PrefValueSchemeSelector.select();
+        long startNanos = System.nanoTime();
+
+        EncryptedSharedPreferences.PrefValueEncryptionScheme scheme = PrefValueSchemeSelector.select();
+
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        assertNotNull(scheme);
+        // The budget plus generating the keys, on a slow machine.
+        assertTrue(elapsedMillis + " ms", elapsedMillis < PrefValueSchemeSelector.MAX_MEASURE_MILLIS * 10);
+    }
+}
@@ -0,0 +1,62 @@
+package com.it_nomads.fluttersecurestorage.crypto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.it_nomads.fluttersecurestorage.benchmark.InMemorySharedPreferences;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * When {@link ValueEnvelope} deflates values, and that both layouts read back.
+ */
+public class ValueEnvelopeTest {
+
+    private static final String LARGE_VALUE = "x".repeat(1024);
+
+    @Test
+    public void valuesAreNotCompressedUnlessAsked() {
+        byte[] plainText = ValueEnvelope.encode(null, 0, LARGE_VALUE, ValueEnvelope.NO_EXPIRY, false);
+
+        assertEquals(0, plainText[1] & ValueEnvelope.FLAG_COMPRESSED);
+        assertTrue(plainText.length > LARGE_VALUE.length());
+        assertEquals(LARGE_VALUE, ValueEnvelope.decode(plainText, false).getValue());
+    }
+
+    @Test
+    public void compressedValuesReadBack() {
+        Set<String> values = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            values.add(i + LARGE_VALUE);
+        }
+
+        byte[] stringText = ValueEnvelope.encode(null, 0, LARGE_VALUE, ValueEnvelope.NO_EXPIRY, true);
+        byte[] setText = ValueEnvelope.encode(null, 0, values, ValueEnvelope.NO_EXPIRY, true);
+
+        assertEquals(ValueEnvelope.FLAG_COMPRESSED, stringText[1] & ValueEnvelope.FLAG_COMPRESSED);
+        assertTrue(stringText.length < LARGE_VALUE.length());
+        assertEquals(LARGE_VALUE, ValueEnvelope.decode(stringText, false).getValue());
+        assertEquals(ValueEnvelope.FLAG_COMPRESSED, setText[1] & ValueEnvelope.FLAG_COMPRESSED);
+        assertEquals(values, ValueEnvelope.decode(setText, false).getValue());
+    }
+
+    @Test
+    public void compressionIsOffUntilTurnedOn() throws Exception {
+        EncryptedSharedPreferences preferences = BenchmarkEncryptedSharedPreferences.create(
+                new InMemorySharedPreferences());
+        String key = BenchmarkEncryptedSharedPreferences.KEY_PREFIX + "a";
+
+        int plainLength = preferences.encryptEntry(key, LARGE_VALUE, ValueEnvelope.NO_EXPIRY)
+                .second.length();
+        preferences.setValueCompression(true);
+        int compressedLength = preferences.encryptEntry(key, LARGE_VALUE, ValueEnvelope.NO_EXPIRY)
+                .second.length();
+        preferences.edit().putString(key, LARGE_VALUE).commit();
+
+        assertTrue(compressedLength < plainLength);
+        assertEquals(LARGE_VALUE, preferences.getString(key, null));
+    }
+}
@@ -0,0 +1,101 @@
+package com.it_nomads.fluttersecurestorage.crypto;
+
+import static org.junit.Assert.assertEquals;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import java.util.Map;
+/**
+ * Opening stores with the Keystore, which the JVM tests replace with keysets held in memory.
+ *
+ * <p>Runs on a device only: {@code ./gradlew connectedAndroidTest}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class EncryptedSharedPreferencesTest {
+    private static final String MASTER_KEY_ALIAS = "_test_master_key_";
+
+    private Context context;
+    private MasterKey masterKey;
+
+    @Before
+    public void setUp() throws Exception {
+        context = ApplicationProvider.getApplicationContext();
+        masterKey = new MasterKey.Builder(context, MASTER_KEY_ALIAS)
+                .setKeyGenParameterSpec(new KeyGenParameterSpec.Builder(
+                        MASTER_KEY_ALIAS,
+                        KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                        .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                        .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                        .setKeySize(256)
+                        .build())
+                .build();
+    }
+
+    @Test
+    public void envelopeStoreReopensWithAColdDataKey() throws Exception {
+        String fileName = reset("test_envelope");
+        openWithEnvelope(fileName).edit().putString("a", "1").commit();
+
+        // As in a new process, the data key is unwrapped by the master key again.
+        EnvelopeDataKeys.clearCache();
+        SharedPreferences reopened = openWithEnvelope(fileName);
+
+        assertEquals("1", reopened.getString("a", null));
+        reopened.edit().putString("b", "2").commit();
+        assertEquals("2", openWithEnvelope(fileName).getString("b", null));
+    }
+
+    @Test
+    public void valuesStayReadableAcrossValueSchemes() throws Exception {
+        String fileName = reset("test_value_schemes");
+        open(fileName, EncryptedSharedPreferences.PrefValueEncryptionScheme.AES256_GCM)
+                .edit().putString("a", "1").commit();
+
+        SharedPreferences switched = open(fileName,
+                EncryptedSharedPreferences.PrefValueEncryptionScheme.CHACHA20_POLY1305);
+        assertEquals("1", switched.getString("a", null));
+        switched.edit().putString("b", "2").commit();
+
+        SharedPreferences switchedBack = open(fileName,
+                EncryptedSharedPreferences.PrefValueEncryptionScheme.AES256_GCM);
+        assertEquals("1", switchedBack.getString("a", null));
+        assertEquals("2", switchedBack.getString("b", null));
+    }
+
+    @Test
+    public void automaticSchemeLeavesTheKeysetsOfAnExistingFile() throws Exception {
+        String fileName = reset("test_automatic_scheme");
+        open(fileName, EncryptedSharedPreferences.PrefValueEncryptionScheme.CHACHA20_POLY1305)
+                .edit().putString("a", "1").commit();
+        Map<String, ?> stored = context.getSharedPreferences(fileName, Context.MODE_PRIVATE).getAll();
+
+        SharedPreferences automatic = open(fileName, null);
+
+        assertEquals("1", automatic.getString("a", null));
+        assertEquals(stored, context.getSharedPreferences(fileName, Context.MODE_PRIVATE).getAll());
+    }
+
+    private String reset(String fileName) {
+        context.getSharedPreferences(fileName, Context.MODE_PRIVATE).edit().clear().commit();
+        EnvelopeDataKeys.clearCache();
+        return fileName;
+    }
+
+    private SharedPreferences open(String fileName,
+            EncryptedSharedPreferences.PrefValueEncryptionScheme valueScheme) throws Exception {
+        return EncryptedSharedPreferences.create(context, fileName, masterKey,
+                EncryptedSharedPreferences.PrefKeyEncryptionScheme.AES256_SIV, valueScheme);
+    }
+
+    private SharedPreferences openWithEnvelope(String fileName) throws Exception {
+        return EncryptedSharedPreferences.createWithEnvelope(context, fileName, masterKey,
+                EncryptedSharedPreferences.PrefKeyEncryptionScheme.AES256_SIV,
+                EncryptedSharedPreferences.PrefValueEncryptionScheme.AES256_GCM);
+    }
+}
@@ -0,0 +1,122 @@
+package com.it_nomads.fluttersecurestorage.crypto;
+
+import static org.junit.Assume.assumeTrue;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+/**
+ * Compares the cost of opening a store, which decrypts both keysets, with the master key in the
+ * TEE, in StrongBox, and in StrongBox wrapping an envelope data key.
+ *
+ * <p>Runs on a device only, StrongBox can not be emulated on the JVM:
+ * {@code ./gradlew connectedAndroidTest}. The StrongBox cases are skipped on devices without it.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MasterKeyBenchmark {
+    private static final String STRONG_BOX_MASTER_KEY_ALIAS = "_benchmark_strongbox_master_key_";
+
+    @Rule
+    public final BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+    }
+
+    @Test
+    public void openTee() throws Exception {
+        MasterKey masterKey = new MasterKey.Builder(context)
+                .setKeyGenParameterSpec(new KeyGenParameterSpec.Builder(
+                        MasterKey.DEFAULT_MASTER_KEY_ALIAS,
+                        KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                        .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                        .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                        .setKeySize(256)
+                        .build())
+                .build();
+        String fileName = reset("benchmark_tee");
+        open(fileName, masterKey);
+
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            open(fileName, masterKey);
+        }
+    }
+
+    @Test
+    public void openStrongBoxDirect() throws Exception {
+        MasterKey masterKey = strongBoxMasterKey();
+        String fileName = reset("benchmark_strongbox_direct");
+        open(fileName, masterKey);
+
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            open(fileName, masterKey);
+        }
+    }
+
+    @Test
+    public void openStrongBoxEnvelopeCold() throws Exception {
+        MasterKey masterKey = strongBoxMasterKey();
+        String fileName = reset("benchmark_strongbox_envelope_cold");
+        openWithEnvelope(fileName, masterKey);
+
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            state.pauseTiming();
+            EnvelopeDataKeys.clearCache();
+            state.resumeTiming();
+            openWithEnvelope(fileName, masterKey);
+        }
+    }
+
+    @Test
+    public void openStrongBoxEnvelopeWarm() throws Exception {
+        MasterKey masterKey = strongBoxMasterKey();
+        String fileName = reset("benchmark_strongbox_envelope_warm");
+        openWithEnvelope(fileName, masterKey);
+
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            openWithEnvelope(fileName, masterKey);
+        }
+    }
+
+    private MasterKey strongBoxMasterKey() throws Exception {
+        assumeTrue(context.getPackageManager()
+                .hasSystemFeature(PackageManager.FEATURE_STRONGBOX_KEYSTORE));
+        return new MasterKey.Builder(context, STRONG_BOX_MASTER_KEY_ALIAS)
+                .setKeyScheme(MasterKey.KeyScheme.AES256_GCM)
+                .setRequestStrongBoxBacked(true)
+                .build();
+    }
+
+    private String reset(String fileName) {
+        context.getSharedPreferences(fileName, Context.MODE_PRIVATE).edit().clear().commit();
+        EnvelopeDataKeys.clearCache();
+        return fileName;
+    }
+
+    private void open(String fileName, MasterKey masterKey) throws Exception {
+        EncryptedSharedPreferences.create(context, fileName, masterKey,
+                EncryptedSharedPreferences.PrefKeyEncryptionScheme.AES256_SIV,
+                EncryptedSharedPreferences.PrefValueEncryptionScheme.AES256_GCM);
+    }
+
+    private void openWithEnvelope(String fileName, MasterKey masterKey) throws Exception {
+        EncryptedSharedPreferences.createWithEnvelope(context, fileName, masterKey,
+                EncryptedSharedPreferences.PrefKeyEncryptionScheme.AES256_SIV,
+                EncryptedSharedPreferences.PrefValueEncryptionScheme.AES256_GCM);
+    }
+}
@@ -2,6 +2,7 @@ package com.it_nomads.fluttersecurestorage;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.os.Process;
 import android.security.keystore.KeyGenParameterSpec;
 import android.security.keystore.KeyProperties;
 import android.util.Base64;
@@ -9,17 +10,31 @@ import android.util.Log;
 
 import androidx.annotation.NonNull;
 
+import com.it_nomads.fluttersecurestorage.ciphers.KeyStoreAccessor;
 import com.it_nomads.fluttersecurestorage.ciphers.StorageCipher;
 import com.it_nomads.fluttersecurestorage.ciphers.StorageCipherFactory;
 import com.it_nomads.fluttersecurestorage.crypto.EncryptedSharedPreferences;
+import com.it_nomads.fluttersecurestorage.crypto.IntegrityScan;
+import com.it_nomads.fluttersecurestorage.crypto.KeyRotation;
 import com.it_nomads.fluttersecurestorage.crypto.MasterKey;
+import com.it_nomads.fluttersecurestorage.crypto.TypedSharedPreferences;
+import com.it_nomads.fluttersecurestorage.crypto.VolatileSharedPreferences;
 
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class FlutterSecureStorage {
 
@@ -30,13 +45,68 @@ public class FlutterSecureStorage {
     private static final String PREF_OPTION_NAME = "sharedPreferencesName";
     private static final String PREF_OPTION_PREFIX = "preferencesKeyPrefix";
     private static final String PREF_OPTION_DELETE_ON_FAILURE = "resetOnError";
+    private static final String PREF_OPTION_QUARANTINE_ON_ERROR = "quarantineOnError";
+    private static final String PREF_OPTION_COMPRESS_VALUES = "compressValues";
+    private static final String PREF_OPTION_STORAGE_TYPE = "storageType";
+    private static final String STORAGE_TYPE_VOLATILE = "volatile";
+    private static final String PREF_OPTION_STRONG_BOX_MODE = "strongBoxMode";
+    private static final String STRONG_BOX_MASTER_KEY_ALIAS = "_flutter_secure_storage_strongbox_master_key_";
+    private static final String PREF_OPTION_KEY_ENCRYPTION_SCHEME = "keyEncryptionScheme";
+    private static final String PREF_OPTION_VALUE_ENCRYPTION_SCHEME = "valueEncryptionScheme";
+    private static final String VALUE_ENCRYPTION_SCHEME_AUTO = "AUTO";
     private static final String PREF_KEY_MIGRATED = "preferencesMigrated";
+    private static ExecutorService rotationExecutor;
     @NonNull
     private final SharedPreferences encryptedPreferences;
     @NonNull
     private String preferencesKeyPrefix = DEFAULT_KEY_PREFIX;
+    @NonNull
+    private final InitReport initReport = new InitReport();
+
+    private boolean quarantineOnError = false;
+
+    private boolean compressValues = false;
+
+    private final AtomicInteger quarantinedEntries = new AtomicInteger();
+
+    // Tells the legacy entries sharing the file and those of other key prefixes from the own ones.
+    private final IntegrityScan.EntryFilter entryFilter = new IntegrityScan.EntryFilter() {
+        @Override
+        public boolean isLegacy(@NonNull String storedKey) {
+            return storedKey.startsWith(preferencesKeyPrefix) || StorageCipherFactory.isAlgorithmKey(storedKey);
+        }
+
+        @Override
+        public boolean isOwned(String key) {
+            if (key == null) {
+                return false;
+            }
+            String ownKeyStart = preferencesKeyPrefix + "_";
+            String mapKey = EncryptedSharedPreferences.mapKeyOf(key);
+            return PREF_KEY_MIGRATED.equals(key) || key.startsWith(ownKeyStart)
+                    || (mapKey != null && mapKey.startsWith(ownKeyStart));
+        }
+    };
+    @NonNull
+    private StrongBoxMode strongBoxMode = StrongBoxMode.DISABLED;
+    @NonNull
+    private EncryptedSharedPreferences.PrefKeyEncryptionScheme keyEncryptionScheme =
+            EncryptedSharedPreferences.PrefKeyEncryptionScheme.AES256_SIV;
+    // Null when the scheme is picked for each file by PrefValueSchemeSelector.
+    private EncryptedSharedPreferences.PrefValueEncryptionScheme valueEncryptionScheme =
+            EncryptedSharedPreferences.PrefValueEncryptionScheme.AES256_GCM;
+
+    private enum StrongBoxMode {
+        /** The master key lives in the TEE and encrypts the keysets. */
+        DISABLED,
+        /** The master key lives in StrongBox and encrypts the keysets. */
+        DIRECT,
+        /** The master key lives in StrongBox and only unwraps a data key, once per process. */
+        ENVELOPE
+    }
 
     public FlutterSecureStorage(Context context, Map<String, Object> options) throws GeneralSecurityException, IOException {
+        InitReport.Phase parseOptionsPhase = initReport.begin(InitReport.PHASE_PARSE_OPTIONS);
         String sharedPreferencesName = DEFAULT_PREF_NAME;
         if (options.containsKey(PREF_OPTION_NAME)) {
             var value = options.get(PREF_OPTION_NAME);
@@ -61,7 +131,91 @@ public class FlutterSecureStorage {
             }
         }
 
-        encryptedPreferences = getEncryptedSharedPreferences(deleteOnFailure, options, context.getApplicationContext(), sharedPreferencesName);
+        if (options.containsKey(PREF_OPTION_QUARANTINE_ON_ERROR)) {
+            var value = options.get(PREF_OPTION_QUARANTINE_ON_ERROR);
+            if (value instanceof String) {
+                quarantineOnError = Boolean.parseBoolean((String) value);
+            }
+        }
+
+        if (options.containsKey(PREF_OPTION_COMPRESS_VALUES)) {
+            var value = options.get(PREF_OPTION_COMPRESS_VALUES);
+            if (value instanceof String) {
+                compressValues = Boolean.parseBoolean((String) value);
+            }
+        }
+
+        if (options.containsKey(PREF_OPTION_STRONG_BOX_MODE)) {
+            var value = options.get(PREF_OPTION_STRONG_BOX_MODE);
+            for (StrongBoxMode mode : StrongBoxMode.values()) {
+                if (mode.name().equalsIgnoreCase(String.valueOf(value))) {
+                    strongBoxMode = mode;
+                }
+            }
+        }
+
+        if (options.containsKey(PREF_OPTION_KEY_ENCRYPTION_SCHEME)) {
+            var value = options.get(PREF_OPTION_KEY_ENCRYPTION_SCHEME);
+            for (EncryptedSharedPreferences.PrefKeyEncryptionScheme scheme : EncryptedSharedPreferences.PrefKeyEncryptionScheme.values()) {
+                if (scheme.name().equals(value)) {
+                    keyEncryptionScheme = scheme;
+                }
+            }
+        }
+
+        if (options.containsKey(PREF_OPTION_VALUE_ENCRYPTION_SCHEME)) {
+            var value = options.get(PREF_OPTION_VALUE_ENCRYPTION_SCHEME);
+            if (VALUE_ENCRYPTION_SCHEME_AUTO.equals(value)) {
+                valueEncryptionScheme = null;
+            }
+            for (EncryptedSharedPreferences.PrefValueEncryptionScheme scheme : EncryptedSharedPreferences.PrefValueEncryptionScheme.values()) {
+                if (scheme.name().equals(value)) {
+                    valueEncryptionScheme = scheme;
+                }
+            }
+        }
+        parseOptionsPhase.end(options.size());
+
+        try {
+            if (isVolatile(options)) {
+                InitReport.Phase openVolatilePhase = initReport.begin(InitReport.PHASE_OPEN_VOLATILE);
+                VolatileSharedPreferences volatilePreferences = VolatileSharedPreferences.getInstance(sharedPreferencesName);
+                openVolatilePhase.end(volatilePreferences.size());
+                encryptedPreferences = volatilePreferences;
+            } else {
+                encryptedPreferences = getEncryptedSharedPreferences(deleteOnFailure, options, context.getApplicationContext(), sharedPreferencesName);
+            }
+        } finally {
+            initReport.finish();
+        }
+    }
+
+    /**
+     * Whether the options select the memory-only storage, which never touches disk or the
+     * Keystore and loses its entries when the process dies.
+     */
+    static boolean isVolatile(Map<String, Object> options) {
+        return STORAGE_TYPE_VOLATILE.equals(options.get(PREF_OPTION_STORAGE_TYPE));
+    }
+
+    /**
+     * Wraps already opened preferences, without master key, keyset or migration handling.
+     */
+    FlutterSecureStorage(@NonNull SharedPreferences encryptedPreferences) {
+        this.encryptedPreferences = encryptedPreferences;
+        initReport.finish();
+    }
+
+    /**
+     * Returns the timeline of the initialization of this storage, including which path was taken
+     * and how many entries each phase touched, along with the Keystore calls made by the legacy
+     * key ciphers so far and the entries quarantined since.
+     */
+    public Map<String, Object> getInitReport() {
+        Map<String, Object> report = initReport.toMap();
+        report.put("keyStore", KeyStoreAccessor.getInstance().getStats());
+        report.put("quarantinedEntries", quarantinedEntries.get());
+        return report;
     }
 
     public boolean containsKey(String key) {
@@ -86,42 +240,577 @@ public class FlutterSecureStorage {
 
     public Map<String, String> readAll() {
         Map<String, String> result = new HashMap<>();
-        Map<String, ?> allEntries = encryptedPreferences.getAll();
-        for (Map.Entry<String, ?> entry : allEntries.entrySet()) {
-            String key = entry.getKey();
-            Object value = entry.getValue();
-            if (key.startsWith(preferencesKeyPrefix) && value instanceof String) {
-                String originalKey = key.replaceFirst(preferencesKeyPrefix + "_", "");
-                result.put(originalKey, (String) value);
+        putOwnEntries(encryptedPreferences.getAll(), result);
+        return result;
+    }
+
+    /**
+     * Reads a value stored with {@link #writeTyped}.
+     *
+     * @return the value as an Integer, Long, Double or Boolean, or null if there is no entry or it
+     * holds another type.
+     */
+    public Object readTyped(String key, ValueType type) {
+        Object value = ((TypedSharedPreferences) encryptedPreferences).getObject(addPrefixToKey(key));
+        return type.valueClass.isInstance(value) ? value : null;
+    }
+
+    /**
+     * Writes a value in its native type, which encrypts smaller than its string form and needs no
+     * parsing on read.
+     *
+     * @param value an Integer within the int range for {@link ValueType#INT}, any Number for
+     *              {@link ValueType#LONG} and {@link ValueType#DOUBLE}, a Boolean for
+     *              {@link ValueType#BOOL}.
+     * @throws IllegalArgumentException when the value does not fit the type.
+     */
+    public void writeTyped(String key, ValueType type, Object value) {
+        TypedSharedPreferences.TypedEditor editor = ((TypedSharedPreferences) encryptedPreferences).edit();
+        String prefixedKey = addPrefixToKey(key);
+        switch (type) {
+            case INT:
+                if (!(value instanceof Integer)) {
+                    throw new IllegalArgumentException("Not an int: " + value);
+                }
+                editor.putInt(prefixedKey, (Integer) value);
+                break;
+            case LONG:
+                if (!(value instanceof Integer || value instanceof Long)) {
+                    throw new IllegalArgumentException("Not a long: " + value);
+                }
+                editor.putLong(prefixedKey, ((Number) value).longValue());
+                break;
+            case DOUBLE:
+                if (!(value instanceof Number)) {
+                    throw new IllegalArgumentException("Not a double: " + value);
+                }
+                editor.putDouble(prefixedKey, ((Number) value).doubleValue());
+                break;
+            case BOOL:
+                if (!(value instanceof Boolean)) {
+                    throw new IllegalArgumentException("Not a bool: " + value);
+                }
+                editor.putBoolean(prefixedKey, (Boolean) value);
+                break;
+        }
+        editor.apply();
+    }
+
+    /**
+     * The types {@link #readTyped} and {@link #writeTyped} store natively instead of as strings.
+     * Doubles are stored as such, floats would lose precision.
+     */
+    public enum ValueType {
+        INT(Integer.class),
+        LONG(Long.class),
+        DOUBLE(Double.class),
+        BOOL(Boolean.class);
+
+        private final Class<?> valueClass;
+
+        ValueType(Class<?> valueClass) {
+            this.valueClass = valueClass;
+        }
+    }
+
+    /**
+     * Applies the changes in a single commit, so after a crash either all or none of them are
+     * stored. A null value deletes the entry.
+     *
+     * @return true if the changes were written to disk.
+     */
+    public boolean transaction(Map<String, String> changes) {
+        SharedPreferences.Editor editor = encryptedPreferences instanceof EncryptedSharedPreferences
+                ? ((EncryptedSharedPreferences) encryptedPreferences).editInBulk()
+                : encryptedPreferences.edit();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            if (change.getValue() == null) {
+                editor.remove(addPrefixToKey(change.getKey()));
+            } else {
+                editor.putString(addPrefixToKey(change.getKey()), change.getValue());
+            }
+        }
+        return editor.commit();
+    }
+
+    /**
+     * Writes {@code value} only if the entry currently holds {@code expected}, atomically with
+     * respect to every other write. A null {@code expected} matches a missing entry, a null
+     * {@code value} deletes it.
+     *
+     * @return true if the entry was changed.
+     */
+    public boolean compareAndSet(String key, String expected, String value) {
+        if (encryptedPreferences instanceof EncryptedSharedPreferences) {
+            return ((EncryptedSharedPreferences) encryptedPreferences)
+                    .compareAndSetString(addPrefixToKey(key), expected, value);
+        }
+        // Volatile storage is only written from the plugin worker, which runs one call at a time.
+        Object current = encryptedPreferences.getAll().get(addPrefixToKey(key));
+        if (!Objects.equals(current, expected)) {
+            return false;
+        }
+        if (value == null) {
+            delete(key);
+        } else {
+            write(key, value);
+        }
+        return true;
+    }
+
+    /**
+     * Adds {@code delta} to the long stored under the key, atomically with respect to every other
+     * write. A missing entry counts as 0.
+     *
+     * @return the new value.
+     */
+    public long incrementLong(String key, long delta) throws IOException {
+        if (encryptedPreferences instanceof EncryptedSharedPreferences) {
+            return ((EncryptedSharedPreferences) encryptedPreferences).incrementLong(addPrefixToKey(key), delta);
+        }
+        Object current = encryptedPreferences.getAll().get(addPrefixToKey(key));
+        if (current != null && !(current instanceof Long)) {
+            throw new IllegalStateException("Not a long value: " + key);
+        }
+        long value = (current == null ? 0L : (Long) current) + delta;
+        encryptedPreferences.edit().putLong(addPrefixToKey(key), value).apply();
+        return value;
+    }
+
+    /**
+     * Reads a single field of the map stored under the key.
+     */
+    public String readField(String key, String field) {
+        if (encryptedPreferences instanceof EncryptedSharedPreferences) {
+            return ((EncryptedSharedPreferences) encryptedPreferences).getField(addPrefixToKey(key), field);
+        }
+        return encryptedPreferences.getString(EncryptedSharedPreferences.fieldKey(addPrefixToKey(key), field), null);
+    }
+
+    /**
+     * Reads all fields of the map stored under the key, an empty map if there is none.
+     */
+    public Map<String, String> readFields(String key) {
+        if (encryptedPreferences instanceof EncryptedSharedPreferences) {
+            return ((EncryptedSharedPreferences) encryptedPreferences).getFields(addPrefixToKey(key));
+        }
+        String keyStart = EncryptedSharedPreferences.fieldKey(addPrefixToKey(key), "");
+        Map<String, String> fields = new HashMap<>();
+        for (Map.Entry<String, ?> entry : encryptedPreferences.getAll().entrySet()) {
+            if (entry.getKey().startsWith(keyStart) && entry.getValue() instanceof String) {
+                fields.put(entry.getKey().substring(keyStart.length()), (String) entry.getValue());
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * Writes fields of the map stored under the key in a single commit, leaving the other fields
+     * untouched. A null value deletes the field.
+     *
+     * @return true if the fields were written to disk.
+     */
+    public boolean writeFields(String key, Map<String, String> fields) {
+        if (encryptedPreferences instanceof EncryptedSharedPreferences) {
+            return ((EncryptedSharedPreferences) encryptedPreferences).putFields(addPrefixToKey(key), fields);
+        }
+        SharedPreferences.Editor editor = encryptedPreferences.edit();
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            String fieldKey = EncryptedSharedPreferences.fieldKey(addPrefixToKey(key), field.getKey());
+            if (field.getValue() == null) {
+                editor.remove(fieldKey);
+            } else {
+                editor.putString(fieldKey, field.getValue());
+            }
+        }
+        return editor.commit();
+    }
+
+    /**
+     * Deletes all fields of the map stored under the key in a single commit.
+     *
+     * @return the number of fields deleted.
+     */
+    public int deleteFields(String key) throws IOException {
+        if (encryptedPreferences instanceof EncryptedSharedPreferences) {
+            return ((EncryptedSharedPreferences) encryptedPreferences).removeFields(addPrefixToKey(key));
+        }
+        Map<String, String> fields = readFields(key);
+        SharedPreferences.Editor editor = encryptedPreferences.edit();
+        for (String field : fields.keySet()) {
+            editor.remove(EncryptedSharedPreferences.fieldKey(addPrefixToKey(key), field));
+        }
+        editor.apply();
+        return fields.size();
+    }
+
+    /**
+     * Reads the keys from a single snapshot of the storage, so no write can land between two of
+     * them. Only the values of the given keys are decrypted.
+     *
+     * @return the value of every key, null for those without an entry.
+     */
+    public Map<String, String> readMany(List<String> keys) {
+        Map<String, String> result = new HashMap<>();
+        if (encryptedPreferences instanceof EncryptedSharedPreferences) {
+            EncryptedSharedPreferences.Snapshot snapshot = ((EncryptedSharedPreferences) encryptedPreferences).snapshot();
+            for (String key : keys) {
+                result.put(key, snapshot.getString(addPrefixToKey(key), null));
+            }
+            return result;
+        }
+        Map<String, ?> entries = encryptedPreferences.getAll();
+        for (String key : keys) {
+            Object value = entries.get(addPrefixToKey(key));
+            result.put(key, value instanceof String ? (String) value : null);
+        }
+        return result;
+    }
+
+    /**
+     * Reads the entries whose key starts with {@code prefix}, decrypting the values of those only.
+     */
+    public Map<String, String> readByPrefix(String prefix) {
+        String keyStart = addPrefixToKey(prefix);
+        Map<String, ?> entries;
+        if (encryptedPreferences instanceof EncryptedSharedPreferences) {
+            entries = ((EncryptedSharedPreferences) encryptedPreferences).getAllStartingWith(keyStart);
+        } else {
+            Map<String, Object> matching = new HashMap<>();
+            for (Map.Entry<String, ?> entry : encryptedPreferences.getAll().entrySet()) {
+                if (entry.getKey().startsWith(keyStart)) {
+                    matching.put(entry.getKey(), entry.getValue());
+                }
             }
+            entries = matching;
         }
+        Map<String, String> result = new HashMap<>();
+        putOwnEntries(entries, result);
         return result;
     }
 
+    /**
+     * Deletes the entries whose key starts with {@code prefix} in a single commit.
+     *
+     * @return the number of entries deleted.
+     */
+    public int deleteByPrefix(String prefix) throws IOException {
+        String keyStart = addPrefixToKey(prefix);
+        if (encryptedPreferences instanceof EncryptedSharedPreferences) {
+            return ((EncryptedSharedPreferences) encryptedPreferences).removeAllStartingWith(keyStart);
+        }
+        SharedPreferences.Editor editor = encryptedPreferences.edit();
+        int deleted = 0;
+        for (String key : encryptedPreferences.getAll().keySet()) {
+            if (key.startsWith(keyStart)) {
+                editor.remove(key);
+                deleted++;
+            }
+        }
+        editor.apply();
+        return deleted;
+    }
+
+    /**
+     * Reads what changed after {@code version}, decrypting only the entries written since, as
+     * long as the change log of the storage reaches back that far.
+     *
+     * @param version the {@code version} of a previous result, or 0 to read everything.
+     * @return the {@code version} to pass next time; the changed {@code entries} and the
+     * {@code deleted} keys; and {@code full}, which is true when the changes since that version
+     * are not known and {@code entries} holds every entry, as {@link #readAll()} would return.
+     */
+    public Map<String, Object> readAllSince(long version) {
+        long currentVersion = 0;
+        List<String> changedKeys = null;
+        if (encryptedPreferences instanceof EncryptedSharedPreferences) {
+            EncryptedSharedPreferences preferences = (EncryptedSharedPreferences) encryptedPreferences;
+            // Read first, so the entries are at least as new as the version answered.
+            currentVersion = preferences.getVersion();
+            changedKeys = preferences.getKeysChangedSince(version);
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("version", currentVersion);
+        if (changedKeys == null) {
+            result.put("full", true);
+            result.put("entries", readAll());
+            result.put("deleted", new ArrayList<String>());
+            return result;
+        }
+        Map<String, String> entries = new HashMap<>();
+        List<String> deleted = new ArrayList<>();
+        for (String key : changedKeys) {
+            if (key == null || !key.startsWith(preferencesKeyPrefix)) {
+                continue;
+            }
+            Object value = ((EncryptedSharedPreferences) encryptedPreferences).getObject(key);
+            if (value == null) {
+                deleted.add(originalKey(key));
+            } else if (value instanceof String) {
+                entries.put(originalKey(key), (String) value);
+            }
+        }
+        result.put("full", false);
+        result.put("entries", entries);
+        result.put("deleted", deleted);
+        return result;
+    }
+
+    /**
+     * Reads up to {@code limit} entries, decrypting only those of the requested page.
+     *
+     * @param cursor null for the first page, otherwise the {@code nextCursor} of the previous page.
+     * @return the {@code entries} of the page and the {@code nextCursor}, which is null after the
+     * last page.
+     */
+    public Map<String, Object> readAllPage(String cursor, int limit) {
+        Map<String, ?> entries;
+        String nextCursor;
+        if (encryptedPreferences instanceof EncryptedSharedPreferences) {
+            EncryptedSharedPreferences.Page page =
+                    ((EncryptedSharedPreferences) encryptedPreferences).getPage(cursor, limit);
+            entries = page.getEntries();
+            nextCursor = page.getNextCursor();
+        } else {
+            // Volatile storage holds plain keys, the page is taken from them in their natural order.
+            NavigableMap<String, ?> sorted = new TreeMap<>(encryptedPreferences.getAll());
+            if (cursor != null) {
+                sorted = sorted.tailMap(cursor, false);
+            }
+            Map<String, Object> pageEntries = new HashMap<>();
+            nextCursor = null;
+            for (Map.Entry<String, ?> entry : sorted.entrySet()) {
+                if (pageEntries.size() == limit) {
+                    nextCursor = sorted.lowerKey(entry.getKey());
+                    break;
+                }
+                pageEntries.put(entry.getKey(), entry.getValue());
+            }
+            entries = pageEntries;
+        }
+        Map<String, String> pageResult = new HashMap<>();
+        putOwnEntries(entries, pageResult);
+        Map<String, Object> result = new HashMap<>();
+        result.put("entries", pageResult);
+        result.put("nextCursor", nextCursor);
+        return result;
+    }
+
+    /**
+     * Reads all entries like {@link #readAll()}, but decrypts them one chunk at a time as the
+     * iterator is advanced, so only a single chunk of decrypted entries is held at once. Chunks
+     * can be smaller than {@code chunkSize}, or empty, when entries of other key prefixes or
+     * expired ones are left out.
+     */
+    public Iterator<Map<String, String>> readAllInChunks(int chunkSize) {
+        Iterator<Map<String, ?>> chunks;
+        if (encryptedPreferences instanceof EncryptedSharedPreferences) {
+            chunks = ((EncryptedSharedPreferences) encryptedPreferences).readInChunks(chunkSize);
+        } else {
+            // Volatile storage holds its entries decrypted already, they are only split up.
+            List<Map<String, ?>> split = new ArrayList<>();
+            Map<String, Object> entries = new HashMap<>();
+            for (Map.Entry<String, ?> entry : encryptedPreferences.getAll().entrySet()) {
+                if (entries.size() == chunkSize) {
+                    split.add(entries);
+                    entries = new HashMap<>();
+                }
+                entries.put(entry.getKey(), entry.getValue());
+            }
+            if (!entries.isEmpty()) {
+                split.add(entries);
+            }
+            chunks = split.iterator();
+        }
+        return new Iterator<Map<String, String>>() {
+            @Override
+            public boolean hasNext() {
+                return chunks.hasNext();
+            }
+
+            @Override
+            public Map<String, String> next() {
+                Map<String, String> chunk = new HashMap<>();
+                putOwnEntries(chunks.next(), chunk);
+                return chunk;
+            }
+        };
+    }
+
+    /**
+     * Adds new primary keys and moves the entries to them in the background, or resumes a
+     * rotation that did not finish.
+     */
+    public void rotateKeys() throws GeneralSecurityException, IOException {
+        if (!(encryptedPreferences instanceof EncryptedSharedPreferences)) {
+            throw new GeneralSecurityException("Only persistent storage has keys to rotate");
+        }
+        ((EncryptedSharedPreferences) encryptedPreferences).rotateKeys(getRotationExecutor());
+    }
+
+    /**
+     * Returns the progress of the last key rotation, with an estimate of the time remaining.
+     */
+    public Map<String, Object> getRotationProgress() {
+        Map<String, Object> progress = new HashMap<>();
+        KeyRotation rotation = encryptedPreferences instanceof EncryptedSharedPreferences
+                ? ((EncryptedSharedPreferences) encryptedPreferences).getKeyRotation()
+                : null;
+        if (rotation == null) {
+            progress.put("state", "idle");
+            return progress;
+        }
+        String state;
+        if (!rotation.isFinished()) {
+            state = "running";
+        } else if (rotation.getError() != null || rotation.getFailedEntries() > 0) {
+            state = "failed";
+        } else {
+            state = "finished";
+        }
+        progress.put("state", state);
+        progress.put("totalEntries", rotation.getTotalEntries());
+        progress.put("processedEntries", rotation.getProcessedEntries());
+        progress.put("failedEntries", rotation.getFailedEntries());
+        progress.put("estimatedRemainingMillis", rotation.getEstimatedRemainingMillis());
+        progress.put("error", rotation.getError() == null ? null : rotation.getError().toString());
+        return progress;
+    }
+
+    /**
+     * Starts checking every entry in the background for values that no longer decrypt, entries
+     * the legacy ciphers left behind after the migration and entries of other key prefixes,
+     * unless a check is already running. With {@code compact} the entries found are removed in
+     * one commit once all are checked, provided the legacy entries were migrated.
+     */
+    public void scanIntegrity(boolean compact) throws GeneralSecurityException {
+        if (!(encryptedPreferences instanceof EncryptedSharedPreferences)) {
+            throw new GeneralSecurityException("Only persistent storage has entries to scan");
+        }
+        // Legacy entries that failed to migrate are retried on the next start, so nothing is
+        // removed before the migration is done.
+        boolean migrated = encryptedPreferences.getBoolean(PREF_KEY_MIGRATED, false);
+        ((EncryptedSharedPreferences) encryptedPreferences).scanIntegrity(getRotationExecutor(), entryFilter, compact && migrated);
+    }
+
+    /**
+     * Returns the progress of the last integrity scan and the number of entries it found of each
+     * kind so far.
+     */
+    public Map<String, Object> getIntegrityScanProgress() {
+        Map<String, Object> progress = new HashMap<>();
+        IntegrityScan scan = encryptedPreferences instanceof EncryptedSharedPreferences
+                ? ((EncryptedSharedPreferences) encryptedPreferences).getIntegrityScan()
+                : null;
+        if (scan == null) {
+            progress.put("state", "idle");
+            return progress;
+        }
+        String state;
+        if (!scan.isFinished()) {
+            state = "running";
+        } else if (scan.getError() != null) {
+            state = "failed";
+        } else {
+            state = "finished";
+        }
+        progress.put("state", state);
+        progress.put("totalEntries", scan.getTotalEntries());
+        progress.put("scannedEntries", scan.getScannedEntries());
+        progress.put("corruptEntries", scan.getProblemCount(IntegrityScan.Problem.CORRUPT));
+        progress.put("legacyEntries", scan.getProblemCount(IntegrityScan.Problem.LEGACY));
+        progress.put("orphanedEntries", scan.getProblemCount(IntegrityScan.Problem.ORPHANED));
+        progress.put("compact", scan.isCompacting());
+        progress.put("compactedEntries", scan.getCompactedEntries());
+        progress.put("error", scan.getError() == null ? null : scan.getError().toString());
+        return progress;
+    }
+
+    /**
+     * A single low priority thread shared by every storage, so rotations and integrity scans
+     * never compete with the plugin worker for more than one core.
+     */
+    private static synchronized ExecutorService getRotationExecutor() {
+        if (rotationExecutor == null) {
+            rotationExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(() -> {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }, "fluttersecurestorage.rotation");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return rotationExecutor;
+    }
+
     private String addPrefixToKey(String key) {
         return preferencesKeyPrefix + "_" + key;
     }
 
+    private String originalKey(String key) {
+        return key.replaceFirst(preferencesKeyPrefix + "_", "");
+    }
+
+    private void putOwnEntries(Map<String, ?> entries, Map<String, String> result) {
+        for (Map.Entry<String, ?> entry : entries.entrySet()) {
+            String key = entry.getKey();
+            Object value = entry.getValue();
+            if (key.startsWith(preferencesKeyPrefix) && value instanceof String) {
+                result.put(originalKey(key), (String) value);
+            }
+        }
+    }
+
     private SharedPreferences getEncryptedSharedPreferences(boolean deleteOnFailure, Map<String, Object> options, Context context, String sharedPreferencesName) throws GeneralSecurityException, IOException {
         try {
             final SharedPreferences encryptedPreferences = initializeEncryptedSharedPreferencesManager(context, sharedPreferencesName);
+
+            InitReport.Phase readMigratedFlagPhase = initReport.begin(InitReport.PHASE_READ_MIGRATED_FLAG);
             boolean migrated = encryptedPreferences.getBoolean(PREF_KEY_MIGRATED, false);
+            readMigratedFlagPhase.end(1);
+
             if (!migrated) {
-                migrateToEncryptedPreferences(context, sharedPreferencesName, encryptedPreferences, deleteOnFailure, options);
+                InitReport.Phase migratePhase = initReport.begin(InitReport.PHASE_MIGRATE);
+                int processedEntries = migrateToEncryptedPreferences(context, sharedPreferencesName, encryptedPreferences, deleteOnFailure, options);
+                migratePhase.end(processedEntries);
+                // Entries that all failed to decrypt leave the storage as it was.
+                if (initReport.getMigratedEntries() > 0) {
+                    initReport.setPath(InitReport.Path.MIGRATED);
+                }
+            }
+            enableQuarantine(encryptedPreferences);
+
+            if (encryptedPreferences instanceof EncryptedSharedPreferences
+                    && ((EncryptedSharedPreferences) encryptedPreferences).isKeyRotationPending()) {
+                try {
+                    ((EncryptedSharedPreferences) encryptedPreferences).rotateKeys(getRotationExecutor());
+                } catch (GeneralSecurityException | IOException e) {
+                    // Entries stay readable under the previous keys, the next rotateKeys retries.
+                    Log.w(TAG, "Resuming the key rotation failed", e);
+                }
             }
             return encryptedPreferences;
         } catch (GeneralSecurityException | IOException e) {
+            initReport.setError(e);
 
             if (!deleteOnFailure) {
                 Log.w(TAG, "initialization failed, resetOnError false, so throwing exception.", e);
                 throw e;
             }
             Log.w(TAG, "initialization failed, resetting storage", e);
+            initReport.setPath(InitReport.Path.RESET_ON_ERROR);
 
-            context.getSharedPreferences(sharedPreferencesName, Context.MODE_PRIVATE).edit().clear().apply();
+            InitReport.Phase resetPhase = initReport.begin(InitReport.PHASE_RESET);
+            SharedPreferences preferences = context.getSharedPreferences(sharedPreferencesName, Context.MODE_PRIVATE);
+            int resetEntries = preferences.getAll().size();
+            preferences.edit().clear().apply();
+            resetPhase.end(resetEntries);
 
             try {
-                return initializeEncryptedSharedPreferencesManager(context, sharedPreferencesName);
+                SharedPreferences resetPreferences = initializeEncryptedSharedPreferencesManager(context, sharedPreferencesName);
+                enableQuarantine(resetPreferences);
+                return resetPreferences;
             } catch (Exception f) {
                 Log.e(TAG, "initialization after reset failed", f);
                 throw f;
@@ -130,56 +819,123 @@ public class FlutterSecureStorage {
     }
 
     private SharedPreferences initializeEncryptedSharedPreferencesManager(Context context, String sharedPreferencesName) throws GeneralSecurityException, IOException {
-        MasterKey masterKey = new MasterKey.Builder(context)
-                .setKeyGenParameterSpec(new KeyGenParameterSpec.Builder(
-                        MasterKey.DEFAULT_MASTER_KEY_ALIAS,
-                        KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
-                        .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
-                        .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
-                        .setKeySize(256)
-                        .build())
-                .build();
-
-        return EncryptedSharedPreferences.create(
-                context,
-                sharedPreferencesName,
-                masterKey,
-                EncryptedSharedPreferences.PrefKeyEncryptionScheme.AES256_SIV,
-                EncryptedSharedPreferences.PrefValueEncryptionScheme.AES256_GCM
-        );
-    }
-
-    private void migrateToEncryptedPreferences(Context context, String sharedPreferencesName, SharedPreferences target, boolean deleteOnFailure, Map<String, Object> options) {
+        InitReport.Phase buildMasterKeyPhase = initReport.begin(InitReport.PHASE_BUILD_MASTER_KEY);
+        MasterKey masterKey;
+        if (strongBoxMode == StrongBoxMode.DISABLED) {
+            masterKey = new MasterKey.Builder(context)
+                    .setKeyGenParameterSpec(new KeyGenParameterSpec.Builder(
+                            MasterKey.DEFAULT_MASTER_KEY_ALIAS,
+                            KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                            .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                            .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                            .setKeySize(256)
+                            .build())
+                    .build();
+        } else {
+            // Falls back to the TEE on devices without StrongBox.
+            masterKey = new MasterKey.Builder(context, STRONG_BOX_MASTER_KEY_ALIAS)
+                    .setKeyScheme(MasterKey.KeyScheme.AES256_GCM)
+                    .setRequestStrongBoxBacked(true)
+                    .build();
+        }
+        buildMasterKeyPhase.end(1);
+
+        // One keyset for the pref keys and one for the pref values.
+        InitReport.Phase loadKeysetsPhase = initReport.begin(InitReport.PHASE_LOAD_KEYSETS);
+        SharedPreferences preferences;
+        if (strongBoxMode == StrongBoxMode.ENVELOPE) {
+            preferences = EncryptedSharedPreferences.createWithEnvelope(
+                    context,
+                    sharedPreferencesName,
+                    masterKey,
+                    keyEncryptionScheme,
+                    valueEncryptionScheme
+            );
+        } else {
+            preferences = EncryptedSharedPreferences.create(
+                    context,
+                    sharedPreferencesName,
+                    masterKey,
+                    keyEncryptionScheme,
+                    valueEncryptionScheme
+            );
+        }
+        loadKeysetsPhase.end(2);
+        // The legacy entries share the file and are never decrypted by it.
+        ((EncryptedSharedPreferences) preferences).setEntryFilter(entryFilter);
+        ((EncryptedSharedPreferences) preferences).setValueCompression(compressValues);
+
+        // Moves the constant key prefix out of the encrypted keys, re-keying older files once.
+        InitReport.Phase setKeyPrefixPhase = initReport.begin(InitReport.PHASE_SET_KEY_PREFIX);
+        int rekeyedEntries = ((EncryptedSharedPreferences) preferences).setKeyPrefix(preferencesKeyPrefix + "_");
+        setKeyPrefixPhase.end(rekeyedEntries);
+        return preferences;
+    }
+
+    /**
+     * From here on a single undecryptable entry is moved aside instead of failing the reads, so
+     * only keyset failures reach the reset in getEncryptedSharedPreferences. Turned on once the
+     * legacy entries were migrated and the keys re-keyed, so neither can move an entry aside.
+     */
+    private void enableQuarantine(SharedPreferences preferences) {
+        if (!quarantineOnError) return;
+        ((EncryptedSharedPreferences) preferences).setQuarantineListener((encryptedKey, cause) -> {
+            quarantinedEntries.incrementAndGet();
+            Log.w(TAG, "Quarantined an entry that could not be decrypted", cause);
+        });
+    }
+
+    /**
+     * Moves entries written by the legacy storage ciphers into the encrypted preferences.
+     *
+     * The entries migrated and the ones that failed are recorded in the init report.
+     *
+     * @return the number of legacy entries that were processed, whether or not they migrated.
+     */
+    private int migrateToEncryptedPreferences(Context context, String sharedPreferencesName, SharedPreferences target, boolean deleteOnFailure, Map<String, Object> options) {
         SharedPreferences source = context.getSharedPreferences(sharedPreferencesName, Context.MODE_PRIVATE);
 
         Map<String, ?> sourceEntries = source.getAll();
-        if (sourceEntries.isEmpty()) return;
+        if (sourceEntries.isEmpty()) return 0;
 
         int succesfull = 0;
         int failed = 0;
 
         try {
+            int decrypted = 0;
             StorageCipher cipher = new StorageCipherFactory(source, options).getSavedStorageCipher(context);
 
+            // The migrated entries are encrypted together, in parallel, and written in one batch.
+            SharedPreferences.Editor targetEditor = target instanceof EncryptedSharedPreferences
+                    ? ((EncryptedSharedPreferences) target).editInBulk()
+                    : target.edit();
+            SharedPreferences.Editor sourceEditor = source.edit();
             for (Map.Entry<String, ?> entry : sourceEntries.entrySet()) {
                 String key = entry.getKey();
                 Object value = entry.getValue();
                 if (key.startsWith(preferencesKeyPrefix) && value instanceof String) {
                     try {
                         String decryptedValue = decryptValue((String) value, cipher);
-                        target.edit().putString(key, decryptedValue).apply();
-                        source.edit().remove(key).apply();
-                        succesfull++;
+                        targetEditor.putString(key, decryptedValue);
+                        sourceEditor.remove(key);
+                        decrypted++;
                     } catch (Exception e) {
                         Log.e(TAG, "Migration failed for key: " + key, e);
                         failed++;
 
                         if (deleteOnFailure) {
-                            source.edit().remove(key).apply();
+                            sourceEditor.remove(key);
                         }
                     }
                 }
             }
+            // The legacy entries are only removed once their migrated copies are stored. In bulk
+            // mode the entries are encrypted by this commit too, so they only count from here on.
+            if (!targetEditor.commit()) {
+                throw new IOException("Failed to store the migrated entries");
+            }
+            succesfull = decrypted;
+            sourceEditor.apply();
 
             if (succesfull > 0) {
                 Log.i(TAG, "Successfully migrated " + succesfull + " keys.");
@@ -195,6 +951,8 @@ public class FlutterSecureStorage {
 
         } catch(Exception e) {
             Log.e(TAG, "Migration failed due to initialisation error.", e);
+            // None of the entries not yet counted were migrated.
+            failed = countLegacyEntries(sourceEntries) - succesfull;
 
             // If a failure has occurred during StorageCipher initialization, set migrated to true
             // so migration is not run again
@@ -202,6 +960,18 @@ public class FlutterSecureStorage {
                 target.edit().putBoolean(PREF_KEY_MIGRATED, true).apply();
             }
         }
+        initReport.setMigrationResult(succesfull, failed);
+        return succesfull + failed;
+    }
+
+    private int countLegacyEntries(Map<String, ?> entries) {
+        int count = 0;
+        for (Map.Entry<String, ?> entry : entries.entrySet()) {
+            if (entry.getKey().startsWith(preferencesKeyPrefix) && entry.getValue() instanceof String) {
+                count++;
+            }
+        }
+        return count;
     }
 
     private String decryptValue(String value, StorageCipher cipher) throws Exception {
@@ -1,17 +1,27 @@
 package com.it_nomads.fluttersecurestorage;
 
+import android.content.Context;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Looper;
 
 import androidx.annotation.NonNull;
 
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.security.GeneralSecurityException;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import io.flutter.embedding.engine.plugins.FlutterPlugin;
+import io.flutter.plugin.common.EventChannel;
 import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
 import io.flutter.plugin.common.MethodChannel.MethodCallHandler;
@@ -19,20 +29,47 @@ import io.flutter.plugin.common.MethodChannel.Result;
 
 public class FlutterSecureStoragePlugin implements MethodCallHandler, FlutterPlugin {
 
+    private static final int DEFAULT_READ_ALL_CHUNK_SIZE = 100;
+
     private MethodChannel channel;
+    private EventChannel readAllChannel;
     private FlutterSecureStorage secureStorage;
+    private FlutterSecureStorage volatileStorage;
     private HandlerThread workerThread;
-    private Handler workerThreadHandler;
+    private Executor workerExecutor;
+    private Executor mainThreadExecutor;
+    private final StorageFactory storageFactory;
     private FlutterPluginBinding binding;
 
+    public FlutterSecureStoragePlugin() {
+        this(null, null, FlutterSecureStorage::new);
+    }
+
+    /**
+     * Creates a plugin that dispatches on the given executors instead of a {@link HandlerThread}
+     * and the main {@link Looper}, so it can be driven outside of an Android process.
+     */
+    FlutterSecureStoragePlugin(Executor workerExecutor, Executor mainThreadExecutor, StorageFactory storageFactory) {
+        this.workerExecutor = workerExecutor;
+        this.mainThreadExecutor = mainThreadExecutor;
+        this.storageFactory = storageFactory;
+    }
+
     @Override
     public void onAttachedToEngine(FlutterPluginBinding binding) {
         this.binding = binding;
-        workerThread = new HandlerThread("fluttersecurestorage.worker");
-        workerThread.start();
-        workerThreadHandler = new Handler(workerThread.getLooper());
+        if (workerExecutor == null) {
+            workerThread = new HandlerThread("fluttersecurestorage.worker");
+            workerThread.start();
+            workerExecutor = new Handler(workerThread.getLooper())::post;
+        }
+        if (mainThreadExecutor == null) {
+            mainThreadExecutor = new Handler(Looper.getMainLooper())::post;
+        }
         channel = new MethodChannel(binding.getBinaryMessenger(), "plugins.it_nomads.com/flutter_secure_storage");
         channel.setMethodCallHandler(this);
+        readAllChannel = new EventChannel(binding.getBinaryMessenger(), "plugins.it_nomads.com/flutter_secure_storage/readAll");
+        readAllChannel.setStreamHandler(new ReadAllStreamHandler());
     }
 
     @Override
@@ -41,19 +78,30 @@ public class FlutterSecureStoragePlugin implements MethodCallHandler, FlutterPlu
             if (workerThread != null) {
                 workerThread.quitSafely();
                 workerThread = null;
+                workerExecutor = null;
             }
             channel.setMethodCallHandler(null);
             channel = null;
+            readAllChannel.setStreamHandler(null);
+            readAllChannel = null;
         }
         secureStorage = null;
+        volatileStorage = null;
     }
 
-    private boolean initSecureStorage(Result result, Map<String, Object> options) {
-        if (secureStorage != null) return true;
+    private FlutterSecureStorage initSecureStorage(Result result, Map<String, Object> options) {
+        boolean isVolatile = FlutterSecureStorage.isVolatile(options);
+        FlutterSecureStorage storage = isVolatile ? volatileStorage : secureStorage;
+        if (storage != null) return storage;
 
         try {
-            secureStorage = new FlutterSecureStorage(binding.getApplicationContext(), options);
-            return true;
+            storage = storageFactory.create(binding.getApplicationContext(), options);
+            if (isVolatile) {
+                volatileStorage = storage;
+            } else {
+                secureStorage = storage;
+            }
+            return storage;
         } catch (Exception e) {
             if (result != null) {
                 result.error(
@@ -62,19 +110,20 @@ public class FlutterSecureStoragePlugin implements MethodCallHandler, FlutterPlu
                         e.toString()     // Details (stack trace or additional info)
                 );
             }
-            return false;
+            return null;
         }
     }
 
     @Override
     public void onMethodCall(@NonNull MethodCall call, @NonNull Result rawResult) {
-        MethodResultWrapper result = new MethodResultWrapper(rawResult);
-        workerThreadHandler.post(new MethodRunner(call, result));
+        MethodResultWrapper result = new MethodResultWrapper(rawResult, mainThreadExecutor);
+        workerExecutor.execute(new MethodRunner(call, result));
     }
 
     class MethodRunner implements Runnable {
         private final MethodCall call;
         private final Result result;
+        private FlutterSecureStorage storage;
 
         MethodRunner(MethodCall call, Result result) {
             this.call = call;
@@ -101,8 +150,8 @@ public class FlutterSecureStoragePlugin implements MethodCallHandler, FlutterPlu
 
             Map<String, Object> options = extractMapFromObject(arguments.get("options"));
 
-            boolean isInitialized = initSecureStorage(result, options);
-            if (!isInitialized) return;
+            storage = initSecureStorage(result, options);
+            if (storage == null) return;
 
             switch (method) {
                 case "write":
@@ -114,6 +163,48 @@ public class FlutterSecureStoragePlugin implements MethodCallHandler, FlutterPlu
                 case "readAll":
                     handleReadAll(result);
                     break;
+                case "readMany":
+                    handleReadMany(arguments, result);
+                    break;
+                case "readAllSince":
+                    handleReadAllSince(arguments, result);
+                    break;
+                case "readAllPage":
+                    handleReadAllPage(arguments, result);
+                    break;
+                case "readByPrefix":
+                    handleReadByPrefix(arguments, result);
+                    break;
+                case "deleteByPrefix":
+                    handleDeleteByPrefix(arguments, result);
+                    break;
+                case "readTyped":
+                    handleReadTyped(arguments, result);
+                    break;
+                case "writeTyped":
+                    handleWriteTyped(arguments, result);
+                    break;
+                case "hget":
+                    handleHashGet(arguments, result);
+                    break;
+                case "hgetall":
+                    handleHashGetAll(arguments, result);
+                    break;
+                case "hset":
+                    handleHashSet(arguments, result);
+                    break;
+                case "hdel":
+                    handleHashDelete(arguments, result);
+                    break;
+                case "transaction":
+                    handleTransaction(arguments, result);
+                    break;
+                case "compareAndSet":
+                    handleCompareAndSet(arguments, result);
+                    break;
+                case "incrementLong":
+                    handleIncrementLong(arguments, result);
+                    break;
                 case "containsKey":
                     handleContainsKey(arguments, result);
                     break;
@@ -123,6 +214,21 @@ public class FlutterSecureStoragePlugin implements MethodCallHandler, FlutterPlu
                 case "deleteAll":
                     handleDeleteAll(result);
                     break;
+                case "getInitReport":
+                    handleGetInitReport(result);
+                    break;
+                case "rotateKeys":
+                    handleRotateKeys(result);
+                    break;
+                case "getRotationProgress":
+                    handleGetRotationProgress(result);
+                    break;
+                case "scanIntegrity":
+                    handleScanIntegrity(arguments, result);
+                    break;
+                case "getIntegrityScanProgress":
+                    handleGetIntegrityScanProgress(result);
+                    break;
                 default:
                     result.notImplemented();
             }
@@ -132,7 +238,7 @@ public class FlutterSecureStoragePlugin implements MethodCallHandler, FlutterPlu
             String key = (String) args.get("key");
             String value = (String) args.get("value");
             if (value != null) {
-                secureStorage.write(key, value);
+                storage.write(key, value);
                 result.success(null);
             } else {
                 result.error("InvalidArgument", "Value is null", null);
@@ -141,35 +247,249 @@ public class FlutterSecureStoragePlugin implements MethodCallHandler, FlutterPlu
 
         private void handleRead(Map<String, Object> args, Result result) {
             String key = (String) args.get("key");
-            result.success(secureStorage.read(key));
+            result.success(storage.read(key));
         }
 
         private void handleReadAll(Result result) {
-            result.success(secureStorage.readAll());
+            result.success(storage.readAll());
+        }
+
+        @SuppressWarnings("unchecked")
+        private void handleReadMany(Map<String, Object> args, Result result) {
+            Object keys = args.get("keys");
+            if (keys instanceof List) {
+                result.success(storage.readMany((List<String>) keys));
+            } else {
+                result.error("InvalidArgument", "Keys are not a list", null);
+            }
+        }
+
+        private void handleReadAllSince(Map<String, Object> args, Result result) {
+            Object version = args.get("version");
+            if (version instanceof Number) {
+                result.success(storage.readAllSince(((Number) version).longValue()));
+            } else {
+                result.error("InvalidArgument", "Version is not a number", null);
+            }
+        }
+
+        private void handleReadAllPage(Map<String, Object> args, Result result) {
+            String cursor = (String) args.get("cursor");
+            Object limit = args.get("limit");
+            if (limit instanceof Integer && (Integer) limit > 0) {
+                result.success(storage.readAllPage(cursor, (Integer) limit));
+            } else {
+                result.error("InvalidArgument", "Limit must be a positive integer", null);
+            }
+        }
+
+        private void handleReadByPrefix(Map<String, Object> args, Result result) {
+            String prefix = (String) args.get("prefix");
+            if (prefix != null) {
+                result.success(storage.readByPrefix(prefix));
+            } else {
+                result.error("InvalidArgument", "Prefix is null", null);
+            }
+        }
+
+        private void handleDeleteByPrefix(Map<String, Object> args, Result result) {
+            String prefix = (String) args.get("prefix");
+            if (prefix == null) {
+                result.error("InvalidArgument", "Prefix is null", null);
+                return;
+            }
+            try {
+                result.success(storage.deleteByPrefix(prefix));
+            } catch (IOException e) {
+                result.error("DeleteFailed", e.getMessage(), e.toString());
+            }
+        }
+
+        private void handleReadTyped(Map<String, Object> args, Result result) {
+            String key = (String) args.get("key");
+            FlutterSecureStorage.ValueType type = valueType(args, result);
+            if (type != null) {
+                result.success(storage.readTyped(key, type));
+            }
+        }
+
+        private void handleWriteTyped(Map<String, Object> args, Result result) {
+            String key = (String) args.get("key");
+            FlutterSecureStorage.ValueType type = valueType(args, result);
+            if (type == null) return;
+            try {
+                storage.writeTyped(key, type, args.get("value"));
+                result.success(null);
+            } catch (IllegalArgumentException e) {
+                result.error("InvalidArgument", e.getMessage(), null);
+            }
+        }
+
+        /**
+         * Parses the type argument, answering the call with an error when it is not one of
+         * {@code int}, {@code long}, {@code double} or {@code bool}.
+         */
+        private FlutterSecureStorage.ValueType valueType(Map<String, Object> args, Result result) {
+            Object type = args.get("type");
+            if (type instanceof String) {
+                try {
+                    return FlutterSecureStorage.ValueType.valueOf(((String) type).toUpperCase(Locale.ROOT));
+                } catch (IllegalArgumentException ignored) {
+                    // Answered below.
+                }
+            }
+            result.error("InvalidArgument", "Unknown value type: " + type, null);
+            return null;
+        }
+
+        private void handleHashGet(Map<String, Object> args, Result result) {
+            String key = (String) args.get("key");
+            String field = (String) args.get("field");
+            if (field != null) {
+                result.success(storage.readField(key, field));
+            } else {
+                result.error("InvalidArgument", "Field is null", null);
+            }
+        }
+
+        private void handleHashGetAll(Map<String, Object> args, Result result) {
+            String key = (String) args.get("key");
+            result.success(storage.readFields(key));
+        }
+
+        @SuppressWarnings("unchecked")
+        private void handleHashSet(Map<String, Object> args, Result result) {
+            String key = (String) args.get("key");
+            Object fields = args.get("fields");
+            if (!(fields instanceof Map)) {
+                result.error("InvalidArgument", "Fields are not a map", null);
+                return;
+            }
+            if (storage.writeFields(key, (Map<String, String>) fields)) {
+                result.success(null);
+            } else {
+                result.error("WriteFailed", "Failed to write the fields of " + key, null);
+            }
+        }
+
+        private void handleHashDelete(Map<String, Object> args, Result result) {
+            String key = (String) args.get("key");
+            Object fields = args.get("fields");
+            if (fields == null) {
+                // Without fields the whole map goes, answered with the number of fields it had.
+                try {
+                    result.success(storage.deleteFields(key));
+                } catch (IOException e) {
+                    result.error("DeleteFailed", e.getMessage(), e.toString());
+                }
+                return;
+            }
+            if (!(fields instanceof List)) {
+                result.error("InvalidArgument", "Fields are not a list", null);
+                return;
+            }
+            Map<String, String> removals = new HashMap<>();
+            for (Object field : (List<?>) fields) {
+                removals.put((String) field, null);
+            }
+            if (storage.writeFields(key, removals)) {
+                result.success(null);
+            } else {
+                result.error("DeleteFailed", "Failed to delete the fields of " + key, null);
+            }
+        }
+
+        private void handleTransaction(Map<String, Object> args, Result result) {
+            Object operations = args.get("operations");
+            if (!(operations instanceof List)) {
+                result.error("InvalidArgument", "Operations are not a list", null);
+                return;
+            }
+            // The last operation on a key wins, as it would when applied one by one.
+            Map<String, String> changes = new LinkedHashMap<>();
+            for (Object operation : (List<?>) operations) {
+                Map<String, Object> change = extractMapFromObject(operation);
+                String key = (String) change.get("key");
+                if (key == null) {
+                    result.error("InvalidArgument", "Operation without a key", null);
+                    return;
+                }
+                changes.put(key, (String) change.get("value"));
+            }
+            if (storage.transaction(changes)) {
+                result.success(null);
+            } else {
+                result.error("TransactionFailed", "Failed to commit the transaction", null);
+            }
+        }
+
+        private void handleCompareAndSet(Map<String, Object> args, Result result) {
+            String key = (String) args.get("key");
+            String expected = (String) args.get("expected");
+            String value = (String) args.get("value");
+            result.success(storage.compareAndSet(key, expected, value));
+        }
+
+        private void handleIncrementLong(Map<String, Object> args, Result result) {
+            String key = (String) args.get("key");
+            Object delta = args.get("delta");
+            if (!(delta instanceof Number)) {
+                result.error("InvalidArgument", "Delta is not a number", null);
+                return;
+            }
+            try {
+                result.success(storage.incrementLong(key, ((Number) delta).longValue()));
+            } catch (IllegalStateException e) {
+                result.error("InvalidArgument", e.getMessage(), null);
+            } catch (IOException e) {
+                result.error("WriteFailed", e.getMessage(), e.toString());
+            }
         }
 
         private void handleContainsKey(Map<String, Object> args, Result result) {
             String key = (String) args.get("key");
-            result.success(secureStorage.containsKey(key));
+            result.success(storage.containsKey(key));
         }
 
         private void handleDelete(Map<String, Object> args, Result result) {
             String key = (String) args.get("key");
-            secureStorage.delete(key);
+            storage.delete(key);
             result.success(null);
         }
 
         private void handleDeleteAll(Result result) {
-            secureStorage.deleteAll();
+            storage.deleteAll();
             result.success(null);
         }
 
-        @SuppressWarnings("unchecked")
-        private Map<String, Object> extractMapFromObject(Object object) {
-            if (!(object instanceof Map)) {
-                return new HashMap<>();
+        private void handleGetInitReport(Result result) {
+            result.success(storage.getInitReport());
+        }
+
+        private void handleRotateKeys(Result result) {
+            try {
+                storage.rotateKeys();
+                result.success(storage.getRotationProgress());
+            } catch (GeneralSecurityException | IOException e) {
+                result.error("RotationFailed", e.getMessage(), e.toString());
+            }
+        }
+
+        private void handleGetRotationProgress(Result result) {
+            result.success(storage.getRotationProgress());
+        }
+
+        private void handleScanIntegrity(Map<String, Object> args, Result result) {
+            try {
+                storage.scanIntegrity(Boolean.TRUE.equals(args.get("compact")));
+                result.success(storage.getIntegrityScanProgress());
+            } catch (GeneralSecurityException e) {
+                result.error("ScanFailed", e.getMessage(), e.toString());
             }
-            return (Map<String, Object>) object;
+        }
+
+        private void handleGetIntegrityScanProgress(Result result) {
+            result.success(storage.getIntegrityScanProgress());
         }
 
         private void handleException(Exception e) {
@@ -179,27 +499,125 @@ public class FlutterSecureStoragePlugin implements MethodCallHandler, FlutterPlu
         }
     }
 
+    /**
+     * Streams the entries of readAll in chunks. Each chunk is decrypted in its own task on the
+     * worker, queued once the engine has the previous one, so method calls made while a large
+     * store streams are answered in between and native memory holds a single chunk of decrypted
+     * entries.
+     */
+    class ReadAllStreamHandler implements EventChannel.StreamHandler {
+        // Set and cleared on the main thread, read by the worker streaming for that listener.
+        private AtomicBoolean cancelled;
+
+        @Override
+        public void onListen(Object arguments, EventChannel.EventSink events) {
+            AtomicBoolean cancelled = new AtomicBoolean();
+            this.cancelled = cancelled;
+            Executor worker = workerExecutor;
+            worker.execute(() -> stream(extractMapFromObject(arguments), events, cancelled, worker));
+        }
+
+        @Override
+        public void onCancel(Object arguments) {
+            if (cancelled != null) {
+                cancelled.set(true);
+                cancelled = null;
+            }
+        }
+
+        private void stream(Map<String, Object> arguments, EventChannel.EventSink events, AtomicBoolean cancelled, Executor worker) {
+            Object chunkSizeArgument = arguments.get("chunkSize");
+            int chunkSize = chunkSizeArgument instanceof Integer && (Integer) chunkSizeArgument > 0
+                    ? (Integer) chunkSizeArgument
+                    : DEFAULT_READ_ALL_CHUNK_SIZE;
+            FlutterSecureStorage storage = initSecureStorage(null, extractMapFromObject(arguments.get("options")));
+            if (storage == null) {
+                mainThreadExecutor.execute(() -> events.error("RESET_FAILED", "Failed to reset and initialize encrypted preferences", null));
+                return;
+            }
+            Iterator<Map<String, String>> chunks;
+            try {
+                chunks = storage.readAllInChunks(chunkSize);
+            } catch (Exception e) {
+                sendError(events, e);
+                return;
+            }
+            sendNextChunk(chunks, events, cancelled, worker);
+        }
+
+        private void sendNextChunk(Iterator<Map<String, String>> chunks, EventChannel.EventSink events, AtomicBoolean cancelled, Executor worker) {
+            if (cancelled.get()) return;
+            Map<String, String> chunk = null;
+            try {
+                while (chunk == null && chunks.hasNext()) {
+                    Map<String, String> next = chunks.next();
+                    if (!next.isEmpty()) {
+                        chunk = next;
+                    }
+                }
+            } catch (Exception e) {
+                sendError(events, e);
+                return;
+            }
+            if (chunk == null) {
+                mainThreadExecutor.execute(() -> {
+                    if (!cancelled.get()) {
+                        events.endOfStream();
+                    }
+                });
+                return;
+            }
+            Map<String, String> decrypted = chunk;
+            mainThreadExecutor.execute(() -> {
+                if (cancelled.get()) return;
+                events.success(decrypted);
+                // Behind the method calls that arrived while this chunk was decrypted.
+                worker.execute(() -> sendNextChunk(chunks, events, cancelled, worker));
+            });
+        }
+
+        private void sendError(EventChannel.EventSink events, Exception e) {
+            StringWriter stringWriter = new StringWriter();
+            e.printStackTrace(new PrintWriter(stringWriter));
+            mainThreadExecutor.execute(() -> events.error("Exception", "Error while streaming readAll", stringWriter.toString()));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> extractMapFromObject(Object object) {
+        if (!(object instanceof Map)) {
+            return new HashMap<>();
+        }
+        return (Map<String, Object>) object;
+    }
+
+    @FunctionalInterface
+    interface StorageFactory {
+        FlutterSecureStorage create(Context context, Map<String, Object> options) throws Exception;
+    }
+
     static class MethodResultWrapper implements Result {
         private final Result methodResult;
-        private final Handler handler = new Handler(Looper.getMainLooper());
+        private final Executor mainThreadExecutor;
 
-        MethodResultWrapper(Result methodResult) {
+        MethodResultWrapper(Result methodResult, Executor mainThreadExecutor) {
             this.methodResult = methodResult;
+            this.mainThreadExecutor = mainThreadExecutor;
         }
 
         @Override
         public void success(final Object result) {
-            handler.post(() -> methodResult.success(result));
+            mainThreadExecutor.execute(() -> methodResult.success(result));
         }
 
         @Override
         public void error(@NonNull final String errorCode, final String errorMessage, final Object errorDetails) {
-            handler.post(() -> methodResult.error(errorCode, errorMessage, errorDetails));
+            mainThreadExecutor.execute(() -> methodResult.error(errorCode, errorMessage, errorDetails));
         }
 
         @Override
         public void notImplemented() {
-            handler.post(methodResult::notImplemented);
+            mainThreadExecutor.execute(methodResult::notImplemented);
         }
     }
 }
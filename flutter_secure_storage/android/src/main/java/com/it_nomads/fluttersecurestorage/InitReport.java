@@ -0,0 +1,128 @@
+package com.it_nomads.fluttersecurestorage;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Timeline of a single {@link FlutterSecureStorage} initialization.
+ * <p>
+ * Each phase records its offset from the start of initialization, its duration and the number
+ * of entries it touched, so slow cold starts can be correlated with the state of the device.
+ */
+class InitReport {
+
+    enum Path {
+        /** Storage opened without migrating any entry. */
+        CLEAN,
+        /** At least one entry was migrated from the legacy storage ciphers. */
+        MIGRATED,
+        /** Initialization failed and the storage was reset. */
+        RESET_ON_ERROR
+    }
+
+    static final String PHASE_PARSE_OPTIONS = "parseOptions";
+    static final String PHASE_BUILD_MASTER_KEY = "buildMasterKey";
+    static final String PHASE_LOAD_KEYSETS = "loadKeysets";
+    static final String PHASE_SET_KEY_PREFIX = "setKeyPrefix";
+    static final String PHASE_READ_MIGRATED_FLAG = "readMigratedFlag";
+    static final String PHASE_MIGRATE = "migrate";
+    static final String PHASE_RESET = "reset";
+    static final String PHASE_OPEN_VOLATILE = "openVolatile";
+
+    private final long startNanos = System.nanoTime();
+    private final List<Phase> phases = new ArrayList<>();
+    @NonNull
+    private Path path = Path.CLEAN;
+    private long endNanos = -1;
+    private String error;
+    private int migratedEntries;
+    private int failedMigrations;
+
+    Phase begin(String name) {
+        Phase phase = new Phase(name, System.nanoTime() - startNanos);
+        phases.add(phase);
+        return phase;
+    }
+
+    void setPath(@NonNull Path path) {
+        this.path = path;
+    }
+
+    @NonNull
+    Path getPath() {
+        return path;
+    }
+
+    /**
+     * Records the outcome of the legacy migration: the entries moved, and apart from them the
+     * ones that could not be decrypted.
+     */
+    void setMigrationResult(int migratedEntries, int failedMigrations) {
+        this.migratedEntries = migratedEntries;
+        this.failedMigrations = failedMigrations;
+    }
+
+    int getMigratedEntries() {
+        return migratedEntries;
+    }
+
+    void setError(Exception e) {
+        error = e.toString();
+    }
+
+    void finish() {
+        endNanos = System.nanoTime();
+    }
+
+    Map<String, Object> toMap() {
+        List<Map<String, Object>> phaseMaps = new ArrayList<>(phases.size());
+        for (Phase phase : phases) {
+            phaseMaps.add(phase.toMap());
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("path", path.name());
+        result.put("totalMicros", endNanos < 0 ? -1L : (endNanos - startNanos) / 1000);
+        result.put("phases", phaseMaps);
+        result.put("error", error);
+        result.put("migratedEntries", migratedEntries);
+        result.put("failedMigrations", failedMigrations);
+        return result;
+    }
+
+    static class Phase {
+        private final String name;
+        private final long offsetNanos;
+        private final long startedAtNanos = System.nanoTime();
+        private long durationNanos = -1;
+        private int entries;
+
+        private Phase(String name, long offsetNanos) {
+            this.name = name;
+            this.offsetNanos = offsetNanos;
+        }
+
+        /**
+         * Marks the phase as finished.
+         *
+         * @param entries the number of entries this phase read, wrote or removed.
+         */
+        void end(int entries) {
+            this.entries = entries;
+            durationNanos = System.nanoTime() - startedAtNanos;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> result = new HashMap<>();
+            result.put("name", name);
+            result.put("offsetMicros", offsetNanos / 1000);
+            result.put("durationMicros", durationNanos < 0 ? -1L : durationNanos / 1000);
+            result.put("entries", entries);
+            return result;
+        }
+    }
+}
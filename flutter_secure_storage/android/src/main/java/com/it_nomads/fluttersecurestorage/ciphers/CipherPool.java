@@ -0,0 +1,44 @@
+package com.it_nomads.fluttersecurestorage.ciphers;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.crypto.Cipher;
+
+/**
+ * Pool of {@link Cipher} instances, which are not thread-safe, so one storage cipher can be
+ * used from several threads at once. A cipher is created when none is idle, and at most
+ * {@code maxIdle} ciphers are kept for reuse.
+ */
+class CipherPool {
+
+    @FunctionalInterface
+    interface CipherSupplier {
+        Cipher get() throws Exception;
+    }
+
+    private final CipherSupplier supplier;
+    private final BlockingQueue<Cipher> idle;
+
+    CipherPool(CipherSupplier supplier) {
+        this(supplier, Runtime.getRuntime().availableProcessors());
+    }
+
+    CipherPool(CipherSupplier supplier, int maxIdle) {
+        this.supplier = supplier;
+        this.idle = new ArrayBlockingQueue<>(Math.max(1, maxIdle));
+    }
+
+    Cipher acquire() throws Exception {
+        Cipher cipher = idle.poll();
+        return cipher != null ? cipher : supplier.get();
+    }
+
+    /**
+     * Returns a cipher to the pool. Every use initializes the cipher again, so it may be
+     * returned after a failed operation.
+     */
+    void release(Cipher cipher) {
+        idle.offer(cipher);
+    }
+}
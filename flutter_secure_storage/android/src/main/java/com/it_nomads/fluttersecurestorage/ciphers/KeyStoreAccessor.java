@@ -0,0 +1,171 @@
+package com.it_nomads.fluttersecurestorage.ciphers;
+
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.PublicKey;
+import java.security.Security;
+import java.security.cert.Certificate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Cipher;
+
+/**
+ * Process-wide access to the Android Keystore for the key ciphers.
+ * <p>
+ * Every Keystore call is a Binder transaction to the keystore daemon, so the Keystore is loaded
+ * once, and the key handles and the cipher providers are cached and reused across wraps and
+ * unwraps. The number and duration of the calls are recorded and reported by {@link #getStats()}.
+ */
+public final class KeyStoreAccessor {
+
+    private static final String KEYSTORE_PROVIDER_ANDROID = "AndroidKeyStore";
+    private static final KeyStoreAccessor INSTANCE = new KeyStoreAccessor();
+
+    enum Operation {
+        LOAD_KEYSTORE("loadKeyStore"),
+        GET_KEY("getKey"),
+        GET_CERTIFICATE("getCertificate"),
+        GET_CIPHER("getCipher");
+
+        private final String statName;
+
+        Operation(String statName) {
+            this.statName = statName;
+        }
+    }
+
+    private final Map<String, PrivateKey> privateKeys = new ConcurrentHashMap<>();
+    private final Map<String, PublicKey> publicKeys = new ConcurrentHashMap<>();
+    private final Map<String, Provider> cipherProviders = new ConcurrentHashMap<>();
+    private final AtomicLong[] callCounts = new AtomicLong[Operation.values().length];
+    private final AtomicLong[] callNanos = new AtomicLong[Operation.values().length];
+    private final AtomicLong cacheHits = new AtomicLong();
+    private KeyStore keyStore;
+
+    private KeyStoreAccessor() {
+        for (int i = 0; i < callCounts.length; i++) {
+            callCounts[i] = new AtomicLong();
+            callNanos[i] = new AtomicLong();
+        }
+    }
+
+    public static KeyStoreAccessor getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the private key stored under the alias, or null if there is none.
+     */
+    PrivateKey getPrivateKey(String alias) throws Exception {
+        PrivateKey cached = privateKeys.get(alias);
+        if (cached != null) {
+            cacheHits.incrementAndGet();
+            return cached;
+        }
+
+        KeyStore ks = getKeyStore();
+        long start = System.nanoTime();
+        Key key = ks.getKey(alias, null);
+        record(Operation.GET_KEY, start);
+
+        if (key == null) {
+            return null;
+        }
+        if (!(key instanceof PrivateKey)) {
+            throw new Exception("Not an instance of a PrivateKey");
+        }
+        privateKeys.put(alias, (PrivateKey) key);
+        return (PrivateKey) key;
+    }
+
+    /**
+     * Returns the public key of the certificate stored under the alias, or null if there is none.
+     */
+    PublicKey getPublicKey(String alias) throws Exception {
+        PublicKey cached = publicKeys.get(alias);
+        if (cached != null) {
+            cacheHits.incrementAndGet();
+            return cached;
+        }
+
+        KeyStore ks = getKeyStore();
+        long start = System.nanoTime();
+        Certificate cert = ks.getCertificate(alias);
+        record(Operation.GET_CERTIFICATE, start);
+
+        if (cert == null) {
+            return null;
+        }
+        PublicKey key = cert.getPublicKey();
+        if (key != null) {
+            publicKeys.put(alias, key);
+        }
+        return key;
+    }
+
+    /**
+     * Creates a cipher from a cached provider, skipping the provider lookup by name.
+     */
+    Cipher getCipher(String transformation, String providerName) throws Exception {
+        long start = System.nanoTime();
+        try {
+            Provider provider = cipherProviders.get(providerName);
+            if (provider == null) {
+                provider = Security.getProvider(providerName);
+                if (provider == null) {
+                    // Let the lookup by name report the missing provider.
+                    return Cipher.getInstance(transformation, providerName);
+                }
+                cipherProviders.put(providerName, provider);
+            }
+            return Cipher.getInstance(transformation, provider);
+        } finally {
+            record(Operation.GET_CIPHER, start);
+        }
+    }
+
+    /**
+     * Drops the cached handles of the alias, after its keys were created or failed to be used.
+     */
+    void invalidate(String alias) {
+        privateKeys.remove(alias);
+        publicKeys.remove(alias);
+    }
+
+    /**
+     * Number of calls and total time in microseconds per Keystore operation since the process
+     * started, and the number of lookups answered from the cache.
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        for (Operation operation : Operation.values()) {
+            Map<String, Object> operationStats = new HashMap<>();
+            operationStats.put("calls", callCounts[operation.ordinal()].get());
+            operationStats.put("totalMicros", callNanos[operation.ordinal()].get() / 1000);
+            stats.put(operation.statName, operationStats);
+        }
+        stats.put("cacheHits", cacheHits.get());
+        return stats;
+    }
+
+    private synchronized KeyStore getKeyStore() throws Exception {
+        if (keyStore == null) {
+            long start = System.nanoTime();
+            KeyStore ks = KeyStore.getInstance(KEYSTORE_PROVIDER_ANDROID);
+            ks.load(null);
+            record(Operation.LOAD_KEYSTORE, start);
+            keyStore = ks;
+        }
+        return keyStore;
+    }
+
+    private void record(Operation operation, long startNanos) {
+        callCounts[operation.ordinal()].incrementAndGet();
+        callNanos[operation.ordinal()].addAndGet(System.nanoTime() - startNanos);
+    }
+}
@@ -11,10 +11,8 @@ import androidx.annotation.RequiresApi;
 import java.math.BigInteger;
 import java.security.Key;
 import java.security.KeyPairGenerator;
-import java.security.KeyStore;
 import java.security.PrivateKey;
 import java.security.PublicKey;
-import java.security.cert.Certificate;
 import java.security.spec.AlgorithmParameterSpec;
 import java.util.Calendar;
 import java.util.Locale;
@@ -28,6 +26,7 @@ class RSACipher18Implementation implements KeyCipher {
     private static final String TYPE_RSA = "RSA";
     protected final String keyAlias;
     protected final Context context;
+    protected final KeyStoreAccessor keyStoreAccessor = KeyStoreAccessor.getInstance();
 
 
     public RSACipher18Implementation(Context context) throws Exception {
@@ -42,50 +41,46 @@ class RSACipher18Implementation implements KeyCipher {
 
     @Override
     public byte[] wrap(Key key) throws Exception {
-        PublicKey publicKey = getPublicKey();
-        Cipher cipher = getRSACipher();
-        cipher.init(Cipher.WRAP_MODE, publicKey, getAlgorithmParameterSpec());
-
-        return cipher.wrap(key);
+        try {
+            PublicKey publicKey = getPublicKey();
+            Cipher cipher = getRSACipher();
+            cipher.init(Cipher.WRAP_MODE, publicKey, getAlgorithmParameterSpec());
+
+            return cipher.wrap(key);
+        } catch (Exception e) {
+            // The cached handle may refer to a key that was invalidated, look it up again next time.
+            keyStoreAccessor.invalidate(keyAlias);
+            throw e;
+        }
     }
 
     @Override
     public Key unwrap(byte[] wrappedKey, String algorithm) throws Exception {
-        PrivateKey privateKey = getPrivateKey();
-        Cipher cipher = getRSACipher();
-        cipher.init(Cipher.UNWRAP_MODE, privateKey, getAlgorithmParameterSpec());
-
-        return cipher.unwrap(wrappedKey, algorithm, Cipher.SECRET_KEY);
+        try {
+            PrivateKey privateKey = getPrivateKey();
+            Cipher cipher = getRSACipher();
+            cipher.init(Cipher.UNWRAP_MODE, privateKey, getAlgorithmParameterSpec());
+
+            return cipher.unwrap(wrappedKey, algorithm, Cipher.SECRET_KEY);
+        } catch (Exception e) {
+            keyStoreAccessor.invalidate(keyAlias);
+            throw e;
+        }
     }
 
     private PrivateKey getPrivateKey() throws Exception {
-        KeyStore ks = KeyStore.getInstance(KEYSTORE_PROVIDER_ANDROID);
-        ks.load(null);
-
-        Key key = ks.getKey(keyAlias, null);
+        PrivateKey key = keyStoreAccessor.getPrivateKey(keyAlias);
         if (key == null) {
             throw new Exception("No key found under alias: " + keyAlias);
         }
 
-        if (!(key instanceof PrivateKey)) {
-            throw new Exception("Not an instance of a PrivateKey");
-        }
-
-        return (PrivateKey) key;
+        return key;
     }
 
     private PublicKey getPublicKey() throws Exception {
-        KeyStore ks = KeyStore.getInstance(KEYSTORE_PROVIDER_ANDROID);
-        ks.load(null);
-
-        Certificate cert = ks.getCertificate(keyAlias);
-        if (cert == null) {
-            throw new Exception("No certificate found under alias: " + keyAlias);
-        }
-
-        PublicKey key = cert.getPublicKey();
+        PublicKey key = keyStoreAccessor.getPublicKey(keyAlias);
         if (key == null) {
-            throw new Exception("No key found under alias: " + keyAlias);
+            throw new Exception("No certificate found under alias: " + keyAlias);
         }
 
         return key;
@@ -93,9 +88,9 @@ class RSACipher18Implementation implements KeyCipher {
 
     protected Cipher getRSACipher() throws Exception {
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
-            return Cipher.getInstance("RSA/ECB/PKCS1Padding", "AndroidOpenSSL"); // error in android 6: InvalidKeyException: Need RSA private or public key
+            return keyStoreAccessor.getCipher("RSA/ECB/PKCS1Padding", "AndroidOpenSSL"); // error in android 6: InvalidKeyException: Need RSA private or public key
         } else {
-            return Cipher.getInstance("RSA/ECB/PKCS1Padding", "AndroidKeyStoreBCWorkaround"); // error in android 5: NoSuchProviderException: Provider not available: AndroidKeyStoreBCWorkaround
+            return keyStoreAccessor.getCipher("RSA/ECB/PKCS1Padding", "AndroidKeyStoreBCWorkaround"); // error in android 5: NoSuchProviderException: Provider not available: AndroidKeyStoreBCWorkaround
         }
     }
 
@@ -104,12 +99,10 @@ class RSACipher18Implementation implements KeyCipher {
     }
 
     private void createRSAKeysIfNeeded(Context context) throws Exception {
-        KeyStore ks = KeyStore.getInstance(KEYSTORE_PROVIDER_ANDROID);
-        ks.load(null);
-
-        Key privateKey = ks.getKey(keyAlias, null);
+        PrivateKey privateKey = keyStoreAccessor.getPrivateKey(keyAlias);
         if (privateKey == null) {
             createKeys(context);
+            keyStoreAccessor.invalidate(keyAlias);
         }
     }
 
@@ -1,7 +1,40 @@
 package com.it_nomads.fluttersecurestorage.ciphers;
 
+import java.nio.ByteBuffer;
+
 public interface StorageCipher {
     byte[] encrypt(byte[] input) throws Exception;
 
     byte[] decrypt(byte[] input) throws Exception;
+
+    /**
+     * Encrypts the remaining bytes of {@code input} and writes the IV followed by the cipher text
+     * to {@code output}, without intermediate copies.
+     *
+     * @return the number of bytes written to {@code output}.
+     * @throws javax.crypto.ShortBufferException when {@code output} has less room than
+     *                                           {@link #getEncryptOutputSize(int)}, in which case
+     *                                           neither buffer is modified.
+     */
+    int encrypt(ByteBuffer input, ByteBuffer output) throws Exception;
+
+    /**
+     * Decrypts the remaining bytes of {@code input}, an IV followed by the cipher text, into
+     * {@code output}. The IV is read in place when {@code input} is backed by an array.
+     *
+     * @return the number of bytes written to {@code output}.
+     */
+    int decrypt(ByteBuffer input, ByteBuffer output) throws Exception;
+
+    /**
+     * The maximum number of bytes {@link #encrypt(ByteBuffer, ByteBuffer)} writes for the given
+     * plain text length.
+     */
+    int getEncryptOutputSize(int inputLength);
+
+    /**
+     * The maximum number of bytes {@link #decrypt(ByteBuffer, ByteBuffer)} writes for the given
+     * input length, IV included.
+     */
+    int getDecryptOutputSize(int inputLength);
 }
@@ -5,11 +5,15 @@ import android.content.SharedPreferences;
 import android.util.Base64;
 import android.util.Log;
 
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
 import java.security.Key;
 import java.security.SecureRandom;
 import java.security.spec.AlgorithmParameterSpec;
+import java.util.Arrays;
 
 import javax.crypto.Cipher;
+import javax.crypto.ShortBufferException;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
@@ -17,12 +21,20 @@ public class StorageCipher18Implementation implements StorageCipher {
     private static final int keySize = 16;
     private static final String KEY_ALGORITHM = "AES";
     private static final String SHARED_PREFERENCES_NAME = "FlutterSecureKeyStorage";
-    private final Cipher cipher;
+    private static final int MAX_PADDING_OR_TAG_SIZE = 16;
+    private final CipherPool cipherPool;
     private final SecureRandom secureRandom;
-    private Key secretKey;
+    private final Key secretKey;
 
     public StorageCipher18Implementation(Context context, KeyCipher rsaCipher) throws Exception {
         secureRandom = new SecureRandom();
+        cipherPool = new CipherPool(this::getCipher);
+        cipherPool.release(getCipher());
+        // Final, so the key is visible to every thread the cipher is shared with.
+        secretKey = getOrCreateSecretKey(context, rsaCipher);
+    }
+
+    private Key getOrCreateSecretKey(Context context, KeyCipher rsaCipher) throws Exception {
         String aesPreferencesKey = getAESPreferencesKey();
 
         SharedPreferences preferences = context.getSharedPreferences(SHARED_PREFERENCES_NAME, Context.MODE_PRIVATE);
@@ -30,14 +42,11 @@ public class StorageCipher18Implementation implements StorageCipher {
 
         String aesKey = preferences.getString(aesPreferencesKey, null);
 
-        cipher = getCipher();
-
         if (aesKey != null) {
             byte[] encrypted;
             try {
                 encrypted = Base64.decode(aesKey, Base64.DEFAULT);
-                secretKey = rsaCipher.unwrap(encrypted, KEY_ALGORITHM);
-                return;
+                return rsaCipher.unwrap(encrypted, KEY_ALGORITHM);
             } catch (Exception e) {
                 Log.e("StorageCipher18Impl", "unwrap key failed", e);
             }
@@ -45,11 +54,12 @@ public class StorageCipher18Implementation implements StorageCipher {
 
         byte[] key = new byte[keySize];
         secureRandom.nextBytes(key);
-        secretKey = new SecretKeySpec(key, KEY_ALGORITHM);
+        Key secretKey = new SecretKeySpec(key, KEY_ALGORITHM);
 
         byte[] encryptedKey = rsaCipher.wrap(secretKey);
         editor.putString(aesPreferencesKey, Base64.encodeToString(encryptedKey, Base64.DEFAULT));
         editor.apply();
+        return secretKey;
     }
 
     protected String getAESPreferencesKey() {
@@ -62,43 +72,106 @@ public class StorageCipher18Implementation implements StorageCipher {
 
     @Override
     public byte[] encrypt(byte[] input) throws Exception {
-        byte[] iv = new byte[getIvSize()];
-        secureRandom.nextBytes(iv);
+        byte[] iv = newIv();
+        Cipher cipher = cipherPool.acquire();
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, secretKey, getParameterSpec(iv, 0, iv.length));
+
+            byte[] combined = new byte[iv.length + cipher.getOutputSize(input.length)];
+            System.arraycopy(iv, 0, combined, 0, iv.length);
+            int payloadSize = cipher.doFinal(input, 0, input.length, combined, iv.length);
+
+            int combinedSize = iv.length + payloadSize;
+            return combinedSize == combined.length ? combined : Arrays.copyOf(combined, combinedSize);
+        } finally {
+            cipherPool.release(cipher);
+        }
+    }
 
-        AlgorithmParameterSpec ivParameterSpec = getParameterSpec(iv);
+    @Override
+    public byte[] decrypt(byte[] input) throws Exception {
+        int ivSize = getIvSize();
+        checkInputLength(input.length, ivSize);
+        Cipher cipher = cipherPool.acquire();
+        try {
+            cipher.init(Cipher.DECRYPT_MODE, secretKey, getParameterSpec(input, 0, ivSize));
+
+            return cipher.doFinal(input, ivSize, input.length - ivSize);
+        } finally {
+            cipherPool.release(cipher);
+        }
+    }
 
-        cipher.init(Cipher.ENCRYPT_MODE, secretKey, ivParameterSpec);
+    @Override
+    public int encrypt(ByteBuffer input, ByteBuffer output) throws Exception {
+        byte[] iv = newIv();
+        Cipher cipher = cipherPool.acquire();
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, secretKey, getParameterSpec(iv, 0, iv.length));
+
+            if (output.remaining() < iv.length + cipher.getOutputSize(input.remaining())) {
+                throw new ShortBufferException("Output buffer too small for IV and cipher text");
+            }
+            output.put(iv);
+            return iv.length + cipher.doFinal(input, output);
+        } finally {
+            cipherPool.release(cipher);
+        }
+    }
 
-        byte[] payload = cipher.doFinal(input);
-        byte[] combined = new byte[iv.length + payload.length];
+    @Override
+    public int decrypt(ByteBuffer input, ByteBuffer output) throws Exception {
+        int ivSize = getIvSize();
+        checkInputLength(input.remaining(), ivSize);
+
+        AlgorithmParameterSpec parameterSpec;
+        if (input.hasArray()) {
+            parameterSpec = getParameterSpec(input.array(), input.arrayOffset() + input.position(), ivSize);
+            input.position(input.position() + ivSize);
+        } else {
+            byte[] iv = new byte[ivSize];
+            input.get(iv);
+            parameterSpec = getParameterSpec(iv, 0, ivSize);
+        }
 
-        System.arraycopy(iv, 0, combined, 0, iv.length);
-        System.arraycopy(payload, 0, combined, iv.length, payload.length);
+        Cipher cipher = cipherPool.acquire();
+        try {
+            cipher.init(Cipher.DECRYPT_MODE, secretKey, parameterSpec);
 
-        return combined;
+            return cipher.doFinal(input, output);
+        } finally {
+            cipherPool.release(cipher);
+        }
     }
 
     @Override
-    public byte[] decrypt(byte[] input) throws Exception {
-        byte[] iv = new byte[getIvSize()];
-        System.arraycopy(input, 0, iv, 0, iv.length);
-        AlgorithmParameterSpec ivParameterSpec = getParameterSpec(iv);
+    public int getEncryptOutputSize(int inputLength) {
+        return getIvSize() + inputLength + MAX_PADDING_OR_TAG_SIZE;
+    }
 
-        int payloadSize = input.length - getIvSize();
-        byte[] payload = new byte[payloadSize];
-        System.arraycopy(input, iv.length, payload, 0, payloadSize);
+    @Override
+    public int getDecryptOutputSize(int inputLength) {
+        return Math.max(0, inputLength - getIvSize());
+    }
 
-        cipher.init(Cipher.DECRYPT_MODE, secretKey, ivParameterSpec);
+    private byte[] newIv() {
+        byte[] iv = new byte[getIvSize()];
+        secureRandom.nextBytes(iv);
+        return iv;
+    }
 
-        return cipher.doFinal(payload);
+    private static void checkInputLength(int inputLength, int ivSize) throws GeneralSecurityException {
+        if (inputLength < ivSize) {
+            throw new GeneralSecurityException("Input of " + inputLength + " bytes is shorter than the IV");
+        }
     }
 
     protected int getIvSize() {
         return 16;
     }
 
-    protected AlgorithmParameterSpec getParameterSpec(byte[] iv) {
-        return new IvParameterSpec(iv);
+    protected AlgorithmParameterSpec getParameterSpec(byte[] iv, int offset, int length) {
+        return new IvParameterSpec(iv, offset, length);
     }
 
 }
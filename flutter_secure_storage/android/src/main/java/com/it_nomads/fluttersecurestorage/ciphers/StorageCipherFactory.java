@@ -69,6 +69,13 @@ public class StorageCipherFactory {
         return value != null ? value.toString() : defaultValue;
     }
 
+    /**
+     * Whether the key is one the chosen algorithms are stored under, next to the entries.
+     */
+    public static boolean isAlgorithmKey(String key) {
+        return key.startsWith(ELEMENT_PREFERENCES_ALGORITHM_PREFIX);
+    }
+
     public boolean requiresReEncryption() {
         return savedKeyAlgorithm != currentKeyAlgorithm || savedStorageAlgorithm != currentStorageAlgorithm;
     }
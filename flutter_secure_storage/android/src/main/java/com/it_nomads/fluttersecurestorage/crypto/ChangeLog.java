@@ -0,0 +1,155 @@
+package com.it_nomads.fluttersecurestorage.crypto;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+/**
+ * The keys written or removed by the recent commits of an {@link EncryptedSharedPreferences},
+ * each with the version of its last change, so a reader that has seen one version can catch up
+ * without decrypting every entry.
+ *
+ * <p>Every commit raises the version by one. At most {@link #MAX_KEYS} keys are kept, dropping
+ * the ones changed longest ago; the log then only covers the changes after the version of the
+ * last dropped key, and older readers have to read everything again. A new log starts at the
+ * current time in microseconds rather than at 0, so versions keep rising when the storage is
+ * reset and the log starts over.
+ */
+final class ChangeLog {
+    // The log is rewritten with every commit once kept, so it is kept to a few kilobytes.
+    static final int MAX_KEYS = 256;
+    private static final byte FORMAT = 1;
+    private long mVersion;
+    // Changes after this version are all in the log.
+    private long mStartVersion;
+    // In the order of their last change, the oldest first.
+    private final LinkedHashMap<String, Long> mKeys = new LinkedHashMap<>();
+    private ChangeLog(long version, long startVersion) {
+        mVersion = version;
+        mStartVersion = startVersion;
+    }
+    @NonNull
+    static ChangeLog create() {
+        long version = System.currentTimeMillis() * 1000;
+        return new ChangeLog(version, version);
+    }
+    long getVersion() {
+        return mVersion;
+    }
+    /**
+     * A copy to record a commit in, which replaces this log once the commit is stored.
+     */
+    @NonNull
+    ChangeLog copy() {
+        ChangeLog copy = new ChangeLog(mVersion, mStartVersion);
+        copy.mKeys.putAll(mKeys);
+        return copy;
+    }
+    /**
+     * Records a commit.
+     *
+     * @param keys the keys the commit wrote or removed, NULL_VALUE standing for null.
+     */
+    void record(@NonNull Collection<String> keys) {
+        mVersion++;
+        for (String key : keys) {
+            // Removed first so the key moves to the end, as the latest change.
+            mKeys.remove(key);
+            mKeys.put(key, mVersion);
+        }
+        Iterator<Map.Entry<String, Long>> oldest = mKeys.entrySet().iterator();
+        while (mKeys.size() > MAX_KEYS) {
+            mStartVersion = Math.max(mStartVersion, oldest.next().getValue());
+            oldest.remove();
+        }
+    }
+    /**
+     * Drops every key after a commit that removed entries whose keys are not known, so only
+     * readers of the current version can catch up from the log.
+     */
+    void dropKeys() {
+        mStartVersion = mVersion;
+        mKeys.clear();
+    }
+    /**
+     * Returns the keys changed after the given version, or null when the log does not reach back
+     * that far, or the version is from before the log started over.
+     */
+    @Nullable
+    List<String> keysChangedSince(long version) {
+        if (version < mStartVersion || version > mVersion) {
+            return null;
+        }
+        List<String> keys = new ArrayList<>();
+        for (Map.Entry<String, Long> change : mKeys.entrySet()) {
+            if (change.getValue() > version) {
+                keys.add(change.getKey());
+            }
+        }
+        return keys;
+    }
+    /**
+     * @param keyPrefix the start most keys share, which is then stored once; may be empty.
+     */
+    @NonNull
+    byte[] encode(@NonNull String keyPrefix) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream output = new DataOutputStream(bytes);
+            output.writeByte(FORMAT);
+            output.writeLong(mVersion);
+            output.writeLong(mStartVersion);
+            writeString(output, keyPrefix);
+            output.writeInt(mKeys.size());
+            for (Map.Entry<String, Long> change : mKeys.entrySet()) {
+                String key = change.getKey();
+                boolean prefixed = !keyPrefix.isEmpty() && key.startsWith(keyPrefix);
+                output.writeBoolean(prefixed);
+                writeString(output, prefixed ? key.substring(keyPrefix.length()) : key);
+                output.writeLong(change.getValue());
+            }
+            return bytes.toByteArray();
+        } catch (IOException ex) {
+            throw new SecurityException("Could not encode the change log: " + ex.getMessage(), ex);
+        }
+    }
+    /**
+     * @throws IOException when the log is malformed.
+     */
+    @NonNull
+    static ChangeLog decode(@NonNull byte[] encoded) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(encoded));
+        if (input.readByte() != FORMAT) {
+            throw new IOException("Unknown change log format");
+        }
+        ChangeLog log = new ChangeLog(input.readLong(), input.readLong());
+        String keyPrefix = readString(input);
+        int count = input.readInt();
+        for (int i = 0; i < count; i++) {
+            boolean prefixed = input.readBoolean();
+            String key = readString(input);
+            log.mKeys.put(prefixed ? keyPrefix + key : key, input.readLong());
+        }
+        return log;
+    }
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+    private static String readString(DataInputStream input) throws IOException {
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
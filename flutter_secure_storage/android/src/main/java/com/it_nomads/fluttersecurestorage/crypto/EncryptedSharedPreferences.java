@@ -28,21 +28,40 @@ import com.google.crypto.tink.DeterministicAead;
 import com.google.crypto.tink.KeyTemplate;
 import com.google.crypto.tink.KeyTemplates;
 import com.google.crypto.tink.KeysetHandle;
+import com.google.crypto.tink.KeysetManager;
+import com.google.crypto.tink.Mac;
+import com.google.crypto.tink.Parameters;
 import com.google.crypto.tink.RegistryConfiguration;
+import com.google.crypto.tink.TinkProtoKeysetFormat;
 import com.google.crypto.tink.aead.AeadConfig;
 import com.google.crypto.tink.daead.DeterministicAeadConfig;
 import com.google.crypto.tink.integration.android.AndroidKeysetManager;
+import com.google.crypto.tink.mac.MacConfig;
 import com.google.crypto.tink.subtle.Base64;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 /**
  * An implementation of {@link SharedPreferences} that encrypts keys and values.
  * <br />
@@ -72,34 +91,122 @@ import java.util.concurrent.atomic.AtomicBoolean;
  *  SharedPreferences.Editor editor = sharedPreferences.edit();
  * </pre>
  */
-public final class EncryptedSharedPreferences implements SharedPreferences {
+public final class EncryptedSharedPreferences implements TypedSharedPreferences {
     private static final String KEY_KEYSET_ALIAS =
             "__androidx_security_crypto_encrypted_prefs_key_keyset__";
     private static final String VALUE_KEYSET_ALIAS =
             "__androidx_security_crypto_encrypted_prefs_value_keyset__";
-    private static final String NULL_VALUE = "__NULL__";
+    private static final String ENVELOPE_DATA_KEY_ALIAS =
+            "__flutter_secure_storage_envelope_data_key__";
+    private static final String ENVELOPE_KEY_KEYSET_ALIAS =
+            "__flutter_secure_storage_envelope_key_keyset__";
+    private static final String ENVELOPE_VALUE_KEYSET_ALIAS =
+            "__flutter_secure_storage_envelope_value_keyset__";
+    private static final String KEY_MAC_KEYSET_ALIAS =
+            "__flutter_secure_storage_key_mac_keyset__";
+    private static final String ENVELOPE_KEY_MAC_KEYSET_ALIAS =
+            "__flutter_secure_storage_envelope_key_mac_keyset__";
+    private static final String KEY_ROTATION_ALIAS =
+            "__flutter_secure_storage_key_rotation__";
+    private static final String KEY_PREFIX_ALIAS =
+            "__flutter_secure_storage_key_prefix__";
+    private static final String CHANGE_LOG_ALIAS =
+            "__flutter_secure_storage_change_log__";
+    // Followed by the encrypted key of an entry that could not be decrypted.
+    private static final String QUARANTINE_KEY_PREFIX =
+            "__flutter_secure_storage_quarantine__";
+    static final String NULL_VALUE = "__NULL__";
+    // Starts the keys of the fields of map entries, which no string key written by the plugin does.
+    private static final char FIELD_KEY_MARK = '\u0000';
     
     private static final Integer integerBytes = 4; // 32 / 8
-    private static final Integer longBytes = 8; // 64 / 8
-    private static final Integer floatBytes = 4; // 32 / 8
     private static final Integer byteBytes = 1;
+    private static final int ENCRYPTED_KEY_CACHE_SIZE = 256;
+    // Bulk commits and scans of fewer entries run on the calling thread.
+    private static final int PARALLEL_THRESHOLD = 32;
+    private static final int PARALLEL_CHUNK_SIZE = 16;
+    @Nullable
+    private static ForkJoinPool sCryptoPool;
     
     final SharedPreferences mSharedPreferences;
     final CopyOnWriteArrayList<OnSharedPreferenceChangeListener> mListeners;
     final String mFileName;
     final String mMasterKeyAlias;
-    final Aead mValueAead;
-    final DeterministicAead mKeyDeterministicAead;
+    volatile Aead mValueAead;
+    // Guarded by mWriteLock, loaded on first use.
+    @Nullable
+    ChangeLog mChangeLog;
+    // Set in quarantine mode.
+    @Nullable
+    private volatile QuarantineListener mQuarantineListener;
+    // Tells the entries other writers left in the file, which are skipped instead of quarantined.
+    @Nullable
+    private volatile IntegrityScan.EntryFilter mEntryFilter;
+    // Off by default, see setValueCompression.
+    private volatile boolean mCompressValues;
+    // Guarded by mWriteLock, -1 until counted or when writes may have changed it.
+    private int mQuarantinedCount = -1;
+    // Exactly one of these is set, depending on the PrefKeyEncryptionScheme.
+    @Nullable
+    volatile DeterministicAead mKeyDeterministicAead;
+    @Nullable
+    volatile Mac mKeyMac;
+    // Set while a key rotation is pending, to find the entries that were not moved yet.
+    @Nullable
+    volatile DeterministicAead mPreviousKeyDeterministicAead;
+    @Nullable
+    volatile Mac mPreviousKeyMac;
+    volatile int mValuePrimaryKeyId;
+    // Keys starting with it are encrypted without it, it is part of the associated data instead.
+    @Nullable
+    volatile KeyPrefix mKeyPrefix;
+    final byte[] mFileNameBytes;
+    // Recently used keys and their encrypted keys, replaced when the key primitive or prefix
+    // changes.
+    private volatile ConcurrentHashMap<String, EncryptedKey> mEncryptedKeys =
+            new ConcurrentHashMap<>();
+    // Held by editors and key rotation while they write; reads never take it.
+    final ReentrantLock mWriteLock = new ReentrantLock();
+    // Null when the keysets were not loaded through create, they can not be rotated then.
+    @Nullable
+    private KeysetStore mKeysetStore;
+    private String mKeyKeysetAlias;
+    private String mValueKeysetAlias;
+    private PrefKeyEncryptionScheme mKeyScheme;
+    private PrefValueEncryptionScheme mValueScheme;
+    // Whether the value scheme is picked again by PrefValueSchemeSelector with each rotation.
+    private boolean mAutoValueScheme;
+    @Nullable
+    private KeyRotation mKeyRotation;
+    @Nullable
+    private IntegrityScan mIntegrityScan;
     EncryptedSharedPreferences(@NonNull String name,
                                @NonNull String masterKeyAlias,
                                @NonNull SharedPreferences sharedPreferences,
                                @NonNull Aead aead,
                                @NonNull DeterministicAead deterministicAead) {
+        this(name, masterKeyAlias, sharedPreferences, aead, deterministicAead, null);
+    }
+    EncryptedSharedPreferences(@NonNull String name,
+                               @NonNull String masterKeyAlias,
+                               @NonNull SharedPreferences sharedPreferences,
+                               @NonNull Aead aead,
+                               @NonNull Mac mac) {
+        this(name, masterKeyAlias, sharedPreferences, aead, null, mac);
+    }
+    private EncryptedSharedPreferences(@NonNull String name,
+                                       @NonNull String masterKeyAlias,
+                                       @NonNull SharedPreferences sharedPreferences,
+                                       @NonNull Aead aead,
+                                       @Nullable DeterministicAead deterministicAead,
+                                       @Nullable Mac mac) {
         mFileName = name;
+        mFileNameBytes = name.getBytes(UTF_8);
         mSharedPreferences = sharedPreferences;
         mMasterKeyAlias = masterKeyAlias;
         mValueAead = aead;
         mKeyDeterministicAead = deterministicAead;
+        mKeyMac = mac;
         mListeners = new CopyOnWriteArrayList<>();
     }
     /**
@@ -109,7 +216,10 @@ public final class EncryptedSharedPreferences implements SharedPreferences {
      *                                  separators.
      * @param masterKey                 The master key to use.
      * @param prefKeyEncryptionScheme   The scheme to use for encrypting keys.
-     * @param prefValueEncryptionScheme The scheme to use for encrypting values.
+     * @param prefValueEncryptionScheme The scheme to use for encrypting values, or null to let
+     *                                  {@link PrefValueSchemeSelector} pick the fastest one for a
+     *                                  new file. A file that exists keeps its scheme until its
+     *                                  keys are rotated.
      * @return The SharedPreferences instance that encrypts all data.
      * @throws GeneralSecurityException when a bad master key or keyset has been attempted
      * @throws IOException              when fileName can not be used
@@ -119,7 +229,7 @@ public final class EncryptedSharedPreferences implements SharedPreferences {
                                            @NonNull String fileName,
                                            @NonNull MasterKey masterKey,
                                            @NonNull PrefKeyEncryptionScheme prefKeyEncryptionScheme,
-                                           @NonNull PrefValueEncryptionScheme prefValueEncryptionScheme)
+                                           @Nullable PrefValueEncryptionScheme prefValueEncryptionScheme)
             throws GeneralSecurityException, IOException {
         return create(fileName, masterKey.getKeyAlias(), context,
                 prefKeyEncryptionScheme, prefValueEncryptionScheme);
@@ -136,7 +246,10 @@ public final class EncryptedSharedPreferences implements SharedPreferences {
      * @param masterKeyAlias            The alias of the master key to use.
      * @param context                   The context to use to open the preferences file.
      * @param prefKeyEncryptionScheme   The scheme to use for encrypting keys.
-     * @param prefValueEncryptionScheme The scheme to use for encrypting values.
+     * @param prefValueEncryptionScheme The scheme to use for encrypting values, or null to let
+     *                                  {@link PrefValueSchemeSelector} pick the fastest one for a
+     *                                  new file. A file that exists keeps its scheme until its
+     *                                  keys are rotated.
      * @return The SharedPreferences instance that encrypts all data.
      * @throws GeneralSecurityException when a bad master key or keyset has been attempted
      * @throws IOException              when fileName can not be used
@@ -146,26 +259,770 @@ public final class EncryptedSharedPreferences implements SharedPreferences {
                                            @NonNull String masterKeyAlias,
                                            @NonNull Context context,
                                            @NonNull PrefKeyEncryptionScheme prefKeyEncryptionScheme,
-                                           @NonNull PrefValueEncryptionScheme prefValueEncryptionScheme)
+                                           @Nullable PrefValueEncryptionScheme prefValueEncryptionScheme)
+            throws GeneralSecurityException, IOException {
+        DeterministicAeadConfig.register();
+        AeadConfig.register();
+        MacConfig.register();
+        final Context applicationContext = context.getApplicationContext();
+        return open(fileName, masterKeyAlias,
+                applicationContext.getSharedPreferences(fileName, Context.MODE_PRIVATE),
+                prefKeyEncryptionScheme, prefValueEncryptionScheme,
+                KEY_KEYSET_ALIAS, KEY_MAC_KEYSET_ALIAS, VALUE_KEYSET_ALIAS,
+                new KeystoreKeysetStore(applicationContext, fileName, masterKeyAlias));
+    }
+    /**
+     * Opens an instance of encrypted SharedPreferences whose keysets are encrypted with a software
+     * data key instead of the master key.
+     *
+     * <p>The data key is stored in the file, wrapped by the master key, and is unwrapped once per
+     * process. This keeps the keysets rooted in a hardware key, such as a StrongBox backed one,
+     * without paying its latency every time the file is opened. Files created this way can only
+     * be opened with this method.
+     *
+     * @param fileName                  The name of the file to open; can not contain path
+     *                                  separators.
+     * @param masterKey                 The master key that wraps the data key.
+     * @param prefKeyEncryptionScheme   The scheme to use for encrypting keys.
+     * @param prefValueEncryptionScheme The scheme to use for encrypting values, or null to let
+     *                                  {@link PrefValueSchemeSelector} pick the fastest one for a
+     *                                  new file. A file that exists keeps its scheme until its
+     *                                  keys are rotated.
+     * @return The SharedPreferences instance that encrypts all data.
+     * @throws GeneralSecurityException when a bad master key or keyset has been attempted
+     * @throws IOException              when fileName can not be used
+     */
+    @NonNull
+    public static SharedPreferences createWithEnvelope(@NonNull Context context,
+                                                       @NonNull String fileName,
+                                                       @NonNull MasterKey masterKey,
+                                                       @NonNull PrefKeyEncryptionScheme prefKeyEncryptionScheme,
+                                                       @Nullable PrefValueEncryptionScheme prefValueEncryptionScheme)
             throws GeneralSecurityException, IOException {
         DeterministicAeadConfig.register();
         AeadConfig.register();
+        MacConfig.register();
         final Context applicationContext = context.getApplicationContext();
-        KeysetHandle daeadKeysetHandle = new AndroidKeysetManager.Builder()
-                .withKeyTemplate(prefKeyEncryptionScheme.getKeyTemplate())
-                .withSharedPref(applicationContext, KEY_KEYSET_ALIAS, fileName)
-                .withMasterKeyUri(KEYSTORE_PATH_URI + masterKeyAlias)
-                .build().getKeysetHandle();
-        KeysetHandle aeadKeysetHandle = new AndroidKeysetManager.Builder()
-                .withKeyTemplate(prefValueEncryptionScheme.getKeyTemplate())
-                .withSharedPref(applicationContext, VALUE_KEYSET_ALIAS, fileName)
-                .withMasterKeyUri(KEYSTORE_PATH_URI + masterKeyAlias)
-                .build().getKeysetHandle();
-        DeterministicAead daead = daeadKeysetHandle.getPrimitive(RegistryConfiguration.get(), DeterministicAead.class);
+        SharedPreferences sharedPreferences =
+                applicationContext.getSharedPreferences(fileName, Context.MODE_PRIVATE);
+        Aead dataKey = EnvelopeDataKeys.getOrCreate(sharedPreferences, ENVELOPE_DATA_KEY_ALIAS,
+                masterKey.getKeyAlias(), fileName);
+        return open(fileName, masterKey.getKeyAlias(), sharedPreferences,
+                prefKeyEncryptionScheme, prefValueEncryptionScheme,
+                ENVELOPE_KEY_KEYSET_ALIAS, ENVELOPE_KEY_MAC_KEYSET_ALIAS, ENVELOPE_VALUE_KEYSET_ALIAS,
+                new EnvelopeKeysetStore(sharedPreferences, dataKey));
+    }
+    /**
+     * Opens the file the way {@link #createWithEnvelope} does once the data key is unwrapped, so
+     * the JVM tests can open files without the Android Keystore.
+     */
+    @NonNull
+    static EncryptedSharedPreferences openWithDataKey(@NonNull String fileName,
+                                                      @NonNull SharedPreferences sharedPreferences,
+                                                      @NonNull Aead dataKey,
+                                                      @NonNull PrefKeyEncryptionScheme prefKeyEncryptionScheme,
+                                                      @Nullable PrefValueEncryptionScheme prefValueEncryptionScheme)
+            throws GeneralSecurityException, IOException {
+        DeterministicAeadConfig.register();
+        AeadConfig.register();
+        MacConfig.register();
+        return open(fileName, MasterKey.DEFAULT_MASTER_KEY_ALIAS, sharedPreferences,
+                prefKeyEncryptionScheme, prefValueEncryptionScheme,
+                ENVELOPE_KEY_KEYSET_ALIAS, ENVELOPE_KEY_MAC_KEYSET_ALIAS, ENVELOPE_VALUE_KEYSET_ALIAS,
+                new EnvelopeKeysetStore(sharedPreferences, dataKey));
+    }
+    /**
+     * Loads the keysets and builds the instance.
+     *
+     * <p>When the value scheme differs from the one of the primary value key, a key for the new
+     * scheme is added and made primary. Values written before keep decrypting with their own key,
+     * which Tink finds by the key ID every cipher text starts with. Without a value scheme an
+     * existing keyset is kept as it is, so picking a scheme never adds keys that only a rotation
+     * removes; the picked scheme is used for the keys of the next rotation instead. When the keys
+     * are hashed and the file still has an AES256_SIV keyset, the existing entries are moved to
+     * hashed keys, under the key prefix stored in the file. When some of them can not be moved the
+     * file is opened with its AES256_SIV keys instead, and the migration is tried again the next
+     * time it is opened.
+     */
+    private static EncryptedSharedPreferences open(@NonNull String fileName,
+                                                   @NonNull String masterKeyAlias,
+                                                   @NonNull SharedPreferences sharedPreferences,
+                                                   @NonNull PrefKeyEncryptionScheme prefKeyEncryptionScheme,
+                                                   @Nullable PrefValueEncryptionScheme prefValueEncryptionScheme,
+                                                   @NonNull String keyKeysetAlias,
+                                                   @NonNull String keyMacKeysetAlias,
+                                                   @NonNull String valueKeysetAlias,
+                                                   @NonNull KeysetStore keysetStore)
+            throws GeneralSecurityException, IOException {
+        boolean autoValueScheme = prefValueEncryptionScheme == null;
+        KeysetHandle aeadKeysetHandle;
+        if (autoValueScheme && sharedPreferences.contains(valueKeysetAlias)) {
+            aeadKeysetHandle = keysetStore.load(valueKeysetAlias,
+                    PrefValueEncryptionScheme.AES256_GCM.getKeyTemplate());
+            prefValueEncryptionScheme = PrefValueEncryptionScheme.of(aeadKeysetHandle);
+        } else {
+            if (autoValueScheme) {
+                prefValueEncryptionScheme = PrefValueSchemeSelector.select();
+            }
+            KeyTemplate valueKeyTemplate = prefValueEncryptionScheme.getKeyTemplate();
+            aeadKeysetHandle = keysetStore.load(valueKeysetAlias, valueKeyTemplate);
+            if (!aeadKeysetHandle.getPrimary().getKey().getParameters()
+                    .equals(valueKeyTemplate.toParameters())) {
+                aeadKeysetHandle = keysetStore.addPrimary(valueKeysetAlias, valueKeyTemplate);
+            }
+        }
         Aead aead = aeadKeysetHandle.getPrimitive(RegistryConfiguration.get(), Aead.class);
-        return new EncryptedSharedPreferences(fileName, masterKeyAlias,
-                applicationContext.getSharedPreferences(fileName, Context.MODE_PRIVATE), aead,
-                daead);
+        String storedKeyPrefix = sharedPreferences.getString(KEY_PREFIX_ALIAS, null);
+        if (prefKeyEncryptionScheme == PrefKeyEncryptionScheme.AES256_SIV) {
+            KeysetHandle daeadKeysetHandle = keysetStore.load(keyKeysetAlias,
+                    prefKeyEncryptionScheme.getKeyTemplate());
+            DeterministicAead daead = daeadKeysetHandle
+                    .getPrimitive(RegistryConfiguration.get(), DeterministicAead.class);
+            EncryptedSharedPreferences preferences = new EncryptedSharedPreferences(fileName,
+                    masterKeyAlias, sharedPreferences, aead, daead);
+            preferences.applyKeyPrefix(storedKeyPrefix);
+            preferences.attachKeysets(keysetStore, keyKeysetAlias, prefKeyEncryptionScheme,
+                    daeadKeysetHandle, valueKeysetAlias, prefValueEncryptionScheme,
+                    autoValueScheme, aeadKeysetHandle);
+            return preferences;
+        }
+        KeysetHandle macKeysetHandle = keysetStore.load(keyMacKeysetAlias,
+                prefKeyEncryptionScheme.getKeyTemplate());
+        Mac mac = macKeysetHandle.getPrimitive(RegistryConfiguration.get(), Mac.class);
+        EncryptedSharedPreferences preferences = new EncryptedSharedPreferences(fileName,
+                masterKeyAlias, sharedPreferences, aead, mac);
+        preferences.applyKeyPrefix(storedKeyPrefix);
+        if (sharedPreferences.contains(keyKeysetAlias)) {
+            KeysetHandle daeadKeysetHandle = keysetStore.load(keyKeysetAlias,
+                    PrefKeyEncryptionScheme.AES256_SIV.getKeyTemplate());
+            DeterministicAead daead = daeadKeysetHandle
+                    .getPrimitive(RegistryConfiguration.get(), DeterministicAead.class);
+            EncryptedSharedPreferences previous = new EncryptedSharedPreferences(fileName,
+                    masterKeyAlias, sharedPreferences, aead, daead);
+            previous.applyKeyPrefix(storedKeyPrefix);
+            if (!preferences.migrateKeysFrom(previous, keyKeysetAlias)) {
+                previous.attachKeysets(keysetStore, keyKeysetAlias,
+                        PrefKeyEncryptionScheme.AES256_SIV, daeadKeysetHandle, valueKeysetAlias,
+                        prefValueEncryptionScheme, autoValueScheme, aeadKeysetHandle);
+                return previous;
+            }
+        }
+        preferences.attachKeysets(keysetStore, keyMacKeysetAlias, prefKeyEncryptionScheme,
+                macKeysetHandle, valueKeysetAlias, prefValueEncryptionScheme, autoValueScheme,
+                aeadKeysetHandle);
+        return preferences;
+    }
+    /**
+     * Remembers where the keysets live so they can be rotated, and picks up a rotation that was
+     * interrupted by the end of the process.
+     */
+    private void attachKeysets(@NonNull KeysetStore keysetStore,
+                               @NonNull String keyKeysetAlias,
+                               @NonNull PrefKeyEncryptionScheme keyScheme,
+                               @NonNull KeysetHandle keyKeysetHandle,
+                               @NonNull String valueKeysetAlias,
+                               @NonNull PrefValueEncryptionScheme valueScheme,
+                               boolean autoValueScheme,
+                               @NonNull KeysetHandle valueKeysetHandle)
+            throws GeneralSecurityException {
+        mKeysetStore = keysetStore;
+        mKeyKeysetAlias = keyKeysetAlias;
+        mKeyScheme = keyScheme;
+        mValueKeysetAlias = valueKeysetAlias;
+        mValueScheme = valueScheme;
+        mAutoValueScheme = autoValueScheme;
+        mValuePrimaryKeyId = valueKeysetHandle.getPrimary().getId();
+        String previousKeyId = mSharedPreferences.getString(KEY_ROTATION_ALIAS, null);
+        if (previousKeyId != null) {
+            try {
+                setPreviousKeyPrimitive(KeysetManager.withKeysetHandle(keyKeysetHandle)
+                        .setPrimary(Integer.parseInt(previousKeyId))
+                        .getKeysetHandle());
+            } catch (GeneralSecurityException | NumberFormatException ex) {
+                // The previous key is gone, the rotation had already moved every entry.
+                mSharedPreferences.edit().remove(KEY_ROTATION_ALIAS).apply();
+            }
+        }
+    }
+    /**
+     * Adds a new primary key to the key and value keysets and starts moving the entries to them
+     * on the given executor.
+     *
+     * <p>New writes use the new keys right away. Reads find entries under either key and move the
+     * ones they hit when no writer is busy; the rest is moved in throttled batches. When a
+     * rotation is already pending, for example because the process ended before it finished, it
+     * is resumed instead of starting another one.
+     *
+     * @return the rotation, to follow its progress.
+     * @throws GeneralSecurityException when the keysets can not be rotated
+     * @throws IOException              when the new keys can not be stored
+     */
+    @NonNull
+    public synchronized KeyRotation rotateKeys(@NonNull Executor executor)
+            throws GeneralSecurityException, IOException {
+        if (mKeysetStore == null) {
+            throw new GeneralSecurityException("The keysets of " + mFileName + " can not be rotated");
+        }
+        if (!isKeyRotationPending()) {
+            KeysetHandle previousKeyKeysetHandle = mKeysetStore.load(mKeyKeysetAlias,
+                    mKeyScheme.getKeyTemplate());
+            // Stored first, so an interrupted rotation is resumed with the right previous key.
+            if (!mSharedPreferences.edit().putString(KEY_ROTATION_ALIAS,
+                    String.valueOf(previousKeyKeysetHandle.getPrimary().getId())).commit()) {
+                throw new IOException("Failed to store the key rotation of " + mFileName);
+            }
+            KeysetHandle keyKeysetHandle = mKeysetStore.addPrimary(mKeyKeysetAlias,
+                    mKeyScheme.getKeyTemplate());
+            if (mAutoValueScheme) {
+                // Switched here, where the keys of the previous scheme are removed at the end.
+                mValueScheme = PrefValueSchemeSelector.select();
+            }
+            KeysetHandle valueKeysetHandle = mKeysetStore.addPrimary(mValueKeysetAlias,
+                    mValueScheme.getKeyTemplate());
+            mWriteLock.lock();
+            try {
+                // The previous key has to be visible before lookups switch to the new one.
+                setPreviousKeyPrimitive(previousKeyKeysetHandle);
+                if (mKeyMac != null) {
+                    mKeyMac = keyKeysetHandle.getPrimitive(RegistryConfiguration.get(), Mac.class);
+                } else {
+                    mKeyDeterministicAead = keyKeysetHandle.getPrimitive(
+                            RegistryConfiguration.get(), DeterministicAead.class);
+                }
+                mValueAead = valueKeysetHandle.getPrimitive(RegistryConfiguration.get(), Aead.class);
+                mValuePrimaryKeyId = valueKeysetHandle.getPrimary().getId();
+                mEncryptedKeys = new ConcurrentHashMap<>();
+            } finally {
+                mWriteLock.unlock();
+            }
+        } else if (mKeyRotation != null && !mKeyRotation.isFinished()) {
+            return mKeyRotation;
+        }
+        mKeyRotation = new KeyRotation(this);
+        executor.execute(mKeyRotation);
+        return mKeyRotation;
+    }
+    /**
+     * Whether a key rotation started and has not moved every entry yet.
+     */
+    public boolean isKeyRotationPending() {
+        return mSharedPreferences.contains(KEY_ROTATION_ALIAS);
+    }
+    /**
+     * The last rotation started by this instance, or null.
+     */
+    @Nullable
+    public synchronized KeyRotation getKeyRotation() {
+        return mKeyRotation;
+    }
+    /**
+     * Starts checking every entry on the given executor, in short time slices, unless a scan is
+     * already running, which is returned instead.
+     *
+     * @param filter  tells leftovers of other writers from the entries in use; without it only
+     *                corrupt entries are found.
+     * @param compact whether to remove the entries found, in one commit once all are checked.
+     * @return the scan, to follow its progress.
+     */
+    @NonNull
+    public synchronized IntegrityScan scanIntegrity(@NonNull Executor executor,
+            @Nullable IntegrityScan.EntryFilter filter, boolean compact) {
+        if (mIntegrityScan != null && !mIntegrityScan.isFinished()) {
+            return mIntegrityScan;
+        }
+        mIntegrityScan = new IntegrityScan(this, filter, compact);
+        executor.execute(mIntegrityScan);
+        return mIntegrityScan;
+    }
+    /**
+     * The last integrity scan started by this instance, or null.
+     */
+    @Nullable
+    public synchronized IntegrityScan getIntegrityScan() {
+        return mIntegrityScan;
+    }
+    /**
+     * Checks a stored entry for {@link IntegrityScan}, decrypting its value and key into bytes
+     * that are wiped before returning. Keys are decoded only when the filter has to see them.
+     *
+     * @param orphanedKeys receives the decrypted key of an orphaned entry, when it has one.
+     * @return what is wrong with the entry, or null when nothing is.
+     */
+    @Nullable
+    IntegrityScan.Problem verifyEntry(@NonNull String storedKey, @NonNull Object storedValue,
+            @Nullable IntegrityScan.EntryFilter filter, @NonNull Map<String, String> orphanedKeys) {
+        if (isQuarantinedKey(storedKey)) {
+            return IntegrityScan.Problem.CORRUPT;
+        }
+        if (!(storedValue instanceof String)) {
+            // Every value written by these preferences is a string.
+            return IntegrityScan.Problem.LEGACY;
+        }
+        byte[] plainText = null;
+        byte[] keyBytes = null;
+        try {
+            // The value is bound to the stored key, so this also finds keys that were altered.
+            plainText = decryptValue(storedKey.getBytes(UTF_8), (String) storedValue);
+            KeyPrefix keyPrefix = mKeyPrefix;
+            String key;
+            if (mKeyMac != null) {
+                key = ValueEnvelope.decodeKey(plainText, keyPrefix != null ? keyPrefix.mValue : null);
+                // Hashed under another prefix when the key does not hash to where it is stored.
+                String previousEncryptedKey = encryptPreviousKey(key);
+                if (!storedKey.equals(encryptKey(key, null, mKeyMac))
+                        && !storedKey.equals(previousEncryptedKey)) {
+                    return IntegrityScan.Problem.ORPHANED;
+                }
+                if (keyOffset(key, keyPrefix) > 0) {
+                    return null;
+                }
+            } else {
+                byte[] encryptedKeyBytes = Base64.decode(storedKey, Base64.DEFAULT);
+                if (keyPrefix != null) {
+                    try {
+                        keyBytes = mKeyDeterministicAead.decryptDeterministically(
+                                encryptedKeyBytes, keyPrefix.mAssociatedData);
+                        return null;
+                    } catch (GeneralSecurityException ex) {
+                        // Not a key with the prefix.
+                    }
+                }
+                try {
+                    keyBytes = mKeyDeterministicAead.decryptDeterministically(encryptedKeyBytes,
+                            mFileNameBytes);
+                } catch (GeneralSecurityException ex) {
+                    // The value is intact, the key was encrypted under another prefix.
+                    return IntegrityScan.Problem.ORPHANED;
+                }
+                key = new String(keyBytes, UTF_8);
+            }
+            if (NULL_VALUE.equals(key)) {
+                key = null;
+            }
+            if (filter == null || filter.isOwned(key)) {
+                return null;
+            }
+            orphanedKeys.put(storedKey, key);
+            return IntegrityScan.Problem.ORPHANED;
+        } catch (GeneralSecurityException | SecurityException | IllegalArgumentException ex) {
+            return filter != null && filter.isLegacy(storedKey)
+                    ? IntegrityScan.Problem.LEGACY : IntegrityScan.Problem.CORRUPT;
+        } finally {
+            if (plainText != null) {
+                Arrays.fill(plainText, (byte) 0);
+            }
+            if (keyBytes != null) {
+                Arrays.fill(keyBytes, (byte) 0);
+            }
+        }
+    }
+    /**
+     * Removes the entries an integrity scan found in one commit, leaving out those rewritten or
+     * removed since the scan read them. Orphaned entries with a known key are logged and reported
+     * to the listeners like any removal.
+     *
+     * @param scannedValues the stored values the scan checked, by stored key.
+     * @return the number of entries removed.
+     */
+    int removeScannedEntries(@NonNull Map<String, ?> scannedValues,
+            @NonNull Map<String, String> orphanedKeys) throws IOException {
+        mWriteLock.lock();
+        try {
+            Map<String, ?> stored = mSharedPreferences.getAll();
+            Editor editor = (Editor) edit();
+            int removed = 0;
+            for (Map.Entry<String, ?> scanned : scannedValues.entrySet()) {
+                String storedKey = scanned.getKey();
+                if (!scanned.getValue().equals(stored.get(storedKey))) {
+                    continue;
+                }
+                if (orphanedKeys.containsKey(storedKey)) {
+                    editor.removeStored(storedKey, orphanedKeys.get(storedKey));
+                } else {
+                    editor.removeUnreadable(storedKey);
+                }
+                removed++;
+            }
+            mQuarantinedCount = -1;
+            if (removed > 0 && !editor.commit()) {
+                throw new IOException("Failed to compact the entries of " + mFileName);
+            }
+            return removed;
+        } finally {
+            mWriteLock.unlock();
+        }
+    }
+    private void setPreviousKeyPrimitive(KeysetHandle previousKeyKeysetHandle)
+            throws GeneralSecurityException {
+        if (mKeyMac != null) {
+            mPreviousKeyMac = previousKeyKeysetHandle.getPrimitive(RegistryConfiguration.get(),
+                    Mac.class);
+        } else {
+            mPreviousKeyDeterministicAead = previousKeyKeysetHandle.getPrimitive(
+                    RegistryConfiguration.get(), DeterministicAead.class);
+        }
+    }
+    /**
+     * The encrypted keys of every entry, in the order they are stored. Values that are not
+     * strings were never written by these preferences and are left out.
+     */
+    List<String> getEncryptedKeys() {
+        List<String> encryptedKeys = new ArrayList<>();
+        for (Map.Entry<String, ?> entry : mSharedPreferences.getAll().entrySet()) {
+            if (!isReservedKey(entry.getKey()) && entry.getValue() instanceof String) {
+                encryptedKeys.add(entry.getKey());
+            }
+        }
+        return encryptedKeys;
+    }
+    /**
+     * Moves the given entries to the current keys, skipping those that already use them or were
+     * removed. Must be called with the write lock held; the changes are applied in one batch.
+     *
+     * @param movedTo collects the encrypted keys the entries were moved to, when not null.
+     * @return the number of entries that could not be decrypted and stay where they are. Entries
+     * the entry filter calls legacy are not counted, no keyset ever decrypts them.
+     */
+    int rotateEntriesLocked(@NonNull Collection<String> encryptedKeys,
+                            @Nullable Collection<String> movedTo) {
+        int failed = 0;
+        SharedPreferences.Editor editor = mSharedPreferences.edit();
+        List<String> expiredKeys = new ArrayList<>();
+        for (String encryptedKey : encryptedKeys) {
+            String encryptedValue = mSharedPreferences.getString(encryptedKey, null);
+            if (encryptedValue == null) {
+                continue;
+            }
+            try {
+                ValueEnvelope envelope = decodeEntry(encryptedKey, encryptedValue);
+                String key = entryKey(encryptedKey, envelope);
+                if (key == null) {
+                    key = NULL_VALUE;
+                }
+                if (envelope.isExpired(System.currentTimeMillis())) {
+                    editor.remove(encryptedKey);
+                    expiredKeys.add(key);
+                    continue;
+                }
+                String currentEncryptedKey = encryptKey(key);
+                if (currentEncryptedKey.equals(encryptedKey)
+                        && valueKeyId(encryptedValue) == mValuePrimaryKeyId) {
+                    continue;
+                }
+                Pair<String, String> encryptedPair = encryptEntry(key, envelope.mValue,
+                        envelope.mExpiresAtMillis);
+                editor.remove(encryptedKey);
+                editor.putString(encryptedPair.first, encryptedPair.second);
+                if (movedTo != null) {
+                    movedTo.add(encryptedPair.first);
+                }
+            } catch (GeneralSecurityException | SecurityException ex) {
+                if (!isLegacyEntry(encryptedKey)) {
+                    failed++;
+                }
+            }
+        }
+        ChangeLog changeLog = logChanges(editor, expiredKeys, false);
+        editor.apply();
+        keepChangeLog(changeLog);
+        return failed;
+    }
+    /**
+     * Ends the rotation once every entry has been moved. When some entries could not be moved
+     * the previous keys are kept, so nothing becomes unreadable.
+     */
+    void finishKeyRotationLocked(int failedEntries) throws GeneralSecurityException, IOException {
+        if (failedEntries > 0) {
+            return;
+        }
+        if (!mSharedPreferences.edit().remove(KEY_ROTATION_ALIAS).commit()) {
+            throw new IOException("Failed to store the end of the key rotation of " + mFileName);
+        }
+        mPreviousKeyDeterministicAead = null;
+        mPreviousKeyMac = null;
+        if (mKeysetStore != null) {
+            mKeysetStore.retainPrimary(mKeyKeysetAlias, mKeyScheme.getKeyTemplate());
+            mKeysetStore.retainPrimary(mValueKeysetAlias, mValueScheme.getKeyTemplate());
+        }
+    }
+    /**
+     * Moves an entry that a read found under the previous key, unless a writer is busy.
+     */
+    private void rotateOnRead(String previousEncryptedKey) {
+        if (mWriteLock.tryLock()) {
+            try {
+                rotateEntriesLocked(Collections.singletonList(previousEncryptedKey), null);
+            } finally {
+                mWriteLock.unlock();
+            }
+        }
+    }
+    /**
+     * The ID of the key a value was encrypted with, from the prefix Tink puts in front of it.
+     */
+    private static int valueKeyId(String encryptedValue) {
+        byte[] prefix = Base64.decode(encryptedValue.substring(0, 8), Base64.DEFAULT);
+        return ByteBuffer.wrap(prefix, 1, integerBytes).getInt();
+    }
+    /**
+     * Re-keys every entry written by {@code previous} and drops its key keyset, in one commit.
+     *
+     * <p>Nothing is changed when the value of an entry decrypts but {@code previous} can not
+     * decrypt its key: without the keyset the entry could never be read again.
+     *
+     * @return false when the entries were left as they are for that reason.
+     */
+    private boolean migrateKeysFrom(@NonNull EncryptedSharedPreferences previous,
+                                    @NonNull String previousKeysetAlias)
+            throws GeneralSecurityException, IOException {
+        SharedPreferences.Editor rawEditor = mSharedPreferences.edit();
+        AtomicInteger unmovedEntries = new AtomicInteger();
+        moveEntriesFrom(previous, rawEditor, unmovedEntries);
+        if (unmovedEntries.get() > 0) {
+            return false;
+        }
+        rawEditor.remove(previousKeysetAlias);
+        if (!rawEditor.commit()) {
+            throw new IOException("Failed to migrate the pref keys of " + mFileName);
+        }
+        return true;
+    }
+    /**
+     * Sets the prefix all pref keys of the caller start with.
+     *
+     * <p>Keys starting with it are encrypted without it and the prefix becomes part of the
+     * associated data, which keeps the encrypted keys short. The prefix is stored in the file;
+     * when it differs from the given one, every entry is re-keyed in one commit, so this should be
+     * called right after the file is opened.
+     *
+     * @return the number of entries that were re-keyed.
+     * @throws GeneralSecurityException when the entries can not be re-keyed
+     * @throws IOException              when the re-keyed entries can not be stored
+     */
+    public synchronized int setKeyPrefix(@Nullable String keyPrefix)
+            throws GeneralSecurityException, IOException {
+        if (keyPrefix != null && keyPrefix.isEmpty()) {
+            keyPrefix = null;
+        }
+        String storedKeyPrefix = mSharedPreferences.getString(KEY_PREFIX_ALIAS, null);
+        if (Objects.equals(storedKeyPrefix, keyPrefix)) {
+            applyKeyPrefix(keyPrefix);
+            return 0;
+        }
+        EncryptedSharedPreferences previous = new EncryptedSharedPreferences(mFileName,
+                mMasterKeyAlias, mSharedPreferences, mValueAead, mKeyDeterministicAead, mKeyMac);
+        previous.applyKeyPrefix(storedKeyPrefix);
+        boolean stored = false;
+        mWriteLock.lock();
+        try {
+            applyKeyPrefix(keyPrefix);
+            SharedPreferences.Editor rawEditor = mSharedPreferences.edit();
+            int moved = moveEntriesFrom(previous, rawEditor, null);
+            if (keyPrefix != null) {
+                rawEditor.putString(KEY_PREFIX_ALIAS, keyPrefix);
+            } else {
+                rawEditor.remove(KEY_PREFIX_ALIAS);
+            }
+            stored = rawEditor.commit();
+            if (!stored) {
+                throw new IOException("Failed to re-key the pref keys of " + mFileName);
+            }
+            return moved;
+        } finally {
+            if (!stored) {
+                applyKeyPrefix(storedKeyPrefix);
+            }
+            mWriteLock.unlock();
+        }
+    }
+    private void applyKeyPrefix(@Nullable String keyPrefix) {
+        mKeyPrefix = keyPrefix != null ? new KeyPrefix(keyPrefix, mFileNameBytes) : null;
+        mEncryptedKeys = new ConcurrentHashMap<>();
+    }
+    /**
+     * Puts every entry written by {@code previous} into the editor under the keys of this
+     * instance. Entries that can not be decrypted are left where they are, they stay unreadable
+     * either way.
+     *
+     * @param unmovedEntries counts the entries whose value decrypts but whose key does not, when
+     *                       not null.
+     * @return the number of entries that were moved.
+     */
+    private int moveEntriesFrom(@NonNull EncryptedSharedPreferences previous,
+                                @NonNull SharedPreferences.Editor rawEditor,
+                                @Nullable AtomicInteger unmovedEntries) {
+        List<String> encryptedKeys = new ArrayList<>();
+        List<String> encryptedValues = new ArrayList<>();
+        collectEntries(encryptedKeys, encryptedValues);
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Pair<String, String>[] encryptedPairs = new Pair[encryptedKeys.size()];
+        forEachRange(encryptedPairs.length, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                ValueEnvelope envelope;
+                String key;
+                try {
+                    envelope = previous.decodeEntry(encryptedKeys.get(i), encryptedValues.get(i));
+                } catch (GeneralSecurityException | SecurityException ex) {
+                    continue;
+                }
+                try {
+                    key = previous.entryKey(encryptedKeys.get(i), envelope);
+                } catch (SecurityException ex) {
+                    if (unmovedEntries != null) {
+                        unmovedEntries.incrementAndGet();
+                    }
+                    continue;
+                }
+                try {
+                    encryptedPairs[i] = encryptEntry(key == null ? NULL_VALUE : key,
+                            envelope.mValue, envelope.mExpiresAtMillis);
+                } catch (GeneralSecurityException ex) {
+                    throw new SecurityException("Could not encrypt data: " + ex.getMessage(), ex);
+                }
+            }
+        });
+        int moved = 0;
+        for (int i = 0; i < encryptedPairs.length; i++) {
+            if (encryptedPairs[i] == null) {
+                continue;
+            }
+            // Removed first, the key stays the same for keys without the prefix.
+            rawEditor.remove(encryptedKeys.get(i));
+            rawEditor.putString(encryptedPairs[i].first, encryptedPairs[i].second);
+            moved++;
+        }
+        return moved;
+    }
+    /**
+     * Where the keysets of a file are stored and how they are encrypted.
+     */
+    private interface KeysetStore {
+        /**
+         * Returns the keyset stored under the alias, generating one from the template first when
+         * there is none.
+         */
+        KeysetHandle load(String alias, KeyTemplate keyTemplate)
+                throws GeneralSecurityException, IOException;
+        /**
+         * Adds a new key generated from the template to the stored keyset and makes it primary.
+         */
+        KeysetHandle addPrimary(String alias, KeyTemplate keyTemplate)
+                throws GeneralSecurityException, IOException;
+        /**
+         * Deletes every key of the stored keyset except the primary one.
+         */
+        void retainPrimary(String alias, KeyTemplate keyTemplate)
+                throws GeneralSecurityException, IOException;
+    }
+    /**
+     * Keysets encrypted by the master key in the Android Keystore.
+     */
+    private static final class KeystoreKeysetStore implements KeysetStore {
+        private final Context mContext;
+        private final String mFileName;
+        private final String mMasterKeyAlias;
+        KeystoreKeysetStore(Context context, String fileName, String masterKeyAlias) {
+            mContext = context;
+            mFileName = fileName;
+            mMasterKeyAlias = masterKeyAlias;
+        }
+        @Override
+        public KeysetHandle load(String alias, KeyTemplate keyTemplate)
+                throws GeneralSecurityException, IOException {
+            return manager(alias, keyTemplate).getKeysetHandle();
+        }
+        @Override
+        public KeysetHandle addPrimary(String alias, KeyTemplate keyTemplate)
+                throws GeneralSecurityException, IOException {
+            AndroidKeysetManager manager = manager(alias, keyTemplate);
+            KeysetHandle before = manager.getKeysetHandle();
+            manager.add(keyTemplate);
+            manager.setPrimary(addedKeyId(before, manager.getKeysetHandle()));
+            return manager.getKeysetHandle();
+        }
+        @Override
+        public void retainPrimary(String alias, KeyTemplate keyTemplate)
+                throws GeneralSecurityException, IOException {
+            AndroidKeysetManager manager = manager(alias, keyTemplate);
+            KeysetHandle keysetHandle = manager.getKeysetHandle();
+            for (int i = 0; i < keysetHandle.size(); i++) {
+                if (!keysetHandle.getAt(i).isPrimary()) {
+                    manager.delete(keysetHandle.getAt(i).getId());
+                }
+            }
+        }
+        private AndroidKeysetManager manager(String alias, KeyTemplate keyTemplate)
+                throws GeneralSecurityException, IOException {
+            return new AndroidKeysetManager.Builder()
+                    .withKeyTemplate(keyTemplate)
+                    .withSharedPref(mContext, alias, mFileName)
+                    .withMasterKeyUri(KEYSTORE_PATH_URI + mMasterKeyAlias)
+                    .build();
+        }
+    }
+    /**
+     * Keysets encrypted by an envelope data key, with their alias as the associated data.
+     */
+    private static final class EnvelopeKeysetStore implements KeysetStore {
+        private final SharedPreferences mSharedPreferences;
+        private final Aead mDataKey;
+        EnvelopeKeysetStore(SharedPreferences sharedPreferences, Aead dataKey) {
+            mSharedPreferences = sharedPreferences;
+            mDataKey = dataKey;
+        }
+        @Override
+        public KeysetHandle load(String alias, KeyTemplate keyTemplate)
+                throws GeneralSecurityException, IOException {
+            String encryptedKeyset = mSharedPreferences.getString(alias, null);
+            if (encryptedKeyset != null) {
+                return TinkProtoKeysetFormat.parseEncryptedKeyset(
+                        Base64.decode(encryptedKeyset, Base64.DEFAULT), mDataKey,
+                        alias.getBytes(UTF_8));
+            }
+            return store(alias, KeysetHandle.generateNew(keyTemplate));
+        }
+        @Override
+        public KeysetHandle addPrimary(String alias, KeyTemplate keyTemplate)
+                throws GeneralSecurityException, IOException {
+            KeysetHandle before = load(alias, keyTemplate);
+            KeysetManager manager = KeysetManager.withKeysetHandle(before).add(keyTemplate);
+            manager.setPrimary(addedKeyId(before, manager.getKeysetHandle()));
+            return store(alias, manager.getKeysetHandle());
+        }
+        @Override
+        public void retainPrimary(String alias, KeyTemplate keyTemplate)
+                throws GeneralSecurityException, IOException {
+            KeysetHandle keysetHandle = load(alias, keyTemplate);
+            KeysetManager manager = KeysetManager.withKeysetHandle(keysetHandle);
+            for (int i = 0; i < keysetHandle.size(); i++) {
+                if (!keysetHandle.getAt(i).isPrimary()) {
+                    manager.delete(keysetHandle.getAt(i).getId());
+                }
+            }
+            store(alias, manager.getKeysetHandle());
+        }
+        private KeysetHandle store(String alias, KeysetHandle keysetHandle)
+                throws GeneralSecurityException, IOException {
+            String serialized = Base64.encode(TinkProtoKeysetFormat.serializeEncryptedKeyset(
+                    keysetHandle, mDataKey, alias.getBytes(UTF_8)));
+            if (!mSharedPreferences.edit().putString(alias, serialized).commit()) {
+                throw new IOException("Failed to store keyset " + alias);
+            }
+            return keysetHandle;
+        }
+    }
+    private static int addedKeyId(KeysetHandle before, KeysetHandle after)
+            throws GeneralSecurityException {
+        Set<Integer> existingIds = new ArraySet<>(before.size());
+        for (int i = 0; i < before.size(); i++) {
+            existingIds.add(before.getAt(i).getId());
+        }
+        for (int i = 0; i < after.size(); i++) {
+            if (!existingIds.contains(after.getAt(i).getId())) {
+                return after.getAt(i).getId();
+            }
+        }
+        throw new GeneralSecurityException("No key was added to the keyset");
     }
     /**
      * The encryption scheme to encrypt keys.
@@ -178,13 +1035,28 @@ public final class EncryptedSharedPreferences implements SharedPreferences {
          *
          * <p><a href="https://google.github.io/tink/javadoc/tink/1.7.0/com/google/crypto/tink/daead/AesSivKeyManager.html">AesSivKeyManager</a>.aes256SivTemplate()
          */
-        AES256_SIV("AES256_SIV");
-        private final String mDeterministicAeadKeyTemplateName;
-        PrefKeyEncryptionScheme(String deterministicAeadKeyTemplateName) {
-            mDeterministicAeadKeyTemplateName = deterministicAeadKeyTemplateName;
+        AES256_SIV("AES256_SIV"),
+        /**
+         * Pref keys are hashed with HMAC-SHA256, truncated to 128 bits and Base64url encoded.
+         *
+         * <p>A lookup costs one HMAC instead of an AES-SIV encryption. Hashed keys can not be
+         * decrypted, so the plain text key is stored inside the encrypted value, where
+         * {@link EncryptedSharedPreferences#getAll()}
+         * reads it from. Files written with {@link #AES256_SIV} are migrated
+         * when they are opened with this scheme; the migration can not be reversed. A file with
+         * an entry whose key can not be decrypted keeps its {@link #AES256_SIV} keys.
+         *
+         * <p>For more information please see the Tink documentation:
+         *
+         * <p><a href="https://google.github.io/tink/javadoc/tink/1.7.0/com/google/crypto/tink/mac/HmacKeyManager.html">HmacKeyManager</a>.hmacSha256HalfDigestTemplate()
+         */
+        HMAC_SHA256("HMAC_SHA256_128BITTAG_RAW");
+        private final String mKeyTemplateName;
+        PrefKeyEncryptionScheme(String keyTemplateName) {
+            mKeyTemplateName = keyTemplateName;
         }
         KeyTemplate getKeyTemplate() throws GeneralSecurityException {
-            return KeyTemplates.get(mDeterministicAeadKeyTemplateName);
+            return KeyTemplates.get(mKeyTemplateName);
         }
     }
     /**
@@ -198,7 +1070,27 @@ public final class EncryptedSharedPreferences implements SharedPreferences {
          *
          * <p><a href="https://google.github.io/tink/javadoc/tink/1.7.0/com/google/crypto/tink/aead/AesGcmKeyManager.html">AesGcmKeyManager</a>.aes256GcmTemplate()
          */
-        AES256_GCM("AES256_GCM");
+        AES256_GCM("AES256_GCM"),
+        /**
+         * Pref values are encrypted with AES128-GCM. The associated data is the encrypted pref key.
+         */
+        AES128_GCM("AES128_GCM"),
+        /**
+         * Pref values are encrypted with AES256-GCM-SIV, which stays secure if a nonce repeats.
+         * The associated data is the encrypted pref key. Requires a security provider that
+         * implements AES-GCM-SIV, such as Conscrypt.
+         */
+        AES256_GCM_SIV("AES256_GCM_SIV"),
+        /**
+         * Pref values are encrypted with ChaCha20-Poly1305 (RFC 8439), which is faster than AES on
+         * devices without AES instructions. The associated data is the encrypted pref key.
+         */
+        CHACHA20_POLY1305("CHACHA20_POLY1305"),
+        /**
+         * Pref values are encrypted with XChaCha20-Poly1305, ChaCha20-Poly1305 with a 192-bit
+         * nonce. The associated data is the encrypted pref key.
+         */
+        XCHACHA20_POLY1305("XCHACHA20_POLY1305");
         private final String mAeadKeyTemplateName;
         PrefValueEncryptionScheme(String aeadKeyTemplateName) {
             mAeadKeyTemplateName = aeadKeyTemplateName;
@@ -206,32 +1098,55 @@ public final class EncryptedSharedPreferences implements SharedPreferences {
         KeyTemplate getKeyTemplate() throws GeneralSecurityException {
             return KeyTemplates.get(mAeadKeyTemplateName);
         }
-    }
-    private static final class Editor implements SharedPreferences.Editor {
-        private final EncryptedSharedPreferences mEncryptedSharedPreferences;
+        /**
+         * The scheme of the primary key of a value keyset, AES256_GCM for keys of no scheme.
+         */
+        @NonNull
+        static PrefValueEncryptionScheme of(@NonNull KeysetHandle keysetHandle) {
+            Parameters parameters = keysetHandle.getPrimary().getKey().getParameters();
+            for (PrefValueEncryptionScheme scheme : values()) {
+                try {
+                    if (scheme.getKeyTemplate().toParameters().equals(parameters)) {
+                        return scheme;
+                    }
+                } catch (GeneralSecurityException ex) {
+                    // Not the scheme of the key.
+                }
+            }
+            return AES256_GCM;
+        }
+    }
+    /**
+     * Encrypts each put right away, or in bulk mode buffers the plain text and encrypts it when
+     * the changes are committed. Like the editors of the framework, an instance is used by one
+     * thread at a time.
+     */
+    private static final class Editor implements TypedEditor {
+        // Marks a pending removal in bulk mode.
+        private static final Object REMOVED = new Object();
+        private final EncryptedSharedPreferences mEncryptedSharedPreferences;
         private final SharedPreferences.Editor mEditor;
-        private final List<String> mKeysChanged;
+        private final Set<String> mKeysChanged = new LinkedHashSet<>();
         private final AtomicBoolean mClearRequested = new AtomicBoolean(false);
+        // Whether entries whose key is not known were removed, see removeUnreadable.
+        private boolean mUnreadableRemoved;
+        private final long mExpiresAtMillis;
+        // The plain text changes of bulk mode by key, the last one wins; null otherwise.
+        @Nullable
+        private final Map<String, Object> mPending;
         Editor(EncryptedSharedPreferences encryptedSharedPreferences,
-               SharedPreferences.Editor editor) {
+               SharedPreferences.Editor editor,
+               long expiresAtMillis,
+               boolean bulk) {
             mEncryptedSharedPreferences = encryptedSharedPreferences;
             mEditor = editor;
-            mKeysChanged = new CopyOnWriteArrayList<>();
+            mExpiresAtMillis = expiresAtMillis;
+            mPending = bulk ? new HashMap<>() : null;
         }
         @Override
         @NonNull
         public SharedPreferences.Editor putString(@Nullable String key, @Nullable String value) {
-            if (value == null) {
-                value = NULL_VALUE;
-            }
-            byte[] stringBytes = value.getBytes(UTF_8);
-            int stringByteLength = stringBytes.length;
-            ByteBuffer buffer = ByteBuffer.allocate(integerBytes + integerBytes
-                    + stringByteLength);
-            buffer.putInt(EncryptedType.STRING.getId());
-            buffer.putInt(stringByteLength);
-            buffer.put(stringBytes);
-            putEncryptedObject(key, buffer.array());
+            putEncryptedObject(key, value == null ? NULL_VALUE : value);
             return this;
         }
         @Override
@@ -242,145 +1157,832 @@ public final class EncryptedSharedPreferences implements SharedPreferences {
                 values = new ArraySet<>();
                 values.add(NULL_VALUE);
             }
-            List<byte[]> byteValues = new ArrayList<>(values.size());
-            int totalBytes = values.size() * integerBytes;
-            for (String strValue : values) {
-                byte[] byteValue = strValue.getBytes(UTF_8);
-                byteValues.add(byteValue);
-                totalBytes += byteValue.length;
-            }
-            totalBytes += integerBytes;
-            ByteBuffer buffer = ByteBuffer.allocate(totalBytes);
-            buffer.putInt(EncryptedType.STRING_SET.getId());
-            for (byte[] bytes : byteValues) {
-                buffer.putInt(bytes.length);
-                buffer.put(bytes);
-            }
-            putEncryptedObject(key, buffer.array());
-            return this;
+            putEncryptedObject(key, values);
+            return this;
+        }
+        @Override
+        @NonNull
+        public SharedPreferences.Editor putInt(@Nullable String key, int value) {
+            putEncryptedObject(key, value);
+            return this;
+        }
+        @Override
+        @NonNull
+        public SharedPreferences.Editor putLong(@Nullable String key, long value) {
+            putEncryptedObject(key, value);
+            return this;
+        }
+        @Override
+        @NonNull
+        public SharedPreferences.Editor putFloat(@Nullable String key, float value) {
+            putEncryptedObject(key, value);
+            return this;
+        }
+        @Override
+        @NonNull
+        public SharedPreferences.Editor putBoolean(@Nullable String key, boolean value) {
+            putEncryptedObject(key, value);
+            return this;
+        }
+        @Override
+        @NonNull
+        public TypedEditor putDouble(@Nullable String key, double value) {
+            putEncryptedObject(key, value);
+            return this;
+        }
+        @Override
+        @NonNull
+        public SharedPreferences.Editor remove(@Nullable String key) {
+            if (mEncryptedSharedPreferences.isReservedKey(key)) {
+                throw new SecurityException(key + " is a reserved key for the encryption keyset.");
+            }
+            mKeysChanged.add(key);
+            if (mPending != null) {
+                mPending.put(key == null ? NULL_VALUE : key, REMOVED);
+                return this;
+            }
+            mEditor.remove(mEncryptedSharedPreferences.encryptKey(key));
+            removePreviousKey(key);
+            return this;
+        }
+        @Override
+        @NonNull
+        public SharedPreferences.Editor clear() {
+            // Set the flag to clear on commit, this operation happens first on commit.
+            // Cannot use underlying clear operation, it will remove the keysets and
+            // break the editor.
+            mClearRequested.set(true);
+            return this;
+        }
+        @Override
+        public boolean commit() {
+            mEncryptedSharedPreferences.mWriteLock.lock();
+            try {
+                List<String> clearedKeys = clearKeysIfNeeded();
+                encryptPending();
+                ChangeLog changeLog = mEncryptedSharedPreferences.logChanges(mEditor,
+                        changedKeys(clearedKeys), mUnreadableRemoved);
+                boolean committed = mEditor.commit();
+                if (committed) {
+                    mEncryptedSharedPreferences.keepChangeLog(changeLog);
+                }
+                return committed;
+            } finally {
+                mEncryptedSharedPreferences.mWriteLock.unlock();
+                notifyListeners();
+                mKeysChanged.clear();
+            }
+        }
+        @Override
+        public void apply() {
+            mEncryptedSharedPreferences.mWriteLock.lock();
+            try {
+                List<String> clearedKeys = clearKeysIfNeeded();
+                encryptPending();
+                ChangeLog changeLog = mEncryptedSharedPreferences.logChanges(mEditor,
+                        changedKeys(clearedKeys), mUnreadableRemoved);
+                mEditor.apply();
+                mEncryptedSharedPreferences.keepChangeLog(changeLog);
+            } finally {
+                mEncryptedSharedPreferences.mWriteLock.unlock();
+            }
+            notifyListeners();
+            mKeysChanged.clear();
+        }
+        private Collection<String> changedKeys(List<String> clearedKeys) {
+            if (clearedKeys.isEmpty()) {
+                return mKeysChanged;
+            }
+            List<String> keys = new ArrayList<>(mKeysChanged);
+            keys.addAll(clearedKeys);
+            return keys;
+        }
+        /**
+         * @return the keys removed by a requested clear, for the change log.
+         */
+        private List<String> clearKeysIfNeeded() {
+            List<String> clearedKeys = new ArrayList<>();
+            // Call "clear" first as per the documentation, remove all keys that haven't
+            // been modified in this editor.
+            if (mClearRequested.getAndSet(false)) {
+                // Works on the stored keys, so entries not moved by a key rotation go too.
+                List<String> encryptedKeys = mEncryptedSharedPreferences.getEncryptedKeys();
+                boolean[] unreadable = new boolean[encryptedKeys.size()];
+                String[] keys = mEncryptedSharedPreferences.decryptKeys(encryptedKeys, unreadable);
+                for (int i = 0; i < keys.length; i++) {
+                    if (!unreadable[i] && !mKeysChanged.contains(keys[i])) {
+                        mEditor.remove(encryptedKeys.get(i));
+                        clearedKeys.add(keys[i]);
+                    }
+                }
+                // Quarantined entries can never be read again, they go with the rest.
+                for (String storedKey : mEncryptedSharedPreferences.mSharedPreferences.getAll()
+                        .keySet()) {
+                    if (mEncryptedSharedPreferences.isQuarantinedKey(storedKey)) {
+                        mEditor.remove(storedKey);
+                    }
+                }
+                mEncryptedSharedPreferences.mQuarantinedCount = -1;
+            }
+            return clearedKeys;
+        }
+        private void removePreviousKey(@Nullable String key) {
+            String previousEncryptedKey = mEncryptedSharedPreferences.encryptPreviousKey(key);
+            if (previousEncryptedKey != null) {
+                mEditor.remove(previousEncryptedKey);
+            }
+        }
+        private void putEncryptedObject(String key, Object value) {
+            if (mEncryptedSharedPreferences.isReservedKey(key)) {
+                throw new SecurityException(key + " is a reserved key for the encryption keyset.");
+            }
+            mKeysChanged.add(key);
+            if (key == null) {
+                key = NULL_VALUE;
+            }
+            if (mPending != null) {
+                mPending.put(key, value);
+                return;
+            }
+            try {
+                Pair<String, String> encryptedPair = mEncryptedSharedPreferences
+                        .encryptEntry(key, value, mExpiresAtMillis);
+                mEditor.putString(encryptedPair.first, encryptedPair.second);
+                removePreviousKey(key);
+            } catch (GeneralSecurityException ex) {
+                throw new SecurityException("Could not encrypt data: " + ex.getMessage(), ex);
+            }
+        }
+        /**
+         * Encrypts the changes buffered in bulk mode, spread over the crypto pool when there are
+         * enough of them, and hands them to the underlying editor.
+         */
+        private void encryptPending() {
+            if (mPending == null || mPending.isEmpty()) {
+                return;
+            }
+            List<String> keys = new ArrayList<>(mPending.size());
+            List<Object> values = new ArrayList<>(mPending.size());
+            for (Map.Entry<String, Object> change : mPending.entrySet()) {
+                if (change.getValue() == REMOVED) {
+                    mEditor.remove(mEncryptedSharedPreferences.encryptKey(change.getKey()));
+                    removePreviousKey(change.getKey());
+                } else {
+                    keys.add(change.getKey());
+                    values.add(change.getValue());
+                }
+            }
+            mPending.clear();
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            Pair<String, String>[] encryptedPairs = new Pair[keys.size()];
+            forEachRange(keys.size(), (from, to) -> {
+                try {
+                    for (int i = from; i < to; i++) {
+                        encryptedPairs[i] = mEncryptedSharedPreferences.encryptEntry(keys.get(i),
+                                values.get(i), mExpiresAtMillis);
+                    }
+                } catch (GeneralSecurityException ex) {
+                    throw new SecurityException("Could not encrypt data: " + ex.getMessage(), ex);
+                }
+            });
+            for (int i = 0; i < encryptedPairs.length; i++) {
+                mEditor.putString(encryptedPairs[i].first, encryptedPairs[i].second);
+                removePreviousKey(keys.get(i));
+            }
+        }
+        /**
+         * Removes a stored entry by its encrypted key, which can be from before a key rotation.
+         */
+        private void removeStored(String encryptedKey, @Nullable String key) {
+            mEditor.remove(encryptedKey);
+            mKeysChanged.add(key);
+        }
+        /**
+         * Removes a stored entry whose key is unknown. The listeners do not hear of it, and the
+         * change log makes the readers of earlier versions read everything again.
+         */
+        private void removeUnreadable(String storedKey) {
+            mEditor.remove(storedKey);
+            mUnreadableRemoved = true;
+        }
+        private void notifyListeners() {
+            for (OnSharedPreferenceChangeListener listener :
+                    mEncryptedSharedPreferences.mListeners) {
+                for (String key : mKeysChanged) {
+                    listener.onSharedPreferenceChanged(mEncryptedSharedPreferences, key);
+                }
+            }
+        }
+    }
+    /**
+     * Work over a range of indices, such as the entries of a bulk commit or of a scan. Each
+     * range writes only its own slots of the result arrays, so no merging is needed.
+     */
+    private interface RangeWork {
+        void run(int from, int to);
+    }
+    /**
+     * Runs the work over {@code [0, size)}: on the calling thread for small sizes, otherwise
+     * split into chunks that run in parallel on the crypto pool. Tink primitives are thread-safe.
+     */
+    private static void forEachRange(int size, RangeWork work) {
+        if (size < PARALLEL_THRESHOLD) {
+            work.run(0, size);
+        } else {
+            getCryptoPool().invoke(new RangeTask(work, 0, size));
+        }
+    }
+    private static final class RangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final RangeWork mWork;
+        private final int mFrom;
+        private final int mTo;
+        RangeTask(RangeWork work, int from, int to) {
+            mWork = work;
+            mFrom = from;
+            mTo = to;
+        }
+        @Override
+        protected void compute() {
+            if (mTo - mFrom > PARALLEL_CHUNK_SIZE) {
+                int middle = (mFrom + mTo) >>> 1;
+                invokeAll(new RangeTask(mWork, mFrom, middle), new RangeTask(mWork, middle, mTo));
+            } else {
+                mWork.run(mFrom, mTo);
+            }
+        }
+    }
+    /**
+     * The pool bulk commits and scans run on. ForkJoinPool.commonPool() needs API level 24.
+     */
+    private static synchronized ForkJoinPool getCryptoPool() {
+        if (sCryptoPool == null) {
+            sCryptoPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        }
+        return sCryptoPool;
+    }
+    // SharedPreferences methods
+    @Override
+    @NonNull
+    public Map<String, ?> getAll() {
+        List<String> encryptedKeys = new ArrayList<>();
+        List<String> encryptedValues = new ArrayList<>();
+        collectEntries(encryptedKeys, encryptedValues);
+        return decodeEntries(encryptedKeys, encryptedValues);
+    }
+    /**
+     * Decrypts up to {@code limit} entries, walking the entries in the order of their encrypted
+     * keys, which does not change when other entries are written or removed.
+     *
+     * <p>Only the entries of the page are decrypted. Expired entries are left out, so a page can
+     * have fewer entries than the limit even when more follow. Entries written during the walk
+     * are returned when their encrypted key sorts after the cursor.
+     *
+     * @param cursor null for the first page, otherwise the cursor of the previous page.
+     * @param limit  the maximum number of entries in the page.
+     */
+    @NonNull
+    public Page getPage(@Nullable String cursor, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Invalid page limit: " + limit);
+        }
+        Map<String, ?> all = mSharedPreferences.getAll();
+        // The smallest encrypted keys after the cursor, the largest of them at the head.
+        PriorityQueue<String> page = new PriorityQueue<>(limit, Collections.reverseOrder());
+        boolean hasMore = false;
+        for (Map.Entry<String, ?> entry : all.entrySet()) {
+            String encryptedKey = entry.getKey();
+            if (isReservedKey(encryptedKey) || !(entry.getValue() instanceof String)
+                    || (cursor != null && encryptedKey.compareTo(cursor) <= 0)) {
+                continue;
+            }
+            if (page.size() < limit) {
+                page.add(encryptedKey);
+            } else {
+                hasMore = true;
+                if (encryptedKey.compareTo(page.peek()) < 0) {
+                    page.poll();
+                    page.add(encryptedKey);
+                }
+            }
+        }
+        List<String> encryptedKeys = new ArrayList<>(page);
+        Collections.sort(encryptedKeys);
+        List<String> encryptedValues = new ArrayList<>(encryptedKeys.size());
+        for (String encryptedKey : encryptedKeys) {
+            encryptedValues.add((String) all.get(encryptedKey));
+        }
+        String nextCursor = hasMore ? encryptedKeys.get(encryptedKeys.size() - 1) : null;
+        return new Page(decodeEntries(encryptedKeys, encryptedValues), nextCursor);
+    }
+    /**
+     * A page of entries returned by {@link #getPage(String, int)}.
+     */
+    public static final class Page {
+        private final Map<String, ?> mEntries;
+        @Nullable
+        private final String mNextCursor;
+        Page(Map<String, ?> entries, @Nullable String nextCursor) {
+            mEntries = entries;
+            mNextCursor = nextCursor;
+        }
+        @NonNull
+        public Map<String, ?> getEntries() {
+            return mEntries;
+        }
+        /**
+         * The cursor to pass for the next page, or null when this is the last one.
+         */
+        @Nullable
+        public String getNextCursor() {
+            return mNextCursor;
+        }
+    }
+    /**
+     * Decrypts all entries one chunk at a time, each chunk only when the iterator is advanced, so
+     * at most one chunk of decrypted entries is held at once and the caller can pause between
+     * chunks. Expired entries are left out, so chunks can be smaller than {@code chunkSize}.
+     *
+     * <p>Entries are read from the state of the store when the call starts.
+     */
+    @NonNull
+    public Iterator<Map<String, ?>> readInChunks(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+        }
+        List<String> encryptedKeys = new ArrayList<>();
+        List<String> encryptedValues = new ArrayList<>();
+        collectEntries(encryptedKeys, encryptedValues);
+        return new Iterator<Map<String, ?>>() {
+            private int mFrom;
+            @Override
+            public boolean hasNext() {
+                return mFrom < encryptedKeys.size();
+            }
+            @Override
+            public Map<String, ?> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int to = Math.min(mFrom + chunkSize, encryptedKeys.size());
+                Map<String, ?> chunk = decodeEntries(encryptedKeys.subList(mFrom, to),
+                        encryptedValues.subList(mFrom, to));
+                mFrom = to;
+                return chunk;
+            }
+        };
+    }
+    /**
+     * Pins the entries as they are now, without decrypting any of them. Reads through the
+     * snapshot decrypt only the keys asked for and never see writes made after it was taken;
+     * taking and reading it never waits for writers.
+     *
+     * <p>Taking a snapshot copies the map of encrypted entries, which costs time and memory in
+     * proportion to the number of entries; no entry is decrypted. It is not a copy-on-write view
+     * shared with the write path, since the file is also written by raw editors and by the legacy
+     * migration, which such a view would miss. Take one snapshot for a batch of related reads
+     * rather than one per read.
+     *
+     * <p>Entries not yet moved by a key rotation stay readable through the snapshot until the
+     * rotation finishes and drops the previous keys.
+     */
+    @NonNull
+    public Snapshot snapshot() {
+        // The underlying preferences hand out a copy of their map, consistent with every commit.
+        return new Snapshot(mSharedPreferences.getAll());
+    }
+    /**
+     * A read-only view of the entries at the time {@link #snapshot()} was called.
+     */
+    public final class Snapshot {
+        private final Map<String, ?> mEntries;
+        private Snapshot(Map<String, ?> entries) {
+            mEntries = entries;
+        }
+        /**
+         * Returns the value of the entry, of whichever type it was written with, or null if there
+         * was none.
+         */
+        @Nullable
+        public Object getObject(@Nullable String key) {
+            return getDecryptedObject(key, mEntries);
+        }
+        @Nullable
+        public String getString(@Nullable String key, @Nullable String defValue) {
+            Object value = getObject(key);
+            return value instanceof String ? (String) value : defValue;
+        }
+        public boolean contains(@Nullable String key) {
+            if (isReservedKey(key)) {
+                throw new SecurityException(key + " is a reserved key for the encryption keyset.");
+            }
+            if (mEntries.containsKey(encryptKey(key))) {
+                return true;
+            }
+            String previousEncryptedKey = encryptPreviousKey(key);
+            return previousEncryptedKey != null && mEntries.containsKey(previousEncryptedKey);
+        }
+    }
+    /**
+     * Decrypts the given entries, in parallel when there are many, leaving out expired ones.
+     */
+    private Map<String, ?> decodeEntries(List<String> encryptedKeys, List<String> encryptedValues) {
+        int size = encryptedKeys.size();
+        String[] keys = new String[size];
+        Object[] values = new Object[size];
+        boolean[] skipped = new boolean[size];
+        Exception[] failures = new Exception[size];
+        long nowMillis = System.currentTimeMillis();
+        forEachRange(size, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                // Decrypts the stored value directly, the key may be from before a key rotation.
+                try {
+                    ValueEnvelope envelope = decodeEntry(encryptedKeys.get(i),
+                            encryptedValues.get(i));
+                    if (envelope.isExpired(nowMillis)) {
+                        skipped[i] = true;
+                        continue;
+                    }
+                    // With keyed hashes the key is inside the value, one decryption yields both.
+                    keys[i] = entryKey(encryptedKeys.get(i), envelope);
+                    values[i] = envelope.getValue();
+                } catch (GeneralSecurityException | SecurityException ex) {
+                    failures[i] = ex;
+                    skipped[i] = true;
+                }
+            }
+        });
+        // Quarantined here, on the calling thread, which may hold the write lock already.
+        for (int i = 0; i < size; i++) {
+            if (failures[i] != null) {
+                quarantine(encryptedKeys.get(i), encryptedValues.get(i), failures[i]);
+            }
+        }
+        Map<String, ? super Object> entries = new HashMap<>(size);
+        for (int i = 0; i < size; i++) {
+            if (!skipped[i]) {
+                entries.put(keys[i], values[i]);
+            }
+        }
+        return entries;
+    }
+    /**
+     * Decrypts the keys of all entries, without decrypting the values where the key scheme
+     * allows it. Expired entries are included.
+     */
+    @NonNull
+    public Set<String> getKeys() {
+        List<String> encryptedKeys = getEncryptedKeys();
+        boolean[] unreadable = new boolean[encryptedKeys.size()];
+        String[] keys = decryptKeys(encryptedKeys, unreadable);
+        Set<String> result = new ArraySet<>(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            if (!unreadable[i]) {
+                result.add(keys[i]);
+            }
+        }
+        return result;
+    }
+    /**
+     * Decrypts the given encrypted keys, in parallel when there are many.
+     *
+     * @param unreadable set for the keys that could not be decrypted and were quarantined or
+     *                   belong to an older storage.
+     * @throws SecurityException when a key can not be decrypted outside of quarantine mode.
+     */
+    String[] decryptKeys(List<String> encryptedKeys, boolean[] unreadable) {
+        String[] keys = new String[encryptedKeys.size()];
+        SecurityException[] failures = new SecurityException[keys.length];
+        forEachRange(keys.length, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                try {
+                    keys[i] = decryptKey(encryptedKeys.get(i));
+                } catch (SecurityException ex) {
+                    failures[i] = ex;
+                }
+            }
+        });
+        // Quarantined here, on the calling thread, which may hold the write lock already.
+        for (int i = 0; i < keys.length; i++) {
+            if (failures[i] != null) {
+                String encryptedKey = encryptedKeys.get(i);
+                quarantine(encryptedKey, mSharedPreferences.getString(encryptedKey, null),
+                        failures[i]);
+                unreadable[i] = true;
+            }
+        }
+        return keys;
+    }
+    /**
+     * Decrypts the entries whose key starts with {@code keyStart}. Only the keys are decrypted to
+     * select them, where the key scheme allows it. Expired entries are left out.
+     */
+    @NonNull
+    public Map<String, ?> getAllStartingWith(@NonNull String keyStart) {
+        List<String> encryptedKeys = new ArrayList<>();
+        List<String> encryptedValues = new ArrayList<>();
+        collectEntries(encryptedKeys, encryptedValues);
+        if (mKeyMac == null) {
+            boolean[] unreadable = new boolean[encryptedKeys.size()];
+            String[] keys = decryptKeys(encryptedKeys, unreadable);
+            int selected = 0;
+            for (int i = 0; i < keys.length; i++) {
+                if (!unreadable[i] && keys[i] != null && keys[i].startsWith(keyStart)) {
+                    encryptedKeys.set(selected, encryptedKeys.get(i));
+                    encryptedValues.set(selected, encryptedValues.get(i));
+                    selected++;
+                }
+            }
+            encryptedKeys = encryptedKeys.subList(0, selected);
+            encryptedValues = encryptedValues.subList(0, selected);
+        }
+        // Keyed hashes keep the key inside the value, so every value is decrypted to select.
+        Map<String, ?> entries = decodeEntries(encryptedKeys, encryptedValues);
+        if (mKeyMac != null) {
+            entries.keySet().removeIf(key -> key == null || !key.startsWith(keyStart));
+        }
+        return entries;
+    }
+    /**
+     * Removes the entries whose key starts with {@code keyStart} in a single commit, selecting
+     * them by their decrypted keys only.
+     *
+     * @return the number of entries removed.
+     */
+    public int removeAllStartingWith(@NonNull String keyStart) throws IOException {
+        mWriteLock.lock();
+        try {
+            List<String> encryptedKeys = getEncryptedKeys();
+            boolean[] unreadable = new boolean[encryptedKeys.size()];
+            String[] keys = decryptKeys(encryptedKeys, unreadable);
+            Editor editor = (Editor) edit();
+            int removed = 0;
+            for (int i = 0; i < keys.length; i++) {
+                if (!unreadable[i] && keys[i] != null && keys[i].startsWith(keyStart)) {
+                    editor.removeStored(encryptedKeys.get(i), keys[i]);
+                    removed++;
+                }
+            }
+            if (removed > 0 && !editor.commit()) {
+                throw new IOException("Failed to remove entries of " + mFileName);
+            }
+            return removed;
+        } finally {
+            mWriteLock.unlock();
+        }
+    }
+    /**
+     * Sets the string value of the entry to {@code newValue} only if it currently is
+     * {@code expectedValue}, with no other writer in between. A null expected value matches a
+     * missing entry, a null new value removes it.
+     *
+     * @return true if the value was set.
+     */
+    public boolean compareAndSetString(@Nullable String key, @Nullable String expectedValue,
+            @Nullable String newValue) {
+        mWriteLock.lock();
+        try {
+            Object value = getDecryptedObject(key);
+            if (!Objects.equals(value, expectedValue)) {
+                return false;
+            }
+            SharedPreferences.Editor editor = edit();
+            if (newValue == null) {
+                editor.remove(key);
+            } else {
+                editor.putString(key, newValue);
+            }
+            return editor.commit();
+        } finally {
+            mWriteLock.unlock();
+        }
+    }
+    /**
+     * Adds {@code delta} to the long value of the entry, with no other writer in between. A
+     * missing entry counts as 0.
+     *
+     * @return the new value.
+     * @throws IllegalStateException if the entry holds a value of another type.
+     * @throws IOException if the new value could not be stored.
+     */
+    public long incrementLong(@Nullable String key, long delta) throws IOException {
+        mWriteLock.lock();
+        try {
+            Object value = getDecryptedObject(key);
+            if (value != null && !(value instanceof Long)) {
+                throw new IllegalStateException("Not a long value: " + key);
+            }
+            long newValue = (value == null ? 0L : (Long) value) + delta;
+            if (!edit().putLong(key, newValue).commit()) {
+                throw new IOException("Failed to store the incremented value in " + mFileName);
+            }
+            return newValue;
+        } finally {
+            mWriteLock.unlock();
+        }
+    }
+    /**
+     * Returns the key under which a field of a map entry is stored as an entry of its own, so a
+     * field is encrypted, written and read without touching the others.
+     *
+     * <p>The length of the map key delimits it from the field, so no two pairs share a key.
+     */
+    @NonNull
+    public static String fieldKey(@NonNull String key, @NonNull String field) {
+        return fieldKeyStart(key) + field;
+    }
+    private static String fieldKeyStart(String key) {
+        return FIELD_KEY_MARK + Integer.toString(key.length()) + ':' + key;
+    }
+    /**
+     * Returns the key of the map entry a field key belongs to, or null for other keys.
+     */
+    @Nullable
+    public static String mapKeyOf(@NonNull String fieldKey) {
+        int separator = fieldKey.indexOf(':');
+        if (fieldKey.isEmpty() || fieldKey.charAt(0) != FIELD_KEY_MARK || separator < 0) {
+            return null;
+        }
+        try {
+            int length = Integer.parseInt(fieldKey.substring(1, separator));
+            return length <= fieldKey.length() - separator - 1
+                    ? fieldKey.substring(separator + 1, separator + 1 + length) : null;
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+    /**
+     * Decrypts a single field of a map entry.
+     */
+    @Nullable
+    public String getField(@NonNull String key, @NonNull String field) {
+        return getString(fieldKey(key, field), null);
+    }
+    /**
+     * Decrypts all fields of a map entry, selecting them by their keys only where the key
+     * scheme allows it.
+     */
+    @NonNull
+    public Map<String, String> getFields(@NonNull String key) {
+        String keyStart = fieldKeyStart(key);
+        Map<String, String> fields = new HashMap<>();
+        for (Map.Entry<String, ?> entry : getAllStartingWith(keyStart).entrySet()) {
+            if (entry.getValue() instanceof String) {
+                fields.put(entry.getKey().substring(keyStart.length()), (String) entry.getValue());
+            }
+        }
+        return fields;
+    }
+    /**
+     * Writes the fields of a map entry in a single commit, encrypting only the given fields. A
+     * null value removes the field.
+     *
+     * @return true if the fields were written to disk.
+     */
+    public boolean putFields(@NonNull String key, @NonNull Map<String, String> fields) {
+        SharedPreferences.Editor editor = fields.size() < PARALLEL_THRESHOLD ? edit() : editInBulk();
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            if (field.getValue() == null) {
+                editor.remove(fieldKey(key, field.getKey()));
+            } else {
+                editor.putString(fieldKey(key, field.getKey()), field.getValue());
+            }
         }
-        @Override
-        @NonNull
-        public SharedPreferences.Editor putInt(@Nullable String key, int value) {
-            ByteBuffer buffer = ByteBuffer.allocate(integerBytes + integerBytes);
-            buffer.putInt(EncryptedType.INT.getId());
-            buffer.putInt(value);
-            putEncryptedObject(key, buffer.array());
-            return this;
+        return editor.commit();
+    }
+    /**
+     * Removes all fields of a map entry in a single commit.
+     *
+     * @return the number of fields removed.
+     */
+    public int removeFields(@NonNull String key) throws IOException {
+        return removeAllStartingWith(fieldKeyStart(key));
+    }
+    /**
+     * Returns the version of the last commit, which rises by one with every commit that changes
+     * entries.
+     */
+    public long getVersion() {
+        mWriteLock.lock();
+        try {
+            return changeLogLocked().getVersion();
+        } finally {
+            mWriteLock.unlock();
         }
-        @Override
-        @NonNull
-        public SharedPreferences.Editor putLong(@Nullable String key, long value) {
-            ByteBuffer buffer = ByteBuffer.allocate(integerBytes + longBytes);
-            buffer.putInt(EncryptedType.LONG.getId());
-            buffer.putLong(value);
-            putEncryptedObject(key, buffer.array());
-            return this;
+    }
+    /**
+     * Returns the keys written or removed after the given version, in the order of their last
+     * change, or null when the change log no longer reaches back that far. Expired entries are
+     * included once they are removed.
+     *
+     * <p>The log is kept from the first call of this method or {@link #getVersion} on, so older
+     * versions are answered with null then.
+     */
+    @Nullable
+    public List<String> getKeysChangedSince(long version) {
+        List<String> keys;
+        mWriteLock.lock();
+        try {
+            keys = changeLogLocked().keysChangedSince(version);
+        } finally {
+            mWriteLock.unlock();
         }
-        @Override
-        @NonNull
-        public SharedPreferences.Editor putFloat(@Nullable String key, float value) {
-            ByteBuffer buffer = ByteBuffer.allocate(integerBytes + floatBytes);
-            buffer.putInt(EncryptedType.FLOAT.getId());
-            buffer.putFloat(value);
-            putEncryptedObject(key, buffer.array());
-            return this;
+        if (keys != null) {
+            Collections.replaceAll(keys, NULL_VALUE, null);
         }
-        @Override
-        @NonNull
-        public SharedPreferences.Editor putBoolean(@Nullable String key, boolean value) {
-            ByteBuffer buffer = ByteBuffer.allocate(integerBytes + byteBytes);
-            buffer.putInt(EncryptedType.BOOLEAN.getId());
-            buffer.put(value ? (byte) 1 : (byte) 0);
-            putEncryptedObject(key, buffer.array());
-            return this;
+        return keys;
+    }
+    /**
+     * Records the keys of a commit in a copy of the change log and writes the copy through the
+     * same editor, so the log and the entries it describes are stored together. Called with the
+     * write lock held; the copy is passed to {@link #keepChangeLog} once the commit is stored.
+     *
+     * <p>Nothing is logged before a reader asked for the log, so writes to files nobody catches up
+     * with do not rewrite it.
+     *
+     * @param unreadableRemoved whether entries whose key is not known were removed too, which
+     *                          makes the readers of earlier versions read everything again.
+     * @return the log to keep, or null when nothing was logged.
+     */
+    @Nullable
+    private ChangeLog logChanges(SharedPreferences.Editor rawEditor, Collection<String> keys,
+            boolean unreadableRemoved) {
+        if (keys.isEmpty() && !unreadableRemoved) {
+            return null;
         }
-        @Override
-        @NonNull
-        public SharedPreferences.Editor remove(@Nullable String key) {
-            if (mEncryptedSharedPreferences.isReservedKey(key)) {
-                throw new SecurityException(key + " is a reserved key for the encryption keyset.");
-            }
-            mEditor.remove(mEncryptedSharedPreferences.encryptKey(key));
-            mKeysChanged.add(key);
-            return this;
+        if (mChangeLog == null && !mSharedPreferences.contains(CHANGE_LOG_ALIAS)) {
+            return null;
         }
-        @Override
-        @NonNull
-        public SharedPreferences.Editor clear() {
-            // Set the flag to clear on commit, this operation happens first on commit.
-            // Cannot use underlying clear operation, it will remove the keysets and
-            // break the editor.
-            mClearRequested.set(true);
-            return this;
+        List<String> changedKeys = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            changedKeys.add(key == null ? NULL_VALUE : key);
         }
-        @Override
-        public boolean commit() {
-            clearKeysIfNeeded();
-            try {
-                return mEditor.commit();
-            } finally {
-                notifyListeners();
-                mKeysChanged.clear();
-            }
+        ChangeLog changeLog = changeLogLocked().copy();
+        changeLog.record(changedKeys);
+        if (unreadableRemoved) {
+            changeLog.dropKeys();
         }
-        @Override
-        public void apply() {
-            clearKeysIfNeeded();
-            mEditor.apply();
-            notifyListeners();
-            mKeysChanged.clear();
+        rawEditor.putString(CHANGE_LOG_ALIAS, encryptChangeLog(changeLog));
+        return changeLog;
+    }
+    /**
+     * Replaces the change log by the one a stored commit logged, if any. Called with the write
+     * lock held.
+     */
+    private void keepChangeLog(@Nullable ChangeLog changeLog) {
+        if (changeLog != null) {
+            mChangeLog = changeLog;
         }
-        private void clearKeysIfNeeded() {
-            // Call "clear" first as per the documentation, remove all keys that haven't
-            // been modified in this editor.
-            if (mClearRequested.getAndSet(false)) {
-                for (String key : mEncryptedSharedPreferences.getAll().keySet()) {
-                    if (!mKeysChanged.contains(key)
-                            && !mEncryptedSharedPreferences.isReservedKey(key)) {
-                        mEditor.remove(mEncryptedSharedPreferences.encryptKey(key));
-                    }
+    }
+    /**
+     * Loads the change log on first use. When the file has no log yet, or one that can not be
+     * read, for instance after the value keys were rotated, a new one is started and stored,
+     * which makes readers read everything again.
+     */
+    private ChangeLog changeLogLocked() {
+        if (mChangeLog == null) {
+            String encryptedLog = mSharedPreferences.getString(CHANGE_LOG_ALIAS, null);
+            if (encryptedLog != null) {
+                try {
+                    mChangeLog = ChangeLog.decode(mValueAead.decrypt(
+                            Base64.decode(encryptedLog, Base64.DEFAULT),
+                            CHANGE_LOG_ALIAS.getBytes(UTF_8)));
+                } catch (GeneralSecurityException | IOException | IllegalArgumentException ex) {
+                    // Started over below.
                 }
             }
-        }
-        private void putEncryptedObject(String key, byte[] value) {
-            if (mEncryptedSharedPreferences.isReservedKey(key)) {
-                throw new SecurityException(key + " is a reserved key for the encryption keyset.");
-            }
-            mKeysChanged.add(key);
-            if (key == null) {
-                key = NULL_VALUE;
-            }
-            try {
-                Pair<String, String> encryptedPair = mEncryptedSharedPreferences
-                        .encryptKeyValuePair(key, value);
-                mEditor.putString(encryptedPair.first, encryptedPair.second);
-            } catch (GeneralSecurityException ex) {
-                throw new SecurityException("Could not encrypt data: " + ex.getMessage(), ex);
+            if (mChangeLog == null) {
+                mChangeLog = ChangeLog.create();
+                // When this commit fails, the next logged commit stores the log.
+                mSharedPreferences.edit()
+                        .putString(CHANGE_LOG_ALIAS, encryptChangeLog(mChangeLog))
+                        .commit();
             }
         }
-        private void notifyListeners() {
-            for (OnSharedPreferenceChangeListener listener :
-                    mEncryptedSharedPreferences.mListeners) {
-                for (String key : mKeysChanged) {
-                    listener.onSharedPreferenceChanged(mEncryptedSharedPreferences, key);
-                }
-            }
+        return mChangeLog;
+    }
+    private String encryptChangeLog(ChangeLog changeLog) {
+        try {
+            KeyPrefix keyPrefix = mKeyPrefix;
+            byte[] cipherText = mValueAead.encrypt(
+                    changeLog.encode(keyPrefix != null ? keyPrefix.mValue : ""),
+                    CHANGE_LOG_ALIAS.getBytes(UTF_8));
+            return Base64.encode(cipherText);
+        } catch (GeneralSecurityException ex) {
+            throw new SecurityException("Could not encrypt the change log: " + ex.getMessage(), ex);
         }
     }
-    // SharedPreferences methods
-    @Override
-    @NonNull
-    public Map<String, ?> getAll() {
-        Map<String, ? super Object> allEntries = new HashMap<>();
+    /**
+     * Adds the encrypted keys and values of all entries, leaving out the keysets and markers.
+     */
+    private void collectEntries(List<String> encryptedKeys, List<String> encryptedValues) {
         for (Map.Entry<String, ?> entry : mSharedPreferences.getAll().entrySet()) {
-            if (!isReservedKey(entry.getKey())) {
-                String decryptedKey = decryptKey(entry.getKey());
-                allEntries.put(decryptedKey,
-                        getDecryptedObject(decryptedKey));
+            if (isReservedKey(entry.getKey()) || !(entry.getValue() instanceof String)) {
+                continue;
             }
+            encryptedKeys.add(entry.getKey());
+            encryptedValues.add((String) entry.getValue());
         }
-        return allEntries;
     }
     @Nullable
     @Override
@@ -417,6 +2019,16 @@ public final class EncryptedSharedPreferences implements SharedPreferences {
         return (value instanceof Float ? (Float) value : defValue);
     }
     @Override
+    public double getDouble(@Nullable String key, double defValue) {
+        Object value = getDecryptedObject(key);
+        return (value instanceof Double ? (Double) value : defValue);
+    }
+    @Nullable
+    @Override
+    public Object getObject(@Nullable String key) {
+        return getDecryptedObject(key);
+    }
+    @Override
     public boolean getBoolean(@Nullable String key, boolean defValue) {
         Object value = getDecryptedObject(key);
         return (value instanceof Boolean ? (Boolean) value : defValue);
@@ -427,12 +2039,46 @@ public final class EncryptedSharedPreferences implements SharedPreferences {
             throw new SecurityException(key + " is a reserved key for the encryption keyset.");
         }
         String encryptedKey = encryptKey(key);
-        return mSharedPreferences.contains(encryptedKey);
+        if (mSharedPreferences.contains(encryptedKey)) {
+            return true;
+        }
+        String previousEncryptedKey = encryptPreviousKey(key);
+        return previousEncryptedKey != null
+                && (mSharedPreferences.contains(previousEncryptedKey)
+                // The entry may have been moved to the current key in between.
+                || mSharedPreferences.contains(encryptedKey));
     }
     @Override
     @NonNull
-    public SharedPreferences.Editor edit() {
-        return new Editor(this, mSharedPreferences.edit());
+    public TypedEditor edit() {
+        return new Editor(this, mSharedPreferences.edit(), ValueEnvelope.NO_EXPIRY, false);
+    }
+    /**
+     * Returns an editor that buffers its changes in plain text, the last one per key winning, and
+     * encrypts them when they are committed or applied, in parallel when there are many.
+     *
+     * <p>A batch then takes about the encryption work divided by the number of cores, and keys
+     * that are put several times are encrypted once. Until then the plain text values stay in
+     * memory.
+     */
+    @NonNull
+    public TypedEditor editInBulk() {
+        return new Editor(this, mSharedPreferences.edit(), ValueEnvelope.NO_EXPIRY, true);
+    }
+    /**
+     * Returns an editor whose values expire at the given wall clock time.
+     *
+     * <p>Expired values read as absent and are removed by the next read or key rotation that
+     * finds them. {@link #contains(String)} does not decrypt and reports them until then.
+     *
+     * @param expiresAtMillis the expiry time, in milliseconds since the epoch.
+     */
+    @NonNull
+    public TypedEditor editWithExpiry(long expiresAtMillis) {
+        if (expiresAtMillis <= 0) {
+            throw new IllegalArgumentException("Invalid expiry time: " + expiresAtMillis);
+        }
+        return new Editor(this, mSharedPreferences.edit(), expiresAtMillis, false);
     }
     @Override
     public void registerOnSharedPreferenceChangeListener(
@@ -444,104 +2090,294 @@ public final class EncryptedSharedPreferences implements SharedPreferences {
             @NonNull OnSharedPreferenceChangeListener listener) {
         mListeners.remove(listener);
     }
+    private Object getDecryptedObject(String key) throws SecurityException {
+        return getDecryptedObject(key, null);
+    }
     /**
-     * Internal enum to set the type of encrypted data.
+     * Decrypts the value of the key, from the snapshot when one is given and from the store
+     * otherwise. Snapshot reads leave the store as it is, they neither move entries to the
+     * current keys nor remove expired ones.
      */
-    private enum EncryptedType {
-        STRING(0),
-        STRING_SET(1),
-        INT(2),
-        LONG(3),
-        FLOAT(4),
-        BOOLEAN(5);
-        private final int mId;
-        EncryptedType(int id) {
-            mId = id;
-        }
-        public int getId() {
-            return mId;
-        }
-        @Nullable
-        public static EncryptedType fromId(int id) {
-            return switch (id) {
-                case 0 -> STRING;
-                case 1 -> STRING_SET;
-                case 2 -> INT;
-                case 3 -> LONG;
-                case 4 -> FLOAT;
-                case 5 -> BOOLEAN;
-                default -> null;
-            };
-        }
-    }
-    private Object getDecryptedObject(String key) throws SecurityException {
+    private Object getDecryptedObject(String key, @Nullable Map<String, ?> snapshot)
+            throws SecurityException {
         if (isReservedKey(key)) {
             throw new SecurityException(key + " is a reserved key for the encryption keyset.");
         }
         if (key == null) {
             key = NULL_VALUE;
         }
-        try {
-            String encryptedKey = encryptKey(key);
-            String encryptedValue = mSharedPreferences.getString(encryptedKey, null);
-            if (encryptedValue == null) {
+        EncryptedKey currentEncryptedKey = encryptKeyCached(key);
+        String encryptedKey = currentEncryptedKey.mEncoded;
+        byte[] associatedData = currentEncryptedKey.mAssociatedData;
+        String encryptedValue = storedValue(encryptedKey, snapshot);
+        String previousEncryptedKey = null;
+        if (encryptedValue == null) {
+            previousEncryptedKey = encryptPreviousKey(key);
+            if (previousEncryptedKey == null) {
                 return null;
             }
-            byte[] cipherText = Base64.decode(encryptedValue, Base64.DEFAULT);
-            byte[] value = mValueAead.decrypt(cipherText, encryptedKey.getBytes(UTF_8));
-            ByteBuffer buffer = ByteBuffer.wrap(value);
-            buffer.position(0);
-            int typeId = buffer.getInt();
-            EncryptedType type = EncryptedType.fromId(typeId);
-            if (type == null) {
-                throw new SecurityException("Unknown type ID for encrypted pref value: " + typeId);
-            }
-            switch (type) {
-                case STRING:
-                    int stringLength = buffer.getInt();
-                    ByteBuffer stringSlice = buffer.slice();
-                    buffer.limit(stringLength);
-                    String stringValue = UTF_8.decode(stringSlice).toString();
-                    if (stringValue.equals(NULL_VALUE)) {
-                        return null;
-                    }
-                    return stringValue;
-                case INT:
-                    return buffer.getInt();
-                case LONG:
-                    return buffer.getLong();
-                case FLOAT:
-                    return buffer.getFloat();
-                case BOOLEAN:
-                    return buffer.get() != (byte) 0;
-                case STRING_SET:
-                    ArraySet<String> stringSet = new ArraySet<>();
-                    while (buffer.hasRemaining()) {
-                        int subStringLength = buffer.getInt();
-                        ByteBuffer subStringSlice = buffer.slice();
-                        subStringSlice.limit(subStringLength);
-                        buffer.position(buffer.position() + subStringLength);
-                        stringSet.add(UTF_8.decode(subStringSlice).toString());
-                    }
-                    if (stringSet.size() == 1 && NULL_VALUE.equals(stringSet.valueAt(0))) {
-                        return null;
+            encryptedValue = storedValue(previousEncryptedKey, snapshot);
+            if (encryptedValue != null) {
+                encryptedKey = previousEncryptedKey;
+                associatedData = previousEncryptedKey.getBytes(UTF_8);
+            } else {
+                // The entry may have been moved to the current key in between.
+                previousEncryptedKey = null;
+                encryptedValue = storedValue(encryptedKey, snapshot);
+                if (encryptedValue == null) {
+                    return null;
+                }
+            }
+        }
+        ValueEnvelope envelope;
+        try {
+            envelope = ValueEnvelope.decode(
+                    decryptValue(associatedData, encryptedValue), mKeyMac != null);
+        } catch (GeneralSecurityException | SecurityException ex) {
+            quarantine(encryptedKey, encryptedValue, ex);
+            return null;
+        }
+        if (envelope.isExpired(System.currentTimeMillis())) {
+            if (snapshot == null) {
+                removeExpired(key, encryptedKey, encryptedValue);
+            }
+            return null;
+        }
+        if (previousEncryptedKey != null && snapshot == null) {
+            rotateOnRead(previousEncryptedKey);
+        }
+        return envelope.getValue();
+    }
+    @Nullable
+    private String storedValue(String encryptedKey, @Nullable Map<String, ?> snapshot) {
+        if (snapshot == null) {
+            return mSharedPreferences.getString(encryptedKey, null);
+        }
+        Object value = snapshot.get(encryptedKey);
+        return value instanceof String ? (String) value : null;
+    }
+    /**
+     * Turns on quarantine mode, or off with null. In quarantine mode an entry that can not be
+     * decrypted is moved aside under a reserved key and reported to the listener once; reads
+     * treat it as missing, and all other entries stay readable. Outside of it such an entry
+     * makes reads fail. Moved entries are removed by {@link Editor#clear()} and by a compacting
+     * {@link #scanIntegrity}.
+     *
+     * <p>Only single entries are quarantined. Failures to load or use the keysets still surface.
+     */
+    public void setQuarantineListener(@Nullable QuarantineListener listener) {
+        mQuarantineListener = listener;
+    }
+    /**
+     * Sets what tells the entries of other writers sharing the file, such as the legacy ciphers,
+     * from those of these preferences. Such entries never decrypt; reads skip them and quarantine
+     * mode leaves them where they are.
+     */
+    public void setEntryFilter(@Nullable IntegrityScan.EntryFilter filter) {
+        mEntryFilter = filter;
+    }
+    /**
+     * Deflates string and string set values written from now on when that makes them smaller.
+     * Values already stored are read either way.
+     *
+     * <p>Off by default: the length of a compressed value depends on its content, so whoever
+     * can get data of their choosing stored next to a secret and see the file learns about the
+     * secret from the lengths. Only turn it on for large values without such an attacker.
+     */
+    public void setValueCompression(boolean compress) {
+        mCompressValues = compress;
+    }
+    /**
+     * Whether the entry filter says the stored key belongs to an older storage.
+     */
+    boolean isLegacyEntry(@NonNull String storedKey) {
+        IntegrityScan.EntryFilter filter = mEntryFilter;
+        return filter != null && filter.isLegacy(storedKey);
+    }
+    /**
+     * The number of entries moved aside by quarantine mode so far, which stay in the file until
+     * it is cleared or compacted. Counted once, then kept up to date.
+     */
+    public int getQuarantinedCount() {
+        mWriteLock.lock();
+        try {
+            if (mQuarantinedCount < 0) {
+                int count = 0;
+                for (String key : mSharedPreferences.getAll().keySet()) {
+                    if (isQuarantinedKey(key)) {
+                        count++;
                     }
-                    return stringSet;
-                default:
-                    throw new SecurityException("Unhandled type for encrypted pref value: " + type);
+                }
+                mQuarantinedCount = count;
+            }
+            return mQuarantinedCount;
+        } finally {
+            mWriteLock.unlock();
+        }
+    }
+    /**
+     * Receives the entries quarantine mode moves aside.
+     */
+    public interface QuarantineListener {
+        /**
+         * Called once per entry, on the thread that tried to read it.
+         *
+         * @param encryptedKey the key the entry was stored under.
+         */
+        void onQuarantined(@NonNull String encryptedKey, @NonNull Exception cause);
+    }
+    /**
+     * Moves an entry that could not be decrypted aside, unless it was rewritten or removed since,
+     * and reports it. Entries of older storages are skipped and stay where they are, they were
+     * never readable here. Must not be called from the crypto pool, it takes the write lock.
+     *
+     * @throws SecurityException with the cause outside of quarantine mode.
+     */
+    private void quarantine(String encryptedKey, @Nullable String encryptedValue,
+            Exception cause) {
+        if (isLegacyEntry(encryptedKey)) {
+            return;
+        }
+        QuarantineListener listener = mQuarantineListener;
+        if (listener == null) {
+            if (cause instanceof SecurityException) {
+                throw (SecurityException) cause;
+            }
+            throw new SecurityException("Could not decrypt value. " + cause.getMessage(), cause);
+        }
+        if (encryptedValue == null) {
+            return;
+        }
+        boolean moved = false;
+        mWriteLock.lock();
+        try {
+            if (encryptedValue.equals(mSharedPreferences.getString(encryptedKey, null))) {
+                SharedPreferences.Editor editor = mSharedPreferences.edit()
+                        .remove(encryptedKey)
+                        .putString(QUARANTINE_KEY_PREFIX + encryptedKey, encryptedValue);
+                // The key of the entry is not known.
+                ChangeLog changeLog = logChanges(editor, Collections.emptyList(), true);
+                editor.apply();
+                keepChangeLog(changeLog);
+                if (mQuarantinedCount >= 0) {
+                    mQuarantinedCount++;
+                }
+                moved = true;
+            }
+        } finally {
+            mWriteLock.unlock();
+        }
+        if (moved) {
+            listener.onQuarantined(encryptedKey, cause);
+        }
+    }
+    /**
+     * Decrypts a value, the associated data being the encrypted key it is stored under.
+     */
+    private byte[] decryptValue(byte[] associatedData, String encryptedValue)
+            throws GeneralSecurityException {
+        byte[] cipherText;
+        try {
+            cipherText = Base64.decode(encryptedValue, Base64.DEFAULT);
+        } catch (IllegalArgumentException ex) {
+            // Such as the markers of the legacy ciphers, which share the file.
+            throw new GeneralSecurityException("Value is not Base64 encoded", ex);
+        }
+        return mValueAead.decrypt(cipherText, associatedData);
+    }
+    private ValueEnvelope decodeEntry(String encryptedKey, String encryptedValue)
+            throws GeneralSecurityException {
+        return ValueEnvelope.decode(decryptValue(encryptedKey.getBytes(UTF_8), encryptedValue),
+                mKeyMac != null);
+    }
+    /**
+     * The plain text key of a decoded entry.
+     */
+    @Nullable
+    private String entryKey(String encryptedKey, ValueEnvelope envelope) {
+        if (mKeyMac == null) {
+            return decryptKey(encryptedKey);
+        }
+        String key = envelope.mKey;
+        KeyPrefix keyPrefix = mKeyPrefix;
+        if (envelope.mKeyPrefixed && keyPrefix != null) {
+            key = keyPrefix.mValue + key;
+        }
+        return NULL_VALUE.equals(key) ? null : key;
+    }
+    /**
+     * Removes an entry a read found expired, unless a writer is busy or it was rewritten since.
+     */
+    private void removeExpired(String key, String encryptedKey, String encryptedValue) {
+        if (mWriteLock.tryLock()) {
+            try {
+                if (encryptedValue.equals(mSharedPreferences.getString(encryptedKey, null))) {
+                    SharedPreferences.Editor editor = mSharedPreferences.edit().remove(encryptedKey);
+                    ChangeLog changeLog = logChanges(editor, Collections.singletonList(key), false);
+                    editor.apply();
+                    keepChangeLog(changeLog);
+                }
+            } finally {
+                mWriteLock.unlock();
             }
-        } catch (GeneralSecurityException ex) {
-            throw new SecurityException("Could not decrypt value. " + ex.getMessage(), ex);
         }
     }
     String encryptKey(String key) {
+        return encryptKeyCached(key).mEncoded;
+    }
+    /**
+     * Encrypts the key with the current key, or returns it from the cache when it was used
+     * recently.
+     */
+    private EncryptedKey encryptKeyCached(String key) {
+        if (key == null) {
+            key = NULL_VALUE;
+        }
+        // Read before the primitives, so a key encrypted with replaced ones goes to a dropped cache.
+        ConcurrentHashMap<String, EncryptedKey> encryptedKeys = mEncryptedKeys;
+        EncryptedKey encryptedKey = encryptedKeys.get(key);
+        if (encryptedKey == null) {
+            encryptedKey = new EncryptedKey(encryptKey(key, mKeyDeterministicAead, mKeyMac));
+            if (encryptedKeys.size() >= ENCRYPTED_KEY_CACHE_SIZE) {
+                encryptedKeys.clear();
+            }
+            encryptedKeys.put(key, encryptedKey);
+        }
+        return encryptedKey;
+    }
+    /**
+     * Encrypts the key with the key from before a pending rotation, or returns null.
+     */
+    @Nullable
+    String encryptPreviousKey(String key) {
+        DeterministicAead previousDeterministicAead = mPreviousKeyDeterministicAead;
+        Mac previousMac = mPreviousKeyMac;
+        if (previousDeterministicAead == null && previousMac == null) {
+            return null;
+        }
+        return encryptKey(key, previousDeterministicAead, previousMac);
+    }
+    private String encryptKey(String key, DeterministicAead deterministicAead, Mac mac) {
         if (key == null) {
             key = NULL_VALUE;
         }
+        KeyPrefix keyPrefix = mKeyPrefix;
+        int keyOffset = keyOffset(key, keyPrefix);
+        byte[] associatedData = keyOffset > 0 ? keyPrefix.mAssociatedData : mFileNameBytes;
+        int keyLength = ValueEnvelope.utf8Length(key, keyOffset);
         try {
-            byte[] encryptedKeyBytes = mKeyDeterministicAead.encryptDeterministically(
-                    key.getBytes(UTF_8),
-                    mFileName.getBytes());
+            if (mac != null) {
+                // The associated data is bound to the hash the way it is to SIV.
+                byte[] input = new byte[associatedData.length + byteBytes + keyLength];
+                System.arraycopy(associatedData, 0, input, 0, associatedData.length);
+                ValueEnvelope.encodeUtf8(key, keyOffset, input, associatedData.length + byteBytes);
+                return Base64.urlSafeEncode(mac.computeMac(input));
+            }
+            byte[] keyBytes = new byte[keyLength];
+            ValueEnvelope.encodeUtf8(key, keyOffset, keyBytes, 0);
+            byte[] encryptedKeyBytes = deterministicAead.encryptDeterministically(
+                    keyBytes,
+                    associatedData);
             return Base64.encode(encryptedKeyBytes);
         } catch (GeneralSecurityException ex) {
             throw new SecurityException("Could not encrypt key. " + ex.getMessage(), ex);
@@ -549,30 +2385,115 @@ public final class EncryptedSharedPreferences implements SharedPreferences {
     }
     String decryptKey(String encryptedKey) {
         try {
-            byte[] clearText = mKeyDeterministicAead.decryptDeterministically(
-                    Base64.decode(encryptedKey, Base64.DEFAULT),
-                    mFileName.getBytes());
-            String key = new String(clearText, UTF_8);
+            if (mKeyMac != null) {
+                String encryptedValue = mSharedPreferences.getString(encryptedKey, null);
+                if (encryptedValue == null) {
+                    throw new GeneralSecurityException("No value stored under the hashed key");
+                }
+                return entryKey(encryptedKey, decodeEntry(encryptedKey, encryptedValue));
+            }
+            byte[] encryptedKeyBytes = Base64.decode(encryptedKey, Base64.DEFAULT);
+            String key = null;
+            KeyPrefix keyPrefix = mKeyPrefix;
+            if (keyPrefix != null) {
+                try {
+                    key = keyPrefix.mValue + new String(mKeyDeterministicAead
+                            .decryptDeterministically(encryptedKeyBytes, keyPrefix.mAssociatedData),
+                            UTF_8);
+                } catch (GeneralSecurityException ex) {
+                    // Not a key with the prefix.
+                }
+            }
+            if (key == null) {
+                byte[] clearText = mKeyDeterministicAead.decryptDeterministically(
+                        encryptedKeyBytes,
+                        mFileNameBytes);
+                key = new String(clearText, UTF_8);
+            }
             if (key.equals(NULL_VALUE)) {
                 key = null;
             }
             return key;
-        } catch (GeneralSecurityException ex) {
+        } catch (GeneralSecurityException | IllegalArgumentException ex) {
+            // Keys that are not Base64, such as those of the legacy ciphers, are not ours either.
             throw new SecurityException("Could not decrypt key. " + ex.getMessage(), ex);
         }
     }
+    /**
+     * Where the stored part of the key starts: after the key prefix when the key has it.
+     */
+    private static int keyOffset(String key, @Nullable KeyPrefix keyPrefix) {
+        if (keyPrefix == null || key.length() <= keyPrefix.mValue.length()
+                || !key.startsWith(keyPrefix.mValue)) {
+            return 0;
+        }
+        return keyPrefix.mValue.length();
+    }
+    /**
+     * A key prefix and the associated data of the keys stored without it: the file name and the
+     * prefix.
+     */
+    private static final class KeyPrefix {
+        final String mValue;
+        final byte[] mAssociatedData;
+        KeyPrefix(String value, byte[] fileNameBytes) {
+            mValue = value;
+            byte[] valueBytes = value.getBytes(UTF_8);
+            mAssociatedData = ByteBuffer.allocate(fileNameBytes.length + byteBytes + valueBytes.length)
+                    .put(fileNameBytes)
+                    .put((byte) 0)
+                    .put(valueBytes)
+                    .array();
+        }
+    }
+    /**
+     * An encrypted key and its bytes, the associated data of the value stored under it.
+     */
+    private static final class EncryptedKey {
+        final String mEncoded;
+        final byte[] mAssociatedData;
+        EncryptedKey(String encoded) {
+            mEncoded = encoded;
+            mAssociatedData = encoded.getBytes(UTF_8);
+        }
+    }
+    /**
+     * Whether the stored key is one an entry was moved to by quarantine mode.
+     */
+    boolean isQuarantinedKey(String storedKey) {
+        return storedKey != null && storedKey.startsWith(QUARANTINE_KEY_PREFIX);
+    }
     /**
      * Check usage of the key and value keysets.
      *
      * @param key the plain text key
      */
     boolean isReservedKey(String key) {
-        return KEY_KEYSET_ALIAS.equals(key) || VALUE_KEYSET_ALIAS.equals(key);
+        return KEY_KEYSET_ALIAS.equals(key) || VALUE_KEYSET_ALIAS.equals(key)
+                || ENVELOPE_DATA_KEY_ALIAS.equals(key)
+                || ENVELOPE_KEY_KEYSET_ALIAS.equals(key)
+                || ENVELOPE_VALUE_KEYSET_ALIAS.equals(key)
+                || KEY_MAC_KEYSET_ALIAS.equals(key)
+                || ENVELOPE_KEY_MAC_KEYSET_ALIAS.equals(key)
+                || KEY_ROTATION_ALIAS.equals(key)
+                || KEY_PREFIX_ALIAS.equals(key)
+                || CHANGE_LOG_ALIAS.equals(key)
+                || isQuarantinedKey(key);
     }
-    Pair<String, String> encryptKeyValuePair(String key, byte[] value)
+    /**
+     * Encrypts an entry, the value in the version 2 layout of {@link ValueEnvelope}.
+     *
+     * @param value the value as stored, with {@link #NULL_VALUE} for null.
+     */
+    Pair<String, String> encryptEntry(String key, Object value, long expiresAtMillis)
             throws GeneralSecurityException {
-        String encryptedKey = encryptKey(key);
-        byte[] cipherText = mValueAead.encrypt(value, encryptedKey.getBytes(UTF_8));
-        return new Pair<>(encryptedKey, Base64.encode(cipherText));
+        EncryptedKey encryptedKey = encryptKeyCached(key);
+        // Keyed hashes can not be reversed, the plain text key goes in front of the value.
+        byte[] plainText = mKeyMac != null
+                ? ValueEnvelope.encode(key, keyOffset(key, mKeyPrefix), value, expiresAtMillis,
+                        mCompressValues)
+                : ValueEnvelope.encode(null, 0, value, expiresAtMillis, mCompressValues);
+        byte[] cipherText = mValueAead.encrypt(plainText, encryptedKey.mAssociatedData);
+        return new Pair<>(encryptedKey.mEncoded, Base64.encode(cipherText));
     }
-}
\ No newline at end of file
+}
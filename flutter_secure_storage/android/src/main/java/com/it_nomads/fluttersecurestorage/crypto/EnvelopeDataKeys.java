@@ -0,0 +1,116 @@
+package com.it_nomads.fluttersecurestorage.crypto;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import android.content.SharedPreferences;
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+import com.google.crypto.tink.Aead;
+import com.google.crypto.tink.subtle.AesGcmJce;
+import com.google.crypto.tink.subtle.Base64;
+import com.google.crypto.tink.subtle.Random;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+import java.util.HashMap;
+import java.util.Map;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+/**
+ * Software data encryption keys wrapped by a master key in the Android Keystore.
+ *
+ * <p>The master key, typically StrongBox backed, is only used to unwrap the data key the first
+ * time a preferences file is opened in the process. The data key is then held in memory, so
+ * opening the file again does not pay the latency of the secure element.
+ */
+final class EnvelopeDataKeys {
+    private static final String ANDROID_KEYSTORE = "AndroidKeyStore";
+    private static final String WRAP_TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int DATA_KEY_SIZE_IN_BYTES = 32;
+    private static final int WRAP_TAG_SIZE_IN_BITS = 128;
+    private static final Map<String, Aead> sDataKeys = new HashMap<>();
+
+    private EnvelopeDataKeys() {
+    }
+
+    /**
+     * Returns the data key of the preferences file, unwrapping it with the master key, or
+     * creating and storing it under {@code prefKey} when the file has none yet.
+     */
+    @NonNull
+    static synchronized Aead getOrCreate(@NonNull SharedPreferences sharedPreferences,
+                                         @NonNull String prefKey,
+                                         @NonNull String masterKeyAlias,
+                                         @NonNull String fileName)
+            throws GeneralSecurityException, IOException {
+        String cacheKey = masterKeyAlias + "/" + fileName;
+        Aead dataKey = sDataKeys.get(cacheKey);
+        if (dataKey != null) {
+            return dataKey;
+        }
+
+        byte[] associatedData = fileName.getBytes(UTF_8);
+        Key masterKey = getMasterKey(masterKeyAlias);
+        byte[] rawDataKey;
+        String wrappedDataKey = sharedPreferences.getString(prefKey, null);
+        if (wrappedDataKey != null) {
+            rawDataKey = unwrap(masterKey, Base64.decode(wrappedDataKey, Base64.DEFAULT), associatedData);
+        } else {
+            rawDataKey = Random.randBytes(DATA_KEY_SIZE_IN_BYTES);
+            String wrapped = Base64.encode(wrap(masterKey, rawDataKey, associatedData));
+            // The keysets are encrypted with the data key, it has to be on disk before them.
+            if (!sharedPreferences.edit().putString(prefKey, wrapped).commit()) {
+                throw new IOException("Failed to store the wrapped data key of " + fileName);
+            }
+        }
+
+        dataKey = new AesGcmJce(rawDataKey);
+        sDataKeys.put(cacheKey, dataKey);
+        return dataKey;
+    }
+
+    @VisibleForTesting
+    static synchronized void clearCache() {
+        sDataKeys.clear();
+    }
+
+    private static Key getMasterKey(String masterKeyAlias) throws GeneralSecurityException, IOException {
+        KeyStore keyStore = KeyStore.getInstance(ANDROID_KEYSTORE);
+        keyStore.load(null);
+        Key key = keyStore.getKey(masterKeyAlias, null);
+        if (!(key instanceof SecretKey)) {
+            throw new GeneralSecurityException("No secret key found under alias: " + masterKeyAlias);
+        }
+        return key;
+    }
+
+    private static byte[] wrap(Key masterKey, byte[] rawDataKey, byte[] associatedData)
+            throws GeneralSecurityException {
+        // The Keystore generates the IV, it is stored in front of the cipher text.
+        Cipher cipher = Cipher.getInstance(WRAP_TRANSFORMATION);
+        cipher.init(Cipher.ENCRYPT_MODE, masterKey);
+        cipher.updateAAD(associatedData);
+        byte[] cipherText = cipher.doFinal(rawDataKey);
+        byte[] iv = cipher.getIV();
+        return ByteBuffer.allocate(1 + iv.length + cipherText.length)
+                .put((byte) iv.length)
+                .put(iv)
+                .put(cipherText)
+                .array();
+    }
+
+    private static byte[] unwrap(Key masterKey, byte[] wrappedDataKey, byte[] associatedData)
+            throws GeneralSecurityException {
+        if (wrappedDataKey.length < 1 || wrappedDataKey.length < 1 + (wrappedDataKey[0] & 0xff)) {
+            throw new GeneralSecurityException("Wrapped data key is truncated");
+        }
+        int ivLength = wrappedDataKey[0] & 0xff;
+        Cipher cipher = Cipher.getInstance(WRAP_TRANSFORMATION);
+        cipher.init(Cipher.DECRYPT_MODE, masterKey,
+                new GCMParameterSpec(WRAP_TAG_SIZE_IN_BITS, wrappedDataKey, 1, ivLength));
+        cipher.updateAAD(associatedData);
+        return cipher.doFinal(wrappedDataKey, 1 + ivLength, wrappedDataKey.length - 1 - ivLength);
+    }
+}
@@ -0,0 +1,160 @@
+package com.it_nomads.fluttersecurestorage.crypto;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+/**
+ * Checks every stored entry of an {@link EncryptedSharedPreferences} in short time slices,
+ * started by {@link EncryptedSharedPreferences#scanIntegrity}, to find bad entries before a read
+ * needs them.
+ *
+ * <p>An entry is checked by authenticating its value and key. The decrypted bytes are wiped
+ * right away, values are never decoded. The scan works on the entries as they were when it
+ * started and takes no lock while it checks them, so reads and writes go on. With compaction the
+ * entries found are removed in one commit at the end, except those rewritten since.
+ */
+public final class IntegrityScan implements Runnable {
+    // Short enough to stay out of the way of the threads drawing frames.
+    static final long SLICE_MILLIS = 8;
+    static final long SLICE_PAUSE_MILLIS = 50;
+    /**
+     * What is wrong with an entry.
+     */
+    public enum Problem {
+        /** The value or the key does not authenticate, or the entry was quarantined. */
+        CORRUPT,
+        /** Written by an older storage, such as the legacy ciphers. */
+        LEGACY,
+        /** Intact, but under a key prefix that is no longer used, or a key no one reads. */
+        ORPHANED
+    }
+    /**
+     * Tells the entries of the current user of the file from leftovers.
+     */
+    public interface EntryFilter {
+        /**
+         * Whether an entry that does not decrypt was written by an older storage.
+         *
+         * @param storedKey the key as stored in the file.
+         */
+        boolean isLegacy(@NonNull String storedKey);
+        /**
+         * Whether a decrypted key is still read. Keys starting with the key prefix always are and
+         * are not passed.
+         */
+        boolean isOwned(@Nullable String key);
+    }
+    private final EncryptedSharedPreferences mPreferences;
+    @Nullable
+    private final EntryFilter mFilter;
+    private final boolean mCompact;
+    // By stored key, written by the scanning thread and read by the ones asking for progress.
+    private final Map<String, Problem> mProblems = new ConcurrentHashMap<>();
+    private volatile int mTotalEntries = -1;
+    private volatile int mScannedEntries;
+    private volatile int mCompactedEntries;
+    private volatile boolean mFinished;
+    @Nullable
+    private volatile Exception mError;
+    IntegrityScan(EncryptedSharedPreferences preferences, @Nullable EntryFilter filter,
+            boolean compact) {
+        mPreferences = preferences;
+        mFilter = filter;
+        mCompact = compact;
+    }
+    @Override
+    public void run() {
+        try {
+            Map<String, ?> stored = mPreferences.mSharedPreferences.getAll();
+            List<String> storedKeys = new ArrayList<>(stored.size());
+            for (String storedKey : stored.keySet()) {
+                if (!mPreferences.isReservedKey(storedKey)
+                        || mPreferences.isQuarantinedKey(storedKey)) {
+                    storedKeys.add(storedKey);
+                }
+            }
+            mTotalEntries = storedKeys.size();
+            // The keys of orphaned entries that could be decrypted, to report their removal.
+            Map<String, String> orphanedKeys = new HashMap<>();
+            Map<String, Object> found = new HashMap<>();
+            long sliceNanos = TimeUnit.MILLISECONDS.toNanos(SLICE_MILLIS);
+            int scanned = 0;
+            while (scanned < storedKeys.size()) {
+                long sliceEnd = System.nanoTime() + sliceNanos;
+                do {
+                    String storedKey = storedKeys.get(scanned);
+                    Object storedValue = stored.get(storedKey);
+                    Problem problem = mPreferences.verifyEntry(storedKey, storedValue, mFilter,
+                            orphanedKeys);
+                    if (problem != null) {
+                        mProblems.put(storedKey, problem);
+                        found.put(storedKey, storedValue);
+                    }
+                    mScannedEntries = ++scanned;
+                } while (scanned < storedKeys.size() && System.nanoTime() < sliceEnd);
+                if (scanned < storedKeys.size()) {
+                    Thread.sleep(SLICE_PAUSE_MILLIS);
+                }
+            }
+            if (mCompact && !found.isEmpty()) {
+                mCompactedEntries = mPreferences.removeScannedEntries(found, orphanedKeys);
+            }
+        } catch (InterruptedException ex) {
+            mError = ex;
+            Thread.currentThread().interrupt();
+        } catch (Exception ex) {
+            mError = ex;
+        } finally {
+            mFinished = true;
+        }
+    }
+    /**
+     * The number of entries to check, or -1 before the scan has listed them.
+     */
+    public int getTotalEntries() {
+        return mTotalEntries;
+    }
+    public int getScannedEntries() {
+        return mScannedEntries;
+    }
+    /**
+     * The entries found so far, by the key they are stored under.
+     */
+    @NonNull
+    public Map<String, Problem> getProblems() {
+        return new HashMap<>(mProblems);
+    }
+    /**
+     * The number of entries found so far with the given problem.
+     */
+    public int getProblemCount(@NonNull Problem problem) {
+        int count = 0;
+        for (Problem found : mProblems.values()) {
+            if (found == problem) {
+                count++;
+            }
+        }
+        return count;
+    }
+    /**
+     * The number of entries compaction removed, 0 without compaction or before it ran.
+     */
+    public int getCompactedEntries() {
+        return mCompactedEntries;
+    }
+    public boolean isCompacting() {
+        return mCompact;
+    }
+    public boolean isFinished() {
+        return mFinished;
+    }
+    @Nullable
+    public Exception getError() {
+        return mError;
+    }
+}
@@ -0,0 +1,139 @@
+package com.it_nomads.fluttersecurestorage.crypto;
+
+import androidx.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+/**
+ * Moves the entries of an {@link EncryptedSharedPreferences} to its current keys after
+ * {@link EncryptedSharedPreferences#rotateKeys}, in throttled batches.
+ *
+ * <p>Each batch holds the write lock of the preferences only while it re-encrypts its entries,
+ * and applies them in one edit. Reads never wait for it. Entries written while the rotation runs
+ * use the new keys already; a last pass under the lock catches those written by editors opened
+ * before the rotation started.
+ */
+public final class KeyRotation implements Runnable {
+    static final int BATCH_SIZE = 32;
+    static final long BATCH_PAUSE_MILLIS = 50;
+    private final EncryptedSharedPreferences mPreferences;
+    private volatile int mTotalEntries = -1;
+    private volatile int mProcessedEntries;
+    private volatile int mFailedEntries;
+    private volatile long mStartNanos;
+    private volatile boolean mFinished;
+    @Nullable
+    private volatile Exception mError;
+    KeyRotation(EncryptedSharedPreferences preferences) {
+        mPreferences = preferences;
+    }
+    @Override
+    public void run() {
+        mStartNanos = System.nanoTime();
+        try {
+            Set<String> seen = new HashSet<>();
+            List<String> pending = mPreferences.getEncryptedKeys();
+            mTotalEntries = pending.size();
+            while (!pending.isEmpty()) {
+                for (int from = 0; from < pending.size(); from += BATCH_SIZE) {
+                    List<String> batch = pending.subList(from,
+                            Math.min(from + BATCH_SIZE, pending.size()));
+                    rotateBatch(batch, seen);
+                    seen.addAll(batch);
+                    Thread.sleep(BATCH_PAUSE_MILLIS);
+                }
+                pending = unseen(seen);
+                mTotalEntries += pending.size();
+            }
+            mPreferences.mWriteLock.lock();
+            try {
+                pending = unseen(seen);
+                mTotalEntries += pending.size();
+                rotateBatch(pending, seen);
+                mPreferences.finishKeyRotationLocked(mFailedEntries);
+            } finally {
+                mPreferences.mWriteLock.unlock();
+            }
+        } catch (InterruptedException ex) {
+            mError = ex;
+            Thread.currentThread().interrupt();
+        } catch (Exception ex) {
+            mError = ex;
+        } finally {
+            mFinished = true;
+        }
+    }
+    /**
+     * The number of entries to move, or -1 before the rotation has listed them. It grows when
+     * entries are added while the rotation runs.
+     */
+    public int getTotalEntries() {
+        return mTotalEntries;
+    }
+    /**
+     * The number of entries that were moved, were already on the current keys, or failed.
+     */
+    public int getProcessedEntries() {
+        return mProcessedEntries;
+    }
+    /**
+     * The number of entries that could not be decrypted, leaving out those of older storages
+     * sharing the file. The previous keys are kept when there are any.
+     */
+    public int getFailedEntries() {
+        return mFailedEntries;
+    }
+    public boolean isFinished() {
+        return mFinished;
+    }
+    @Nullable
+    public Exception getError() {
+        return mError;
+    }
+    /**
+     * The estimated time until every entry is moved, from the pace so far, or -1 when there is
+     * no estimate yet.
+     */
+    public long getEstimatedRemainingMillis() {
+        if (mFinished) {
+            return 0;
+        }
+        int processed = mProcessedEntries;
+        int total = mTotalEntries;
+        if (processed == 0 || total < 0) {
+            return -1;
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - mStartNanos);
+        return elapsedMillis * Math.max(0, total - processed) / processed;
+    }
+    private void rotateBatch(List<String> batch, Set<String> seen) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        int failed;
+        boolean locked = mPreferences.mWriteLock.isHeldByCurrentThread();
+        if (!locked) {
+            mPreferences.mWriteLock.lock();
+        }
+        try {
+            failed = mPreferences.rotateEntriesLocked(batch, seen);
+        } finally {
+            if (!locked) {
+                mPreferences.mWriteLock.unlock();
+            }
+        }
+        mFailedEntries += failed;
+        mProcessedEntries += batch.size();
+    }
+    private List<String> unseen(Set<String> seen) {
+        List<String> unseen = new ArrayList<>();
+        for (String encryptedKey : mPreferences.getEncryptedKeys()) {
+            if (!seen.contains(encryptedKey)) {
+                unseen.add(encryptedKey);
+            }
+        }
+        return unseen;
+    }
+}
@@ -0,0 +1,79 @@
+package com.it_nomads.fluttersecurestorage.crypto;
+
+import androidx.annotation.NonNull;
+import com.google.crypto.tink.Aead;
+import com.google.crypto.tink.KeysetHandle;
+import com.google.crypto.tink.RegistryConfiguration;
+import com.google.crypto.tink.aead.AeadConfig;
+import com.google.crypto.tink.subtle.Random;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+/**
+ * Picks the fastest {@link EncryptedSharedPreferences.PrefValueEncryptionScheme} on this device.
+ *
+ * <p>Each scheme encrypts and decrypts a short value a few hundred times with a key that only
+ * exists in memory. Schemes that the device can not instantiate are skipped. The measurement is
+ * cut short after {@link #MAX_MEASURE_MILLIS}, leaving out the schemes that had not finished.
+ *
+ * <p>Nothing is remembered between calls: the scheme picked for a file lives in its value
+ * keyset, so the measurement only runs when a file is created or its keys are rotated.
+ */
+public final class PrefValueSchemeSelector {
+    // Keeps the creation of a store from blocking noticeably on slow devices.
+    static final long MAX_MEASURE_MILLIS = 20;
+    private static final int VALUE_SIZE_IN_BYTES = 256;
+    private static final int WARMUP_ITERATIONS = 64;
+    private static final int MEASURED_ITERATIONS = 256;
+    private static final byte[] ASSOCIATED_DATA = new byte[32];
+    private PrefValueSchemeSelector() {
+    }
+    /**
+     * Measures the schemes and returns the fastest one, AES256_GCM when none finished in time.
+     */
+    @NonNull
+    public static EncryptedSharedPreferences.PrefValueEncryptionScheme select()
+            throws GeneralSecurityException {
+        AeadConfig.register();
+        long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_MEASURE_MILLIS);
+        byte[] value = Random.randBytes(VALUE_SIZE_IN_BYTES);
+        EncryptedSharedPreferences.PrefValueEncryptionScheme fastest =
+                EncryptedSharedPreferences.PrefValueEncryptionScheme.AES256_GCM;
+        long fastestNanos = Long.MAX_VALUE;
+        for (EncryptedSharedPreferences.PrefValueEncryptionScheme scheme :
+                EncryptedSharedPreferences.PrefValueEncryptionScheme.values()) {
+            Aead aead;
+            try {
+                aead = KeysetHandle.generateNew(scheme.getKeyTemplate())
+                        .getPrimitive(RegistryConfiguration.get(), Aead.class);
+                if (!roundTrips(aead, value, WARMUP_ITERATIONS, deadlineNanos)) {
+                    break;
+                }
+            } catch (GeneralSecurityException ex) {
+                continue;
+            }
+            long startNanos = System.nanoTime();
+            if (!roundTrips(aead, value, MEASURED_ITERATIONS, deadlineNanos)) {
+                break;
+            }
+            long elapsedNanos = System.nanoTime() - startNanos;
+            if (elapsedNanos < fastestNanos) {
+                fastest = scheme;
+                fastestNanos = elapsedNanos;
+            }
+        }
+        return fastest;
+    }
+    /**
+     * @return false when the deadline passed before all iterations ran.
+     */
+    private static boolean roundTrips(Aead aead, byte[] value, int iterations,
+            long deadlineNanos) throws GeneralSecurityException {
+        for (int i = 0; i < iterations; i++) {
+            aead.decrypt(aead.encrypt(value, ASSOCIATED_DATA), ASSOCIATED_DATA);
+            if (System.nanoTime() > deadlineNanos) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,28 @@
+package com.it_nomads.fluttersecurestorage.crypto;
+
+import android.content.SharedPreferences;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+/**
+ * {@link SharedPreferences} that also hold doubles, which the platform interface can only store
+ * as floats, losing precision, and that hand out a value without knowing its type up front.
+ */
+public interface TypedSharedPreferences extends SharedPreferences {
+    /**
+     * Returns the value of the entry, of whichever type it was written with, or null if there
+     * is none.
+     */
+    @Nullable
+    Object getObject(@Nullable String key);
+    double getDouble(@Nullable String key, double defValue);
+    @Override
+    @NonNull
+    TypedEditor edit();
+    /**
+     * An editor that also writes doubles.
+     */
+    interface TypedEditor extends SharedPreferences.Editor {
+        @NonNull
+        TypedEditor putDouble(@Nullable String key, double value);
+    }
+}
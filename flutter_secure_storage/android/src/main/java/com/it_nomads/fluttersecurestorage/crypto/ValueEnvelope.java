@@ -0,0 +1,482 @@
+package com.it_nomads.fluttersecurestorage.crypto;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.collection.ArraySet;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+/**
+ * The plain text of an encrypted pref value.
+ *
+ * <p>Version 1 is the androidx security-crypto layout: a 4-byte type ID followed by the value,
+ * with 4-byte lengths. With keyed-hash pref keys it is preceded by the plain text key and its
+ * 4-byte length.
+ *
+ * <p>Version 2 starts with {@link #FORMAT_V2}, which version 1 never does since its first byte
+ * is always 0, and a flags byte. Then come the plain text key for keyed-hash pref keys, the
+ * expiry time when flagged, the type ID and the value, with varint lengths and integers. When
+ * asked to, the value of strings and string sets is deflated if that makes it smaller.
+ *
+ * <p>Encoding reuses per-thread buffers, since values are encoded on every put. The zlib streams
+ * hold native memory, so they are created per value and ended right after.
+ */
+final class ValueEnvelope {
+    static final byte FORMAT_V2 = 2;
+    static final int FLAG_COMPRESSED = 1;
+    static final int FLAG_EXPIRES = 1 << 1;
+    static final int FLAG_KEY_PREFIXED = 1 << 2;
+    static final long NO_EXPIRY = 0;
+    private static final int TYPE_STRING = 0;
+    private static final int TYPE_STRING_SET = 1;
+    private static final int TYPE_INT = 2;
+    private static final int TYPE_LONG = 3;
+    private static final int TYPE_FLOAT = 4;
+    private static final int TYPE_BOOLEAN = 5;
+    // Version 2 only.
+    private static final int TYPE_DOUBLE = 6;
+    private static final int COMPRESSION_THRESHOLD = 128;
+    private static final int INITIAL_SCRATCH_SIZE = 256;
+    private static final int MAX_RETAINED_SCRATCH_SIZE = 16 * 1024;
+    // SharedPreferences values are held in memory as a whole, far below this.
+    private static final int MAX_INFLATED_LENGTH = 64 * 1024 * 1024;
+    private static final ThreadLocal<Scratch> sScratch = ThreadLocal.withInitial(Scratch::new);
+    // The key as stored, without the key prefix when mKeyPrefixed is set. Null unless the pref
+    // keys are hashed.
+    @Nullable
+    final String mKey;
+    final boolean mKeyPrefixed;
+    // The value as stored, NULL_VALUE stands for null.
+    @NonNull
+    final Object mValue;
+    final long mExpiresAtMillis;
+    private ValueEnvelope(@Nullable String key, boolean keyPrefixed, @NonNull Object value,
+                          long expiresAtMillis) {
+        mKey = key;
+        mKeyPrefixed = keyPrefixed;
+        mValue = value;
+        mExpiresAtMillis = expiresAtMillis;
+    }
+    /**
+     * The value as returned to callers, null when null was put.
+     */
+    @Nullable
+    Object getValue() {
+        if (EncryptedSharedPreferences.NULL_VALUE.equals(mValue)) {
+            return null;
+        }
+        if (mValue instanceof Set && ((Set<?>) mValue).size() == 1
+                && ((Set<?>) mValue).contains(EncryptedSharedPreferences.NULL_VALUE)) {
+            return null;
+        }
+        return mValue;
+    }
+    boolean isExpired(long nowMillis) {
+        return mExpiresAtMillis != NO_EXPIRY && mExpiresAtMillis <= nowMillis;
+    }
+    /**
+     * Encodes a value in version 2.
+     *
+     * <p>The value is written straight into a buffer reused by the calling thread, so the only
+     * array allocated is the returned plain text.
+     *
+     * @param key             the plain text key to embed, or null when the pref keys can be
+     *                        decrypted.
+     * @param keyOffset       where the embedded part of the key starts; a non-zero offset skips
+     *                        the key prefix and sets {@link #FLAG_KEY_PREFIXED}.
+     * @param value           a String, a Set of Strings, an Integer, a Long, a Float, a Double or
+     *                        a Boolean.
+     * @param expiresAtMillis the wall clock time the value expires at, or {@link #NO_EXPIRY}.
+     * @param compress        whether to deflate strings and string sets. The length of the
+     *                        encrypted value then depends on its content, which leaks how much of
+     *                        it matches data an attacker can get stored next to it.
+     */
+    static byte[] encode(@Nullable String key, int keyOffset, @NonNull Object value,
+                         long expiresAtMillis, boolean compress) {
+        Scratch scratch = sScratch.get();
+        scratch.mLength = 0;
+        scratch.write(FORMAT_V2);
+        int flags = 0;
+        if (expiresAtMillis != NO_EXPIRY) {
+            flags |= FLAG_EXPIRES;
+        }
+        if (key != null && keyOffset > 0) {
+            flags |= FLAG_KEY_PREFIXED;
+        }
+        scratch.write(flags);
+        if (key != null) {
+            scratch.writeString(key, keyOffset);
+        }
+        if (expiresAtMillis != NO_EXPIRY) {
+            scratch.writeVarint(expiresAtMillis);
+        }
+        if (value instanceof String) {
+            scratch.writeVarint(TYPE_STRING);
+            int bodyOffset = scratch.mLength;
+            scratch.writeString((String) value, 0);
+            if (compress) {
+                scratch.compress(bodyOffset);
+            }
+        } else if (value instanceof Set) {
+            scratch.writeVarint(TYPE_STRING_SET);
+            int bodyOffset = scratch.mLength;
+            Set<?> values = (Set<?>) value;
+            scratch.writeVarint(values.size());
+            for (Object element : values) {
+                scratch.writeString((String) element, 0);
+            }
+            if (compress) {
+                scratch.compress(bodyOffset);
+            }
+        } else if (value instanceof Integer) {
+            scratch.writeVarint(TYPE_INT);
+            scratch.writeVarint(zigZag((Integer) value));
+        } else if (value instanceof Long) {
+            scratch.writeVarint(TYPE_LONG);
+            scratch.writeVarint(zigZag((Long) value));
+        } else if (value instanceof Float) {
+            scratch.writeVarint(TYPE_FLOAT);
+            int bits = Float.floatToIntBits((Float) value);
+            scratch.write(bits >>> 24);
+            scratch.write(bits >>> 16);
+            scratch.write(bits >>> 8);
+            scratch.write(bits);
+        } else if (value instanceof Double) {
+            scratch.writeVarint(TYPE_DOUBLE);
+            long bits = Double.doubleToLongBits((Double) value);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                scratch.write((int) (bits >>> shift));
+            }
+        } else if (value instanceof Boolean) {
+            scratch.writeVarint(TYPE_BOOLEAN);
+            scratch.write((Boolean) value ? 1 : 0);
+        } else {
+            throw new IllegalArgumentException("Unsupported pref value: " + value.getClass());
+        }
+        return scratch.release();
+    }
+    /**
+     * Decodes a value in either version.
+     *
+     * @param hasKey whether the plain text key is embedded, that is whether the pref keys are
+     *               hashed.
+     * @throws SecurityException when the plain text is malformed.
+     */
+    @NonNull
+    static ValueEnvelope decode(@NonNull byte[] plainText, boolean hasKey) {
+        ByteBuffer buffer = ByteBuffer.wrap(plainText);
+        try {
+            if (plainText.length > 0 && plainText[0] == FORMAT_V2) {
+                return decodeV2(buffer, hasKey);
+            }
+            return decodeV1(buffer, hasKey);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException ex) {
+            throw new SecurityException("Truncated encrypted pref value", ex);
+        }
+    }
+    /**
+     * Reads only the plain text key embedded with keyed-hash pref keys, leaving the value
+     * encoded.
+     *
+     * @param keyPrefix the prefix to put back in front of a key stored without it, or null.
+     * @throws SecurityException when the plain text is malformed.
+     */
+    @NonNull
+    static String decodeKey(@NonNull byte[] plainText, @Nullable String keyPrefix) {
+        ByteBuffer buffer = ByteBuffer.wrap(plainText);
+        try {
+            if (plainText.length > 0 && plainText[0] == FORMAT_V2) {
+                buffer.get();
+                int flags = buffer.get();
+                String key = readString(buffer);
+                return (flags & FLAG_KEY_PREFIXED) != 0 && keyPrefix != null
+                        ? keyPrefix + key : key;
+            }
+            int keyLength = buffer.getInt();
+            if (keyLength < 0 || keyLength > buffer.remaining()) {
+                throw new SecurityException("Invalid key length in encrypted pref value");
+            }
+            return new String(plainText, buffer.position(), keyLength, UTF_8);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException ex) {
+            throw new SecurityException("Truncated encrypted pref value", ex);
+        }
+    }
+    private static ValueEnvelope decodeV2(ByteBuffer buffer, boolean hasKey) {
+        buffer.get();
+        int flags = buffer.get();
+        String key = hasKey ? readString(buffer) : null;
+        long expiresAtMillis = (flags & FLAG_EXPIRES) != 0 ? readVarint(buffer) : NO_EXPIRY;
+        int type = (int) readVarint(buffer);
+        if ((flags & FLAG_COMPRESSED) != 0) {
+            buffer = ByteBuffer.wrap(inflate(buffer));
+        }
+        Object value;
+        switch (type) {
+            case TYPE_STRING:
+                value = readString(buffer);
+                break;
+            case TYPE_STRING_SET:
+                int count = (int) readVarint(buffer);
+                ArraySet<String> stringSet = new ArraySet<>(count);
+                for (int i = 0; i < count; i++) {
+                    stringSet.add(readString(buffer));
+                }
+                value = stringSet;
+                break;
+            case TYPE_INT:
+                value = (int) unZigZag(readVarint(buffer));
+                break;
+            case TYPE_LONG:
+                value = unZigZag(readVarint(buffer));
+                break;
+            case TYPE_FLOAT:
+                value = buffer.getFloat();
+                break;
+            case TYPE_DOUBLE:
+                value = buffer.getDouble();
+                break;
+            case TYPE_BOOLEAN:
+                value = buffer.get() != (byte) 0;
+                break;
+            default:
+                throw new SecurityException("Unknown type ID for encrypted pref value: " + type);
+        }
+        return new ValueEnvelope(key, (flags & FLAG_KEY_PREFIXED) != 0, value, expiresAtMillis);
+    }
+    private static ValueEnvelope decodeV1(ByteBuffer buffer, boolean hasKey) {
+        String key = null;
+        if (hasKey) {
+            int keyLength = buffer.getInt();
+            key = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), keyLength,
+                    UTF_8);
+            buffer.position(buffer.position() + keyLength);
+        }
+        int type = buffer.getInt();
+        Object value;
+        switch (type) {
+            case TYPE_STRING:
+                int stringLength = buffer.getInt();
+                value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(),
+                        stringLength, UTF_8);
+                break;
+            case TYPE_INT:
+                value = buffer.getInt();
+                break;
+            case TYPE_LONG:
+                value = buffer.getLong();
+                break;
+            case TYPE_FLOAT:
+                value = buffer.getFloat();
+                break;
+            case TYPE_BOOLEAN:
+                value = buffer.get() != (byte) 0;
+                break;
+            case TYPE_STRING_SET:
+                ArraySet<String> stringSet = new ArraySet<>();
+                while (buffer.hasRemaining()) {
+                    int subStringLength = buffer.getInt();
+                    stringSet.add(new String(buffer.array(),
+                            buffer.arrayOffset() + buffer.position(), subStringLength, UTF_8));
+                    buffer.position(buffer.position() + subStringLength);
+                }
+                value = stringSet;
+                break;
+            default:
+                throw new SecurityException("Unknown type ID for encrypted pref value: " + type);
+        }
+        return new ValueEnvelope(key, false, value, NO_EXPIRY);
+    }
+    private static String readString(ByteBuffer buffer) {
+        int length = (int) readVarint(buffer);
+        if (length < 0 || length > buffer.remaining()) {
+            throw new SecurityException("Invalid string length in encrypted pref value");
+        }
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(),
+                length, UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+    private static long readVarint(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new SecurityException("Malformed varint in encrypted pref value");
+    }
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+    private static byte[] inflate(ByteBuffer buffer) {
+        int length = (int) readVarint(buffer);
+        if (length < 0 || length > MAX_INFLATED_LENGTH) {
+            throw new SecurityException("Invalid compressed pref value length: " + length);
+        }
+        Inflater inflater = new Inflater(true);
+        inflater.setInput(buffer.array(), buffer.arrayOffset() + buffer.position(),
+                buffer.remaining());
+        byte[] output = new byte[length];
+        try {
+            int offset = 0;
+            while (offset < length) {
+                int inflated = inflater.inflate(output, offset, length - offset);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                offset += inflated;
+            }
+            if (offset != length) {
+                throw new SecurityException("Truncated compressed pref value");
+            }
+            return output;
+        } catch (DataFormatException ex) {
+            throw new SecurityException("Malformed compressed pref value", ex);
+        } finally {
+            inflater.end();
+        }
+    }
+    /**
+     * The number of bytes {@code value} takes in UTF-8, from {@code offset} on.
+     */
+    static int utf8Length(String value, int offset) {
+        int length = 0;
+        for (int i = offset; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+    /**
+     * Encodes {@code value} from {@code offset} on as UTF-8 into {@code out} at {@code position},
+     * which must have room for {@link #utf8Length(String, int)} bytes, and returns the position
+     * after it. Unpaired surrogates become '?', as with {@link String#getBytes}.
+     */
+    static int encodeUtf8(String value, int offset, byte[] out, int position) {
+        for (int i = offset; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                out[position++] = (byte) c;
+            } else if (c < 0x800) {
+                out[position++] = (byte) (0xC0 | (c >> 6));
+                out[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                out[position++] = (byte) (0xF0 | (codePoint >> 18));
+                out[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                out[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                out[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                out[position++] = '?';
+            } else {
+                out[position++] = (byte) (0xE0 | (c >> 12));
+                out[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                out[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return position;
+    }
+    /**
+     * Growable buffers, reused by one thread.
+     */
+    private static final class Scratch {
+        byte[] mBytes = new byte[INITIAL_SCRATCH_SIZE];
+        int mLength;
+        byte[] mDeflated = new byte[INITIAL_SCRATCH_SIZE];
+        void ensureCapacity(int extra) {
+            if (mLength + extra > mBytes.length) {
+                mBytes = Arrays.copyOf(mBytes, Math.max(mBytes.length * 2, mLength + extra));
+            }
+        }
+        void write(int b) {
+            ensureCapacity(1);
+            mBytes[mLength++] = (byte) b;
+        }
+        void writeVarint(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                mBytes[mLength++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            mBytes[mLength++] = (byte) value;
+        }
+        void writeString(String value, int offset) {
+            int length = utf8Length(value, offset);
+            writeVarint(length);
+            ensureCapacity(length);
+            mLength = encodeUtf8(value, offset, mBytes, mLength);
+        }
+        /**
+         * Replaces the bytes from {@code offset} on by the uncompressed length as a varint and the
+         * deflated bytes, and sets {@link #FLAG_COMPRESSED}, when that makes them smaller.
+         */
+        void compress(int offset) {
+            int length = mLength - offset;
+            if (length < COMPRESSION_THRESHOLD) {
+                return;
+            }
+            if (mDeflated.length < length) {
+                mDeflated = new byte[length];
+            }
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+            int deflatedLength = 0;
+            boolean finished;
+            try {
+                deflater.setInput(mBytes, offset, length);
+                deflater.finish();
+                while (!deflater.finished() && deflatedLength < length) {
+                    deflatedLength += deflater.deflate(mDeflated, deflatedLength,
+                            length - deflatedLength);
+                }
+                finished = deflater.finished();
+            } finally {
+                deflater.end();
+            }
+            // Room for the varint length is kept, the result has to be smaller.
+            if (!finished || deflatedLength + 5 >= length) {
+                return;
+            }
+            mLength = offset;
+            writeVarint(length);
+            System.arraycopy(mDeflated, 0, mBytes, mLength, deflatedLength);
+            mLength += deflatedLength;
+            mBytes[1] |= FLAG_COMPRESSED;
+        }
+        /**
+         * Returns a copy of the written bytes and shrinks buffers that grew for a large value.
+         */
+        byte[] release() {
+            byte[] result = Arrays.copyOf(mBytes, mLength);
+            if (mBytes.length > MAX_RETAINED_SCRATCH_SIZE) {
+                mBytes = new byte[INITIAL_SCRATCH_SIZE];
+            }
+            if (mDeflated.length > MAX_RETAINED_SCRATCH_SIZE) {
+                mDeflated = new byte[INITIAL_SCRATCH_SIZE];
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,361 @@
+package com.it_nomads.fluttersecurestorage.crypto;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import android.content.SharedPreferences;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.collection.ArraySet;
+import com.google.crypto.tink.Aead;
+import com.google.crypto.tink.subtle.AesGcmJce;
+import com.google.crypto.tink.subtle.Random;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+/**
+ * A memory-only implementation of {@link SharedPreferences} that encrypts values.
+ *
+ * <p>Values are encrypted with AES256-GCM under a key that is generated once per process and
+ * never leaves memory; the plain text key is the associated data. Nothing is written to disk and
+ * the Android Keystore is not used, so all entries are lost when the process dies.
+ *
+ * <p>Instances are shared per name for the lifetime of the process.
+ */
+public final class VolatileSharedPreferences implements TypedSharedPreferences {
+    private static final int KEY_SIZE_IN_BYTES = 32;
+    private static final byte TYPE_STRING = 0;
+    private static final byte TYPE_STRING_SET = 1;
+    private static final byte TYPE_INT = 2;
+    private static final byte TYPE_LONG = 3;
+    private static final byte TYPE_FLOAT = 4;
+    private static final byte TYPE_BOOLEAN = 5;
+    private static final byte TYPE_DOUBLE = 6;
+
+    private static final Map<String, VolatileSharedPreferences> sInstances = new HashMap<>();
+    private static Aead sAead;
+
+    private final Aead mAead;
+    private final Map<String, byte[]> mValues = new HashMap<>();
+    private final CopyOnWriteArrayList<OnSharedPreferenceChangeListener> mListeners =
+            new CopyOnWriteArrayList<>();
+
+    private VolatileSharedPreferences(@NonNull Aead aead) {
+        mAead = aead;
+    }
+
+    /**
+     * Returns the volatile preferences with the given name, creating them on first use.
+     *
+     * @throws GeneralSecurityException when the per-process key can not be created.
+     */
+    @NonNull
+    public static synchronized VolatileSharedPreferences getInstance(@NonNull String name)
+            throws GeneralSecurityException {
+        if (sAead == null) {
+            sAead = new AesGcmJce(Random.randBytes(KEY_SIZE_IN_BYTES));
+        }
+        VolatileSharedPreferences preferences = sInstances.get(name);
+        if (preferences == null) {
+            preferences = new VolatileSharedPreferences(sAead);
+            sInstances.put(name, preferences);
+        }
+        return preferences;
+    }
+
+    /**
+     * The number of entries currently held.
+     */
+    public synchronized int size() {
+        return mValues.size();
+    }
+
+    @Override
+    @NonNull
+    public Map<String, ?> getAll() {
+        Map<String, byte[]> encrypted;
+        synchronized (this) {
+            encrypted = new HashMap<>(mValues);
+        }
+        Map<String, Object> result = new HashMap<>(encrypted.size());
+        for (Map.Entry<String, byte[]> entry : encrypted.entrySet()) {
+            result.put(entry.getKey(), decrypt(entry.getKey(), entry.getValue()));
+        }
+        return result;
+    }
+
+    @Nullable
+    @Override
+    public String getString(@Nullable String key, @Nullable String defValue) {
+        Object value = get(key);
+        return value instanceof String ? (String) value : defValue;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Nullable
+    @Override
+    public Set<String> getStringSet(@Nullable String key, @Nullable Set<String> defValues) {
+        Object value = get(key);
+        return value instanceof Set ? (Set<String>) value : defValues;
+    }
+
+    @Override
+    public int getInt(@Nullable String key, int defValue) {
+        Object value = get(key);
+        return value instanceof Integer ? (Integer) value : defValue;
+    }
+
+    @Override
+    public long getLong(@Nullable String key, long defValue) {
+        Object value = get(key);
+        return value instanceof Long ? (Long) value : defValue;
+    }
+
+    @Override
+    public float getFloat(@Nullable String key, float defValue) {
+        Object value = get(key);
+        return value instanceof Float ? (Float) value : defValue;
+    }
+
+    @Override
+    public boolean getBoolean(@Nullable String key, boolean defValue) {
+        Object value = get(key);
+        return value instanceof Boolean ? (Boolean) value : defValue;
+    }
+
+    @Override
+    public double getDouble(@Nullable String key, double defValue) {
+        Object value = get(key);
+        return value instanceof Double ? (Double) value : defValue;
+    }
+
+    @Nullable
+    @Override
+    public Object getObject(@Nullable String key) {
+        return get(key);
+    }
+
+    @Override
+    public synchronized boolean contains(@Nullable String key) {
+        return mValues.containsKey(key);
+    }
+
+    @Override
+    @NonNull
+    public TypedEditor edit() {
+        return new Editor(this);
+    }
+
+    @Override
+    public void registerOnSharedPreferenceChangeListener(
+            @NonNull OnSharedPreferenceChangeListener listener) {
+        mListeners.add(listener);
+    }
+
+    @Override
+    public void unregisterOnSharedPreferenceChangeListener(
+            @NonNull OnSharedPreferenceChangeListener listener) {
+        mListeners.remove(listener);
+    }
+
+    @Nullable
+    private Object get(@Nullable String key) {
+        byte[] cipherText;
+        synchronized (this) {
+            cipherText = mValues.get(key);
+        }
+        return cipherText == null ? null : decrypt(key, cipherText);
+    }
+
+    private byte[] encrypt(@Nullable String key, byte[] plainText) {
+        try {
+            return mAead.encrypt(plainText, associatedData(key));
+        } catch (GeneralSecurityException ex) {
+            throw new SecurityException("Could not encrypt data: " + ex.getMessage(), ex);
+        }
+    }
+
+    private Object decrypt(@Nullable String key, byte[] cipherText) {
+        try {
+            byte[] plainText = mAead.decrypt(cipherText, associatedData(key));
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(plainText));
+            byte type = input.readByte();
+            switch (type) {
+                case TYPE_STRING:
+                    return readString(input);
+                case TYPE_STRING_SET:
+                    int count = input.readInt();
+                    Set<String> set = new ArraySet<>(count);
+                    for (int i = 0; i < count; i++) {
+                        set.add(readString(input));
+                    }
+                    return set;
+                case TYPE_INT:
+                    return input.readInt();
+                case TYPE_LONG:
+                    return input.readLong();
+                case TYPE_FLOAT:
+                    return input.readFloat();
+                case TYPE_BOOLEAN:
+                    return input.readBoolean();
+                case TYPE_DOUBLE:
+                    return input.readDouble();
+                default:
+                    throw new SecurityException("Unknown type ID for volatile pref value: " + type);
+            }
+        } catch (GeneralSecurityException | IOException ex) {
+            throw new SecurityException("Could not decrypt value. " + ex.getMessage(), ex);
+        }
+    }
+
+    private static byte[] associatedData(@Nullable String key) {
+        return key == null ? new byte[0] : key.getBytes(UTF_8);
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static final class Editor implements TypedEditor {
+        private final VolatileSharedPreferences mPreferences;
+        // A null value marks a removal.
+        private final Map<String, byte[]> mChanges = new HashMap<>();
+        private boolean mClearRequested;
+
+        Editor(VolatileSharedPreferences preferences) {
+            mPreferences = preferences;
+        }
+
+        @Override
+        @NonNull
+        public SharedPreferences.Editor putString(@Nullable String key, @Nullable String value) {
+            if (value == null) {
+                return remove(key);
+            }
+            return put(key, TYPE_STRING, output -> writeString(output, value));
+        }
+
+        @Override
+        @NonNull
+        public SharedPreferences.Editor putStringSet(@Nullable String key,
+                                                     @Nullable Set<String> values) {
+            if (values == null) {
+                return remove(key);
+            }
+            return put(key, TYPE_STRING_SET, output -> {
+                output.writeInt(values.size());
+                for (String value : values) {
+                    writeString(output, value);
+                }
+            });
+        }
+
+        @Override
+        @NonNull
+        public SharedPreferences.Editor putInt(@Nullable String key, int value) {
+            return put(key, TYPE_INT, output -> output.writeInt(value));
+        }
+
+        @Override
+        @NonNull
+        public SharedPreferences.Editor putLong(@Nullable String key, long value) {
+            return put(key, TYPE_LONG, output -> output.writeLong(value));
+        }
+
+        @Override
+        @NonNull
+        public SharedPreferences.Editor putFloat(@Nullable String key, float value) {
+            return put(key, TYPE_FLOAT, output -> output.writeFloat(value));
+        }
+
+        @Override
+        @NonNull
+        public SharedPreferences.Editor putBoolean(@Nullable String key, boolean value) {
+            return put(key, TYPE_BOOLEAN, output -> output.writeBoolean(value));
+        }
+
+        @Override
+        @NonNull
+        public TypedEditor putDouble(@Nullable String key, double value) {
+            put(key, TYPE_DOUBLE, output -> output.writeDouble(value));
+            return this;
+        }
+
+        @Override
+        @NonNull
+        public SharedPreferences.Editor remove(@Nullable String key) {
+            mChanges.put(key, null);
+            return this;
+        }
+
+        @Override
+        @NonNull
+        public SharedPreferences.Editor clear() {
+            mClearRequested = true;
+            return this;
+        }
+
+        @Override
+        public boolean commit() {
+            List<String> keysChanged = new ArrayList<>(mChanges.keySet());
+            synchronized (mPreferences) {
+                if (mClearRequested) {
+                    mPreferences.mValues.clear();
+                    mClearRequested = false;
+                }
+                for (Map.Entry<String, byte[]> change : mChanges.entrySet()) {
+                    if (change.getValue() == null) {
+                        mPreferences.mValues.remove(change.getKey());
+                    } else {
+                        mPreferences.mValues.put(change.getKey(), change.getValue());
+                    }
+                }
+                mChanges.clear();
+            }
+            for (OnSharedPreferenceChangeListener listener : mPreferences.mListeners) {
+                for (String key : keysChanged) {
+                    listener.onSharedPreferenceChanged(mPreferences, key);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void apply() {
+            commit();
+        }
+
+        private SharedPreferences.Editor put(@Nullable String key, byte type, ValueWriter writer) {
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream output = new DataOutputStream(bytes);
+                output.writeByte(type);
+                writer.write(output);
+                mChanges.put(key, mPreferences.encrypt(key, bytes.toByteArray()));
+            } catch (IOException ex) {
+                throw new SecurityException("Could not encode value: " + ex.getMessage(), ex);
+            }
+            return this;
+        }
+
+        private static void writeString(DataOutputStream output, String value) throws IOException {
+            byte[] bytes = value.getBytes(UTF_8);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ValueWriter {
+        void write(DataOutputStream output) throws IOException;
+    }
+}
@@ -344,6 +344,486 @@ class FlutterSecureStorage {
     });
   }
 
+  /// Android only feature.
+  ///
+  /// Decrypts and returns all keys with associated values like [readAll],
+  /// in chunks of up to [chunkSize] entries. A chunk is only decrypted once
+  /// the previous one was delivered, so large storages are never held in
+  /// memory at once and other calls are answered in between.
+  ///
+  /// [aOptions] optional Android options
+  /// Throws an [UnsupportedError] on other platforms.
+  Stream<Map<String, String>> readAllStream({
+    int chunkSize = 100,
+    AndroidOptions? aOptions,
+  }) =>
+      _platform.readAllStream(
+        options: aOptions?.params ?? this.aOptions.params,
+        chunkSize: chunkSize,
+      );
+
+  /// Android only feature.
+  ///
+  /// Decrypts and returns a page of up to [limit] keys with associated
+  /// values, along with the cursor of the next page, which is null after the
+  /// last one. Pass null as [cursor] for the first page. Entries written
+  /// while paging show up on a later page or not at all, none is returned
+  /// twice.
+  ///
+  /// [aOptions] optional Android options
+  /// Throws an [UnsupportedError] on other platforms.
+  Future<({Map<String, String> entries, String? nextCursor})> readAllPage({
+    String? cursor,
+    int limit = 100,
+    AndroidOptions? aOptions,
+  }) =>
+      _platform.readAllPage(
+        options: aOptions?.params ?? this.aOptions.params,
+        limit: limit,
+        cursor: cursor,
+      );
+
+  /// Android only feature.
+  ///
+  /// Decrypts and returns the keys starting with [prefix] with their
+  /// associated values. Only the values of those keys are decrypted.
+  ///
+  /// [aOptions] optional Android options
+  /// Throws an [UnsupportedError] on other platforms.
+  Future<Map<String, String>> readByPrefix({
+    required String prefix,
+    AndroidOptions? aOptions,
+  }) =>
+      _platform.readByPrefix(
+        prefix: prefix,
+        options: aOptions?.params ?? this.aOptions.params,
+      );
+
+  /// Android only feature.
+  ///
+  /// Deletes the keys starting with [prefix] with their associated values,
+  /// all in one write, and returns how many were deleted. Listeners are not
+  /// called, the deleted keys are not known on this side.
+  ///
+  /// [aOptions] optional Android options
+  /// Throws an [UnsupportedError] on other platforms.
+  Future<int> deleteByPrefix({
+    required String prefix,
+    AndroidOptions? aOptions,
+  }) =>
+      _platform.deleteByPrefix(
+        prefix: prefix,
+        options: aOptions?.params ?? this.aOptions.params,
+      );
+
+  /// Android only feature.
+  ///
+  /// Writes [value] for [key] only if the stored value is still [expected],
+  /// checked and written as one step. A null [expected] means [key] must not
+  /// exist, a null [value] deletes [key]. Listeners are called when the value
+  /// was changed.
+  ///
+  /// [aOptions] optional Android options
+  /// Returns true if the value was changed.
+  /// Throws an [UnsupportedError] on other platforms.
+  Future<bool> compareAndSet({
+    required String key,
+    required String? expected,
+    required String? value,
+    AndroidOptions? aOptions,
+  }) async {
+    final changed = await _platform.compareAndSet(
+      key: key,
+      expected: expected,
+      value: value,
+      options: aOptions?.params ?? this.aOptions.params,
+    );
+    if (changed) {
+      _callListenersForKey(key, value);
+    }
+    return changed;
+  }
+
+  /// Android only feature.
+  ///
+  /// Adds [delta] to the integer stored for [key] as one step and returns the
+  /// new value. A missing [key] counts as 0. Listeners are called with the new
+  /// value.
+  ///
+  /// [aOptions] optional Android options
+  /// Can throw a [PlatformException] if [key] does not hold an integer.
+  /// Throws an [UnsupportedError] on other platforms.
+  Future<int> incrementLong({
+    required String key,
+    int delta = 1,
+    AndroidOptions? aOptions,
+  }) async {
+    final value = await _platform.incrementLong(
+      key: key,
+      delta: delta,
+      options: aOptions?.params ?? this.aOptions.params,
+    );
+    _callListenersForKey(key, value.toString());
+    return value;
+  }
+
+  /// Android only feature.
+  ///
+  /// Applies [operations] in a single write, so after a crash either all or
+  /// none of them are stored. A null value deletes its key and the last
+  /// operation on a key wins. Listeners are called once the write succeeded.
+  ///
+  /// [aOptions] optional Android options
+  /// Can throw a [PlatformException].
+  /// Throws an [UnsupportedError] on other platforms.
+  Future<void> transaction({
+    required List<({String key, String? value})> operations,
+    AndroidOptions? aOptions,
+  }) async {
+    await _platform.transaction(
+      operations: operations,
+      options: aOptions?.params ?? this.aOptions.params,
+    );
+    for (final operation in operations) {
+      _callListenersForKey(operation.key, operation.value);
+    }
+  }
+
+  /// Android only feature.
+  ///
+  /// Decrypts and returns the value of [field] in the map stored for [key], or
+  /// null if the field is not stored. Only that field is decrypted.
+  ///
+  /// [aOptions] optional Android options
+  /// Throws an [UnsupportedError] on other platforms.
+  Future<String?> hget({
+    required String key,
+    required String field,
+    AndroidOptions? aOptions,
+  }) =>
+      _platform.hget(
+        key: key,
+        field: field,
+        options: aOptions?.params ?? this.aOptions.params,
+      );
+
+  /// Android only feature.
+  ///
+  /// Decrypts and returns all fields of the map stored for [key], an empty map
+  /// if there is none.
+  ///
+  /// [aOptions] optional Android options
+  /// Throws an [UnsupportedError] on other platforms.
+  Future<Map<String, String>> hgetall({
+    required String key,
+    AndroidOptions? aOptions,
+  }) =>
+      _platform.hgetall(
+        key: key,
+        options: aOptions?.params ?? this.aOptions.params,
+      );
+
+  /// Android only feature.
+  ///
+  /// Encrypts and saves [fields] into the map stored for [key] in one write.
+  /// Other fields of the map are kept. Only the given fields are encrypted,
+  /// so changing one field of a large map stays cheap.
+  ///
+  /// [aOptions] optional Android options
+  /// Can throw a [PlatformException].
+  /// Throws an [UnsupportedError] on other platforms.
+  Future<void> hset({
+    required String key,
+    required Map<String, String> fields,
+    AndroidOptions? aOptions,
+  }) =>
+      _platform.hset(
+        key: key,
+        fields: fields,
+        options: aOptions?.params ?? this.aOptions.params,
+      );
+
+  /// Android only feature.
+  ///
+  /// Deletes [fields] from the map stored for [key], or the whole map when
+  /// [fields] is null. When the whole map is deleted, returns the number of
+  /// fields it had, otherwise null.
+  ///
+  /// [aOptions] optional Android options
+  /// Can throw a [PlatformException].
+  /// Throws an [UnsupportedError] on other platforms.
+  Future<int?> hdel({
+    required String key,
+    List<String>? fields,
+    AndroidOptions? aOptions,
+  }) =>
+      _platform.hdel(
+        key: key,
+        fields: fields,
+        options: aOptions?.params ?? this.aOptions.params,
+      );
+
+  /// Android only feature.
+  ///
+  /// Decrypts and returns the integer written for [key] with [writeInt] or
+  /// [incrementLong], or null if [key] is not stored or holds another type.
+  ///
+  /// [aOptions] optional Android options
+  /// Throws an [UnsupportedError] on other platforms.
+  Future<int?> readInt({
+    required String key,
+    AndroidOptions? aOptions,
+  }) async =>
+      await _platform.readTyped(
+        key: key,
+        type: 'long',
+        options: aOptions?.params ?? this.aOptions.params,
+      ) as int?;
+
+  /// Android only feature.
+  ///
+  /// Encrypts and saves [value] for [key] as a 64-bit integer instead of a
+  /// string. Listeners are called with the value as a string.
+  ///
+  /// [aOptions] optional Android options
+  /// Throws an [UnsupportedError] on other platforms.
+  Future<void> writeInt({
+    required String key,
+    required int value,
+    AndroidOptions? aOptions,
+  }) =>
+      _writeTyped(key, 'long', value, aOptions);
+
+  /// Android only feature.
+  ///
+  /// Decrypts and returns the double written for [key] with [writeDouble], or
+  /// null if [key] is not stored or holds another type.
+  ///
+  /// [aOptions] optional Android options
+  /// Throws an [UnsupportedError] on other platforms.
+  Future<double?> readDouble({
+    required String key,
+    AndroidOptions? aOptions,
+  }) async =>
+      await _platform.readTyped(
+        key: key,
+        type: 'double',
+        options: aOptions?.params ?? this.aOptions.params,
+      ) as double?;
+
+  /// Android only feature.
+  ///
+  /// Encrypts and saves [value] for [key] as a double instead of a string.
+  /// Listeners are called with the value as a string.
+  ///
+  /// [aOptions] optional Android options
+  /// Throws an [UnsupportedError] on other platforms.
+  Future<void> writeDouble({
+    required String key,
+    required double value,
+    AndroidOptions? aOptions,
+  }) =>
+      _writeTyped(key, 'double', value, aOptions);
+
+  /// Android only feature.
+  ///
+  /// Decrypts and returns the bool written for [key] with [writeBool], or null
+  /// if [key] is not stored or holds another type.
+  ///
+  /// [aOptions] optional Android options
+  /// Throws an [UnsupportedError] on other platforms.
+  Future<bool?> readBool({
+    required String key,
+    AndroidOptions? aOptions,
+  }) async =>
+      await _platform.readTyped(
+        key: key,
+        type: 'bool',
+        options: aOptions?.params ?? this.aOptions.params,
+      ) as bool?;
+
+  /// Android only feature.
+  ///
+  /// Encrypts and saves [value] for [key] as a bool instead of a string.
+  /// Listeners are called with the value as a string.
+  ///
+  /// [aOptions] optional Android options
+  /// Throws an [UnsupportedError] on other platforms.
+  Future<void> writeBool({
+    required String key,
+    required bool value,
+    AndroidOptions? aOptions,
+  }) =>
+      _writeTyped(key, 'bool', value, aOptions);
+
+  Future<void> _writeTyped(
+    String key,
+    String type,
+    Object value,
+    AndroidOptions? aOptions,
+  ) async {
+    await _platform.writeTyped(
+      key: key,
+      type: type,
+      value: value,
+      options: aOptions?.params ?? this.aOptions.params,
+    );
+    _callListenersForKey(key, value.toString());
+  }
+
+  /// Android only feature.
+  ///
+  /// Decrypts and returns what changed after [version], which is 0 at first
+  /// and the `version` of the previous result afterwards. Only the entries
+  /// written since are decrypted. When `full` is true the changes are not
+  /// known, for instance after many writes, and `entries` holds every entry
+  /// as [readAll] would return.
+  ///
+  /// [aOptions] optional Android options
+  /// Throws an [UnsupportedError] on other platforms.
+  Future<
+      ({
+        int version,
+        bool full,
+        Map<String, String> entries,
+        List<String> deleted,
+      })> readAllSince({
+    int version = 0,
+    AndroidOptions? aOptions,
+  }) =>
+      _platform.readAllSince(
+        version: version,
+        options: aOptions?.params ?? this.aOptions.params,
+      );
+
+  /// Android only feature.
+  ///
+  /// Decrypts and returns the values of [keys] in one call, with null for the
+  /// keys that are not stored. Only the values of those keys are decrypted.
+  ///
+  /// [aOptions] optional Android options
+  /// Throws an [UnsupportedError] on other platforms.
+  Future<Map<String, String?>> readMany({
+    required List<String> keys,
+    AndroidOptions? aOptions,
+  }) =>
+      _platform.readMany(
+        keys: keys,
+        options: aOptions?.params ?? this.aOptions.params,
+      );
+
+  /// Android only feature.
+  ///
+  /// Replaces the keys of the storage with new ones and moves every entry to
+  /// them in the background, while reads and writes go on. Returns the
+  /// progress of the rotation, see [getRotationProgress].
+  ///
+  /// [aOptions] optional Android options
+  /// Throws an [UnsupportedError] on other platforms.
+  Future<
+      ({
+        String state,
+        int totalEntries,
+        int processedEntries,
+        int failedEntries,
+        Duration? estimatedRemaining,
+        String? error,
+      })> rotateKeys({AndroidOptions? aOptions}) =>
+      _platform.rotateKeys(options: aOptions?.params ?? this.aOptions.params);
+
+  /// Android only feature.
+  ///
+  /// Returns the progress of the last key rotation: its `state`, one of
+  /// `idle`, `running`, `finished` and `failed`, the entries in total,
+  /// processed and failed, the `estimatedRemaining` time, `null` while there
+  /// is no estimate, and the `error` that stopped it.
+  ///
+  /// [aOptions] optional Android options
+  /// Throws an [UnsupportedError] on other platforms.
+  Future<
+      ({
+        String state,
+        int totalEntries,
+        int processedEntries,
+        int failedEntries,
+        Duration? estimatedRemaining,
+        String? error,
+      })> getRotationProgress({AndroidOptions? aOptions}) =>
+      _platform.getRotationProgress(
+        options: aOptions?.params ?? this.aOptions.params,
+      );
+
+  /// Android only feature.
+  ///
+  /// Starts checking every entry in the background for values that no
+  /// longer decrypt, entries the legacy ciphers left behind and entries of
+  /// other key prefixes, unless a check is already running. With [compact]
+  /// the entries found are removed once all are checked, provided the legacy
+  /// entries were migrated. Returns the progress of the check, see
+  /// [getIntegrityScanProgress].
+  ///
+  /// [aOptions] optional Android options
+  /// Throws an [UnsupportedError] on other platforms.
+  Future<
+      ({
+        String state,
+        int totalEntries,
+        int scannedEntries,
+        int corruptEntries,
+        int legacyEntries,
+        int orphanedEntries,
+        bool compact,
+        int compactedEntries,
+        String? error,
+      })> scanIntegrity({
+    bool compact = false,
+    AndroidOptions? aOptions,
+  }) =>
+      _platform.scanIntegrity(
+        compact: compact,
+        options: aOptions?.params ?? this.aOptions.params,
+      );
+
+  /// Android only feature.
+  ///
+  /// Returns the progress of the last integrity check: its `state`, one of
+  /// `idle`, `running`, `finished` and `failed`, the entries in total and
+  /// scanned, the corrupt, legacy and orphaned entries found, whether it
+  /// compacts and how many entries it removed, and the `error` that stopped
+  /// it.
+  ///
+  /// [aOptions] optional Android options
+  /// Throws an [UnsupportedError] on other platforms.
+  Future<
+      ({
+        String state,
+        int totalEntries,
+        int scannedEntries,
+        int corruptEntries,
+        int legacyEntries,
+        int orphanedEntries,
+        bool compact,
+        int compactedEntries,
+        String? error,
+      })> getIntegrityScanProgress({AndroidOptions? aOptions}) =>
+      _platform.getIntegrityScanProgress(
+        options: aOptions?.params ?? this.aOptions.params,
+      );
+
+  /// Android only feature.
+  ///
+  /// Returns how the storage was initialized: the `path` taken, the time
+  /// each phase took and the entries it touched, the entries migrated from
+  /// and left behind by the legacy storage, and the `error` that made it
+  /// reset, if any. Useful to find out why a cold start was slow.
+  ///
+  /// [aOptions] optional Android options
+  /// Throws an [UnsupportedError] on other platforms.
+  Future<Map<String, Object?>> getInitReport({AndroidOptions? aOptions}) =>
+      _platform.getInitReport(
+        options: aOptions?.params ?? this.aOptions.params,
+      );
+
   /// Select correct options based on current platform
   Map<String, String> _selectOptions(
     AppleOptions? iOptions,
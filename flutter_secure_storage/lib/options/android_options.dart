@@ -14,6 +14,64 @@ enum StorageCipherAlgorithm {
   AES_GCM_NoPadding,
 }
 
+/// Where values are kept on Android.
+enum AndroidStorageType {
+  /// Values are encrypted and persisted in shared preferences.
+  persistent,
+
+  /// Values are encrypted in memory only, under a key generated for the
+  /// current process. They never touch disk or the Android Keystore and are
+  /// lost when the process dies.
+  volatile,
+}
+
+/// Where the master key of the persistent storage is kept on Android.
+enum AndroidStrongBoxMode {
+  /// The master key lives in the Trusted Execution Environment.
+  disabled,
+
+  /// The master key lives in StrongBox and is used for every keyset
+  /// operation. StrongBox is a separate secure chip and is slow.
+  direct,
+
+  /// The master key lives in StrongBox and only unwraps a data key, once per
+  /// process. The data key then encrypts the keysets in memory.
+  envelope,
+}
+
+/// How pref keys are protected on Android.
+enum AndroidKeyEncryptionScheme {
+  /// Keys are encrypted deterministically with AES256-SIV.
+  AES256_SIV,
+
+  /// Keys are hashed with HMAC-SHA256, which makes lookups cheaper. The plain
+  /// text key is stored inside the encrypted value. Existing AES256_SIV data
+  /// is migrated on first use and can not be read with AES256_SIV afterwards.
+  HMAC_SHA256,
+}
+
+/// How values are encrypted on Android.
+///
+/// Every value records the key it was encrypted with, so the scheme can be
+/// changed at any time: existing values stay readable and new writes use the
+/// new scheme.
+enum AndroidValueEncryptionScheme {
+  AES256_GCM,
+  AES128_GCM,
+
+  /// Requires a security provider that implements AES-GCM-SIV.
+  AES256_GCM_SIV,
+
+  /// Faster than AES on devices without AES instructions.
+  CHACHA20_POLY1305,
+  XCHACHA20_POLY1305,
+
+  /// Measures the schemes when the storage is created and keeps the fastest
+  /// one. An existing storage keeps its scheme and measures again when its
+  /// keys are rotated, which also removes the keys of the previous scheme.
+  AUTO,
+}
+
 /// Specific options for Android platform.
 class AndroidOptions extends Options {
   const AndroidOptions({
@@ -27,6 +85,12 @@ class AndroidOptions extends Options {
         StorageCipherAlgorithm.AES_CBC_PKCS7Padding,
     this.sharedPreferencesName,
     this.preferencesKeyPrefix,
+    this.storageType = AndroidStorageType.persistent,
+    this.strongBoxMode = AndroidStrongBoxMode.disabled,
+    this.keyEncryptionScheme = AndroidKeyEncryptionScheme.AES256_SIV,
+    this.valueEncryptionScheme = AndroidValueEncryptionScheme.AES256_GCM,
+    this.quarantineOnError = false,
+    this.compressValues = false,
   })  : _encryptedSharedPreferences = encryptedSharedPreferences,
         _resetOnError = resetOnError,
         _keyCipherAlgorithm = keyCipherAlgorithm,
@@ -70,6 +134,52 @@ class AndroidOptions extends Options {
   /// WARNING: If you change this you can't retrieve already saved preferences.
   final String? preferencesKeyPrefix;
 
+  /// Whether values are persisted or only kept in memory for the lifetime of
+  /// the process, for example for per-session tokens.
+  ///
+  /// Defaults to [AndroidStorageType.persistent].
+  final AndroidStorageType storageType;
+
+  /// Whether the master key is requested from StrongBox, and how it is used.
+  /// Devices without StrongBox fall back to the Trusted Execution Environment.
+  ///
+  /// Defaults to [AndroidStrongBoxMode.disabled].
+  ///
+  /// WARNING: If you change this you can't retrieve already saved preferences,
+  /// use a new [sharedPreferencesName] instead.
+  final AndroidStrongBoxMode strongBoxMode;
+
+  /// The scheme used to protect pref keys.
+  ///
+  /// Defaults to [AndroidKeyEncryptionScheme.AES256_SIV].
+  ///
+  /// WARNING: Switching to [AndroidKeyEncryptionScheme.HMAC_SHA256] migrates
+  /// the existing data, switching back loses it.
+  final AndroidKeyEncryptionScheme keyEncryptionScheme;
+
+  /// The scheme used to encrypt new values.
+  ///
+  /// Defaults to [AndroidValueEncryptionScheme.AES256_GCM].
+  final AndroidValueEncryptionScheme valueEncryptionScheme;
+
+  /// When a single entry can not be decrypted, move it aside and report it
+  /// once instead of failing, so all other entries stay readable. Together
+  /// with [resetOnError], only failures to load the keys reset the storage.
+  /// Entries moved aside are removed by `deleteAll`.
+  ///
+  /// Defaults to false.
+  final bool quarantineOnError;
+
+  /// Deflate large string values before encrypting them. Values stored either
+  /// way stay readable.
+  ///
+  /// WARNING: The length of a compressed value depends on its content. Only
+  /// enable this when no one who can see the stored data can also get data of
+  /// their choosing stored next to a secret.
+  ///
+  /// Defaults to false.
+  final bool compressValues;
+
   static const AndroidOptions defaultOptions = AndroidOptions();
 
   @override
@@ -80,6 +190,12 @@ class AndroidOptions extends Options {
         'storageCipherAlgorithm': _storageCipherAlgorithm.name,
         'sharedPreferencesName': sharedPreferencesName ?? '',
         'preferencesKeyPrefix': preferencesKeyPrefix ?? '',
+        'storageType': storageType.name,
+        'strongBoxMode': strongBoxMode.name,
+        'keyEncryptionScheme': keyEncryptionScheme.name,
+        'valueEncryptionScheme': valueEncryptionScheme.name,
+        'quarantineOnError': '$quarantineOnError',
+        'compressValues': '$compressValues',
       };
 
   AndroidOptions copyWith({
@@ -89,6 +205,12 @@ class AndroidOptions extends Options {
     StorageCipherAlgorithm? storageCipherAlgorithm,
     String? preferencesKeyPrefix,
     String? sharedPreferencesName,
+    AndroidStorageType? storageType,
+    AndroidStrongBoxMode? strongBoxMode,
+    AndroidKeyEncryptionScheme? keyEncryptionScheme,
+    AndroidValueEncryptionScheme? valueEncryptionScheme,
+    bool? quarantineOnError,
+    bool? compressValues,
   }) =>
       AndroidOptions(
         encryptedSharedPreferences:
@@ -99,5 +221,12 @@ class AndroidOptions extends Options {
             storageCipherAlgorithm ?? _storageCipherAlgorithm,
         sharedPreferencesName: sharedPreferencesName,
         preferencesKeyPrefix: preferencesKeyPrefix,
+        storageType: storageType ?? this.storageType,
+        strongBoxMode: strongBoxMode ?? this.strongBoxMode,
+        keyEncryptionScheme: keyEncryptionScheme ?? this.keyEncryptionScheme,
+        valueEncryptionScheme:
+            valueEncryptionScheme ?? this.valueEncryptionScheme,
+        quarantineOnError: quarantineOnError ?? this.quarantineOnError,
+        compressValues: compressValues ?? this.compressValues,
       );
 }
@@ -34,6 +34,12 @@ void main() {
     return null;
   }
 
+  setUpAll(() {
+    // Types passed to any() that mocktail has no default value for.
+    registerFallbackValue(Object());
+    registerFallbackValue(<({String key, String? value})>[]);
+  });
+
   setUp(() {
     mockPlatform = MockFlutterSecureStoragePlatform();
 
@@ -284,6 +290,477 @@ void main() {
       ).called(1);
     });
 
+    test('readAllStream should call platform read all stream method', () async {
+      when(
+        () => mockPlatform.readAllStream(
+          options: any(named: 'options'),
+          chunkSize: any(named: 'chunkSize'),
+        ),
+      ).thenAnswer((_) => Stream.value({testKey: testValue}));
+
+      final chunks = await storage.readAllStream(chunkSize: 10).toList();
+
+      expect(chunks, [
+        {testKey: testValue},
+      ]);
+      verify(
+        () => mockPlatform.readAllStream(
+          options: AndroidOptions.defaultOptions.params,
+          chunkSize: 10,
+        ),
+      ).called(1);
+    });
+
+    test('readAllPage should call platform read all page method', () async {
+      when(
+        () => mockPlatform.readAllPage(
+          options: any(named: 'options'),
+          limit: any(named: 'limit'),
+          cursor: any(named: 'cursor'),
+        ),
+      ).thenAnswer(
+        (_) async => (entries: {testKey: testValue}, nextCursor: null),
+      );
+
+      final page = await storage.readAllPage(limit: 10);
+
+      expect(page.entries, {testKey: testValue});
+      expect(page.nextCursor, isNull);
+      verify(
+        () => mockPlatform.readAllPage(
+          options: AndroidOptions.defaultOptions.params,
+          limit: 10,
+        ),
+      ).called(1);
+    });
+
+    test('readByPrefix should call platform read by prefix method', () async {
+      when(
+        () => mockPlatform.readByPrefix(
+          prefix: any(named: 'prefix'),
+          options: any(named: 'options'),
+        ),
+      ).thenAnswer((_) async => {testKey: testValue});
+
+      final result = await storage.readByPrefix(prefix: 'test');
+
+      expect(result, {testKey: testValue});
+      verify(
+        () => mockPlatform.readByPrefix(
+          prefix: 'test',
+          options: AndroidOptions.defaultOptions.params,
+        ),
+      ).called(1);
+    });
+
+    test('deleteByPrefix should call platform delete by prefix method',
+        () async {
+      when(
+        () => mockPlatform.deleteByPrefix(
+          prefix: any(named: 'prefix'),
+          options: any(named: 'options'),
+        ),
+      ).thenAnswer((_) async => 1);
+
+      final result = await storage.deleteByPrefix(prefix: 'test');
+
+      expect(result, 1);
+      verify(
+        () => mockPlatform.deleteByPrefix(
+          prefix: 'test',
+          options: AndroidOptions.defaultOptions.params,
+        ),
+      ).called(1);
+    });
+
+    test('compareAndSet should call platform compare and set method',
+        () async {
+      when(
+        () => mockPlatform.compareAndSet(
+          key: any(named: 'key'),
+          expected: any(named: 'expected'),
+          value: any(named: 'value'),
+          options: any(named: 'options'),
+        ),
+      ).thenAnswer((_) async => true);
+
+      final result = await storage.compareAndSet(
+        key: testKey,
+        expected: null,
+        value: testValue,
+      );
+
+      expect(result, isTrue);
+      verify(
+        () => mockPlatform.compareAndSet(
+          key: testKey,
+          expected: null,
+          value: testValue,
+          options: AndroidOptions.defaultOptions.params,
+        ),
+      ).called(1);
+    });
+
+    test('incrementLong should call platform increment method', () async {
+      when(
+        () => mockPlatform.incrementLong(
+          key: any(named: 'key'),
+          delta: any(named: 'delta'),
+          options: any(named: 'options'),
+        ),
+      ).thenAnswer((_) async => 3);
+
+      final result = await storage.incrementLong(key: testKey, delta: 2);
+
+      expect(result, 3);
+      verify(
+        () => mockPlatform.incrementLong(
+          key: testKey,
+          delta: 2,
+          options: AndroidOptions.defaultOptions.params,
+        ),
+      ).called(1);
+    });
+
+    test('transaction should call platform transaction method', () async {
+      final operations = [
+        (key: testKey, value: testValue),
+        (key: 'otherKey', value: null),
+      ];
+      when(
+        () => mockPlatform.transaction(
+          operations: any(named: 'operations'),
+          options: any(named: 'options'),
+        ),
+      ).thenAnswer((_) async {});
+
+      await storage.transaction(operations: operations);
+
+      verify(
+        () => mockPlatform.transaction(
+          operations: operations,
+          options: AndroidOptions.defaultOptions.params,
+        ),
+      ).called(1);
+    });
+
+    test('hget should call platform hget method', () async {
+      when(
+        () => mockPlatform.hget(
+          key: any(named: 'key'),
+          field: any(named: 'field'),
+          options: any(named: 'options'),
+        ),
+      ).thenAnswer((_) async => testValue);
+
+      final result = await storage.hget(key: testKey, field: 'field');
+
+      expect(result, testValue);
+      verify(
+        () => mockPlatform.hget(
+          key: testKey,
+          field: 'field',
+          options: AndroidOptions.defaultOptions.params,
+        ),
+      ).called(1);
+    });
+
+    test('hgetall should call platform hgetall method', () async {
+      when(
+        () => mockPlatform.hgetall(
+          key: any(named: 'key'),
+          options: any(named: 'options'),
+        ),
+      ).thenAnswer((_) async => {'field': testValue});
+
+      final result = await storage.hgetall(key: testKey);
+
+      expect(result, {'field': testValue});
+      verify(
+        () => mockPlatform.hgetall(
+          key: testKey,
+          options: AndroidOptions.defaultOptions.params,
+        ),
+      ).called(1);
+    });
+
+    test('hset should call platform hset method', () async {
+      when(
+        () => mockPlatform.hset(
+          key: any(named: 'key'),
+          fields: any(named: 'fields'),
+          options: any(named: 'options'),
+        ),
+      ).thenAnswer((_) async {});
+
+      await storage.hset(key: testKey, fields: {'field': testValue});
+
+      verify(
+        () => mockPlatform.hset(
+          key: testKey,
+          fields: {'field': testValue},
+          options: AndroidOptions.defaultOptions.params,
+        ),
+      ).called(1);
+    });
+
+    test('hdel should call platform hdel method', () async {
+      when(
+        () => mockPlatform.hdel(
+          key: any(named: 'key'),
+          fields: any(named: 'fields'),
+          options: any(named: 'options'),
+        ),
+      ).thenAnswer((_) async => 2);
+
+      final result = await storage.hdel(key: testKey);
+
+      expect(result, 2);
+      verify(
+        () => mockPlatform.hdel(
+          key: testKey,
+          fields: null,
+          options: AndroidOptions.defaultOptions.params,
+        ),
+      ).called(1);
+    });
+
+    test('readInt should call platform read typed method', () async {
+      when(
+        () => mockPlatform.readTyped(
+          key: any(named: 'key'),
+          type: any(named: 'type'),
+          options: any(named: 'options'),
+        ),
+      ).thenAnswer((_) async => 42);
+
+      final result = await storage.readInt(key: testKey);
+
+      expect(result, 42);
+      verify(
+        () => mockPlatform.readTyped(
+          key: testKey,
+          type: 'long',
+          options: AndroidOptions.defaultOptions.params,
+        ),
+      ).called(1);
+    });
+
+    test('readBool should return null for another type', () async {
+      when(
+        () => mockPlatform.readTyped(
+          key: any(named: 'key'),
+          type: any(named: 'type'),
+          options: any(named: 'options'),
+        ),
+      ).thenAnswer((_) async => null);
+
+      final result = await storage.readBool(key: testKey);
+
+      expect(result, isNull);
+      verify(
+        () => mockPlatform.readTyped(
+          key: testKey,
+          type: 'bool',
+          options: AndroidOptions.defaultOptions.params,
+        ),
+      ).called(1);
+    });
+
+    test('writeDouble should call platform write typed method', () async {
+      when(
+        () => mockPlatform.writeTyped(
+          key: any(named: 'key'),
+          type: any(named: 'type'),
+          value: any(named: 'value'),
+          options: any(named: 'options'),
+        ),
+      ).thenAnswer((_) async {});
+
+      await storage.writeDouble(key: testKey, value: 1.5);
+
+      verify(
+        () => mockPlatform.writeTyped(
+          key: testKey,
+          type: 'double',
+          value: 1.5,
+          options: AndroidOptions.defaultOptions.params,
+        ),
+      ).called(1);
+    });
+
+    test('readAllSince should call platform read all since method', () async {
+      when(
+        () => mockPlatform.readAllSince(
+          version: any(named: 'version'),
+          options: any(named: 'options'),
+        ),
+      ).thenAnswer(
+        (_) async => (
+          version: 3,
+          full: false,
+          entries: {testKey: testValue},
+          deleted: <String>[],
+        ),
+      );
+
+      final result = await storage.readAllSince(version: 2);
+
+      expect(result.version, 3);
+      expect(result.entries, {testKey: testValue});
+      verify(
+        () => mockPlatform.readAllSince(
+          version: 2,
+          options: AndroidOptions.defaultOptions.params,
+        ),
+      ).called(1);
+    });
+
+    test('readMany should call platform read many method', () async {
+      when(
+        () => mockPlatform.readMany(
+          keys: any(named: 'keys'),
+          options: any(named: 'options'),
+        ),
+      ).thenAnswer((_) async => {testKey: testValue, 'missing': null});
+
+      final result = await storage.readMany(keys: [testKey, 'missing']);
+
+      expect(result, {testKey: testValue, 'missing': null});
+      verify(
+        () => mockPlatform.readMany(
+          keys: [testKey, 'missing'],
+          options: AndroidOptions.defaultOptions.params,
+        ),
+      ).called(1);
+    });
+
+    test('rotateKeys should call platform rotate keys method', () async {
+      when(
+        () => mockPlatform.rotateKeys(options: any(named: 'options')),
+      ).thenAnswer(
+        (_) async => (
+          state: 'running',
+          totalEntries: 2,
+          processedEntries: 1,
+          failedEntries: 0,
+          estimatedRemaining: const Duration(seconds: 1),
+          error: null,
+        ),
+      );
+
+      final progress = await storage.rotateKeys();
+
+      expect(progress.state, 'running');
+      expect(progress.estimatedRemaining, const Duration(seconds: 1));
+      verify(
+        () => mockPlatform.rotateKeys(
+          options: AndroidOptions.defaultOptions.params,
+        ),
+      ).called(1);
+    });
+
+    test('getRotationProgress should call platform method', () async {
+      when(
+        () => mockPlatform.getRotationProgress(options: any(named: 'options')),
+      ).thenAnswer(
+        (_) async => (
+          state: 'finished',
+          totalEntries: 2,
+          processedEntries: 2,
+          failedEntries: 0,
+          estimatedRemaining: Duration.zero,
+          error: null,
+        ),
+      );
+
+      final progress = await storage.getRotationProgress();
+
+      expect(progress.state, 'finished');
+      expect(progress.processedEntries, 2);
+      verify(
+        () => mockPlatform.getRotationProgress(
+          options: AndroidOptions.defaultOptions.params,
+        ),
+      ).called(1);
+    });
+
+    test('scanIntegrity should call platform scan integrity method', () async {
+      when(
+        () => mockPlatform.scanIntegrity(
+          compact: any(named: 'compact'),
+          options: any(named: 'options'),
+        ),
+      ).thenAnswer(
+        (_) async => (
+          state: 'running',
+          totalEntries: 4,
+          scannedEntries: 1,
+          corruptEntries: 0,
+          legacyEntries: 0,
+          orphanedEntries: 0,
+          compact: true,
+          compactedEntries: 0,
+          error: null,
+        ),
+      );
+
+      final progress = await storage.scanIntegrity(compact: true);
+
+      expect(progress.state, 'running');
+      expect(progress.compact, isTrue);
+      verify(
+        () => mockPlatform.scanIntegrity(
+          compact: true,
+          options: AndroidOptions.defaultOptions.params,
+        ),
+      ).called(1);
+    });
+
+    test('getIntegrityScanProgress should call platform method', () async {
+      when(
+        () => mockPlatform.getIntegrityScanProgress(
+          options: any(named: 'options'),
+        ),
+      ).thenAnswer(
+        (_) async => (
+          state: 'finished',
+          totalEntries: 4,
+          scannedEntries: 4,
+          corruptEntries: 1,
+          legacyEntries: 0,
+          orphanedEntries: 0,
+          compact: false,
+          compactedEntries: 0,
+          error: null,
+        ),
+      );
+
+      final progress = await storage.getIntegrityScanProgress();
+
+      expect(progress.corruptEntries, 1);
+      verify(
+        () => mockPlatform.getIntegrityScanProgress(
+          options: AndroidOptions.defaultOptions.params,
+        ),
+      ).called(1);
+    });
+
+    test('getInitReport should call platform get init report method', () async {
+      when(
+        () => mockPlatform.getInitReport(options: any(named: 'options')),
+      ).thenAnswer((_) async => {'path': 'CLEAN', 'migratedEntries': 0});
+
+      final report = await storage.getInitReport();
+
+      expect(report['path'], 'CLEAN');
+      verify(
+        () => mockPlatform.getInitReport(
+          options: AndroidOptions.defaultOptions.params,
+        ),
+      ).called(1);
+    });
+
     test('write with null value should trigger delete', () async {
       when(
         () => mockPlatform.delete(
@@ -370,6 +847,12 @@ void main() {
         'storageCipherAlgorithm': 'AES_CBC_PKCS7Padding',
         'sharedPreferencesName': '',
         'preferencesKeyPrefix': '',
+        'storageType': 'persistent',
+        'strongBoxMode': 'disabled',
+        'keyEncryptionScheme': 'AES256_SIV',
+        'valueEncryptionScheme': 'AES256_GCM',
+        'quarantineOnError': 'false',
+        'compressValues': 'false',
       });
     });
 
@@ -390,6 +873,12 @@ void main() {
         'storageCipherAlgorithm': 'AES_GCM_NoPadding',
         'sharedPreferencesName': 'customPrefs',
         'preferencesKeyPrefix': 'customPrefix',
+        'storageType': 'persistent',
+        'strongBoxMode': 'disabled',
+        'keyEncryptionScheme': 'AES256_SIV',
+        'valueEncryptionScheme': 'AES256_GCM',
+        'quarantineOnError': 'false',
+        'compressValues': 'false',
       });
     });
 
@@ -408,6 +897,12 @@ void main() {
         'storageCipherAlgorithm': 'AES_CBC_PKCS7Padding',
         'sharedPreferencesName': 'newPrefs',
         'preferencesKeyPrefix': '',
+        'storageType': 'persistent',
+        'strongBoxMode': 'disabled',
+        'keyEncryptionScheme': 'AES256_SIV',
+        'valueEncryptionScheme': 'AES256_GCM',
+        'quarantineOnError': 'false',
+        'compressValues': 'false',
       });
     });
 
@@ -440,6 +935,49 @@ void main() {
 
       expect(options.toMap()['encryptedSharedPreferences'], 'true');
     });
+
+    test('Android-only options are passed on and kept by copyWith', () {
+      final cases = <String, (AndroidOptions, String)>{
+        'storageType': (
+          const AndroidOptions(storageType: AndroidStorageType.volatile),
+          'volatile',
+        ),
+        'strongBoxMode': (
+          const AndroidOptions(strongBoxMode: AndroidStrongBoxMode.envelope),
+          'envelope',
+        ),
+        'keyEncryptionScheme': (
+          const AndroidOptions(
+            keyEncryptionScheme: AndroidKeyEncryptionScheme.HMAC_SHA256,
+          ),
+          'HMAC_SHA256',
+        ),
+        'valueEncryptionScheme': (
+          const AndroidOptions(
+            valueEncryptionScheme: AndroidValueEncryptionScheme.AUTO,
+          ),
+          'AUTO',
+        ),
+        'quarantineOnError': (
+          const AndroidOptions(quarantineOnError: true),
+          'true',
+        ),
+        'compressValues': (
+          const AndroidOptions(compressValues: true),
+          'true',
+        ),
+      };
+
+      cases.forEach((name, testCase) {
+        final (options, expected) = testCase;
+        expect(options.toMap()[name], expected, reason: name);
+        expect(
+          options.copyWith(resetOnError: true).toMap()[name],
+          expected,
+          reason: '$name after copyWith',
+        );
+      });
+    });
   });
 
   group('WebOptions Configuration Tests', () {
@@ -120,4 +120,396 @@ abstract class FlutterSecureStoragePlatform extends PlatformInterface {
   Future<void> deleteAll({
     required Map<String, String> options,
   });
+
+  /// Reads all key-value pairs from secure storage in chunks, so a large
+  /// storage is never decrypted into memory at once. Only supported on
+  /// Android.
+  ///
+  /// Parameters:
+  /// - [options]: A map of platform-specific options for the operation.
+  /// - [chunkSize]: The maximum number of entries in a chunk.
+  ///
+  /// Returns:
+  /// - A [Stream] of maps holding the entries of one chunk each, which closes
+  ///   after the last chunk.
+  Stream<Map<String, String>> readAllStream({
+    required Map<String, String> options,
+    int chunkSize = 100,
+  }) =>
+      throw UnimplementedError('readAllStream() has not been implemented.');
+
+  /// Reads a page of up to [limit] key-value pairs, decrypting only the
+  /// entries of that page. Only supported on Android.
+  ///
+  /// Parameters:
+  /// - [options]: A map of platform-specific options for the operation.
+  /// - [limit]: The maximum number of entries in the page.
+  /// - [cursor]: `null` for the first page, otherwise the `nextCursor` of the
+  ///   previous page.
+  ///
+  /// Returns:
+  /// - A [Future] that resolves to the entries of the page and the cursor of
+  ///   the next one, which is `null` after the last page.
+  Future<({Map<String, String> entries, String? nextCursor})> readAllPage({
+    required Map<String, String> options,
+    required int limit,
+    String? cursor,
+  }) =>
+      throw UnimplementedError('readAllPage() has not been implemented.');
+
+  /// Reads the key-value pairs whose key starts with [prefix], decrypting
+  /// only the values of those. Only supported on Android.
+  ///
+  /// Parameters:
+  /// - [prefix]: The start of the keys to read.
+  /// - [options]: A map of platform-specific options for the operation.
+  ///
+  /// Returns:
+  /// - A [Future] that resolves to a map of the matching key-value pairs.
+  Future<Map<String, String>> readByPrefix({
+    required String prefix,
+    required Map<String, String> options,
+  }) =>
+      throw UnimplementedError('readByPrefix() has not been implemented.');
+
+  /// Deletes the key-value pairs whose key starts with [prefix] at once.
+  /// Only supported on Android.
+  ///
+  /// Parameters:
+  /// - [prefix]: The start of the keys to delete.
+  /// - [options]: A map of platform-specific options for the operation.
+  ///
+  /// Returns:
+  /// - A [Future] that resolves to the number of deleted key-value pairs.
+  Future<int> deleteByPrefix({
+    required String prefix,
+    required Map<String, String> options,
+  }) =>
+      throw UnimplementedError('deleteByPrefix() has not been implemented.');
+
+  /// Replaces the value of [key] only while it is still [expected], as one
+  /// atomic step. Only supported on Android.
+  ///
+  /// Parameters:
+  /// - [key]: The key of the value to change.
+  /// - [expected]: The value [key] must have, `null` when it must be absent.
+  /// - [value]: The new value, `null` to delete [key].
+  /// - [options]: A map of platform-specific options for the operation.
+  ///
+  /// Returns:
+  /// - A [Future] that resolves to `true` if the value was changed.
+  Future<bool> compareAndSet({
+    required String key,
+    required String? expected,
+    required String? value,
+    required Map<String, String> options,
+  }) =>
+      throw UnimplementedError('compareAndSet() has not been implemented.');
+
+  /// Adds [delta] to the integer stored under [key], as one atomic step. A
+  /// missing key counts as 0. Only supported on Android.
+  ///
+  /// Parameters:
+  /// - [key]: The key of the integer to change.
+  /// - [delta]: The amount to add, negative to subtract.
+  /// - [options]: A map of platform-specific options for the operation.
+  ///
+  /// Returns:
+  /// - A [Future] that resolves to the new value.
+  Future<int> incrementLong({
+    required String key,
+    required int delta,
+    required Map<String, String> options,
+  }) =>
+      throw UnimplementedError('incrementLong() has not been implemented.');
+
+  /// Applies [operations] in a single write, so either all or none of them
+  /// are stored. A `null` value deletes its key and the last operation on a
+  /// key wins. Only supported on Android.
+  ///
+  /// Parameters:
+  /// - [operations]: The keys to write with their new values, in order.
+  /// - [options]: A map of platform-specific options for the operation.
+  ///
+  /// Returns:
+  /// - A [Future] that completes when the operations are stored.
+  Future<void> transaction({
+    required List<({String key, String? value})> operations,
+    required Map<String, String> options,
+  }) =>
+      throw UnimplementedError('transaction() has not been implemented.');
+
+  /// Reads one field of the map stored under [key], decrypting only that
+  /// field. Only supported on Android.
+  ///
+  /// Parameters:
+  /// - [key]: The key of the map.
+  /// - [field]: The field to read.
+  /// - [options]: A map of platform-specific options for the operation.
+  ///
+  /// Returns:
+  /// - A [Future] that resolves to the value of the field, or `null` if it is
+  ///   not stored.
+  Future<String?> hget({
+    required String key,
+    required String field,
+    required Map<String, String> options,
+  }) =>
+      throw UnimplementedError('hget() has not been implemented.');
+
+  /// Reads all fields of the map stored under [key]. Only supported on
+  /// Android.
+  ///
+  /// Parameters:
+  /// - [key]: The key of the map.
+  /// - [options]: A map of platform-specific options for the operation.
+  ///
+  /// Returns:
+  /// - A [Future] that resolves to the fields with their values, empty if
+  ///   there is no map under [key].
+  Future<Map<String, String>> hgetall({
+    required String key,
+    required Map<String, String> options,
+  }) =>
+      throw UnimplementedError('hgetall() has not been implemented.');
+
+  /// Writes [fields] into the map stored under [key] in a single write,
+  /// leaving its other fields as they are. Only supported on Android.
+  ///
+  /// Parameters:
+  /// - [key]: The key of the map.
+  /// - [fields]: The fields to write with their values.
+  /// - [options]: A map of platform-specific options for the operation.
+  ///
+  /// Returns:
+  /// - A [Future] that completes when the fields are stored.
+  Future<void> hset({
+    required String key,
+    required Map<String, String> fields,
+    required Map<String, String> options,
+  }) =>
+      throw UnimplementedError('hset() has not been implemented.');
+
+  /// Deletes [fields] from the map stored under [key], or the whole map when
+  /// [fields] is `null`. Only supported on Android.
+  ///
+  /// Parameters:
+  /// - [key]: The key of the map.
+  /// - [fields]: The fields to delete, `null` for all of them.
+  /// - [options]: A map of platform-specific options for the operation.
+  ///
+  /// Returns:
+  /// - A [Future] that resolves to the number of deleted fields when the
+  ///   whole map was deleted, `null` otherwise.
+  Future<int?> hdel({
+    required String key,
+    required List<String>? fields,
+    required Map<String, String> options,
+  }) =>
+      throw UnimplementedError('hdel() has not been implemented.');
+
+  /// Reads a value written with [writeTyped]. Only supported on Android.
+  ///
+  /// Parameters:
+  /// - [key]: The key of the value to read.
+  /// - [type]: One of `int`, `long`, `double` or `bool`.
+  /// - [options]: A map of platform-specific options for the operation.
+  ///
+  /// Returns:
+  /// - A [Future] that resolves to the value, or `null` if [key] is not stored
+  ///   or holds another type.
+  Future<Object?> readTyped({
+    required String key,
+    required String type,
+    required Map<String, String> options,
+  }) =>
+      throw UnimplementedError('readTyped() has not been implemented.');
+
+  /// Writes a value in its own type instead of as a string, which is smaller
+  /// once encrypted and needs no parsing. Only supported on Android.
+  ///
+  /// Parameters:
+  /// - [key]: The key of the value to write.
+  /// - [type]: One of `int`, `long`, `double` or `bool`.
+  /// - [value]: An [int] for `int` and `long`, a [num] for `double`, a [bool]
+  ///   for `bool`.
+  /// - [options]: A map of platform-specific options for the operation.
+  ///
+  /// Returns:
+  /// - A [Future] that completes when the value is stored.
+  Future<void> writeTyped({
+    required String key,
+    required String type,
+    required Object value,
+    required Map<String, String> options,
+  }) =>
+      throw UnimplementedError('writeTyped() has not been implemented.');
+
+  /// Reads what changed after [version], decrypting only the entries written
+  /// since. Only supported on Android.
+  ///
+  /// Parameters:
+  /// - [version]: The `version` of a previous result, or 0 to read
+  ///   everything.
+  /// - [options]: A map of platform-specific options for the operation.
+  ///
+  /// Returns:
+  /// - A [Future] that resolves to the `version` to pass next time, the
+  ///   changed `entries` and the `deleted` keys. When `full` is `true` the
+  ///   changes are not known and `entries` holds every key-value pair.
+  Future<
+      ({
+        int version,
+        bool full,
+        Map<String, String> entries,
+        List<String> deleted,
+      })> readAllSince({
+    required int version,
+    required Map<String, String> options,
+  }) =>
+      throw UnimplementedError('readAllSince() has not been implemented.');
+
+  /// Reads the values of [keys] in one call, decrypting only those. Only
+  /// supported on Android.
+  ///
+  /// Parameters:
+  /// - [keys]: The keys to read.
+  /// - [options]: A map of platform-specific options for the operation.
+  ///
+  /// Returns:
+  /// - A [Future] that resolves to a map with every key of [keys], with a
+  ///   `null` value for the keys that are not stored.
+  Future<Map<String, String?>> readMany({
+    required List<String> keys,
+    required Map<String, String> options,
+  }) =>
+      throw UnimplementedError('readMany() has not been implemented.');
+
+  /// Adds new keys and moves every entry to them in the background, resuming
+  /// a rotation that was interrupted instead when there is one. Only
+  /// supported on Android.
+  ///
+  /// Parameters:
+  /// - [options]: A map of platform-specific options for the operation.
+  ///
+  /// Returns:
+  /// - A [Future] that resolves to the progress of the rotation, as
+  ///   [getRotationProgress] returns it.
+  Future<
+      ({
+        String state,
+        int totalEntries,
+        int processedEntries,
+        int failedEntries,
+        Duration? estimatedRemaining,
+        String? error,
+      })> rotateKeys({
+    required Map<String, String> options,
+  }) =>
+      throw UnimplementedError('rotateKeys() has not been implemented.');
+
+  /// Returns the progress of the last key rotation. Only supported on
+  /// Android.
+  ///
+  /// Parameters:
+  /// - [options]: A map of platform-specific options for the operation.
+  ///
+  /// Returns:
+  /// - A [Future] that resolves to the `state` of the rotation, one of
+  ///   `idle`, `running`, `finished` and `failed`, the number of entries in
+  ///   total, -1 until they are counted, processed and failed so far, the
+  ///   `estimatedRemaining` time, `null` while there is no estimate, and the
+  ///   `error` that stopped the rotation.
+  Future<
+      ({
+        String state,
+        int totalEntries,
+        int processedEntries,
+        int failedEntries,
+        Duration? estimatedRemaining,
+        String? error,
+      })> getRotationProgress({
+    required Map<String, String> options,
+  }) =>
+      throw UnimplementedError(
+        'getRotationProgress() has not been implemented.',
+      );
+
+  /// Starts checking every entry in the background, unless a check is
+  /// already running. Only supported on Android.
+  ///
+  /// The check finds values that no longer decrypt, entries the legacy
+  /// ciphers left behind and entries of other key prefixes.
+  ///
+  /// Parameters:
+  /// - [compact]: Whether to remove the entries found once all are checked,
+  ///   which only happens after the legacy entries were migrated.
+  /// - [options]: A map of platform-specific options for the operation.
+  ///
+  /// Returns:
+  /// - A [Future] that resolves to the progress of the check, as
+  ///   [getIntegrityScanProgress] returns it.
+  Future<
+      ({
+        String state,
+        int totalEntries,
+        int scannedEntries,
+        int corruptEntries,
+        int legacyEntries,
+        int orphanedEntries,
+        bool compact,
+        int compactedEntries,
+        String? error,
+      })> scanIntegrity({
+    required bool compact,
+    required Map<String, String> options,
+  }) =>
+      throw UnimplementedError('scanIntegrity() has not been implemented.');
+
+  /// Returns the progress of the last integrity check. Only supported on
+  /// Android.
+  ///
+  /// Parameters:
+  /// - [options]: A map of platform-specific options for the operation.
+  ///
+  /// Returns:
+  /// - A [Future] that resolves to the `state` of the check, one of `idle`,
+  ///   `running`, `finished` and `failed`, the number of entries in total,
+  ///   -1 until they are listed, and scanned so far, the corrupt, legacy and
+  ///   orphaned entries found, whether the check `compact`s and how many
+  ///   entries it removed, and the `error` that stopped it.
+  Future<
+      ({
+        String state,
+        int totalEntries,
+        int scannedEntries,
+        int corruptEntries,
+        int legacyEntries,
+        int orphanedEntries,
+        bool compact,
+        int compactedEntries,
+        String? error,
+      })> getIntegrityScanProgress({
+    required Map<String, String> options,
+  }) =>
+      throw UnimplementedError(
+        'getIntegrityScanProgress() has not been implemented.',
+      );
+
+  /// Returns how the storage was initialized. Only supported on Android.
+  ///
+  /// Parameters:
+  /// - [options]: A map of platform-specific options for the operation.
+  ///
+  /// Returns:
+  /// - A [Future] that resolves to the report: the `path` taken, `CLEAN`,
+  ///   `MIGRATED` or `RESET_ON_ERROR`, the `totalMicros` it took, its
+  ///   `phases`, each with its `name`, `offsetMicros`, `durationMicros` and
+  ///   `entries`, the `error` that made it reset, the `migratedEntries` and
+  ///   `failedMigrations` of the legacy storage, the `keyStore` calls made so
+  ///   far and the `quarantinedEntries` since.
+  Future<Map<String, Object?>> getInitReport({
+    required Map<String, String> options,
+  }) =>
+      throw UnimplementedError('getInitReport() has not been implemented.');
 }
@@ -6,6 +6,9 @@ const MethodChannel _channel =
 const EventChannel _eventChannel =
     EventChannel('plugins.it_nomads.com/flutter_secure_storage/events');
 
+const EventChannel _readAllChannel =
+    EventChannel('plugins.it_nomads.com/flutter_secure_storage/readAll');
+
 /// The `MethodChannelFlutterSecureStorage` class implements the
 /// `FlutterSecureStoragePlatform` interface using method channels to
 /// communicate with native platform code.
@@ -114,4 +117,447 @@ class MethodChannelFlutterSecureStorage extends FlutterSecureStoragePlatform {
         'value': value,
         'options': options,
       });
+
+  /// Reads all entries in chunks of up to [chunkSize] entries. The native
+  /// side decrypts a chunk only once the previous one was delivered, and
+  /// answers other calls in between. A second stream started while one is
+  /// read ends the first one.
+  ///
+  /// Throws:
+  /// - An [UnsupportedError] on platforms other than Android.
+  @override
+  Stream<Map<String, String>> readAllStream({
+    required Map<String, String> options,
+    int chunkSize = 100,
+  }) {
+    _ensureAndroid('readAllStream');
+    return _readAllChannel
+        .receiveBroadcastStream(<String, Object>{
+          'chunkSize': chunkSize,
+          'options': options,
+        })
+        .map(
+          (chunk) => (chunk as Map<Object?, Object?>).cast<String, String>(),
+        );
+  }
+
+  @override
+  Future<({Map<String, String> entries, String? nextCursor})> readAllPage({
+    required Map<String, String> options,
+    required int limit,
+    String? cursor,
+  }) async {
+    _ensureAndroid('readAllPage');
+    final page = await _channel.invokeMapMethod<String, Object?>(
+      'readAllPage',
+      {
+        'cursor': cursor,
+        'limit': limit,
+        'options': options,
+      },
+    );
+    return (
+      entries: _castEntries(page?['entries']),
+      nextCursor: page?['nextCursor'] as String?,
+    );
+  }
+
+  @override
+  Future<Map<String, String>> readByPrefix({
+    required String prefix,
+    required Map<String, String> options,
+  }) async {
+    _ensureAndroid('readByPrefix');
+    return _castEntries(
+      await _channel.invokeMethod<Map<Object?, Object?>>(
+        'readByPrefix',
+        {
+          'prefix': prefix,
+          'options': options,
+        },
+      ),
+    );
+  }
+
+  @override
+  Future<int> deleteByPrefix({
+    required String prefix,
+    required Map<String, String> options,
+  }) async {
+    _ensureAndroid('deleteByPrefix');
+    return (await _channel.invokeMethod<int>(
+      'deleteByPrefix',
+      {
+        'prefix': prefix,
+        'options': options,
+      },
+    ))!;
+  }
+
+  @override
+  Future<bool> compareAndSet({
+    required String key,
+    required String? expected,
+    required String? value,
+    required Map<String, String> options,
+  }) async {
+    _ensureAndroid('compareAndSet');
+    return (await _channel.invokeMethod<bool>(
+      'compareAndSet',
+      {
+        'key': key,
+        'expected': expected,
+        'value': value,
+        'options': options,
+      },
+    ))!;
+  }
+
+  @override
+  Future<int> incrementLong({
+    required String key,
+    required int delta,
+    required Map<String, String> options,
+  }) async {
+    _ensureAndroid('incrementLong');
+    return (await _channel.invokeMethod<int>(
+      'incrementLong',
+      {
+        'key': key,
+        'delta': delta,
+        'options': options,
+      },
+    ))!;
+  }
+
+  @override
+  Future<void> transaction({
+    required List<({String key, String? value})> operations,
+    required Map<String, String> options,
+  }) {
+    _ensureAndroid('transaction');
+    return _channel.invokeMethod<void>(
+      'transaction',
+      {
+        'operations': [
+          for (final operation in operations)
+            {'key': operation.key, 'value': operation.value},
+        ],
+        'options': options,
+      },
+    );
+  }
+
+  @override
+  Future<String?> hget({
+    required String key,
+    required String field,
+    required Map<String, String> options,
+  }) {
+    _ensureAndroid('hget');
+    return _channel.invokeMethod<String>(
+      'hget',
+      {
+        'key': key,
+        'field': field,
+        'options': options,
+      },
+    );
+  }
+
+  @override
+  Future<Map<String, String>> hgetall({
+    required String key,
+    required Map<String, String> options,
+  }) async {
+    _ensureAndroid('hgetall');
+    return _castEntries(
+      await _channel.invokeMethod<Map<Object?, Object?>>(
+        'hgetall',
+        {
+          'key': key,
+          'options': options,
+        },
+      ),
+    );
+  }
+
+  @override
+  Future<void> hset({
+    required String key,
+    required Map<String, String> fields,
+    required Map<String, String> options,
+  }) {
+    _ensureAndroid('hset');
+    return _channel.invokeMethod<void>(
+      'hset',
+      {
+        'key': key,
+        'fields': fields,
+        'options': options,
+      },
+    );
+  }
+
+  @override
+  Future<int?> hdel({
+    required String key,
+    required List<String>? fields,
+    required Map<String, String> options,
+  }) {
+    _ensureAndroid('hdel');
+    return _channel.invokeMethod<int>(
+      'hdel',
+      {
+        'key': key,
+        if (fields != null) 'fields': fields,
+        'options': options,
+      },
+    );
+  }
+
+  @override
+  Future<Object?> readTyped({
+    required String key,
+    required String type,
+    required Map<String, String> options,
+  }) {
+    _ensureAndroid('readTyped');
+    return _channel.invokeMethod<Object>(
+      'readTyped',
+      {
+        'key': key,
+        'type': type,
+        'options': options,
+      },
+    );
+  }
+
+  @override
+  Future<void> writeTyped({
+    required String key,
+    required String type,
+    required Object value,
+    required Map<String, String> options,
+  }) {
+    _ensureAndroid('writeTyped');
+    return _channel.invokeMethod<void>(
+      'writeTyped',
+      {
+        'key': key,
+        'type': type,
+        'value': value,
+        'options': options,
+      },
+    );
+  }
+
+  @override
+  Future<
+      ({
+        int version,
+        bool full,
+        Map<String, String> entries,
+        List<String> deleted,
+      })> readAllSince({
+    required int version,
+    required Map<String, String> options,
+  }) async {
+    _ensureAndroid('readAllSince');
+    final result = (await _channel.invokeMethod<Map<Object?, Object?>>(
+      'readAllSince',
+      {
+        'version': version,
+        'options': options,
+      },
+    ))!;
+    return (
+      version: result['version']! as int,
+      full: result['full']! as bool,
+      entries: _castEntries(result['entries']),
+      deleted: (result['deleted']! as List<Object?>).cast<String>(),
+    );
+  }
+
+  @override
+  Future<Map<String, String?>> readMany({
+    required List<String> keys,
+    required Map<String, String> options,
+  }) async {
+    _ensureAndroid('readMany');
+    final values = await _channel.invokeMethod<Map<Object?, Object?>>(
+      'readMany',
+      {
+        'keys': keys,
+        'options': options,
+      },
+    );
+    return values?.cast<String, String?>() ?? {};
+  }
+
+  @override
+  Future<
+      ({
+        String state,
+        int totalEntries,
+        int processedEntries,
+        int failedEntries,
+        Duration? estimatedRemaining,
+        String? error,
+      })> rotateKeys({
+    required Map<String, String> options,
+  }) async {
+    _ensureAndroid('rotateKeys');
+    return _rotationProgress(
+      await _channel.invokeMapMethod<String, Object?>(
+        'rotateKeys',
+        {'options': options},
+      ),
+    );
+  }
+
+  @override
+  Future<
+      ({
+        String state,
+        int totalEntries,
+        int processedEntries,
+        int failedEntries,
+        Duration? estimatedRemaining,
+        String? error,
+      })> getRotationProgress({
+    required Map<String, String> options,
+  }) async {
+    _ensureAndroid('getRotationProgress');
+    return _rotationProgress(
+      await _channel.invokeMapMethod<String, Object?>(
+        'getRotationProgress',
+        {'options': options},
+      ),
+    );
+  }
+
+  /// Reads the progress of a key rotation answered by the native side, which
+  /// only has the `state` while no rotation ran.
+  ({
+    String state,
+    int totalEntries,
+    int processedEntries,
+    int failedEntries,
+    Duration? estimatedRemaining,
+    String? error,
+  }) _rotationProgress(Map<String, Object?>? progress) {
+    final remainingMillis = progress?['estimatedRemainingMillis'] as int? ?? -1;
+    return (
+      state: progress?['state'] as String? ?? 'idle',
+      totalEntries: progress?['totalEntries'] as int? ?? 0,
+      processedEntries: progress?['processedEntries'] as int? ?? 0,
+      failedEntries: progress?['failedEntries'] as int? ?? 0,
+      estimatedRemaining: remainingMillis < 0
+          ? null
+          : Duration(milliseconds: remainingMillis),
+      error: progress?['error'] as String?,
+    );
+  }
+
+  @override
+  Future<
+      ({
+        String state,
+        int totalEntries,
+        int scannedEntries,
+        int corruptEntries,
+        int legacyEntries,
+        int orphanedEntries,
+        bool compact,
+        int compactedEntries,
+        String? error,
+      })> scanIntegrity({
+    required bool compact,
+    required Map<String, String> options,
+  }) async {
+    _ensureAndroid('scanIntegrity');
+    return _integrityScanProgress(
+      await _channel.invokeMapMethod<String, Object?>(
+        'scanIntegrity',
+        {
+          'compact': compact,
+          'options': options,
+        },
+      ),
+    );
+  }
+
+  @override
+  Future<
+      ({
+        String state,
+        int totalEntries,
+        int scannedEntries,
+        int corruptEntries,
+        int legacyEntries,
+        int orphanedEntries,
+        bool compact,
+        int compactedEntries,
+        String? error,
+      })> getIntegrityScanProgress({
+    required Map<String, String> options,
+  }) async {
+    _ensureAndroid('getIntegrityScanProgress');
+    return _integrityScanProgress(
+      await _channel.invokeMapMethod<String, Object?>(
+        'getIntegrityScanProgress',
+        {'options': options},
+      ),
+    );
+  }
+
+  /// Reads the progress of an integrity check answered by the native side,
+  /// which only has the `state` while no check ran.
+  ({
+    String state,
+    int totalEntries,
+    int scannedEntries,
+    int corruptEntries,
+    int legacyEntries,
+    int orphanedEntries,
+    bool compact,
+    int compactedEntries,
+    String? error,
+  }) _integrityScanProgress(Map<String, Object?>? progress) => (
+        state: progress?['state'] as String? ?? 'idle',
+        totalEntries: progress?['totalEntries'] as int? ?? 0,
+        scannedEntries: progress?['scannedEntries'] as int? ?? 0,
+        corruptEntries: progress?['corruptEntries'] as int? ?? 0,
+        legacyEntries: progress?['legacyEntries'] as int? ?? 0,
+        orphanedEntries: progress?['orphanedEntries'] as int? ?? 0,
+        compact: progress?['compact'] as bool? ?? false,
+        compactedEntries: progress?['compactedEntries'] as int? ?? 0,
+        error: progress?['error'] as String?,
+      );
+
+  @override
+  Future<Map<String, Object?>> getInitReport({
+    required Map<String, String> options,
+  }) async {
+    _ensureAndroid('getInitReport');
+    final report = await _channel.invokeMapMethod<String, Object?>(
+      'getInitReport',
+      {'options': options},
+    );
+    return report ?? {};
+  }
+
+  /// Casts a map of entries answered by the native side.
+  Map<String, String> _castEntries(Object? entries) =>
+      (entries as Map<Object?, Object?>?)?.cast<String, String>() ??
+      <String, String>{};
+
+  /// Throws an [UnsupportedError] for the Android only [method] on other
+  /// platforms.
+  void _ensureAndroid(String method) {
+    if (kIsWeb || defaultTargetPlatform != TargetPlatform.android) {
+      throw UnsupportedError('$method is only supported on Android');
+    }
+  }
 }
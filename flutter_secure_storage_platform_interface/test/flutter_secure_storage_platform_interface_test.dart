@@ -1,3 +1,4 @@
+import 'package:flutter/foundation.dart';
 import 'package:flutter/services.dart';
 import 'package:flutter_secure_storage_platform_interface/flutter_secure_storage_platform_interface.dart';
 import 'package:flutter_test/flutter_test.dart';
@@ -42,16 +43,70 @@ void main() {
 
     final log = <MethodCall>[];
 
-    Future<bool?>? handler(MethodCall methodCall) async {
-      log.add(methodCall);
-
-      if (methodCall.method == 'containsKey') {
-        return true;
-      } else if (methodCall.method == 'isProtectedDataAvailable') {
-        return true;
-      }
+    // What the native side answers, for the methods that return a value.
+    final results = <String, Object?>{
+      'containsKey': true,
+      'isProtectedDataAvailable': true,
+      'readAllPage': <Object?, Object?>{
+        'entries': <Object?, Object?>{'a': '1'},
+        'nextCursor': 'cursor',
+      },
+      'readByPrefix': <Object?, Object?>{'user.name': 'a'},
+      'deleteByPrefix': 2,
+      'compareAndSet': true,
+      'incrementLong': 5,
+      'hget': 'field_value',
+      'hgetall': <Object?, Object?>{'field': 'field_value'},
+      'hdel': 2,
+      'readTyped': 42,
+      'readAllSince': <Object?, Object?>{
+        'version': 7,
+        'full': false,
+        'entries': <Object?, Object?>{'a': '1'},
+        'deleted': <Object?>['b'],
+      },
+      'readMany': <Object?, Object?>{'a': '1', 'b': null},
+      'rotateKeys': <Object?, Object?>{
+        'state': 'running',
+        'totalEntries': 10,
+        'processedEntries': 4,
+        'failedEntries': 1,
+        'estimatedRemainingMillis': 1500,
+        'error': null,
+      },
+      'getRotationProgress': <Object?, Object?>{'state': 'idle'},
+      'scanIntegrity': <Object?, Object?>{
+        'state': 'finished',
+        'totalEntries': 12,
+        'scannedEntries': 12,
+        'corruptEntries': 1,
+        'legacyEntries': 2,
+        'orphanedEntries': 3,
+        'compact': true,
+        'compactedEntries': 6,
+        'error': null,
+      },
+      'getIntegrityScanProgress': <Object?, Object?>{'state': 'idle'},
+      'getInitReport': <Object?, Object?>{
+        'path': 'MIGRATED',
+        'totalMicros': 1200,
+        'phases': <Object?>[
+          <Object?, Object?>{
+            'name': 'migrate',
+            'offsetMicros': 200,
+            'durationMicros': 900,
+            'entries': 3,
+          },
+        ],
+        'error': null,
+        'migratedEntries': 2,
+        'failedMigrations': 1,
+      },
+    };
 
-      return null;
+    Future<Object?>? handler(MethodCall methodCall) async {
+      log.add(methodCall);
+      return results[methodCall.method];
     }
 
     TestDefaultBinaryMessengerBinding.instance.defaultBinaryMessenger
@@ -171,6 +226,553 @@ void main() {
       );
     });
 
+    test('readAllStream', () async {
+      const readAllChannel =
+          EventChannel('plugins.it_nomads.com/flutter_secure_storage/readAll');
+      Object? listenArguments;
+      TestDefaultBinaryMessengerBinding.instance.defaultBinaryMessenger
+          .setMockStreamHandler(
+        readAllChannel,
+        MockStreamHandler.inline(
+          onListen: (arguments, events) {
+            listenArguments = arguments;
+            events
+              ..success(<Object?, Object?>{'a': '1', 'b': '2'})
+              ..success(<Object?, Object?>{'c': '3'})
+              ..endOfStream();
+          },
+        ),
+      );
+      addTearDown(
+        () => TestDefaultBinaryMessengerBinding.instance.defaultBinaryMessenger
+            .setMockStreamHandler(readAllChannel, null),
+      );
+
+      final chunks =
+          await storage.readAllStream(options: options, chunkSize: 2).toList();
+
+      expect(chunks, [
+        {'a': '1', 'b': '2'},
+        {'c': '3'},
+      ]);
+      expect(listenArguments, <String, Object>{
+        'chunkSize': 2,
+        'options': options,
+      });
+    });
+
+    test('readAllPage', () async {
+      final page = await storage.readAllPage(
+        options: options,
+        limit: 10,
+        cursor: 'previous',
+      );
+
+      expect(page.entries, {'a': '1'});
+      expect(page.nextCursor, 'cursor');
+      expect(
+        log,
+        <Matcher>[
+          isMethodCall(
+            'readAllPage',
+            arguments: <String, Object?>{
+              'cursor': 'previous',
+              'limit': 10,
+              'options': options,
+            },
+          ),
+        ],
+      );
+    });
+
+    test('readByPrefix', () async {
+      final result =
+          await storage.readByPrefix(prefix: 'user.', options: options);
+
+      expect(result, {'user.name': 'a'});
+      expect(
+        log,
+        <Matcher>[
+          isMethodCall(
+            'readByPrefix',
+            arguments: <String, Object>{
+              'prefix': 'user.',
+              'options': options,
+            },
+          ),
+        ],
+      );
+    });
+
+    test('deleteByPrefix', () async {
+      final result =
+          await storage.deleteByPrefix(prefix: 'user.', options: options);
+
+      expect(result, 2);
+      expect(
+        log,
+        <Matcher>[
+          isMethodCall(
+            'deleteByPrefix',
+            arguments: <String, Object>{
+              'prefix': 'user.',
+              'options': options,
+            },
+          ),
+        ],
+      );
+    });
+
+    test('compareAndSet', () async {
+      final result = await storage.compareAndSet(
+        key: key,
+        expected: null,
+        value: 'test_value',
+        options: options,
+      );
+
+      expect(result, isTrue);
+      expect(
+        log,
+        <Matcher>[
+          isMethodCall(
+            'compareAndSet',
+            arguments: <String, Object?>{
+              'key': key,
+              'expected': null,
+              'value': 'test_value',
+              'options': options,
+            },
+          ),
+        ],
+      );
+    });
+
+    test('incrementLong', () async {
+      final result =
+          await storage.incrementLong(key: key, delta: 2, options: options);
+
+      expect(result, 5);
+      expect(
+        log,
+        <Matcher>[
+          isMethodCall(
+            'incrementLong',
+            arguments: <String, Object>{
+              'key': key,
+              'delta': 2,
+              'options': options,
+            },
+          ),
+        ],
+      );
+    });
+
+    test('transaction', () async {
+      await storage.transaction(
+        operations: [
+          (key: key, value: 'test_value'),
+          (key: 'other_key', value: null),
+        ],
+        options: options,
+      );
+
+      expect(
+        log,
+        <Matcher>[
+          isMethodCall(
+            'transaction',
+            arguments: <String, Object>{
+              'operations': [
+                {'key': key, 'value': 'test_value'},
+                {'key': 'other_key', 'value': null},
+              ],
+              'options': options,
+            },
+          ),
+        ],
+      );
+    });
+
+    test('hget', () async {
+      final result =
+          await storage.hget(key: key, field: 'field', options: options);
+
+      expect(result, 'field_value');
+      expect(
+        log,
+        <Matcher>[
+          isMethodCall(
+            'hget',
+            arguments: <String, Object>{
+              'key': key,
+              'field': 'field',
+              'options': options,
+            },
+          ),
+        ],
+      );
+    });
+
+    test('hgetall', () async {
+      final result = await storage.hgetall(key: key, options: options);
+
+      expect(result, {'field': 'field_value'});
+      expect(
+        log,
+        <Matcher>[
+          isMethodCall(
+            'hgetall',
+            arguments: <String, Object>{
+              'key': key,
+              'options': options,
+            },
+          ),
+        ],
+      );
+    });
+
+    test('hset', () async {
+      await storage.hset(
+        key: key,
+        fields: {'field': 'field_value'},
+        options: options,
+      );
+
+      expect(
+        log,
+        <Matcher>[
+          isMethodCall(
+            'hset',
+            arguments: <String, Object>{
+              'key': key,
+              'fields': {'field': 'field_value'},
+              'options': options,
+            },
+          ),
+        ],
+      );
+    });
+
+    test('hdel', () async {
+      await storage.hdel(key: key, fields: ['field'], options: options);
+      final result =
+          await storage.hdel(key: key, fields: null, options: options);
+
+      expect(result, 2);
+      expect(
+        log,
+        <Matcher>[
+          isMethodCall(
+            'hdel',
+            arguments: <String, Object>{
+              'key': key,
+              'fields': ['field'],
+              'options': options,
+            },
+          ),
+          isMethodCall(
+            'hdel',
+            arguments: <String, Object>{
+              'key': key,
+              'options': options,
+            },
+          ),
+        ],
+      );
+    });
+
+    test('readTyped', () async {
+      final result =
+          await storage.readTyped(key: key, type: 'long', options: options);
+
+      expect(result, 42);
+      expect(
+        log,
+        <Matcher>[
+          isMethodCall(
+            'readTyped',
+            arguments: <String, Object>{
+              'key': key,
+              'type': 'long',
+              'options': options,
+            },
+          ),
+        ],
+      );
+    });
+
+    test('writeTyped', () async {
+      await storage.writeTyped(
+        key: key,
+        type: 'bool',
+        value: true,
+        options: options,
+      );
+
+      expect(
+        log,
+        <Matcher>[
+          isMethodCall(
+            'writeTyped',
+            arguments: <String, Object>{
+              'key': key,
+              'type': 'bool',
+              'value': true,
+              'options': options,
+            },
+          ),
+        ],
+      );
+    });
+
+    test('readAllSince', () async {
+      final result = await storage.readAllSince(version: 5, options: options);
+
+      expect(result.version, 7);
+      expect(result.full, isFalse);
+      expect(result.entries, {'a': '1'});
+      expect(result.deleted, ['b']);
+      expect(
+        log,
+        <Matcher>[
+          isMethodCall(
+            'readAllSince',
+            arguments: <String, Object>{
+              'version': 5,
+              'options': options,
+            },
+          ),
+        ],
+      );
+    });
+
+    test('readMany', () async {
+      final result =
+          await storage.readMany(keys: ['a', 'b'], options: options);
+
+      expect(result, {'a': '1', 'b': null});
+      expect(
+        log,
+        <Matcher>[
+          isMethodCall(
+            'readMany',
+            arguments: <String, Object>{
+              'keys': ['a', 'b'],
+              'options': options,
+            },
+          ),
+        ],
+      );
+    });
+
+    test('rotateKeys', () async {
+      final progress = await storage.rotateKeys(options: options);
+
+      expect(progress.state, 'running');
+      expect(progress.totalEntries, 10);
+      expect(progress.processedEntries, 4);
+      expect(progress.failedEntries, 1);
+      expect(progress.estimatedRemaining, const Duration(milliseconds: 1500));
+      expect(progress.error, isNull);
+      expect(
+        log,
+        <Matcher>[
+          isMethodCall(
+            'rotateKeys',
+            arguments: <String, Object>{'options': options},
+          ),
+        ],
+      );
+    });
+
+    test('getRotationProgress without a rotation', () async {
+      final progress = await storage.getRotationProgress(options: options);
+
+      expect(progress.state, 'idle');
+      expect(progress.totalEntries, 0);
+      expect(progress.estimatedRemaining, isNull);
+      expect(
+        log,
+        <Matcher>[
+          isMethodCall(
+            'getRotationProgress',
+            arguments: <String, Object>{'options': options},
+          ),
+        ],
+      );
+    });
+
+    test('scanIntegrity', () async {
+      final progress =
+          await storage.scanIntegrity(compact: true, options: options);
+
+      expect(progress.state, 'finished');
+      expect(progress.totalEntries, 12);
+      expect(progress.scannedEntries, 12);
+      expect(progress.corruptEntries, 1);
+      expect(progress.legacyEntries, 2);
+      expect(progress.orphanedEntries, 3);
+      expect(progress.compact, isTrue);
+      expect(progress.compactedEntries, 6);
+      expect(progress.error, isNull);
+      expect(
+        log,
+        <Matcher>[
+          isMethodCall(
+            'scanIntegrity',
+            arguments: <String, Object>{
+              'compact': true,
+              'options': options,
+            },
+          ),
+        ],
+      );
+    });
+
+    test('getIntegrityScanProgress without a scan', () async {
+      final progress = await storage.getIntegrityScanProgress(options: options);
+
+      expect(progress.state, 'idle');
+      expect(progress.scannedEntries, 0);
+      expect(progress.compact, isFalse);
+      expect(
+        log,
+        <Matcher>[
+          isMethodCall(
+            'getIntegrityScanProgress',
+            arguments: <String, Object>{'options': options},
+          ),
+        ],
+      );
+    });
+
+    test('getInitReport', () async {
+      final report = await storage.getInitReport(options: options);
+
+      expect(report['path'], 'MIGRATED');
+      expect(report['totalMicros'], 1200);
+      expect(report['migratedEntries'], 2);
+      expect(report['failedMigrations'], 1);
+      expect(
+        (report['phases']! as List<Object?>).single,
+        {
+          'name': 'migrate',
+          'offsetMicros': 200,
+          'durationMicros': 900,
+          'entries': 3,
+        },
+      );
+      expect(
+        log,
+        <Matcher>[
+          isMethodCall(
+            'getInitReport',
+            arguments: <String, Object>{'options': options},
+          ),
+        ],
+      );
+    });
+
+    test('Android only methods throw on other platforms', () async {
+      debugDefaultTargetPlatformOverride = TargetPlatform.iOS;
+      addTearDown(() => debugDefaultTargetPlatformOverride = null);
+
+      expect(
+        () => storage.readAllStream(options: options),
+        throwsUnsupportedError,
+      );
+      await expectLater(
+        () => storage.readAllPage(options: options, limit: 10),
+        throwsUnsupportedError,
+      );
+      await expectLater(
+        () => storage.readByPrefix(prefix: 'user.', options: options),
+        throwsUnsupportedError,
+      );
+      await expectLater(
+        () => storage.deleteByPrefix(prefix: 'user.', options: options),
+        throwsUnsupportedError,
+      );
+      await expectLater(
+        () => storage.compareAndSet(
+          key: key,
+          expected: null,
+          value: 'test_value',
+          options: options,
+        ),
+        throwsUnsupportedError,
+      );
+      await expectLater(
+        () => storage.incrementLong(key: key, delta: 1, options: options),
+        throwsUnsupportedError,
+      );
+      await expectLater(
+        () => storage.transaction(
+          operations: [(key: key, value: null)],
+          options: options,
+        ),
+        throwsUnsupportedError,
+      );
+      await expectLater(
+        () => storage.hget(key: key, field: 'field', options: options),
+        throwsUnsupportedError,
+      );
+      await expectLater(
+        () => storage.hgetall(key: key, options: options),
+        throwsUnsupportedError,
+      );
+      await expectLater(
+        () => storage.hset(key: key, fields: {}, options: options),
+        throwsUnsupportedError,
+      );
+      await expectLater(
+        () => storage.hdel(key: key, fields: null, options: options),
+        throwsUnsupportedError,
+      );
+      await expectLater(
+        () => storage.readTyped(key: key, type: 'long', options: options),
+        throwsUnsupportedError,
+      );
+      await expectLater(
+        () => storage.writeTyped(
+          key: key,
+          type: 'long',
+          value: 1,
+          options: options,
+        ),
+        throwsUnsupportedError,
+      );
+      await expectLater(
+        () => storage.readAllSince(version: 0, options: options),
+        throwsUnsupportedError,
+      );
+      await expectLater(
+        () => storage.readMany(keys: [key], options: options),
+        throwsUnsupportedError,
+      );
+      await expectLater(
+        () => storage.rotateKeys(options: options),
+        throwsUnsupportedError,
+      );
+      await expectLater(
+        () => storage.getRotationProgress(options: options),
+        throwsUnsupportedError,
+      );
+      await expectLater(
+        () => storage.scanIntegrity(compact: false, options: options),
+        throwsUnsupportedError,
+      );
+      await expectLater(
+        () => storage.getIntegrityScanProgress(options: options),
+        throwsUnsupportedError,
+      );
+      await expectLater(
+        () => storage.getInitReport(options: options),
+        throwsUnsupportedError,
+      );
+    });
+
     // test('isProtectedDataAvailable', () async {
     //   final result = await storage.isCupertinoProtectedDataAvailable();
     //